@@ -5,6 +5,7 @@ import org.springframework.cloud.netflix.zuul.EnableZuulProxy;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main class. 
@@ -14,6 +15,7 @@ import org.springframework.boot.autoconfigure.domain.EntityScan;
 @EntityScan("net.ssehub.sparkyservice.api.jpa")
 @SpringBootApplication
 @EnableZuulProxy
+@EnableScheduling
 public class SparkyServiceApplication {
     
     /**
@@ -2,20 +2,36 @@ package net.ssehub.sparkyservice.api.auth;
 
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.ldap.AuthenticationException;
+import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -27,7 +43,9 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenReadException;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenService;
 import net.ssehub.sparkyservice.api.conf.ControllerPath;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
 import net.ssehub.sparkyservice.api.user.dto.CredentialsDto;
 import net.ssehub.sparkyservice.api.user.dto.ErrorDto;
 import net.ssehub.sparkyservice.api.user.extraction.MissingDataException;
@@ -43,10 +61,18 @@ import net.ssehub.sparkyservice.api.util.ErrorDtoBuilder;
 @Tag(name = "auth-controller", description = "Controller for realm authentication with JWT")
 public class AuthController {
 
+    /**
+     * Maximum time a revocation feed request waits for a change. Stays below the usual async request timeout of 
+     * 30 seconds.
+     */
+    public static final long MAX_REVOCATION_WAIT_SECONDS = 25;
+
     @Autowired
     private ServletContext servletContext;
     @Autowired
     private AuthenticationService authService;
+    @Autowired
+    private JwtTokenService jwtService;
 
     /**
      * This method does nothing. The method header is important to let swagger list
@@ -123,6 +149,164 @@ public class AuthController {
         return authService.verifyJwtToken(jwtToken);
     }
     
+    /**
+     * Issues a new JWT token for the token in the authorization header. This is much cheaper than a new login 
+     * because the user is not authenticated again; only the account is checked. The given token is locked 
+     * afterwards and the new one can be refreshed one time less.
+     * 
+     * @param request - Provided by Spring
+     * @param response - Provided by Spring
+     * @return Information like the new JWT token
+     * @throws JwtTokenReadException When the token is invalid or can't be refreshed anymore
+     */
+    @Operation(summary = "Token refresh", 
+            description = "Replaces a valid JWT token with a new one and sets it into the authorization header",
+            security = { @SecurityRequirement(name = "bearer-key") })
+    @PostMapping(value = ControllerPath.AUTHENTICATION_REFRESH)
+    @ApiResponses(value = { 
+            @ApiResponse(responseCode = "200", description = "Token refreshed"),
+            @ApiResponse(responseCode = "403", description = "Token invalid, locked or no refreshes left",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ErrorDto.class))) })
+    public AuthenticationInfoDto refreshToken(HttpServletRequest request, HttpServletResponse response) 
+            throws JwtTokenReadException {
+        return authService.refreshJwtToken(notNull(request), notNull(response));
+    }
+
+    /**
+     * Publishes the public keys which verify RS256 signed JWT token as JSON Web Key Set. Other services can cache
+     * the keys and verify token locally instead of calling {@link #checkTokenAuthenticationStatus}.
+     * 
+     * @return JSON Web Key Set - the list of keys is empty when token are signed with the shared secret
+     */
+    @Operation(summary = "Public signing keys", 
+            description = "Lists the public keys of all active and retired JWT signing keys (RFC 7517)")
+    @GetMapping(value = ControllerPath.AUTHENTICATION_JWKS, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "JSON Web Key Set") })
+    public ResponseEntity<Map<String, Object>> publicKeys() {
+        long maxAge = jwtService.getJwtConf().getJwksMaxAgeSeconds();
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.maxAge(maxAge, TimeUnit.SECONDS).cachePublic())
+            .body(jwtService.getKeySet().toJwks());
+    }
+
+    /**
+     * Provides revocation changes of JWT token for services which verify token locally. Without a version, a 
+     * snapshot of all locked token is returned. With a version, only later changes are returned; when there are
+     * none, the request waits up to <code>wait</code> seconds for a change (long polling).
+     * 
+     * @param since - Last version known by the caller, alternatively passed as <code>If-None-Match</code> header
+     * @param wait - Maximum time in seconds to wait for a change, limited to {@link #MAX_REVOCATION_WAIT_SECONDS}
+     * @param ifNoneMatch - ETag of the last received feed
+     * @return Future of the feed with its version as ETag - 304 when nothing changed
+     */
+    @Operation(summary = "JWT revocation feed", 
+            description = "Lists locked JWT token as snapshot or as changes since a given version",
+            security = { @SecurityRequirement(name = "bearer-key") })
+    @GetMapping(value = ControllerPath.AUTHENTICATION_REVOCATIONS, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Secured({ UserRole.FullName.SERVICE, UserRole.FullName.ADMIN })
+    @ApiResponses(value = { 
+            @ApiResponse(responseCode = "200", description = "Snapshot or changes since the given version"),
+            @ApiResponse(responseCode = "304", description = "Nothing changed since the given version") })
+    public CompletableFuture<ResponseEntity<RevocationFeedDto>> revocations(
+            @RequestParam(required = false) @Nullable Long since, 
+            @RequestParam(defaultValue = "0") long wait,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) @Nullable String ifNoneMatch) {
+        final Long version = since != null ? since : parseVersionTag(ifNoneMatch);
+        long waitMs = TimeUnit.SECONDS.toMillis(Math.max(0, Math.min(wait, MAX_REVOCATION_WAIT_SECONDS)));
+        return authService.awaitRevocationFeed(version, waitMs).thenApply(feed -> feed
+            .map(dto -> ResponseEntity.ok()
+                .eTag(String.valueOf(dto.version))
+                .cacheControl(CacheControl.noCache())
+                .body(dto))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(String.valueOf(version))
+                .cacheControl(CacheControl.noCache())
+                .build()));
+    }
+
+    /**
+     * Lists the active sessions of the authenticated user. Sessions are found through an index of the JWT cache, so
+     * neither all token nor the storage are scanned.
+     * 
+     * @param auth - Injected through spring if the user is logged in
+     * @return All JWT token of the user which are neither locked, nor expired, nor revoked
+     * @throws JwtTokenReadException
+     */
+    @Operation(summary = "Active sessions", description = "Lists the active JWT token of the authenticated user",
+            security = { @SecurityRequirement(name = "bearer-key") })
+    @GetMapping(value = ControllerPath.AUTHENTICATION_SESSIONS, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiResponses(value = { 
+            @ApiResponse(responseCode = "200", description = "Active sessions of the user"),
+            @ApiResponse(responseCode = "403", description = "Not authenticated",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ErrorDto.class))) })
+    public List<SessionDto> sessions(@Nullable Authentication auth) throws JwtTokenReadException {
+        return authService.listSessions(auth);
+    }
+
+    /**
+     * Locks a single session of the authenticated user. Sessions of other users can't be locked this way.
+     * 
+     * @param auth - Injected through spring if the user is logged in
+     * @param jti - The JTI of the session
+     * @return 204 when the session was locked - 404 when the user has no such active session
+     * @throws JwtTokenReadException
+     */
+    @Operation(summary = "Revoke session", description = "Locks a single JWT token of the authenticated user",
+            security = { @SecurityRequirement(name = "bearer-key") })
+    @DeleteMapping(value = ControllerPath.AUTHENTICATION_SESSIONS_SINGLE)
+    @ApiResponses(value = { 
+            @ApiResponse(responseCode = "204", description = "Session locked"),
+            @ApiResponse(responseCode = "404", description = "The user has no such active session"),
+            @ApiResponse(responseCode = "403", description = "Not authenticated",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ErrorDto.class))) })
+    public ResponseEntity<Void> revokeSession(@Nullable Authentication auth, @PathVariable("jti") UUID jti) 
+            throws JwtTokenReadException {
+        return authService.revokeSession(auth, notNull(jti)) 
+                ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Locks all sessions of the authenticated user except the one which is used for this request (logout 
+     * everywhere else).
+     * 
+     * @param auth - Injected through spring if the user is logged in
+     * @throws JwtTokenReadException
+     */
+    @Operation(summary = "Revoke other sessions", 
+            description = "Locks all JWT token of the authenticated user except the one of the request",
+            security = { @SecurityRequirement(name = "bearer-key") })
+    @DeleteMapping(value = ControllerPath.AUTHENTICATION_SESSIONS)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @ApiResponses(value = { 
+            @ApiResponse(responseCode = "204", description = "Other sessions locked"),
+            @ApiResponse(responseCode = "403", description = "Not authenticated",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ErrorDto.class))) })
+    public void revokeOtherSessions(@Nullable Authentication auth) throws JwtTokenReadException {
+        authService.revokeOtherSessions(auth);
+    }
+
+    /**
+     * Reads the version of an ETag created by {@link #revocations(Long, long, String)}.
+     * 
+     * @param etag - Value of an <code>If-None-Match</code> header
+     * @return The version - <code>null</code> when the header is missing or invalid
+     */
+    private static @Nullable Long parseVersionTag(@Nullable String etag) {
+        Long version = null;
+        if (etag != null) {
+            try {
+                version = Long.valueOf(etag.replace("W/", "").replace("\"", "").trim());
+            } catch (NumberFormatException e) {
+                version = null;
+            }
+        }
+        return version;
+    }
+
     /**
      * Exception and Error handler for this Controller Class. It produces a new informational ErrorDto based
      * on the thrown exception.
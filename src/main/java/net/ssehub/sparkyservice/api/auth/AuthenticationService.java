@@ -1,9 +1,20 @@
 package net.ssehub.sparkyservice.api.auth;
 
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,11 +23,16 @@ import org.springframework.ldap.AuthenticationException;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenReadException;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenService;
+import net.ssehub.sparkyservice.api.auth.storage.JwtCache;
+import net.ssehub.sparkyservice.api.auth.storage.RevocationLog.Delta;
 import net.ssehub.sparkyservice.api.user.dto.TokenDto;
 import net.ssehub.sparkyservice.api.user.extraction.UserExtractionService;
 import net.ssehub.sparkyservice.api.user.modification.UserModificationService;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+import net.ssehub.sparkyservice.api.util.DateUtil;
 
 @Service
 @ParametersAreNonnullByDefault
@@ -30,10 +46,15 @@ public class AuthenticationService {
     @Nonnull
     private final JwtTokenService jwtService;
 
+    @Nonnull
+    private final UserStorageService userStorage;
+
     @Autowired
-    public AuthenticationService(JwtTokenService jwtService, UserExtractionService userExtractor) {
+    public AuthenticationService(JwtTokenService jwtService, UserExtractionService userExtractor, 
+            UserStorageService userStorage) {
         this.jwtService = jwtService;
         this.userExtractor = userExtractor;
+        this.userStorage = userStorage;
     }
 
     public AuthenticationInfoDto checkAuthenticationStatus(@Nullable Authentication auth, HttpServletRequest request) 
@@ -79,4 +100,140 @@ public class AuthenticationService {
         var auth = jwtService.readRefreshToAuthentication(jwtString, userExtractor);
         return createAuthenticationInfoDto(auth);
     }
-}
\ No newline at end of file
+
+    /**
+     * Issues a new JWT token for the token in the authorization header of the request. The user is not 
+     * authenticated again, but loaded from the storage to check the account and its role. The new token is written 
+     * into the authorization header of the response.
+     * 
+     * @param request - Holds the token which should be refreshed
+     * @param response - Receives the new token
+     * @return Information stored in the new token
+     * @throws JwtTokenReadException When the given token is invalid or can't be refreshed
+     */
+    public AuthenticationInfoDto refreshJwtToken(HttpServletRequest request, HttpServletResponse response) 
+            throws JwtTokenReadException {
+        var jwtConf = jwtService.getJwtConf();
+        String newJwt = jwtService.refresh(request.getHeader(jwtConf.getHeader()), userStorage);
+        response.addHeader(jwtConf.getHeader(), jwtConf.getPrefix() + " " + newJwt);
+        LOG.debug("Refreshed JWT token");
+        return createAuthenticationInfoDto(jwtService.readToAuthentication(newJwt));
+    }
+
+    /**
+     * Reads the JWT token which was used to authenticate the current request.
+     * 
+     * @param auth - Authentication of the request
+     * @return The verified token
+     * @throws JwtTokenReadException When the token is invalid
+     */
+    private JwtToken readCurrentToken(@Nullable Authentication auth) throws JwtTokenReadException {
+        if (auth == null || !(auth.getCredentials() instanceof TokenDto)) {
+            throw new AuthenticationException();
+        }
+        return jwtService.readJwtToken(((TokenDto) auth.getCredentials()).token);
+    }
+
+    /**
+     * Lists the active sessions of the authenticated user. Each session is a JWT token which is neither locked, 
+     * nor expired, nor revoked. Sessions of other nodes are found through the storage. In revocation only mode 
+     * unlocked token aren't stored, so only the sessions which were created by this node since its start are listed 
+     * (see {@link JwtTokenService#findActiveTokens(SparkysAuthPrincipal)}).
+     * 
+     * @param auth - Authentication of the request
+     * @return The sessions of the user including the one of the request
+     * @throws JwtTokenReadException When the token of the request is invalid
+     */
+    public List<SessionDto> listSessions(@Nullable Authentication auth) throws JwtTokenReadException {
+        var currentToken = readCurrentToken(auth);
+        var cache = JwtCache.getInstance();
+        return jwtService.findActiveTokens(currentToken.getUserInfo()).stream().map(jti -> {
+            var dto = new SessionDto();
+            dto.jti = jti.toString();
+            long expiresAt = cache.getExpiresAt(jti);
+            dto.expiration = expiresAt > 0 ? DateUtil.toString(new Date(expiresAt)) : null;
+            dto.current = jti.equals(currentToken.getJti());
+            return dto;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Locks a single session of the authenticated user. 
+     * 
+     * @param auth - Authentication of the request
+     * @param jti - The JTI of the session
+     * @return <code>true</code> when the session was locked, <code>false</code> when it doesn't belong to the user 
+     *         or was already locked
+     * @throws JwtTokenReadException When the token of the request is invalid
+     */
+    public boolean revokeSession(@Nullable Authentication auth, UUID jti) throws JwtTokenReadException {
+        var currentToken = readCurrentToken(auth);
+        return jwtService.disableOwned(currentToken.getUserInfo(), notNull(List.of(jti))) > 0;
+    }
+
+    /**
+     * Locks all sessions of the authenticated user except the one of the request.
+     * 
+     * @param auth - Authentication of the request
+     * @return Number of locked sessions
+     * @throws JwtTokenReadException When the token of the request is invalid
+     */
+    public int revokeOtherSessions(@Nullable Authentication auth) throws JwtTokenReadException {
+        var currentToken = readCurrentToken(auth);
+        var others = jwtService.findActiveTokens(currentToken.getUserInfo());
+        others.remove(currentToken.getJti());
+        int revoked = jwtService.disableOwned(currentToken.getUserInfo(), others);
+        LOG.debug("Revoked {} other sessions of {}", revoked, currentToken.getUserInfo().asString());
+        return revoked;
+    }
+
+    /**
+     * Creates a feed of revocation changes since the given version. When the version is unknown or its changes 
+     * aren't logged anymore, the feed is a snapshot of all locked token. The version is read before the snapshot, 
+     * so a snapshot may already contain later changes; applying them again is harmless.
+     * 
+     * @param since Version known by the consumer - <code>null</code> for a snapshot
+     * @return Feed - empty when nothing changed since the given version
+     */
+    public Optional<RevocationFeedDto> createRevocationFeed(@Nullable Long since) {
+        var cache = JwtCache.getInstance();
+        var delta = since != null ? cache.getRevocationLog().changesSince(since) : Optional.<Delta>empty();
+        var dto = new RevocationFeedDto();
+        if (delta.isPresent()) {
+            if (delta.get().isEmpty()) {
+                return notNull(Optional.empty());
+            }
+            dto.version = delta.get().getVersion();
+            delta.get().getLocked().forEach(jti -> dto.locked.add(jti.toString()));
+            delta.get().getRemoved().forEach(jti -> dto.removed.add(jti.toString()));
+            var generations = cache.getTokenGenerations();
+            delta.get().getOwners().forEach(owner -> dto.generations.put(owner, generations.getOrDefault(owner, 0)));
+        } else {
+            dto.version = cache.getRevocationLog().getVersion();
+            dto.snapshot = true;
+            cache.getLockedJits().forEach(jti -> dto.locked.add(jti.toString()));
+            dto.generations.putAll(cache.getTokenGenerations());
+        }
+        return notNull(Optional.of(dto));
+    }
+
+    /**
+     * Creates a feed of revocation changes since the given version like {@link #createRevocationFeed(Long)}. When
+     * nothing changed yet, this waits for the next change (long polling) without blocking a thread.
+     * 
+     * @param since Version known by the consumer - <code>null</code> for a snapshot
+     * @param waitMs Maximum time to wait for a change in milliseconds
+     * @return Future of the feed - completes with an empty feed when nothing changed within the given time
+     */
+    public CompletableFuture<Optional<RevocationFeedDto>> awaitRevocationFeed(@Nullable Long since, long waitMs) {
+        CompletableFuture<Optional<RevocationFeedDto>> result;
+        if (since == null || waitMs <= 0) {
+            result = CompletableFuture.completedFuture(createRevocationFeed(since));
+        } else {
+            result = JwtCache.getInstance().getRevocationLog().awaitChangeAfter(since)
+                .completeOnTimeout(since, waitMs, TimeUnit.MILLISECONDS)
+                .thenApplyAsync(version -> createRevocationFeed(since));
+        }
+        return notNull(result);
+    }
+}
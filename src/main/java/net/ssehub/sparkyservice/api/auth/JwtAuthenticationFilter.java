@@ -5,17 +5,31 @@ import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 import java.io.IOException;
 import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,14 +44,26 @@ import net.ssehub.sparkyservice.api.user.modification.UserModificationService;
 import net.ssehub.sparkyservice.api.util.DateUtil;
 
 /**
- * A Filter which handles all authentication requests and actually handles the login.
+ * A Filter which handles all authentication requests and actually handles the login. <br>
+ * The credentials are checked on the {@link LoginExecutor}. Meanwhile the request thread is released through servlet
+ * async; the request is dispatched again with the result of the login. When the executor is busy or the login
+ * isn't done within {@link LoginExecutor#getTimeoutMs()}, the login is rejected with <code>503</code> and a
+ * <code>Retry-After</code> header.
+ * 
  * @author marcel
  */
 public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
+    /**
+     * Request attribute which holds the result of an asynchronous login - the {@link Authentication} or the
+     * exception of the login.
+     */
+    static final String LOGIN_RESULT_ATTRIBUTE = JwtAuthenticationFilter.class.getName() + ".LOGIN_RESULT";
+
     private static final Logger LOG = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
     private final AuthenticationManager authenticationManager;
     private final JwtTokenService jwtService;
+    private final LoginExecutor loginExecutor;
 
     /**
      * Constructor for the general Authentication filter. In most cases filters are set in the spring security 
@@ -45,11 +71,187 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
      * 
      * @param authenticationManager
      * @param jwtService
+     * @param loginExecutor Executor where the credentials are checked
      */
-    public JwtAuthenticationFilter(AuthenticationManager authenticationManager, JwtTokenService jwtService) {
+    public JwtAuthenticationFilter(AuthenticationManager authenticationManager, JwtTokenService jwtService,
+            LoginExecutor loginExecutor) {
         this.authenticationManager = authenticationManager;
         setFilterProcessesUrl(ConfigurationValues.AUTH_LOGIN_URL);
         this.jwtService = jwtService;
+        this.loginExecutor = loginExecutor;
+    }
+
+    /**
+     * {@inheritDoc}. <br>
+     * Checks the credentials on the {@link LoginExecutor} instead of the request thread.
+     */
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        var request = (HttpServletRequest) req;
+        var response = (HttpServletResponse) res;
+        Object loginResult = request.getAttribute(LOGIN_RESULT_ATTRIBUTE);
+        if (request.getDispatcherType() == DispatcherType.ASYNC && loginResult != null) {
+            request.removeAttribute(LOGIN_RESULT_ATTRIBUTE);
+            finishLogin(request, response, chain, loginResult);
+        } else if (requiresAuthentication(request, response)) {
+            startLogin(request, response, chain);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Queues the login of the request on the {@link LoginExecutor}. With servlet async, the request is dispatched
+     * again when the login is done. Otherwise this waits for the login up to {@link LoginExecutor#getTimeoutMs()}.
+     * 
+     * @param request Login request
+     * @param response Response of the login
+     * @param chain Current filter chain
+     * @throws IOException When the response can't be written
+     * @throws ServletException When the login failed for other reasons than wrong credentials
+     */
+    private void startLogin(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        var credentials = extractCredentialsFromHttpRequest(request);
+        CompletableFuture<Authentication> login;
+        try {
+            login = loginExecutor.submit(() -> authenticate(credentials));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Login of {} rejected: Too many concurrent logins", credentials.getName());
+            rejectBusy(response, "Too many concurrent logins");
+            return;
+        }
+        if (loginExecutor.isAsync() && request.isAsyncSupported()) {
+            var asyncContext = request.startAsync(request, response);
+            asyncContext.setTimeout(loginExecutor.getTimeoutMs());
+            var answered = new AtomicBoolean();
+            asyncContext.addListener(new LoginTimeoutListener(login, answered, credentials.getName()));
+            login.whenComplete((authentication, error) -> {
+                if (answered.compareAndSet(false, true)) {
+                    request.setAttribute(LOGIN_RESULT_ATTRIBUTE, authentication != null ? authentication : error);
+                    asyncContext.dispatch();
+                }
+            });
+        } else {
+            Object loginResult;
+            try {
+                loginResult = login.get(loginExecutor.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                loginResult = e.getCause();
+            } catch (TimeoutException e) {
+                rejectTimedOut(login, response, credentials.getName());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectTimedOut(login, response, credentials.getName());
+                return;
+            }
+            finishLogin(request, response, chain, loginResult);
+        }
+    }
+
+    /**
+     * Cancels a login which isn't done in time and answers it with <code>503</code>. A queued login is skipped.
+     * 
+     * @param login Queued or running login
+     * @param response Response of the login
+     * @param username Name of the user who logs in
+     * @throws IOException When the response can't be written
+     */
+    private void rejectTimedOut(CompletableFuture<Authentication> login, HttpServletResponse response,
+            String username) throws IOException {
+        login.cancel(false);
+        LOG.warn("Login of {} rejected: Not done within {} ms", username, loginExecutor.getTimeoutMs());
+        rejectBusy(response, "Login timed out");
+    }
+
+    /**
+     * Answers a login with <code>503</code> and a <code>Retry-After</code> header.
+     * 
+     * @param response Response of the login
+     * @param message Reason of the rejection
+     * @throws IOException When the response can't be written
+     */
+    private void rejectBusy(HttpServletResponse response, String message) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(loginExecutor.getRetryAfterSeconds()));
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+    }
+
+    /**
+     * Answers an asynchronous login with <code>503</code> when it isn't done in time and cancels it. Only the first
+     * of the login result and the timeout answers the request.
+     * 
+     * @author marcel
+     */
+    private final class LoginTimeoutListener implements AsyncListener {
+
+        private final CompletableFuture<Authentication> login;
+        private final AtomicBoolean answered;
+        private final String username;
+
+        /**
+         * Listener of a single login.
+         * 
+         * @param login Queued or running login
+         * @param answered Set by whoever answers the request first
+         * @param username Name of the user who logs in
+         */
+        private LoginTimeoutListener(CompletableFuture<Authentication> login, AtomicBoolean answered,
+                String username) {
+            this.login = login;
+            this.answered = answered;
+            this.username = username;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            if (answered.compareAndSet(false, true)) {
+                rejectTimedOut(login, (HttpServletResponse) event.getAsyncContext().getResponse(), username);
+                event.getAsyncContext().complete();
+            }
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            if (answered.compareAndSet(false, true)) {
+                login.cancel(false);
+                event.getAsyncContext().complete();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // nothing to clean up
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+    }
+
+    /**
+     * Writes the result of a login into the response.
+     * 
+     * @param request Login request
+     * @param response Response of the login
+     * @param chain Current filter chain
+     * @param loginResult The {@link Authentication} or the exception of the login
+     * @throws IOException When the response can't be written
+     * @throws ServletException When the login failed for other reasons than wrong credentials
+     */
+    private void finishLogin(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+            Object loginResult) throws IOException, ServletException {
+        if (loginResult instanceof Authentication) {
+            successfulAuthentication(request, response, chain, (Authentication) loginResult);
+        } else if (loginResult instanceof AuthenticationException) {
+            unsuccessfulAuthentication(request, response, (AuthenticationException) loginResult);
+        } else if (loginResult instanceof RuntimeException) {
+            throw (RuntimeException) loginResult;
+        } else {
+            throw new ServletException("Login failed", (Throwable) loginResult);
+        }
     }
 
     /**
@@ -57,8 +259,17 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
      */
     @Override
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
-        var userDetails = extractCredentialsFromHttpRequest(request);
-        var authentication = authenticationManager.authenticate(userDetails);
+        return authenticate(extractCredentialsFromHttpRequest(request));
+    }
+
+    /**
+     * Checks the given credentials. This is the expensive part of a login because the password is hashed.
+     * 
+     * @param credentials Username and password of the login
+     * @return Authentication with the {@link SparkyUser} as principal
+     */
+    private Authentication authenticate(UsernamePasswordAuthenticationToken credentials) {
+        var authentication = authenticationManager.authenticate(credentials);
         assertSparkyUser(authentication);
         return authentication;
     }
@@ -140,15 +351,17 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 
     /**
      * Method reads the {@link CredentialsDto} from a given request and transform
-     * them into a AuthenticationToken.
+     * them into a AuthenticationToken. The realm hint is read from the <code>realm</code> value or from a username
+     * like <code>user@realm</code> (see {@link RealmAuthenticationToken#of(String, String, String)}).
      * 
      * @param request
-     * @return contains the username and password used for authentication
+     * @return contains the username, password and realm hint used for authentication
      */
     public static @Nonnull UsernamePasswordAuthenticationToken extractCredentialsFromHttpRequest(
             HttpServletRequest request) {
         String username = request.getParameter("username");
         String password = request.getParameter("password");
+        String realm = request.getParameter("realm");
         boolean passwordAvailable = password != null && !password.isBlank();
         LOG.debug("[HTTP Parameter] Username: " + username + " | Password available: " + passwordAvailable);
         if (username == null && password == null) {
@@ -156,6 +369,7 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
                 CredentialsDto cred = new ObjectMapper().readValue(request.getInputStream(), CredentialsDto.class);
                 username = cred.username.trim();
                 password = cred.password;
+                realm = cred.realm;
                 boolean avail = password != null && !password.isBlank();
                 LOG.debug("[HTTP Body] Username: " + username + " | Password available: " + avail);
             } catch (MismatchedInputException e) {
@@ -165,6 +379,6 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
                 throw new RuntimeException(e);
             }
         }
-        return new UsernamePasswordAuthenticationToken(username, password);
+        return RealmAuthenticationToken.of(username, password, realm);
     }
 }
\ No newline at end of file
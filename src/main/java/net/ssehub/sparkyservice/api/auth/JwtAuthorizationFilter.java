@@ -12,6 +12,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,17 +21,22 @@ import org.springframework.security.web.authentication.www.BasicAuthenticationFi
 import net.ssehub.sparkyservice.api.auth.jwt.JwtAuthTools;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenReadException;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenService;
+import net.ssehub.sparkyservice.api.auth.storage.JwtCacheWarmupService;
 import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings;
 
 /**
- * Filter which handles authorization with JWT token.
+ * Filter which handles authorization with JWT token. Until the {@link JwtCacheWarmupService} loaded all locked 
+ * token, requests with a JWT token are answered with <code>503</code> and a <code>Retry-After</code> header, because 
+ * a revoked token would be accepted otherwise.
  * 
  * @author marcel
  */
 public class JwtAuthorizationFilter extends BasicAuthenticationFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(JwtAuthorizationFilter.class);
+    private static final int WARMUP_RETRY_AFTER_SECONDS = 1;
     private final JwtTokenService jwtService;
+    private final JwtCacheWarmupService warmupService;
 
     /**
      * JWT Authorization filter for paths which are configured in the authentication manager. 
@@ -40,16 +46,25 @@ public class JwtAuthorizationFilter extends BasicAuthenticationFilter {
      * 
      * @param authenticationManager
      * @param service Jwt service used for decoding jwt tokens
+     * @param warmupService Decides if the locked token are known
      */
-    public JwtAuthorizationFilter(AuthenticationManager authenticationManager, JwtTokenService service) {
+    public JwtAuthorizationFilter(AuthenticationManager authenticationManager, JwtTokenService service,
+            JwtCacheWarmupService warmupService) {
         super(authenticationManager);
         this.jwtService = service;
+        this.warmupService = warmupService;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws IOException, ServletException {
         LOG.debug("Requested URI: {}", request.getRequestURI());
+        if (request.getHeader(jwtService.getJwtConf().getHeader()) != null && !warmupService.isReady()) {
+            LOG.debug("Reject JWT token because the locked token aren't loaded yet");
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(WARMUP_RETRY_AFTER_SECONDS));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Locked JWT token are not loaded yet");
+            return;
+        }
         var authentication = getAuthentication(request);
         if (authentication == null) {
             filterChain.doFilter(request, response);
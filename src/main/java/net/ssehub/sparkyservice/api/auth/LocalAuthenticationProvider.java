@@ -0,0 +1,107 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.user.LocalUserDetails;
+import net.ssehub.sparkyservice.api.user.password.DelegatingHashEncoder;
+import net.ssehub.sparkyservice.api.user.password.PasswordEncodingService;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Authenticates users of {@link UserRealm#LOCAL}. The password is checked with the algorithm of the stored
+ * {@link Password}. After a successful login, a password with another algorithm or a lower cost than the configured
+ * one is hashed again and stored (see {@link DelegatingHashEncoder#upgradeEncoding(Password)}), so the cost can be
+ * changed without resetting passwords.
+ *
+ * @author marcel
+ */
+@ParametersAreNonnullByDefault
+public class LocalAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final Logger log = LoggerFactory.getLogger(LocalAuthenticationProvider.class);
+
+    @Nonnull
+    private final UserStorageService storageService;
+
+    @Nonnull
+    private final PasswordEncodingService encoder;
+
+    private final boolean rehashOnLogin;
+
+    /**
+     * Provider for local users.
+     *
+     * @param detailsMapper Service which loads the local users
+     * @param storageService Storage where upgraded passwords are saved
+     * @param encoder Service which checks and hashes the passwords - must be the one which is used by
+     *        {@link LocalUserDetails#getEncoder()}
+     */
+    public LocalAuthenticationProvider(LocalLoginDetailsMapper detailsMapper, UserStorageService storageService,
+            PasswordEncodingService encoder) {
+        this.storageService = storageService;
+        this.encoder = encoder;
+        this.rehashOnLogin = encoder.getSettings().isRehashOnLogin();
+        setUserDetailsService(detailsMapper);
+        setPasswordEncoder(encoder);
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+            UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        if (userDetails instanceof LocalUserDetails) {
+            Object credentials = authentication.getCredentials();
+            var stored = ((LocalUserDetails) userDetails).getPasswordEntity();
+            if (credentials == null || !encoder.matches(credentials.toString(), stored)) {
+                log.debug("Authentication failed: password does not match stored value");
+                throw new BadCredentialsException(messages.getMessage(
+                    "AbstractUserDetailsAuthenticationProvider.badCredentials", "Bad credentials"));
+            }
+        } else {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+        }
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+            UserDetails user) {
+        if (rehashOnLogin && user instanceof LocalUserDetails && authentication.getCredentials() != null) {
+            var localUser = (LocalUserDetails) user;
+            if (encoder.upgradeEncoding(localUser.getPasswordEntity())) {
+                rehash(localUser, authentication.getCredentials().toString());
+            }
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+
+    /**
+     * Hashes the password of a user again with the configured algorithm and stores it. A failure doesn't affect the
+     * login; the password is upgraded with a later login.
+     *
+     * @param user User who logged in successfully
+     * @param rawPassword The correct password in plain text
+     */
+    private void rehash(LocalUserDetails user, String rawPassword) {
+        String previous = user.getPasswordEntity().getHashAlgorithm();
+        user.encodeAndSetPassword(rawPassword);
+        try {
+            storageService.commit(user);
+            log.debug("Upgraded password hash of {} from {} to {}", user.getUsername(), previous,
+                encoder.getDefaultAlgorithm().getId());
+        } catch (DataAccessException e) {
+            log.warn("Could not store the upgraded password hash of {}: {}", user.getUsername(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Executes logins, and with them the expensive password hashing, on a small dedicated thread pool instead of the
+ * request threads. The pool has a bounded queue: When it is full, further logins are rejected immediately, so a
+ * burst of logins can't occupy all request threads of the server. <br>
+ * The {@link JwtAuthenticationFilter} answers rejected logins with <code>503</code> and a <code>Retry-After</code>
+ * header of {@link #getRetryAfterSeconds()}. A login which isn't done after {@link #getTimeoutMs()} is answered the
+ * same way, with and without servlet async; a login which timed out while it was still queued is never executed.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class LoginExecutor implements MeterBinder {
+
+    @Nonnull
+    private final ThreadPoolExecutor executor;
+
+    private final int retryAfterSeconds;
+
+    private final boolean async;
+
+    private final long timeoutMs;
+
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Executor for logins.
+     *
+     * @param threads Number of threads which hash passwords concurrently - the number of processors when not
+     *        positive
+     * @param queueCapacity Maximum number of logins which wait for a thread
+     * @param retryAfterSeconds Time after which a rejected login should be retried
+     * @param async Decides if a login releases its request thread (servlet async) while it is queued and executed
+     * @param timeoutMs Maximum time of a login - when not positive, the time in which a full queue is
+     *        worked off if each login takes up to <code>retryAfterSeconds</code>
+     */
+    @Autowired
+    public LoginExecutor(@Value("${auth.login.threads:0}") int threads,
+            @Value("${auth.login.queue-capacity:100}") int queueCapacity,
+            @Value("${auth.login.retry-after-seconds:1}") int retryAfterSeconds,
+            @Value("${auth.login.async:true}") boolean async,
+            @Value("${auth.login.timeout-ms:0}") long timeoutMs) {
+        if (queueCapacity < 1 || retryAfterSeconds < 1) {
+            throw new IllegalArgumentException("auth.login.queue-capacity and auth.login.retry-after-seconds must be "
+                    + "positive");
+        }
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (timeoutMs > 0) {
+            this.timeoutMs = timeoutMs;
+        } else {
+            int queuedRounds = (queueCapacity + poolSize - 1) / poolSize;
+            this.timeoutMs = TimeUnit.SECONDS.toMillis((queuedRounds + 1L) * retryAfterSeconds);
+        }
+        var threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), runnable -> {
+                var thread = new Thread(runnable, "login-hashing-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.async = async;
+    }
+
+    /**
+     * Queues a login.
+     *
+     * @param <T> Result of the login
+     * @param login Login which is executed on the pool
+     * @return Future of the login result - completes exceptionally with the exception or error of the login, so it
+     *         is always completed. Cancelling it before the login started skips the login
+     * @throws RejectedExecutionException When the queue is full or the executor is shut down
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> submit(Supplier<T> login) {
+        var result = new CompletableFuture<T>();
+        long queued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                if (result.isDone()) {
+                    return; // timed out while queued
+                }
+                long start = System.nanoTime();
+                queueWaitNanos.addAndGet(start - queued);
+                T value = null;
+                Throwable error = null;
+                //checkstyle: stop exception type check
+                try {
+                    value = login.get();
+                } catch (Throwable e) { // errors must complete the future as well, otherwise the caller waits forever
+                    error = e;
+                }
+                //checkstyle: resume exception type check
+                // measured before completion, so the metrics already contain the login when the caller continues
+                hashNanos.addAndGet(System.nanoTime() - start);
+                logins.incrementAndGet();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Time after which a rejected login should be retried.
+     *
+     * @return Time in seconds
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Maximum time of a login, including the time in the queue.
+     *
+     * @return Timeout in milliseconds
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Decides if a login releases its request thread while it is queued and executed. Otherwise the request thread
+     * waits for the login; the number of concurrent hashes is limited either way.
+     *
+     * @return <code>true</code> when logins should use servlet async
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Number of logins which were rejected because the queue was full.
+     *
+     * @return Rejection counter
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops the pool. Queued logins are dropped. Is invoked by spring.
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("sparky.auth.login.queue.wait", this, e -> e.logins.get(),
+            e -> e.queueWaitNanos.get(), TimeUnit.NANOSECONDS)
+            .description("Time logins waited for a hashing thread")
+            .register(registry);
+        FunctionTimer.builder("sparky.auth.login.hash", this, e -> e.logins.get(),
+            e -> e.hashNanos.get(), TimeUnit.NANOSECONDS)
+            .description("Time logins took on a hashing thread, including the password check")
+            .register(registry);
+        FunctionCounter.builder("sparky.auth.login.rejected", rejected, AtomicLong::get)
+            .description("Logins rejected with 503 because the hashing queue was full")
+            .register(registry);
+        Gauge.builder("sparky.auth.login.queue.size", executor, e -> e.getQueue().size())
+            .description("Logins waiting for a hashing thread")
+            .register(registry);
+        Gauge.builder("sparky.auth.login.active", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Logins currently executed on a hashing thread")
+            .register(registry);
+    }
+}
@@ -1,5 +1,9 @@
 package net.ssehub.sparkyservice.api.auth;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -12,33 +16,67 @@ import net.ssehub.sparkyservice.api.jpa.user.Password;
 import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.jpa.user.UserRole;
 import net.ssehub.sparkyservice.api.user.creation.UserFactoryProvider;
-import net.ssehub.sparkyservice.api.util.NullHelpers;
+import net.ssehub.sparkyservice.api.user.password.PasswordEncodingService;
 
 /**
- * Manages the login requests and returns users from {@link UserRealm#MEMORY}.
- * 
+ * Manages the login requests and returns users from {@link UserRealm#MEMORY}. <br>
+ * The recovery password is hashed once on startup. Every login gets a new user with this hash, so a login only
+ * needs a single password check and no additional hashing, and changes to a returned user never affect other
+ * logins.
+ *
  * @author marcel
  */
 @Service
+@ParametersAreNonnullByDefault
 public class MemoryLoginDetailsService implements UserDetailsService {
 
-    @Value("${recovery.password:}")
-    private String inMemoryPassword;
+    @Nonnull
+    private final String inMemoryUser;
+
+    @Nonnull
+    private final PasswordEncodingService encoder;
 
-    @Value("${recovery.user:user}")
-    private String inMemoryUser;
+    @Nullable
+    private final Password recoveryPassword;
 
+    /**
+     * Service for the recovery user. Hashes the password of the user.
+     *
+     * @param encodingService Service which hashes the passwords of all realms
+     * @param enabled Decides if the recovery user exists. Nothing is hashed when the user is disabled
+     * @param inMemoryUser Name of the recovery user
+     * @param inMemoryPassword Password of the recovery user in plain text
+     */
     @Autowired
-    private PasswordEncoder encoder;
+    public MemoryLoginDetailsService(PasswordEncodingService encodingService,
+            @Value("${recovery.enabled:false}") boolean enabled,
+            @Value("${recovery.user:user}") String inMemoryUser,
+            @Value("${recovery.password:}") String inMemoryPassword) {
+        this.inMemoryUser = inMemoryUser;
+        this.encoder = encodingService;
+        if (enabled && !inMemoryPassword.isEmpty()) {
+            this.recoveryPassword = encodingService.encodePassword(inMemoryPassword);
+        } else {
+            this.recoveryPassword = null;
+        }
+    }
+
+    /**
+     * The encoder which must be used to check the password of the users of this service.
+     *
+     * @return The {@link PasswordEncodingService}
+     */
+    @Nonnull
+    public PasswordEncoder getPasswordEncoder() {
+        return encoder;
+    }
 
     @Override
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        if (username.equals(inMemoryUser)) {
-            String encrPw = NullHelpers.notNull(encoder.encode(inMemoryPassword));
-            var password = new Password(encrPw, encoder.getClass().getSimpleName());
-            var memUser = UserFactoryProvider.getFactory(UserRealm.MEMORY)  
-                    .create(inMemoryUser, password, UserRole.ADMIN, true);
-            return memUser;
+    public UserDetails loadUserByUsername(@Nullable String username) throws UsernameNotFoundException {
+        Password password = recoveryPassword;
+        if (password != null && inMemoryUser.equals(username)) {
+            return UserFactoryProvider.getFactory(UserRealm.MEMORY)
+                .create(inMemoryUser, password, UserRole.ADMIN, true);
         }
         throw new UsernameNotFoundException(username + " not found");
     }
@@ -0,0 +1,93 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Login credentials with an optional hint of the {@link UserRealm} of the user. With a hint, the
+ * {@link RealmRoutingAuthenticationProvider} only asks the provider of this realm instead of trying all providers.
+ * <br>
+ * The realm is given explicitly or as suffix of the username (<code>user@ldap</code>). A suffix is only removed
+ * when it is the name of a realm, so other usernames with an <code>@</code> are kept as they are.
+ *
+ * @author marcel
+ */
+public class RealmAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+    private static final long serialVersionUID = -4297017735066349811L;
+
+    private static final char REALM_SEPARATOR = '@';
+
+    @Nullable
+    private final UserRealm realm;
+
+    /**
+     * Unauthenticated credentials.
+     *
+     * @param username Name of the user
+     * @param password Password in plain text
+     * @param realm Realm of the user - all realms are tried when <code>null</code>
+     */
+    public RealmAuthenticationToken(@Nullable String username, @Nullable String password, @Nullable UserRealm realm) {
+        super(username, password);
+        this.realm = realm;
+    }
+
+    /**
+     * Creates credentials from the values of a login request. An explicit realm has priority over a suffix of the
+     * username. An unknown explicit realm results in {@link UserRealm#UNKNOWN}, which can't be authenticated.
+     *
+     * @param username Name of the user - may end with <code>@realm</code>
+     * @param password Password in plain text
+     * @param realm Name of the realm (case insensitive) - may be <code>null</code> or blank
+     * @return Credentials with the realm hint
+     */
+    @Nonnull
+    public static RealmAuthenticationToken of(@Nullable String username, @Nullable String password,
+            @Nullable String realm) {
+        RealmAuthenticationToken token;
+        if (realm != null && !realm.isBlank()) {
+            token = new RealmAuthenticationToken(username, password, parseRealm(realm).orElse(UserRealm.UNKNOWN));
+        } else if (username != null && username.lastIndexOf(REALM_SEPARATOR) > 0) {
+            int separator = username.lastIndexOf(REALM_SEPARATOR);
+            token = parseRealm(username.substring(separator + 1))
+                .map(suffix -> new RealmAuthenticationToken(username.substring(0, separator), password, suffix))
+                .orElseGet(() -> new RealmAuthenticationToken(username, password, null));
+        } else {
+            token = new RealmAuthenticationToken(username, password, null);
+        }
+        return token;
+    }
+
+    /**
+     * Finds the realm with the given name. {@link UserRealm#UNKNOWN} is never found.
+     *
+     * @param name Case insensitive name of the realm
+     * @return The realm or empty if there is no realm with this name
+     */
+    @Nonnull
+    static Optional<UserRealm> parseRealm(String name) {
+        String trimmed = name.trim();
+        return Arrays.stream(UserRealm.values())
+            .filter(realm -> realm != UserRealm.UNKNOWN)
+            .filter(realm -> realm.name().equalsIgnoreCase(trimmed))
+            .findAny();
+    }
+
+    /**
+     * The realm which was requested with the login.
+     *
+     * @return The realm or <code>null</code> when all realms should be tried
+     */
+    @Nullable
+    public UserRealm getRealm() {
+        return realm;
+    }
+}
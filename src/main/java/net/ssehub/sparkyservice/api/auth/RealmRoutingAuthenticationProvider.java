@@ -0,0 +1,224 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AccountStatusException;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.authentication.ProviderNotFoundException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Authenticates logins with the provider of the realm of the user. Logins with a realm hint (see
+ * {@link RealmAuthenticationToken}) only ask the provider of this realm. Thus an LDAP user doesn't need a database
+ * lookup and a failed local login doesn't need an LDAP bind. <br>
+ * Logins without a hint try the providers in the configured fallback order (<code>auth.realm-order</code>) like a
+ * {@link org.springframework.security.authentication.ProviderManager}. A realm which isn't part of the order can only
+ * be used with a hint. <br>
+ * The providers are set by the security configuration on startup.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class RealmRoutingAuthenticationProvider implements AuthenticationProvider, MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RealmRoutingAuthenticationProvider.class);
+
+    @Nonnull
+    private final List<UserRealm> fallbackOrder;
+
+    @Nonnull
+    private final Map<UserRealm, AuthenticationProvider> providers = new ConcurrentHashMap<>();
+
+    @Nonnull
+    private final Map<UserRealm, Attempts> attempts = new EnumMap<>(UserRealm.class);
+
+    /**
+     * Number of attempts of a provider.
+     *
+     * @author marcel
+     */
+    private static final class Attempts {
+        private final AtomicLong routed = new AtomicLong();
+        private final AtomicLong fallback = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+    }
+
+    /**
+     * Router for logins.
+     *
+     * @param realmOrder Names of the realms in the order in which they are tried for logins without a realm hint
+     * @throws IllegalArgumentException When a name isn't a realm or a realm is listed twice
+     */
+    @Autowired
+    public RealmRoutingAuthenticationProvider(@Value("${auth.realm-order:MEMORY,LOCAL,LDAP}") String[] realmOrder) {
+        var order = new ArrayList<UserRealm>();
+        for (String name : realmOrder) {
+            var realm = RealmAuthenticationToken.parseRealm(notNull(name))
+                .orElseThrow(() -> new IllegalArgumentException("Unknown realm in auth.realm-order: " + name));
+            if (order.contains(realm)) {
+                throw new IllegalArgumentException("Realm listed twice in auth.realm-order: " + name);
+            }
+            order.add(realm);
+        }
+        this.fallbackOrder = notNull(Collections.unmodifiableList(order));
+        for (var realm : UserRealm.values()) {
+            attempts.put(realm, new Attempts());
+        }
+    }
+
+    /**
+     * Sets the provider of a realm. Is called by the security configuration for each enabled realm.
+     *
+     * @param realm Realm of the users of the provider
+     * @param provider Provider which authenticates the users of the realm
+     */
+    public void setProvider(UserRealm realm, AuthenticationProvider provider) {
+        providers.put(realm, provider);
+    }
+
+    /**
+     * The order in which the providers are tried for logins without a realm hint.
+     *
+     * @return Configured realms, including realms without a provider
+     */
+    @Nonnull
+    public List<UserRealm> getFallbackOrder() {
+        return fallbackOrder;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+
+    @Override
+    @Nullable
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        UserRealm hint = authentication instanceof RealmAuthenticationToken
+                ? ((RealmAuthenticationToken) authentication).getRealm() : null;
+        Authentication result;
+        if (hint != null) {
+            result = authenticateRouted(hint, authentication);
+        } else {
+            result = authenticateFallback(authentication);
+        }
+        return result;
+    }
+
+    /**
+     * Authenticates a login only with the provider of the hinted realm.
+     *
+     * @param realm Hinted realm
+     * @param authentication Credentials of the login
+     * @return The authentication of the provider
+     * @throws AuthenticationException When the login failed or there is no provider for the realm
+     */
+    @Nullable
+    private Authentication authenticateRouted(UserRealm realm, Authentication authentication) {
+        var provider = providers.get(realm);
+        if (provider == null || !provider.supports(authentication.getClass())) {
+            throw new ProviderNotFoundException("No authentication provider for realm " + realm);
+        }
+        notNull(attempts.get(realm)).routed.incrementAndGet();
+        return attempt(realm, provider, authentication);
+    }
+
+    /**
+     * Authenticates a login with the providers in the fallback order until a provider succeeds.
+     *
+     * @param authentication Credentials of the login
+     * @return The authentication of the first successful provider
+     * @throws AuthenticationException The exception of the last provider when no provider succeeded
+     */
+    @Nonnull
+    private Authentication authenticateFallback(Authentication authentication) {
+        AuthenticationException lastException = null;
+        for (var realm : fallbackOrder) {
+            var provider = providers.get(realm);
+            if (provider == null || !provider.supports(authentication.getClass())) {
+                continue;
+            }
+            notNull(attempts.get(realm)).fallback.incrementAndGet();
+            try {
+                var result = attempt(realm, provider, authentication);
+                if (result != null) {
+                    return result;
+                }
+            } catch (AccountStatusException | InternalAuthenticationServiceException e) {
+                throw e;
+            } catch (AuthenticationException e) {
+                lastException = e;
+            }
+        }
+        if (lastException == null) {
+            lastException = new ProviderNotFoundException("No authentication provider for "
+                    + authentication.getClass().getName());
+        }
+        throw lastException;
+    }
+
+    /**
+     * Authenticates a login with a single provider and counts a failure.
+     *
+     * @param realm Realm of the provider
+     * @param provider Provider which is asked
+     * @param authentication Credentials of the login
+     * @return The authentication of the provider
+     */
+    @Nullable
+    private Authentication attempt(UserRealm realm, AuthenticationProvider provider, Authentication authentication) {
+        try {
+            return provider.authenticate(authentication);
+        } catch (AuthenticationException e) {
+            notNull(attempts.get(realm)).failed.incrementAndGet();
+            LOG.debug("Authentication of {} failed in realm {}: {}", authentication.getName(), realm, e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (var realm : UserRealm.values()) {
+            var realmAttempts = notNull(attempts.get(realm));
+            String tag = realm.name().toLowerCase();
+            FunctionCounter.builder("sparky.auth.provider.attempts", realmAttempts, a -> a.routed.get())
+                .tags("realm", tag, "mode", "routed")
+                .description("Logins which were sent to the provider of their realm hint")
+                .register(registry);
+            FunctionCounter.builder("sparky.auth.provider.attempts", realmAttempts, a -> a.fallback.get())
+                .tags("realm", tag, "mode", "fallback")
+                .description("Logins without realm hint which were tried with the provider")
+                .register(registry);
+            FunctionCounter.builder("sparky.auth.provider.failures", realmAttempts, a -> a.failed.get())
+                .tag("realm", tag)
+                .description("Attempts which the provider rejected")
+                .register(registry);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO for revocation changes of JWT token. Consumers which verify token locally keep a set of locked JTIs and the
+ * token generations and apply each feed to it.
+ * 
+ * @author marcel
+ */
+//checkstyle: stop visibility modifier check
+public class RevocationFeedDto {
+
+    /**
+     * Version of this feed. Pass it as <code>since</code> parameter or ETag to receive only later changes.
+     */
+    public long version;
+
+    /**
+     * <code>true</code> when this feed contains all currently locked token and the consumer must replace its 
+     * state. Otherwise the feed only contains changes.
+     */
+    public boolean snapshot;
+
+    /**
+     * JTIs of locked token.
+     */
+    public List<String> locked = new ArrayList<>();
+
+    /**
+     * JTIs which are not locked anymore, typically because they expired. Always empty in a snapshot.
+     */
+    public List<String> removed = new ArrayList<>();
+
+    /**
+     * Token generations of users whose token were revoked as a whole. Keys have the format 
+     * <code>username@realm</code>. Token with a lower generation claim are revoked.
+     */
+    public Map<String, Integer> generations = new HashMap<>();
+}
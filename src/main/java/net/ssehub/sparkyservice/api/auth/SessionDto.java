@@ -0,0 +1,26 @@
+package net.ssehub.sparkyservice.api.auth;
+
+/**
+ * DTO for a single active JWT token (session) of a user.
+ *
+ * @author marcel
+ */
+//checkstyle: stop visibility modifier check
+public class SessionDto {
+
+    /**
+     * JTI of the token. Pass it to the session revocation in order to lock the token.
+     */
+    public String jti;
+
+    /**
+     * Expiration of the token in the same format as {@link net.ssehub.sparkyservice.api.user.dto.TokenDto} -
+     * <code>null</code> when the token doesn't expire.
+     */
+    public String expiration;
+
+    /**
+     * <code>true</code> for the token which was used for the request.
+     */
+    public boolean current;
+}
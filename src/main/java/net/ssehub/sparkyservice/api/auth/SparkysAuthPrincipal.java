@@ -30,4 +30,15 @@ public interface SparkysAuthPrincipal extends AuthenticatedPrincipal {
      * @return Can be used as identifier
      */
     @Nonnull String asString();
+
+    /**
+     * Creates the same identifier as {@link #asString()} without a principal object.
+     * 
+     * @param name - The username
+     * @param realm - The realm of the user
+     * @return Identifier of the user
+     */
+    static @Nonnull String toIdentifier(String name, UserRealm realm) {
+        return name + "@" + realm;
+    }
 }
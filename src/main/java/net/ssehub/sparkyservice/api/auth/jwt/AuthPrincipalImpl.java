@@ -59,7 +59,7 @@ class AuthPrincipalImpl implements SparkysAuthPrincipal {
 
     @Override
     public @Nonnull String asString() {
-        return getName() + "@" + getRealm();
+        return SparkysAuthPrincipal.toIdentifier(getName(), getRealm());
     }
 
 }
@@ -14,6 +14,7 @@ import javax.annotation.Nonnull;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.Jwt;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -49,21 +50,40 @@ public class JwtAuthTools {
     public static JwtToken decodeAndExtract(String token, String jwtSecret) {
         var signingKey = jwtSecret.getBytes();
         Jws<Claims> parsedToken = Jwts.parser().setSigningKey(signingKey).parseClaimsJws(token.replace("Bearer ", ""));
-        String username = parsedToken.getBody().getSubject();
-        var rolList = (List<?>) parsedToken.getBody().get("rol");
+        return extract(notNull(parsedToken.getBody()));
+    }
+
+    /**
+     * Reads the fields of a {@link JwtToken} from the claims of a verified JWT token.
+     * 
+     * @param claims - Body of a parsed token
+     * @return Object with fields from the claims
+     */
+    @Nonnull
+    static JwtToken extract(Claims claims) {
+        String username = claims.getSubject();
+        var rolList = (List<?>) claims.get("rol");
         List<UserRole> authorities = rolList.stream()
                 .map(String.class::cast)
                 .map(UserRole.DEFAULT::getEnum)
                 .collect(Collectors.toList());
-        Date expiration = parsedToken.getBody().getExpiration();
-        String realmName = (String) parsedToken.getBody().get("realm");
-        var jtiString = (String) parsedToken.getBody().get("jti");
+        Date expiration = claims.getExpiration();
+        String realmName = (String) claims.get("realm");
+        var jtiString = (String) claims.get("jti");
         var jti = UUID.fromString(jtiString);
+        Integer generation = claims.get("gen", Integer.class);
+        Integer refreshes = claims.get("ref", Integer.class);
+        Long serial = claims.get("ser", Long.class);
+        Long authTime = claims.get("auth_time", Long.class);
         SparkysAuthPrincipal sparkyPrincipal = new AuthPrincipalImpl(realmName, username);
         
         if (jti != null && expiration != null && authorities != null) {
             var tokenObj = new JwtToken(jti, expiration, sparkyPrincipal, authorities);
             tokenObj.setTokenPermissionRoles(authorities);
+            tokenObj.setTokenGeneration(generation == null ? 0 : generation);
+            tokenObj.setRemainingRefreshes(refreshes == null ? 0 : refreshes);
+            tokenObj.setSerial(serial == null ? 0 : serial);
+            tokenObj.setAuthTime(authTime == null ? 0 : authTime * 1000);
             return tokenObj;
         } else {
             throw new RuntimeException("The JWT token has invalid fields but it has the right signature. Probably the"
@@ -82,20 +102,41 @@ public class JwtAuthTools {
     public static String encode(JwtToken tokenObj, JwtSettings jwtConf) {
         byte[] signingKey = jwtConf.getSecret().getBytes();
         return notNull(
-            Jwts.builder()
+            builderFor(tokenObj, jwtConf)
                 .signWith(Keys.hmacShaKeyFor(signingKey), SignatureAlgorithm.HS512)
-                .setHeaderParam("typ", jwtConf.getType())
-                .setIssuer(jwtConf.getIssuer())
-                .setAudience(jwtConf.getAudience())
-                .setSubject(tokenObj.getUserInfo().getName())
-                .setExpiration(tokenObj.getExpirationDate())
-                .claim("rol", tokenObj.getTokenPermissionRoles())
-                .claim("realm", tokenObj.getUserInfo().getRealm())
-                .setId(tokenObj.getJti().toString())
                 .compact()
         );
     }
 
+    /**
+     * Creates an unsigned JWT builder which holds the header and claims of the given token.
+     * 
+     * @param tokenObj 
+     * @param jwtConf - Provides the used type, issuer and audience
+     * @return Builder which only needs to be signed
+     */
+    @Nonnull
+    static JwtBuilder builderFor(JwtToken tokenObj, JwtSettings jwtConf) {
+        var builder = Jwts.builder()
+            .setHeaderParam("typ", jwtConf.getType())
+            .setIssuer(jwtConf.getIssuer())
+            .setAudience(jwtConf.getAudience())
+            .setSubject(tokenObj.getUserInfo().getName())
+            .setExpiration(tokenObj.getExpirationDate())
+            .claim("rol", tokenObj.getTokenPermissionRoles())
+            .claim("realm", tokenObj.getUserInfo().getRealm())
+            .claim("gen", tokenObj.getTokenGeneration())
+            .claim("ref", tokenObj.getRemainingRefreshes())
+            .setId(tokenObj.getJti().toString());
+        if (tokenObj.getSerial() != 0) {
+            builder.claim("ser", tokenObj.getSerial());
+        }
+        if (tokenObj.getAuthTime() != 0) {
+            builder.claim("auth_time", tokenObj.getAuthTime() / 1000);
+        }
+        return notNull(builder);
+    }
+
     /**
      * Returns a date where a JWT token of user should expire. 
      * 
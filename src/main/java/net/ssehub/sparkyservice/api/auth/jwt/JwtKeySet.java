@@ -0,0 +1,236 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.crypto.SecretKey;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings.SigningKey;
+
+/**
+ * Holds all keys which sign or verify JWT token. New token are signed with RS256 and the active RSA key; its id is
+ * written into the "kid" header. Retired keys are still used for verification until they are removed from the
+ * configuration. <br>
+ * When no RSA key is configured, token are signed with HS512 and the shared secret. Once an RSA key is active,
+ * HS512 token are rejected unless <code>jwt.accept-secret</code> is set, because everyone who knows the shared
+ * secret could forge them. Enable it while migrating, so token issued before the first key stay valid.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class JwtKeySet extends SigningKeyResolverAdapter {
+
+    @Nonnull
+    private final SecretKey secretKey;
+
+    @Nonnull
+    private final Map<String, RSAPublicKey> publicKeys;
+
+    @Nullable
+    private final String activeKeyId;
+
+    @Nullable
+    private final PrivateKey activePrivateKey;
+
+    private final boolean acceptSecret;
+
+    /**
+     * Reads all keys of the given configuration.
+     *
+     * @param jwtConf - Contains the secret and the RSA keys
+     * @throws IllegalArgumentException When a key can't be decoded, the active key is unknown or HS512 token are
+     *     rejected without an active RSA key
+     */
+    public JwtKeySet(JwtSettings jwtConf) {
+        this.secretKey = notNull(Keys.hmacShaKeyFor(jwtConf.getSecret().getBytes()));
+        var keys = new LinkedHashMap<String, RSAPublicKey>();
+        String activeId = jwtConf.getActiveKey();
+        PrivateKey activeKey = null;
+        List<SigningKey> configuredKeys = jwtConf.getKeys() == null ? List.of() : jwtConf.getKeys();
+        for (SigningKey key : configuredKeys) {
+            String id = key.getId();
+            if (id == null || id.isBlank() || keys.containsKey(id)) {
+                throw new IllegalArgumentException("Each JWT signing key needs a unique id");
+            }
+            keys.put(id, decodePublicKey(id, key.getPublicKey()));
+            boolean isActive = activeId == null ? activeKey == null : activeId.equals(id);
+            if (isActive && key.getPrivateKey() != null) {
+                activeKey = decodePrivateKey(id, notNull(key.getPrivateKey()));
+                activeId = id;
+            }
+        }
+        if (activeId != null && activeKey == null) {
+            throw new IllegalArgumentException("The active JWT signing key " + activeId + " has no private key");
+        }
+        this.publicKeys = notNull(Collections.unmodifiableMap(keys));
+        this.activeKeyId = activeId;
+        this.activePrivateKey = activeKey;
+        Boolean configuredAcceptSecret = jwtConf.getAcceptSecret();
+        this.acceptSecret = configuredAcceptSecret != null ? configuredAcceptSecret : activeKey == null;
+        if (!acceptSecret && activeKey == null) {
+            throw new IllegalArgumentException("jwt.accept-secret can only be disabled with an active RSA key");
+        }
+    }
+
+    /**
+     * Decodes a Base64 encoded X.509 RSA public key.
+     *
+     * @param id - Id of the key, used for error messages
+     * @param encoded - Base64 encoded key
+     * @return The public key
+     */
+    @Nonnull
+    private static RSAPublicKey decodePublicKey(String id, @Nullable String encoded) {
+        if (encoded == null) {
+            throw new IllegalArgumentException("The JWT signing key " + id + " has no public key");
+        }
+        try {
+            var spec = new X509EncodedKeySpec(Base64.getMimeDecoder().decode(encoded));
+            return notNull((RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(spec));
+        } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException e) {
+            throw new IllegalArgumentException("The public key of the JWT signing key " + id + " is invalid", e);
+        }
+    }
+
+    /**
+     * Decodes a Base64 encoded PKCS#8 RSA private key.
+     *
+     * @param id - Id of the key, used for error messages
+     * @param encoded - Base64 encoded key
+     * @return The private key
+     */
+    @Nonnull
+    private static PrivateKey decodePrivateKey(String id, String encoded) {
+        try {
+            var spec = new PKCS8EncodedKeySpec(Base64.getMimeDecoder().decode(encoded));
+            return notNull(KeyFactory.getInstance("RSA").generatePrivate(spec));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("The private key of the JWT signing key " + id + " is invalid", e);
+        }
+    }
+
+    /**
+     * The id of the key which signs new token.
+     *
+     * @return Key id - empty when token are signed with the secret
+     */
+    @Nonnull
+    public Optional<String> getActiveKeyId() {
+        return notNull(Optional.ofNullable(activeKeyId));
+    }
+
+    /**
+     * Key which signs new token.
+     *
+     * @return The active private key or the secret key
+     */
+    @Nonnull
+    Key getSigningKey() {
+        final PrivateKey privateKey = activePrivateKey;
+        return privateKey != null ? privateKey : secretKey;
+    }
+
+    /**
+     * Algorithm which signs new token.
+     *
+     * @return RS256 when a key is active, otherwise HS512
+     */
+    @Nonnull
+    SignatureAlgorithm getSigningAlgorithm() {
+        return activePrivateKey != null ? SignatureAlgorithm.RS256 : SignatureAlgorithm.HS512;
+    }
+
+    /**
+     * Indicates if token signed with HS512 and the shared secret are accepted.
+     *
+     * @return <code>false</code> when only RS256 token are accepted
+     */
+    public boolean isSecretAccepted() {
+        return acceptSecret;
+    }
+
+    /**
+     * Selects the verification key by the "alg" and "kid" header of a parsed token. Only HS512 with the secret (when
+     * accepted) and RS256 with a configured public key are accepted.
+     */
+    @Override
+    public Key resolveSigningKey(@SuppressWarnings("rawtypes") @Nullable JwsHeader header,
+            @Nullable Claims claims) {
+        Key key = null;
+        if (header != null) {
+            String algorithm = header.getAlgorithm();
+            if (SignatureAlgorithm.HS512.getValue().equals(algorithm) && acceptSecret) {
+                key = secretKey;
+            } else if (SignatureAlgorithm.RS256.getValue().equals(algorithm) && header.getKeyId() != null) {
+                key = publicKeys.get(header.getKeyId());
+            }
+        }
+        if (key == null) {
+            throw new SignatureException("No key found for the algorithm and key id of the token");
+        }
+        return key;
+    }
+
+    /**
+     * Creates a JSON Web Key Set (RFC 7517) with all public keys. It can be serialized as JSON and allows other
+     * services to verify RS256 token without calling this service.
+     *
+     * @return Map with a single "keys" entry
+     */
+    @Nonnull
+    public Map<String, Object> toJwks() {
+        List<Map<String, String>> jwks = new ArrayList<>(publicKeys.size());
+        publicKeys.forEach((id, key) -> {
+            var jwk = new LinkedHashMap<String, String>();
+            jwk.put("kty", "RSA");
+            jwk.put("use", "sig");
+            jwk.put("alg", SignatureAlgorithm.RS256.getValue());
+            jwk.put("kid", id);
+            jwk.put("n", toBase64Url(key.getModulus()));
+            jwk.put("e", toBase64Url(key.getPublicExponent()));
+            jwks.add(jwk);
+        });
+        return notNull(Map.of("keys", jwks));
+    }
+
+    /**
+     * Encodes a positive number as unsigned big-endian Base64url value without padding (RFC 7518 6.3.1).
+     *
+     * @param value
+     * @return Encoded value
+     */
+    private static String toBase64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        int offset = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        byte[] unsigned = new byte[bytes.length - offset];
+        System.arraycopy(bytes, offset, unsigned, 0, unsigned.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+}
@@ -20,9 +20,12 @@ import net.ssehub.sparkyservice.api.user.storage.UserNotFoundException;
 import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
 
 @ParametersAreNonnullByDefault
-public class JwtToken {
+public class JwtToken implements ReadOnlyJwtToken {
 
     private int remainingRefreshes;
+    private int tokenGeneration;
+    private long serial;
+    private long authTime;
     private boolean locked;
     @Nullable
     private Date expirationDate;
@@ -56,6 +59,9 @@ public class JwtToken {
     public JwtToken(JwtToken copyMe) {
         super();
         this.remainingRefreshes = copyMe.remainingRefreshes;
+        this.tokenGeneration = copyMe.tokenGeneration;
+        this.serial = copyMe.serial;
+        this.authTime = copyMe.authTime;
         this.locked = copyMe.locked;
         this.expirationDate = copyMe.expirationDate;
         this.userInfo = copyMe.userInfo;
@@ -87,6 +93,9 @@ public class JwtToken {
         };
         this.remainingRefreshes = jpaTokenObj.getRemainingRefreshes();
         this.locked = jpaTokenObj.isLocked();
+        this.serial = jpaTokenObj.getSerial();
+        this.tokenGeneration = jpaTokenObj.getTokenGeneration();
+        this.expirationDate = jpaTokenObj.getExpirationDate().map(date -> new Date(date.getTime())).orElse(null);
         this.jti = notNull(
             UUID.fromString(jpaTokenObj.getJti())
         );
@@ -96,13 +105,17 @@ public class JwtToken {
 
     public JpaJwtToken getJpa(UserStorageService service) throws UserNotFoundException {
         var user = service.findUserByNameAndRealm(userInfo.getName(), userInfo.getRealm());
-        return new JpaJwtToken(notNull(jti.toString()), remainingRefreshes, locked, user.getJpa());
+        return getJpa(user.getJpa());
     }
 
     public JpaJwtToken getJpa(User user) {
-        return new JpaJwtToken(notNull(jti.toString()), remainingRefreshes, locked, user);
+        var jpaToken = new JpaJwtToken(notNull(jti.toString()), remainingRefreshes, locked, user, expirationDate);
+        jpaToken.setSerial(serial);
+        jpaToken.setTokenGeneration(tokenGeneration);
+        return jpaToken;
     }
 
+    @Override
     public int getRemainingRefreshes() {
         return remainingRefreshes;
     }
@@ -111,6 +124,34 @@ public class JwtToken {
         this.remainingRefreshes = remainingRefreshes;
     }
 
+    @Override
+    public int getTokenGeneration() {
+        return tokenGeneration;
+    }
+
+    public void setTokenGeneration(int tokenGeneration) {
+        this.tokenGeneration = tokenGeneration;
+    }
+
+    @Override
+    public long getSerial() {
+        return serial;
+    }
+
+    public void setSerial(long serial) {
+        this.serial = serial;
+    }
+
+    @Override
+    public long getAuthTime() {
+        return authTime;
+    }
+
+    public void setAuthTime(long authTime) {
+        this.authTime = authTime;
+    }
+
+    @Override
     public boolean isLocked() {
         return locked;
     }
@@ -119,6 +160,7 @@ public class JwtToken {
         this.locked = locked;
     }
 
+    @Override
     @Nullable
     public java.util.Date getExpirationDate() {
         return expirationDate;
@@ -128,6 +170,7 @@ public class JwtToken {
         this.expirationDate = expirationDate;
     }
 
+    @Override
     public SparkysAuthPrincipal getUserInfo() {
         return userInfo;
     }
@@ -136,6 +179,7 @@ public class JwtToken {
         this.userInfo = userInfo;
     }
 
+    @Override
     public Collection<UserRole> getTokenPermissionRoles() {
         return tokenPermissionRoles;
     }
@@ -148,6 +192,7 @@ public class JwtToken {
         this.tokenPermissionRoles = notNull(Arrays.asList(tokenPermissionRole));
     }
 
+    @Override
     @Nonnull
     public UUID getJti() {
         return jti;
@@ -159,11 +204,14 @@ public class JwtToken {
 
     @Override
     public String toString() {
-        return "JwtToken [remainingRefreshes=" + remainingRefreshes + ", locked=" + locked + ", expirationDate="
+        return "JwtToken [remainingRefreshes=" + remainingRefreshes + ", tokenGeneration=" + tokenGeneration 
+            + ", serial=" + serial + ", authTime=" + authTime + ", locked=" + locked + ", expirationDate="
             + expirationDate + ", userInfo=" + userInfo + ", tokenPermissionRoles=" + tokenPermissionRoles
             + ", jti=" + jti + "]";
     }
 
+    @Override
+    @Nonnull
     public JwtToken copy() {
         return new JwtToken(this);
     }
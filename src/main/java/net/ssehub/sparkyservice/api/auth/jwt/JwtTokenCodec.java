@@ -0,0 +1,105 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings;
+
+/**
+ * Encodes and decodes {@link JwtToken} with a fixed configuration. Unlike the static helpers in {@link JwtAuthTools},
+ * the keys and the parser are created only once. The parser is never reconfigured after construction and
+ * can therefore be shared between threads. Keys are selected by the {@link JwtKeySet}.
+ *
+ * @author marcel
+ */
+@Component
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class JwtTokenCodec {
+
+    @Nonnull
+    private final JwtSettings jwtConf;
+
+    @Nonnull
+    private final JwtKeySet keySet;
+
+    @Nonnull
+    private final JwtParser parser;
+
+    /**
+     * Codec for the given configuration.
+     *
+     * @param jwtConf - Contains configuration like secret - not allowed to be null
+     */
+    @Autowired
+    public JwtTokenCodec(@Nullable JwtSettings jwtConf) {
+        if (jwtConf == null) {
+            // do this because spring technically would inject null when configuration is not made
+            throw new RuntimeException("Try to inject null as jwt configuration into codec");
+        }
+        this.jwtConf = jwtConf;
+        this.keySet = new JwtKeySet(jwtConf);
+        this.parser = notNull(Jwts.parser().setSigningKeyResolver(keySet));
+    }
+
+    /**
+     * Creates a signed JWT token which encodes user data like username, roles, realm and the expiration time.
+     * Without an active RSA key, this produces the same tokens as {@link JwtAuthTools#encode(JwtToken, JwtSettings)}.
+     *
+     * @param tokenObj
+     * @return plain encoded JWT token as string (without bearer keyword)
+     */
+    @Nonnull
+    public String encode(JwtToken tokenObj) {
+        var builder = JwtAuthTools.builderFor(tokenObj, jwtConf);
+        keySet.getActiveKeyId().ifPresent(keyId -> builder.setHeaderParam(JwsHeader.KEY_ID, keyId));
+        return notNull(
+            builder.signWith(keySet.getSigningKey(), keySet.getSigningAlgorithm())
+                .compact()
+        );
+    }
+
+    /**
+     * Verifies and decodes a JWT token. Accepts the same tokens as
+     * {@link JwtAuthTools#decodeAndExtract(String, String)} and RS256 token of all configured keys.
+     *
+     * @param token - Encoded token, may start with the bearer keyword
+     * @return Object with fields from the decoded JWT token
+     */
+    @Nonnull
+    public JwtToken decode(String token) {
+        Claims claims = parser.parseClaimsJws(token.replace("Bearer ", "")).getBody();
+        return JwtAuthTools.extract(notNull(claims));
+    }
+
+    /**
+     * The keys which are used for signing and verification.
+     *
+     * @return Key set of this codec
+     */
+    @Nonnull
+    public JwtKeySet getKeySet() {
+        return keySet;
+    }
+
+    /**
+     * The configuration which is used for encoding.
+     *
+     * @return jwt settings
+     */
+    @Nonnull
+    public JwtSettings getJwtConf() {
+        return jwtConf;
+    }
+}
@@ -2,9 +2,10 @@ package net.ssehub.sparkyservice.api.auth.jwt;
 
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nonnull;
@@ -14,6 +15,7 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
@@ -30,6 +32,7 @@ import net.ssehub.sparkyservice.api.user.SparkyUser;
 import net.ssehub.sparkyservice.api.user.dto.TokenDto;
 import net.ssehub.sparkyservice.api.user.extraction.UserExtractionService;
 import net.ssehub.sparkyservice.api.user.storage.UserNotFoundException;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
 import net.ssehub.sparkyservice.api.util.DateUtil;
 
 /**
@@ -42,49 +45,105 @@ import net.ssehub.sparkyservice.api.util.DateUtil;
 public class JwtTokenService {
 
     @Nonnull
-    private final JwtSettings jwtConf;
+    private final JwtTokenCodec codec;
+
+    @Nonnull
+    private final VerifiedTokenCache verifiedTokens;
+
+    @Nonnull
+    private final TokenSerialGenerator serials;
 
     private final Logger log = LoggerFactory.getLogger(JwtTokenService.class);
 
     /**
-     * Service class for dealing with concrete jwt tokens.
+     * Service class for dealing with concrete jwt tokens. Creates its own codec and doesn't cache verified token.
      * 
      * @param jwtConf - Contains configuration like secret - not allowed to be null
      */
-    @Autowired
     public JwtTokenService(@Nullable JwtSettings jwtConf) {
-        if (jwtConf == null) {
-            // do this because spring technically would inject null when configuration is not made
-            throw new RuntimeException("Try to inject null as jwt configuration into service");
-        }
-        this.jwtConf = jwtConf;
+        this(new JwtTokenCodec(jwtConf), 0, 0);
+    }
+
+    /**
+     * Service class for dealing with concrete jwt tokens.
+     * 
+     * @param codec - Used for encoding and decoding all token
+     * @param verifiedCacheSize - Maximum number of verified token which are cached; 0 disables the cache
+     * @param verifiedCacheTtlMs - Maximum time in milliseconds a verified token is used without verifying it again
+     * @throws IllegalArgumentException When the configured serial node id is out of range
+     */
+    @Autowired
+    public JwtTokenService(JwtTokenCodec codec, @Value("${jwt.verified-cache.size:10000}") long verifiedCacheSize,
+            @Value("${jwt.verified-cache.ttl-ms:60000}") long verifiedCacheTtlMs) {
+        this.codec = codec;
+        this.serials = new TokenSerialGenerator(codec.getJwtConf().getSerialNodeId());
+        this.verifiedTokens = new VerifiedTokenCache(verifiedCacheSize, verifiedCacheTtlMs);
     }
 
     /**
-     * Lockes jwt tokens for authorization.
+     * Lockes jwt tokens for authorization. Token which are neither cached nor stored are ignored.
      * 
      * @param jit Identifier
      */
     public void disable(UUID... jit) {
         for (var singleJit : jit) {
-            Optional<JwtToken> token = JwtCache.getInstance().getCachedToken(singleJit);
+            Optional<JwtToken> token = JwtCache.getInstance().findToken(singleJit);
             token.ifPresent(cacheToken -> {
                 cacheToken.setLocked(true);
                 JwtCache.getInstance().storeAndSave(cacheToken);
             });
+            verifiedTokens.invalidate(singleJit);
         }
     }
 
     /**
-     * Disables all stored JWT token from a specific user.
+     * Disables all JWT token from a specific user. This only increments the token generation of the user; no 
+     * token is modified or saved.
      * 
      * @param user
      */
     public void disableAllFrom(SparkyUser user) {
-        Set<JwtToken> tokensFromCache = JwtCache.getInstance().getCachedTokens();
-        tokensFromCache.forEach(token -> token.setLocked(true));
-        JwtToken[] jwtArray = notNull(tokensFromCache.toArray(JwtToken[]::new));
-        JwtCache.getInstance().storeAndSave(jwtArray);
+        int generation = JwtCache.getInstance().revokeAllFrom(user);
+        log.debug("Revoked all JWT token of {}@{} (generation {})", user.getUsername(), user.getRealm(), generation);
+    }
+
+    /**
+     * Finds the active token of a user through the owner index of the cache. Stored token which aren't cached yet, 
+     * for example token which were issued by another node, are loaded into the cache first. In revocation only mode 
+     * unlocked token aren't stored, so only the token which were issued by this node since its start are found.
+     * 
+     * @param owner The user
+     * @return JITs of all token of the user which can still be used for authorization
+     */
+    public List<UUID> findActiveTokens(SparkysAuthPrincipal owner) {
+        var cache = JwtCache.getInstance();
+        long now = System.currentTimeMillis();
+        cache.loadActiveTokensOf(owner, now);
+        return cache.getActiveTokenIdsOf(owner.asString(), now);
+    }
+
+    /**
+     * Locks the given token of a user. Token which don't belong to the user are ignored, so a user can only revoke 
+     * own sessions. The owner is checked with the token itself, so token which aren't indexed by the cache (for 
+     * example token of another node) can be revoked as well.
+     * 
+     * @param owner The user
+     * @param jits Identifiers of the token to lock
+     * @return Number of token which were locked by this call
+     */
+    public int disableOwned(SparkysAuthPrincipal owner, Collection<UUID> jits) {
+        var cache = JwtCache.getInstance();
+        String ownerId = owner.asString();
+        int locked = 0;
+        for (var singleJit : jits) {
+            Optional<JwtToken> token = cache.findToken(singleJit)
+                .filter(t -> ownerId.equals(t.getUserInfo().asString()))
+                .filter(t -> !cache.isRevoked(t));
+            if (token.isPresent() && disable(token.get())) {
+                locked++;
+            }
+        }
+        return locked;
     }
 
     /**
@@ -95,6 +154,7 @@ public class JwtTokenService {
      * <li>{@link Authentication#getCredentials()} => {@link TokenDto}</li>
      * <li>{@link Authentication#getAuthorities()} => (single) {@link UserRole}</li>
      * </ul>
+     * Each call returns a new authentication object, also for token which were verified before.
      * 
      * @param jwtString - JWT token as string
      * @throws JwtTokenReadException
@@ -103,7 +163,20 @@ public class JwtTokenService {
     @Nonnull
     public UsernamePasswordAuthenticationToken readToAuthentication(@Nullable String jwtString) 
             throws JwtTokenReadException {
-        JwtToken tokenObj = readJwtToken(jwtString);
+        ReadOnlyJwtToken tokenObj = verify(jwtString);
+        return toAuthentication(notNull(jwtString), tokenObj);
+    }
+
+    /**
+     * Creates the authentication of a verified token.
+     * 
+     * @param jwtString - JWT token as string
+     * @param tokenObj - Verified content of the JWT token
+     * @return Springs authentication token
+     */
+    @Nonnull
+    private static UsernamePasswordAuthenticationToken toAuthentication(String jwtString, 
+            ReadOnlyJwtToken tokenObj) {
         var tokenDto = new TokenDto();
         tokenDto.expiration = DateUtil.toString(tokenObj.getExpirationDate());
         tokenDto.token = jwtString;
@@ -114,20 +187,42 @@ public class JwtTokenService {
 
 
     /**
-     * Reads information from a JWT token.
+     * Reads information from a JWT token. Token which were verified before are taken from a cache without 
+     * verifying the signature again; their lock and revocation state is checked anyway.
      * 
      * @param jwtString - JWT token as string
      * @throws JwtTokenReadException
-     * @return Springs authentication token
+     * @return Modifiable copy of the token
      */
     @Nonnull
     public JwtToken readJwtToken(@Nullable String jwtString) throws JwtTokenReadException {
+        return verify(jwtString).copy();
+    }
+
+    /**
+     * Verifies a JWT token or takes it from the cache of verified token. The lock and revocation state is checked 
+     * in both cases.
+     * 
+     * @param jwtString - JWT token as string
+     * @throws JwtTokenReadException
+     * @return The verified token - shared with other callers, so it must not be modified
+     */
+    @Nonnull
+    private ReadOnlyJwtToken verify(@Nullable String jwtString) throws JwtTokenReadException {
         try {
             if (jwtString == null) {
                 throw new IllegalArgumentException("Couldn't decode JWT Token with given information");
             } else {
-                JwtToken tokenObj = JwtAuthTools.decodeAndExtract(jwtString, jwtConf.getSecret());
-                if (isJitNonLocked(tokenObj.getJti())) {
+                Optional<ReadOnlyJwtToken> verifiedToken = verifiedTokens.get(jwtString);
+                ReadOnlyJwtToken tokenObj = verifiedToken.isPresent() ? verifiedToken.get() : codec.decode(jwtString);
+                if (JwtCache.getInstance().isRevoked(tokenObj)) {
+                    log.debug("Token {} was revoked with all token of {}", tokenObj.getJti(), 
+                            tokenObj.getUserInfo().asString());
+                    throw new JwtTokenReadException("The token with jit " + tokenObj.getJti() + " is revoked");
+                } else if (isNonLocked(tokenObj)) {
+                    if (verifiedToken.isEmpty()) {
+                        verifiedTokens.put(jwtString, tokenObj);
+                    }
                     return tokenObj;
                 } else {
                     log.debug("Token {} is locked. User: {}@{}" + tokenObj.getJti(), tokenObj.getUserInfo().getName(),
@@ -196,18 +291,118 @@ public class JwtTokenService {
         var userInfo = new AuthPrincipalImpl(user.getRealm(), user.getUsername());
         Date expDate = JwtAuthTools.createJwtExpirationDate(user);
         var tokenObj = new JwtToken(jit, expDate, userInfo, user.getRole());
-        tokenObj.setRemainingRefreshes(0 /*TODO*/);
-        String tokenString = JwtAuthTools.encode(tokenObj, jwtConf);
+        tokenObj.setRemainingRefreshes(codec.getJwtConf().getMaxRefreshes());
+        tokenObj.setAuthTime(System.currentTimeMillis() / 1000 * 1000);
+        tokenObj.setTokenGeneration(JwtCache.getInstance().getTokenGeneration(userInfo));
+        assignSerial(tokenObj);
+        String tokenString = codec.encode(tokenObj);
         JwtCache.getInstance().storeAndSave(tokenObj);
         return tokenString;
     }
 
-    public void refresh(JwtToken token) {
-        // TODO implement a refresh system? 
+    /**
+     * Assigns the next serial to a new token when serials are enabled.
+     * 
+     * @param tokenObj New token which isn't encoded yet
+     */
+    private void assignSerial(JwtToken tokenObj) {
+        if (codec.getJwtConf().isSerials()) {
+            tokenObj.setSerial(serials.next());
+        }
     }
 
-    public void refresh(String jwtString) {
-        // TODO implement a refresh system ? 
+    /**
+     * Issues a new token for an already verified token without authenticating the user again. The user is loaded 
+     * from the storage, so disabled, locked or expired accounts can't refresh their token and the new token holds 
+     * the current role of the user. Users which aren't stored (like in memory users) must log in again. <br>
+     * The new token has one refresh less and the given token is locked. It never expires later than 
+     * {@link JwtSettings#getMaxLifetimeSeconds()} after the login. When the same token is refreshed concurrently, 
+     * only one refresh succeeds.
+     * 
+     * @param token A valid token - see {@link #readJwtToken(String)}
+     * @param userService Storage which holds the owner of the token
+     * @return Signed jwt token
+     * @throws JwtTokenReadException When the token can't be refreshed anymore or was already refreshed
+     */
+    @Nonnull
+    public String refresh(JwtToken token, UserStorageService userService) throws JwtTokenReadException {
+        if (token.getRemainingRefreshes() <= 0) {
+            throw new JwtTokenReadException("The token with jit " + token.getJti() + " can't be refreshed anymore");
+        }
+        var user = loadRefreshingUser(token, userService);
+        long now = System.currentTimeMillis();
+        long authTime = token.getAuthTime() != 0 ? token.getAuthTime() : now / 1000 * 1000;
+        long maxExpiration = authTime + codec.getJwtConf().getMaxLifetimeSeconds() * 1000;
+        Date expDate = JwtAuthTools.createJwtExpirationDate(user);
+        if (expDate.getTime() > maxExpiration) {
+            expDate = new Date(maxExpiration);
+        }
+        if (expDate.getTime() <= now) {
+            throw new JwtTokenReadException("The token with jit " + token.getJti() + " reached its maximum lifetime");
+        }
+        var userInfo = new AuthPrincipalImpl(user.getRealm(), user.getUsername());
+        var newToken = new JwtToken(notNull(UUID.randomUUID()), expDate, userInfo, user.getRole());
+        newToken.setRemainingRefreshes(token.getRemainingRefreshes() - 1);
+        newToken.setAuthTime(authTime);
+        newToken.setTokenGeneration(JwtCache.getInstance().getTokenGeneration(userInfo));
+        assignSerial(newToken);
+        if (!disable(token)) {
+            throw new JwtTokenReadException("The token with jit " + token.getJti() + " is locked");
+        }
+        String tokenString = codec.encode(newToken);
+        JwtCache.getInstance().storeAndSave(newToken);
+        log.trace("Refreshed JWT token {} with jit {}", token.getJti(), newToken.getJti());
+        return tokenString;
+    }
+
+    /**
+     * Loads the owner of a token which should be refreshed and checks that the account can still be used.
+     * 
+     * @param token The token to refresh
+     * @param userService Storage which holds the owner of the token
+     * @return The current state of the owner
+     * @throws JwtTokenReadException When the owner isn't stored or the account can't be used anymore
+     */
+    @Nonnull
+    private SparkyUser loadRefreshingUser(ReadOnlyJwtToken token, UserStorageService userService) 
+            throws JwtTokenReadException {
+        var userInfo = token.getUserInfo();
+        SparkyUser user;
+        try {
+            user = userService.findUserByNameAndRealm(userInfo.getName(), userInfo.getRealm());
+        } catch (UserNotFoundException e) {
+            throw new JwtTokenReadException("The owner of the token with jit " + token.getJti() + " isn't stored");
+        }
+        if (!user.isEnabled() || !user.isAccountNonExpired() || !user.isAccountNonLocked()) {
+            throw new JwtTokenReadException("The account of the token with jit " + token.getJti() 
+                + " can't be used anymore");
+        }
+        return user;
+    }
+
+    /**
+     * Verifies the given token and issues a new one. See {@link #refresh(JwtToken, UserStorageService)}.
+     * 
+     * @param jwtString - JWT token as string
+     * @param userService Storage which holds the owner of the token
+     * @return Signed jwt token
+     * @throws JwtTokenReadException When the token is invalid or can't be refreshed
+     */
+    @Nonnull
+    public String refresh(@Nullable String jwtString, UserStorageService userService) throws JwtTokenReadException {
+        return refresh(readJwtToken(jwtString), userService);
+    }
+
+    /**
+     * Locks a single token. Unlike {@link #disable(UUID...)}, this also works for token which aren't cached. 
+     * 
+     * @param token The token to lock
+     * @return <code>true</code> when this call locked the token, <code>false</code> when it was already locked
+     */
+    public boolean disable(ReadOnlyJwtToken token) {
+        boolean locked = JwtCache.getInstance().lock(token);
+        verifiedTokens.invalidate(token.getJti());
+        return locked;
     }
 
     /**
@@ -216,7 +411,16 @@ public class JwtTokenService {
      * @return jwt settings
      */
     public JwtSettings getJwtConf() {
-        return this.jwtConf;
+        return codec.getJwtConf();
+    }
+
+    /**
+     * Keys which are used in this service class.
+     * 
+     * @return Signing and verification keys
+     */
+    public JwtKeySet getKeySet() {
+        return codec.getKeySet();
     }
 
     /**
@@ -226,7 +430,16 @@ public class JwtTokenService {
      * @return <code> true </code> when the JIT is valid an not locked for authorization
      */
     public boolean isJitNonLocked(UUID jit) {
-        Optional<JwtToken> token = JwtCache.getInstance().getCachedToken(jit);
-        return !token.map(JwtToken::isLocked).orElse(false);
+        return !JwtCache.getInstance().isLocked(jit);
+    }
+
+    /**
+     * Checks if the given token is not locked. Token with a serial are checked in the compressed serial set.
+     * 
+     * @param token The token to check
+     * @return <code> true </code> when the token is not locked for authorization
+     */
+    public boolean isNonLocked(ReadOnlyJwtToken token) {
+        return !JwtCache.getInstance().isLocked(token);
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
+import net.ssehub.sparkyservice.api.auth.storage.JwtCache;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+
+/**
+ * Read only view of a {@link JwtToken}. Instances handed out as this type are shared (for example the entries of
+ * {@link JwtCache}) and must not be casted and modified. Use {@link #copy()} to get a modifiable token.
+ *
+ * @author marcel
+ */
+public interface ReadOnlyJwtToken {
+
+    /**
+     * Unique identifier of the token.
+     *
+     * @return JTI according to RFC 7519 4.1.7
+     */
+    @Nonnull
+    UUID getJti();
+
+    /**
+     * Indicates if the token is disabled for authorization.
+     *
+     * @return <code>true</code> when the token must not be used anymore
+     */
+    boolean isLocked();
+
+    /**
+     * How often the token can be refreshed.
+     *
+     * @return Remaining refreshes
+     */
+    int getRemainingRefreshes();
+
+    /**
+     * Generation of the owners token when this token was issued. The token is revoked when the owner has a newer 
+     * generation.
+     *
+     * @return Token generation - 0 for token which don't carry a generation
+     */
+    int getTokenGeneration();
+
+    /**
+     * Sequential serial of the token. Serials are only assigned when they are enabled through 
+     * <code>jwt.serials</code>; they allow a compact revocation set. 
+     *
+     * @return Serial - 0 for token without serial
+     */
+    long getSerial();
+
+    /**
+     * Time where the user authenticated with a password. It is kept by refreshes and limits the lifetime of 
+     * refreshed token.
+     *
+     * @return Milliseconds since epoch with a precision of seconds - 0 when it is unknown
+     */
+    long getAuthTime();
+
+    /**
+     * Date where the token expires.
+     *
+     * @return Expiration date - <code>null</code> when it is unknown
+     */
+    @Nullable
+    Date getExpirationDate();
+
+    /**
+     * The owner of the token.
+     *
+     * @return Principal which identifies the user of the token
+     */
+    SparkysAuthPrincipal getUserInfo();
+
+    /**
+     * Roles which are granted through this token.
+     *
+     * @return Permission roles
+     */
+    Collection<UserRole> getTokenPermissionRoles();
+
+    /**
+     * Creates a modifiable copy of this token.
+     *
+     * @return New token object with the same values
+     */
+    @Nonnull
+    JwtToken copy();
+}
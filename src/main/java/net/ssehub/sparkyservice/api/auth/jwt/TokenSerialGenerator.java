@@ -0,0 +1,65 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Assigns monotonically increasing serials to new token. The upper bits of each serial hold the id of the node, so
+ * nodes with different ids never create the same serial. The lower bits start at the start time of the process in
+ * seconds multiplied with 2^21 and are incremented by one per token. A restarted process therefore continues above
+ * the serials of the previous one as long as less than about two million token were issued per second of uptime -
+ * without storing a counter. <br>
+ * Nodes without configured id choose a random one. Two nodes may still share an id then, so a serial alone must
+ * never be trusted to identify a token.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+class TokenSerialGenerator {
+
+    static final int MAX_NODE_ID = 1023;
+
+    private static final int COUNTER_BITS = 53;
+
+    private static final int START_SHIFT = 21;
+
+    private final AtomicLong lastSerial;
+
+    /**
+     * Generator which starts at the current time.
+     *
+     * @param nodeId Id of this node between 0 and {@value #MAX_NODE_ID} - a random one when <code>null</code>
+     * @throws IllegalArgumentException When the node id is out of range
+     */
+    TokenSerialGenerator(@Nullable Integer nodeId) {
+        this(System.currentTimeMillis(), 
+            nodeId != null ? nodeId : ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1));
+    }
+
+    /**
+     * Generator which starts at the given time.
+     *
+     * @param startMs Start time in milliseconds since epoch
+     * @param nodeId Id of this node between 0 and {@value #MAX_NODE_ID}
+     * @throws IllegalArgumentException When the node id is out of range
+     */
+    TokenSerialGenerator(long startMs, int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("The serial node id must be between 0 and " + MAX_NODE_ID);
+        }
+        long nodePrefix = (long) nodeId << COUNTER_BITS;
+        this.lastSerial = new AtomicLong(nodePrefix | (startMs / 1000) << START_SHIFT);
+    }
+
+    /**
+     * Creates the next serial.
+     *
+     * @return Serial which is greater than all serials created before
+     */
+    long next() {
+        return lastSerial.incrementAndGet();
+    }
+}
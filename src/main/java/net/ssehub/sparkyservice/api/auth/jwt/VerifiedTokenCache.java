@@ -0,0 +1,206 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+/**
+ * Bounded cache of already verified JWT token. Entries are keyed by a SHA-256 digest of the encoded token, so the
+ * token strings themselves are not kept. The cached token is immutable and shared by all hits; authentication 
+ * objects are mutable, so they are created for each hit and never cached. The keys are additionally indexed by JTI,
+ * which makes invalidating a locked token independent of the cache size. Each entry expires after a fixed time but
+ * never after the token itself. <br>
+ * The cache only replaces signature verification and claim parsing; lock and revocation states must still be
+ * checked on each hit.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class VerifiedTokenCache {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+        }
+    });
+
+    @Nullable
+    private final Cache<ByteBuffer, ReadOnlyJwtToken> cache;
+
+    @Nonnull
+    private final Map<UUID, Set<ByteBuffer>> keysByJti = new ConcurrentHashMap<>();
+
+    /**
+     * Limits each entry to a fixed time to live or the expiration of the cached token - whatever comes first.
+     *
+     * @author marcel
+     */
+    private static final class TokenExpiry implements Expiry<ByteBuffer, ReadOnlyJwtToken> {
+        private final long ttlNanos;
+
+        /**
+         * Expiry with a maximum time to live.
+         *
+         * @param ttlNanos Maximum time to live in nanoseconds
+         */
+        private TokenExpiry(long ttlNanos) {
+            this.ttlNanos = ttlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(ByteBuffer key, ReadOnlyJwtToken token, long currentTime) {
+            long result = ttlNanos;
+            Date expiration = token.getExpirationDate();
+            if (expiration != null) {
+                long remainingMs = expiration.getTime() - System.currentTimeMillis();
+                result = Math.max(0, Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(remainingMs)));
+            }
+            return result;
+        }
+
+        @Override
+        public long expireAfterUpdate(ByteBuffer key, ReadOnlyJwtToken token, long currentTime,
+                long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(ByteBuffer key, ReadOnlyJwtToken token, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Cache with the given limits. When one of them is not positive, the cache is disabled and never holds an
+     * entry.
+     *
+     * @param maximumSize Maximum number of cached token
+     * @param ttlMs Maximum time in milliseconds an entry is used
+     */
+    VerifiedTokenCache(long maximumSize, long ttlMs) {
+        if (maximumSize > 0 && ttlMs > 0) {
+            cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(TimeUnit.MILLISECONDS.toNanos(ttlMs)))
+                .executor(Runnable::run)
+                .removalListener(this::unindex)
+                .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Returns the verified token for the encoded one.
+     *
+     * @param jwtString Encoded token
+     * @return Shared verified token - use {@link ReadOnlyJwtToken#copy()} for modifications. Empty when the token 
+     *         isn't cached
+     */
+    Optional<ReadOnlyJwtToken> get(String jwtString) {
+        final var currentCache = cache;
+        ReadOnlyJwtToken token = null;
+        if (currentCache != null) {
+            token = currentCache.getIfPresent(digest(jwtString));
+        }
+        return Optional.ofNullable(token);
+    }
+
+    /**
+     * Stores a successfully verified token. The token is shared with all later hits, so it must not be modified 
+     * afterwards.
+     *
+     * @param jwtString Encoded token
+     * @param token Verified content of the encoded token
+     */
+    void put(String jwtString, ReadOnlyJwtToken token) {
+        final var currentCache = cache;
+        if (currentCache != null) {
+            ByteBuffer key = digest(jwtString);
+            keysByJti.computeIfAbsent(token.getJti(), jti -> ConcurrentHashMap.newKeySet()).add(key);
+            currentCache.put(key, token);
+        }
+    }
+
+    /**
+     * Removes all entries of the token with the given JTI.
+     *
+     * @param jti Identifier of the token
+     */
+    void invalidate(UUID jti) {
+        final var currentCache = cache;
+        Set<ByteBuffer> keys = keysByJti.remove(jti);
+        if (currentCache != null && keys != null) {
+            currentCache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Removes the key of an evicted or expired entry from the JTI index. Replaced entries keep their key. Runs on
+     * the removing thread, so the index doesn't lag behind the cache.
+     *
+     * @param key
+     * @param token
+     * @param cause
+     */
+    private void unindex(@Nullable ByteBuffer key, @Nullable ReadOnlyJwtToken token, RemovalCause cause) {
+        if (key != null && token != null && cause != RemovalCause.REPLACED) {
+            keysByJti.computeIfPresent(token.getJti(), (jti, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Approximate number of cached token.
+     *
+     * @return Estimated size
+     */
+    long size() {
+        final var currentCache = cache;
+        return currentCache == null ? 0 : currentCache.estimatedSize();
+    }
+
+    /**
+     * Number of JTIs in the index.
+     *
+     * @return JTIs with at least one cached entry
+     */
+    int getIndexedJtiCount() {
+        return keysByJti.size();
+    }
+
+    /**
+     * Creates the key of an encoded token.
+     *
+     * @param jwtString
+     * @return SHA-256 digest of the token
+     */
+    @Nonnull
+    private static ByteBuffer digest(String jwtString) {
+        return ByteBuffer.wrap(DIGEST.get().digest(jwtString.getBytes(StandardCharsets.UTF_8)));
+    }
+}
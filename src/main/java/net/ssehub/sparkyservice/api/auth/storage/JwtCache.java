@@ -2,14 +2,23 @@ package net.ssehub.sparkyservice.api.auth.storage;
 
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -18,11 +27,32 @@ import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.ThreadSafe;
 
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.jwt.ReadOnlyJwtToken;
+import net.ssehub.sparkyservice.api.user.SparkyUser;
 import net.ssehub.sparkyservice.api.util.SparkyUtil;
 
 /**
- * Provides a thread safe cache for {@link JwtToken}.
+ * Provides a thread safe cache for {@link JwtToken}. <br>
+ * Lookups never block: The lock state and expiration of each token is held in a primitive {@link TokenStateTable}. 
+ * Full token objects are held in a concurrent map; both are replaced as a whole on refreshes. When a storage is 
+ * present, unlocked token are only kept as objects when the storage can't return them (see 
+ * {@link JwtStorageService#canLoad(ReadOnlyJwtToken)}), for example in revocation only mode. All others are loaded 
+ * from the storage when they are needed, so each known token can still be locked. Each cached object is a private 
+ * copy which is never modified after it was stored, so readers can access it through {@link ReadOnlyJwtToken} 
+ * without copying it. Only writers are synchronized among each other. <br>
+ * Additionally the cache knows the token generation of each user whose token were revoked as a whole 
+ * (see {@link #revokeAllFrom(SparkyUser)}). All revocation changes are recorded in a {@link RevocationLog}. <br>
+ * Serials of locked token are additionally kept in a {@link RevokedSerialSet}, so token with a serial are checked 
+ * without probing the token map. Token without serial are pre-checked with a {@link LockedJtiFilter}: Most checked 
+ * token aren't locked, and for them the filter usually answers without probing the map. <br>
+ * The JTIs of each user are indexed in an {@link OwnerIndex}, so the sessions of a single user are found without 
+ * scanning the cache. Token which were revoked with all token of their owner are not indexed. <br>
+ * Storage commits are queued while holding the write lock and executed after it was released, one after another 
+ * in the order of the queue. So the storage receives changes in the same order as the cache, but neither lookups nor
+ * changes of the cache wait for the storage. A refresh from the storage records all writes which happen while it 
+ * loads and replays them on the new store before it is published.
  * 
  * @author marcel
  */
@@ -30,14 +60,42 @@ import net.ssehub.sparkyservice.api.util.SparkyUtil;
 @ParametersAreNonnullByDefault
 public class JwtCache {
 
+    private static final int REVOCATION_LOG_CAPACITY = 10_000;
+
     private static volatile JwtCache instance = new JwtCache(null);
     
     @Nonnull
-    private Map<UUID, JwtToken> tokenStore = new ConcurrentHashMap<UUID, JwtToken>();
+    private volatile Map<UUID, JwtToken> tokenStore = new ConcurrentHashMap<UUID, JwtToken>();
+    @Nonnull
+    private volatile TokenStateTable tokenStates = new TokenStateTable(TokenStateTable.MIN_CAPACITY);
+    @Nonnull
+    private volatile NavigableSet<ExpiryEntry> expiryIndex = new ConcurrentSkipListSet<ExpiryEntry>();
+    @Nonnull
+    private volatile RevokedSerialSet lockedSerials = new RevokedSerialSet();
+    @Nonnull
+    private volatile LockedJtiFilter lockedFilter = new LockedJtiFilter(LockedJtiFilter.MIN_CAPACITY);
+    private int staleFilterEntries;
+    @Nonnull
+    private volatile OwnerIndex ownerIndex = new OwnerIndex();
+    @Nonnull
+    private final Map<String, Integer> tokenGenerations = new ConcurrentHashMap<String, Integer>();
+    @Nonnull
+    private volatile Optional<JwtStorageService> storage;
+    @Nonnull
+    private final Object writeLock = new Object();
+    @Nonnull
+    private final Queue<PendingCommit> pendingCommits = new ConcurrentLinkedQueue<PendingCommit>();
     @Nonnull
-    private final Optional<JwtStorageService> storage;
+    private final Object commitLock = new Object();
+    @Nonnull
+    private final RevocationLog revocationLog = new RevocationLog(REVOCATION_LOG_CAPACITY);
+    @Nonnull
+    private final Object rebuildLock = new Object();
+    @Nullable
+    private Map<UUID, JwtToken> rebuildWrites;
+    @Nullable
+    private Set<String> rebuildRevokedOwners;
 
-    
     /**
      * Cache with an empty store.
      * 
@@ -55,48 +113,635 @@ public class JwtCache {
      */
     private JwtCache(Map<UUID, JwtToken> tokenStore, @Nullable JwtStorageService storage) {
         this.storage = notNull(Optional.ofNullable(storage));
+        this.storage.map(JwtStorageService::findTokenGenerations).ifPresent(tokenGenerations::putAll);
+        this.tokenStates = createStateTable(tokenStore.values());
+        var owners = new OwnerIndex();
+        this.expiryIndex = createExpiryIndex(tokenStore.values(), owners);
+        this.ownerIndex = owners;
+        dropUnlocked(tokenStore);
         this.tokenStore = tokenStore;
+        this.lockedSerials = createSerialSet(tokenStore.values());
+        this.lockedFilter = LockedJtiFilter.of(tokenStore.values());
+    }
+
+    /**
+     * A storage commit which was queued while holding the write lock and is executed after it was released.
+     * 
+     * @author marcel
+     */
+    private static final class PendingCommit {
+        @Nonnull
+        private final JwtStorageService storage;
+        @Nonnull
+        private final JwtToken[] tokens;
+        @Nonnull
+        private final Collection<UUID> unlocked;
+        private boolean done;
+        @Nullable
+        private RuntimeException failure;
+
+        /**
+         * Commit of changed token.
+         * 
+         * @param storage Storage which receives the change
+         * @param tokens New or updated token
+         * @param unlocked Token which were locked before and are unlocked now
+         */
+        private PendingCommit(JwtStorageService storage, JwtToken[] tokens, Collection<UUID> unlocked) {
+            this.storage = storage;
+            this.tokens = tokens;
+            this.unlocked = unlocked;
+        }
+
+        /**
+         * Commits the change to the storage. A failure is kept for the thread which queued the commit. Must be 
+         * called while holding the commit lock.
+         */
+        private void run() {
+            try {
+                storage.commit(tokens);
+                storage.commitUnlocked(unlocked);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            done = true;
+        }
+    }
+
+    /**
+     * Orders tokens by their expiration date in order to find expired tokens without scanning the whole cache.
+     * 
+     * @author marcel
+     */
+    private static final class ExpiryEntry implements Comparable<ExpiryEntry> {
+        private final long expiresAt;
+        @Nonnull
+        private final UUID jti;
+        @Nonnull
+        private final String owner;
+
+        /**
+         * Index entry of a single token.
+         * 
+         * @param expiresAt Expiration date in milliseconds since epoch
+         * @param jti Identifier of the token
+         * @param owner Identifier of the owner - needed to remove the token from the owner index
+         */
+        private ExpiryEntry(long expiresAt, UUID jti, String owner) {
+            this.expiresAt = expiresAt;
+            this.jti = jti;
+            this.owner = owner;
+        }
+
+        @Override
+        public int compareTo(ExpiryEntry other) {
+            int result = Long.compare(expiresAt, other.expiresAt);
+            if (result == 0) {
+                result = jti.compareTo(other.jti);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object object) {
+            return object instanceof ExpiryEntry && compareTo((ExpiryEntry) object) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(expiresAt) * 31 + jti.hashCode();
+        }
+    }
+
+    /**
+     * Creates an expiry index for the given tokens and adds them to the given owner index. Tokens without 
+     * expiration date are not indexed by expiration and never evicted.
+     * 
+     * @param tokens
+     * @param owners Owner index which isn't published yet
+     * @return Index ordered by expiration
+     */
+    private NavigableSet<ExpiryEntry> createExpiryIndex(Collection<? extends ReadOnlyJwtToken> tokens, 
+            OwnerIndex owners) {
+        var index = new ConcurrentSkipListSet<ExpiryEntry>();
+        tokens.forEach(token -> addToIndex(index, token, indexOwner(owners, token)));
+        return index;
+    }
+
+    /**
+     * Adds a token to the owner index unless it was revoked with all token of its owner. Must be called while 
+     * holding the write lock unless the index isn't published yet.
+     * 
+     * @param owners
+     * @param token
+     * @return Identifier of the owner
+     */
+    private String indexOwner(OwnerIndex owners, ReadOnlyJwtToken token) {
+        String owner = token.getUserInfo().asString();
+        if (!isRevoked(token)) {
+            owner = owners.add(owner, token.getJti());
+        }
+        return owner;
+    }
+
+    /**
+     * Creates a state table for the given tokens.
+     * 
+     * @param tokens
+     * @return Lock states and expirations of the tokens
+     */
+    private static TokenStateTable createStateTable(Collection<? extends ReadOnlyJwtToken> tokens) {
+        var states = new TokenStateTable(tokens.size());
+        tokens.forEach(token -> states.put(token.getJti(), token.isLocked(), expiresAt(token)));
+        return states;
+    }
+
+    /**
+     * The expiration of a token as it is stored in the state table.
+     * 
+     * @param token
+     * @return Expiration in milliseconds since epoch - 0 when the token doesn't expire
+     */
+    private static long expiresAt(ReadOnlyJwtToken token) {
+        Date expirationDate = token.getExpirationDate();
+        return expirationDate != null ? expirationDate.getTime() : 0;
+    }
+
+    /**
+     * Removes the objects of unlocked token from a store when they can be loaded from the storage. Their state is 
+     * still known through the state table. Must be called while holding the write lock unless the store isn't 
+     * published yet.
+     * 
+     * @param store
+     */
+    private void dropUnlocked(Map<UUID, JwtToken> store) {
+        store.values().removeIf(token -> !token.isLocked() && canLoad(token));
+    }
+
+    /**
+     * Indicates if the object of a token can be dropped because the storage returns it when it is needed.
+     * 
+     * @param token
+     * @return <code>true</code> when a storage is present which can load the token
+     */
+    private boolean canLoad(ReadOnlyJwtToken token) {
+        return storage.isPresent() && storage.get().canLoad(token);
+    }
+
+    /**
+     * Writes the state of a private token copy and - when it is locked or can't be loaded from the storage - the 
+     * object itself. Must be called while holding the write lock.
+     * 
+     * @param token Private copy
+     * @return <code>true</code> when the token was locked before
+     */
+    private boolean putToken(JwtToken token) {
+        if (token.isLocked()) {
+            lockedFilter.put(token.getJti());
+        }
+        boolean wasLocked = tokenStates.put(token.getJti(), token.isLocked(), expiresAt(token));
+        if (token.isLocked() || !canLoad(token)) {
+            tokenStore.put(token.getJti(), token);
+        } else {
+            tokenStore.remove(token.getJti());
+        }
+        addToIndex(expiryIndex, token, indexOwner(ownerIndex, token));
+        updateSerial(lockedSerials, token);
+        var writes = rebuildWrites;
+        if (writes != null) {
+            writes.put(token.getJti(), token);
+        }
+        return wasLocked;
+    }
+
+    /**
+     * Creates a set of the serials of all locked tokens.
+     * 
+     * @param tokens
+     * @return Locked serials
+     */
+    private static RevokedSerialSet createSerialSet(Collection<? extends ReadOnlyJwtToken> tokens) {
+        var serials = new RevokedSerialSet();
+        serials.addAll(tokens.stream()
+            .filter(ReadOnlyJwtToken::isLocked)
+            .mapToLong(ReadOnlyJwtToken::getSerial)
+            .filter(serial -> serial != 0)
+            .toArray());
+        return serials;
     }
 
     /**
-     * Stores a new token object to the cache and stores it in a storage (thread safe).
+     * Adds the serial of a locked token. Tokens without serial are ignored. Serials of unlocked or evicted token 
+     * are only removed when the set is rebuilt, because another token may share the serial. Must be called while 
+     * holding the write lock unless the set isn't published yet.
+     * 
+     * @param serials
+     * @param token
+     */
+    private static void updateSerial(RevokedSerialSet serials, ReadOnlyJwtToken token) {
+        long serial = token.getSerial();
+        if (serial != 0 && token.isLocked()) {
+            serials.add(serial);
+        }
+    }
+
+    /**
+     * Replaces the filter and the serial set when the filter holds more JTIs than it was sized for or when at least 
+     * half of its JTIs aren't locked anymore. Readers keep using the old ones until the new ones are complete. Must 
+     * be called while holding the write lock.
+     */
+    private void rebuildFilterIfNeeded() {
+        var filter = lockedFilter;
+        boolean stale = staleFilterEntries > LockedJtiFilter.MIN_CAPACITY / 2 
+            && staleFilterEntries * 2 > filter.getInsertions();
+        if (filter.isSaturated() || stale) {
+            lockedFilter = LockedJtiFilter.of(tokenStore.values());
+            lockedSerials = createSerialSet(tokenStore.values());
+            staleFilterEntries = 0;
+        }
+    }
+
+    /**
+     * Adds a token to the given expiry index when it has an expiration date.
+     * 
+     * @param index
+     * @param token
+     * @param owner Identifier of the owner
+     */
+    private static void addToIndex(NavigableSet<ExpiryEntry> index, ReadOnlyJwtToken token, String owner) {
+        Date expirationDate = token.getExpirationDate();
+        if (expirationDate != null) {
+            index.add(new ExpiryEntry(expirationDate.getTime(), token.getJti(), owner));
+        }
+    }
+
+    /**
+     * Connects this cache with a storage without replacing it, so all references to the cache stay valid. The 
+     * cached state is kept: Token generations of the storage are merged and the objects of unlocked token which the 
+     * storage can load are dropped.
+     * 
+     * @param newStorage Storage which is used for all following storage operations
+     */
+    public void attachStorage(JwtStorageService newStorage) {
+        var storedGenerations = newStorage.findTokenGenerations();
+        synchronized (writeLock) {
+            storage = notNull(Optional.of(newStorage));
+            storedGenerations.forEach((owner, gen) -> tokenGenerations.merge(owner, gen, Math::max));
+            dropUnlocked(tokenStore);
+        }
+    }
+
+    /**
+     * Stores a new token object to the cache and stores it in a storage (thread safe). The cache keeps a copy of 
+     * each token; later modifications of the given objects are not visible in the cache. Token which were locked 
+     * before and are unlocked now are passed to {@link JwtStorageService#commitUnlocked(Collection)} as well.
      * 
      * @param jpaTokens New or updated object
      */
-    public synchronized void storeAndSave(JwtToken... jpaTokens) {
-        for (final JwtToken singleToken : jpaTokens) {
-            tokenStore.put(singleToken.getJti(), singleToken);
+    public void storeAndSave(JwtToken... jpaTokens) {
+        PendingCommit commit;
+        synchronized (writeLock) {
+            List<UUID> unlocked = new ArrayList<UUID>();
+            for (final JwtToken singleToken : jpaTokens) {
+                if (putAndRecord(singleToken.copy()) && !singleToken.isLocked()) {
+                    unlocked.add(singleToken.getJti());
+                }
+            }
+            rebuildFilterIfNeeded();
+            commit = queueCommit(jpaTokens, unlocked);
         }
-        storage.ifPresent(s -> s.commit(jpaTokens));
+        awaitCommit(commit);
     }
 
     /**
-     * Refreshed the current cache with values from a storage (when a storage is present).
+     * Queues a storage commit. Must be called while holding the write lock, so the commits are queued in the 
+     * order of the cache changes.
+     * 
+     * @param tokens New or updated token
+     * @param unlocked Token which were locked before and are unlocked now
+     * @return The queued commit - <code>null</code> when no storage is present
+     */
+    @Nullable
+    private PendingCommit queueCommit(JwtToken[] tokens, Collection<UUID> unlocked) {
+        PendingCommit commit = storage.map(s -> new PendingCommit(s, tokens, unlocked)).orElse(null);
+        if (commit != null) {
+            pendingCommits.add(commit);
+        }
+        return commit;
+    }
+
+    /**
+     * Executes queued commits in their order until the given one is committed. Only one thread commits at a time 
+     * and it also commits the changes which other threads queued before its own, so no change overtakes an older 
+     * one. Must be called without holding the write lock.
+     * 
+     * @param commit Commit which was queued by the caller - nothing is done when it is <code>null</code>
+     */
+    private void awaitCommit(@Nullable PendingCommit commit) {
+        if (commit != null) {
+            synchronized (commitLock) {
+                while (!commit.done) {
+                    notNull(pendingCommits.poll()).run();
+                }
+            }
+            RuntimeException failure = commit.failure;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Merges token which were changed outside of this cache, for example by another node, without saving them 
+     * again. Lock changes are recorded in the revocation log like local ones. Merging the same token again doesn't 
+     * change anything.
+     * 
+     * @param changedTokens Token with their current state
+     * @return Number of token whose lock state changed
+     */
+    public int merge(Collection<JwtToken> changedTokens) {
+        int changed = 0;
+        synchronized (writeLock) {
+            for (final JwtToken singleToken : changedTokens) {
+                if (putAndRecord(singleToken.copy())) {
+                    changed++;
+                }
+            }
+            rebuildFilterIfNeeded();
+        }
+        return changed;
+    }
+
+    /**
+     * Locks token which were locked outside of this cache, for example by another node, without saving them again.
+     * The cached or stored token is locked, so its owner and permissions stay intact; a lock record is only cached
+     * when the token is neither cached nor stored. Token which are already locked are skipped.
+     *
+     * @param lockRecords Locked token with the fields which are known by the other node
+     * @return Number of locked token
+     */
+    public int lockRemote(Collection<JwtToken> lockRecords) {
+        var resolved = new ArrayList<JwtToken>();
+        for (final JwtToken record : lockRecords) {
+            UUID jti = record.getJti();
+            if (!tokenStates.isLocked(jti)) {
+                JwtToken token = record;
+                if (!tokenStore.containsKey(jti)) {
+                    token = notNull(storage.flatMap(s -> s.findByJti(jti)).orElse(record));
+                }
+                resolved.add(token);
+            }
+        }
+        int locked = 0;
+        synchronized (writeLock) {
+            for (final JwtToken token : resolved) {
+                if (!tokenStates.isLocked(token.getJti())) {
+                    JwtToken cached = tokenStore.get(token.getJti());
+                    JwtToken copy = (cached != null ? cached : token).copy();
+                    copy.setLocked(true);
+                    putAndRecord(copy);
+                    locked++;
+                }
+            }
+            rebuildFilterIfNeeded();
+        }
+        return locked;
+    }
+
+    /**
+     * Unlocks cached token which were unlocked outside of this cache, for example by another node, without saving
+     * them again. Token which aren't cached as locked are skipped.
+     * 
+     * @param jtis Identifiers of the unlocked token
+     * @return Number of unlocked token
+     */
+    public int unlockCached(Collection<UUID> jtis) {
+        int unlocked = 0;
+        synchronized (writeLock) {
+            for (final UUID jti : jtis) {
+                JwtToken cached = tokenStore.get(jti);
+                if (cached != null && cached.isLocked()) {
+                    var copy = cached.copy();
+                    copy.setLocked(false);
+                    putAndRecord(copy);
+                    unlocked++;
+                }
+            }
+            rebuildFilterIfNeeded();
+        }
+        return unlocked;
+    }
+
+    /**
+     * Caches a private token copy and records a change of its lock state. Must be called while holding the write 
+     * lock.
+     * 
+     * @param token Private copy
+     * @return <code>true</code> when the lock state changed
+     */
+    private boolean putAndRecord(JwtToken token) {
+        boolean wasLocked = putToken(token);
+        if (token.isLocked() && !wasLocked) {
+            revocationLog.recordLocked(token.getJti());
+        } else if (!token.isLocked() && wasLocked) {
+            revocationLog.recordRemoved(List.of(token.getJti()));
+            staleFilterEntries++;
+        }
+        return token.isLocked() != wasLocked;
+    }
+
+    /**
+     * Adds token which were loaded from a storage without saving them again. Token which are already cached are 
+     * skipped because the cached state is newer. When locked token were added, consumers of the revocation log need 
+     * a new snapshot afterwards.
+     * 
+     * @param storedTokens Token from a storage
+     * @return Number of added token
+     */
+    public int loadFromStorage(Collection<JwtToken> storedTokens) {
+        int added = 0;
+        boolean addedLocked = false;
+        synchronized (writeLock) {
+            for (final JwtToken singleToken : storedTokens) {
+                if (!tokenStates.contains(singleToken.getJti())) {
+                    putToken(singleToken.copy());
+                    addedLocked |= singleToken.isLocked();
+                    added++;
+                }
+            }
+            if (addedLocked) {
+                revocationLog.reset();
+            }
+            rebuildFilterIfNeeded();
+        }
+        return added;
+    }
+
+    /**
+     * Loads the active token of a user from the storage which aren't cached yet, for example token which were 
+     * issued by another node after this cache was filled. Afterwards {@link #getActiveTokenIdsOf(String, long)} 
+     * covers each stored session of the user. In revocation only mode unlocked token aren't stored, so only the 
+     * token which were issued by this node are known.
+     * 
+     * @param owner The user
+     * @param now Time in milliseconds since epoch
+     * @return Number of added token
      */
-    public synchronized void refreshFromStorage() {
-        tokenStore = notNull(
+    public int loadActiveTokensOf(SparkysAuthPrincipal owner, long now) {
+        return storage.map(s -> loadFromStorage(s.findActiveOf(owner, new Timestamp(now)))).orElse(0);
+    }
+
+    /**
+     * Locks the given token unless it is already locked. The check and the lock happen atomically, so only one of 
+     * multiple concurrent callers succeeds. The token is locked even when it wasn't cached before. 
+     * 
+     * @param token The token to lock
+     * @return <code>true</code> when this call locked the token, <code>false</code> when it was already locked
+     */
+    public boolean lock(ReadOnlyJwtToken token) {
+        PendingCommit commit;
+        synchronized (writeLock) {
+            if (tokenStates.isLocked(token.getJti())) {
+                return false;
+            }
+            JwtToken cached = tokenStore.get(token.getJti());
+            JwtToken locked = (cached != null ? cached : token).copy();
+            locked.setLocked(true);
+            putToken(locked);
+            revocationLog.recordLocked(locked.getJti());
+            rebuildFilterIfNeeded();
+            commit = queueCommit(new JwtToken[] {locked.copy()}, notNull(List.<UUID>of()));
+        }
+        awaitCommit(commit);
+        return true;
+    }
+
+    /**
+     * Refreshed the current cache with values from a storage (when a storage is present). Token generations are 
+     * only increased. This loads the whole storage; the {@link JwtCacheRefreshService} merges only the changes.
+     */
+    public void refreshFromStorage() {
+        refreshFromStorage(() -> {
+            storage.map(JwtStorageService::findTokenGenerations)
+                .ifPresent(stored -> stored.forEach((owner, gen) -> tokenGenerations.merge(owner, gen, Math::max)));
+            Map<UUID, JwtToken> newStore = new ConcurrentHashMap<UUID, JwtToken>();
             storage.map(JwtStorageService::findAll)
-                .orElseGet(ArrayList::new)
-                .stream()
-                .collect(
-                    Collectors.toMap(JwtToken::getJti, Function.identity())
-                )
-        );
+                .ifPresent(stored -> stored.forEach(jwt -> newStore.put(jwt.getJti(), jwt)));
+            return newStore;
+        });
     }
 
     /**
-     * Refreshes the cache with a given strategy. 
+     * Refreshes the cache with a given strategy. The new store is built without blocking other writers. All 
+     * writes which happen in the meantime are recorded and replayed on the new store before it replaces the 
+     * current one, so no lock is lost. Concurrent refreshes run one after another.
      * 
      * @param refreshStrategy strategy to refresh cache; should not return null
      */
-    public synchronized void refreshFromStorage(Supplier<? extends Map<UUID, JwtToken>> refreshStrategy) {
+    public void refreshFromStorage(Supplier<? extends Map<UUID, JwtToken>> refreshStrategy) {
+        synchronized (rebuildLock) {
+            synchronized (writeLock) {
+                rebuildWrites = new LinkedHashMap<UUID, JwtToken>();
+                rebuildRevokedOwners = new HashSet<String>();
+            }
+            try {
+                rebuild(refreshStrategy);
+            } finally {
+                synchronized (writeLock) {
+                    rebuildWrites = null;
+                    rebuildRevokedOwners = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a new store from the given strategy and publishes it together with the writes which were recorded 
+     * since the refresh started. Must be called while holding the rebuild lock.
+     * 
+     * @param refreshStrategy strategy to refresh cache; should not return null
+     */
+    private void rebuild(Supplier<? extends Map<UUID, JwtToken>> refreshStrategy) {
         Map<UUID, JwtToken> newStore = refreshStrategy.get();
         if (newStore == null) {
             throw new RuntimeException("Store supplier in cache provided null");
         }
-        tokenStore = newStore;
+        var copiedStore = new ConcurrentHashMap<UUID, JwtToken>(newStore);
+        var newStates = createStateTable(copiedStore.values());
+        var newOwners = new OwnerIndex();
+        var newIndex = createExpiryIndex(copiedStore.values(), newOwners);
+        dropUnlocked(copiedStore);
+        var newSerials = createSerialSet(copiedStore.values());
+        var newFilter = LockedJtiFilter.of(copiedStore.values());
+        synchronized (writeLock) {
+            var writes = notNull(rebuildWrites);
+            var revokedOwners = notNull(rebuildRevokedOwners);
+            rebuildWrites = null;
+            lockedFilter = newFilter;
+            staleFilterEntries = 0;
+            tokenStates = newStates;
+            tokenStore = copiedStore;
+            expiryIndex = newIndex;
+            ownerIndex = newOwners;
+            lockedSerials = newSerials;
+            writes.values().forEach(this::putToken);
+            revokedOwners.forEach(newOwners::removeOwner);
+            rebuildFilterIfNeeded();
+            revocationLog.reset();
+        }
     }
 
+    /**
+     * Removes all tokens from the cache which are expired at the given time. Expired tokens are rejected during 
+     * decoding anyway, so their lock state isn't needed anymore. The storage is not touched.
+     * 
+     * @param now Time in milliseconds since epoch
+     * @return The JITs of the removed tokens
+     */
+    public List<UUID> evictExpired(long now) {
+        List<UUID> evicted = new ArrayList<UUID>();
+        synchronized (writeLock) {
+            ExpiryEntry oldest = expiryIndex.pollFirst();
+            while (oldest != null && oldest.expiresAt <= now) {
+                long cachedExpiration = tokenStates.getExpiresAt(oldest.jti);
+                if (cachedExpiration > 0 && cachedExpiration <= now) {
+                    boolean wasLocked = tokenStates.isLocked(oldest.jti);
+                    tokenStates.remove(oldest.jti);
+                    ownerIndex.remove(oldest.owner, oldest.jti);
+                    JwtToken removed = tokenStore.remove(oldest.jti);
+                    evicted.add(oldest.jti);
+                    if (wasLocked && removed != null) {
+                        revocationLog.recordRemoved(List.of(oldest.jti));
+                        staleFilterEntries++;
+                    }
+                }
+                oldest = expiryIndex.pollFirst();
+            }
+            if (oldest != null) {
+                expiryIndex.add(oldest);
+            }
+            rebuildFilterIfNeeded();
+        }
+        return evicted;
+    }
+
+    /**
+     * Number of cached tokens.
+     * 
+     * @return Current size of the cache
+     */
+    public int size() {
+        return tokenStates.size();
+    }
+
+    /**
+     * Memory of the primitive state table without the cached token objects.
+     * 
+     * @return Size in bytes
+     */
+    public long getStateTableBytes() {
+        return tokenStates.sizeInBytes();
+    }
 
     /**
      * A set of disabled JITs. 
@@ -117,16 +762,274 @@ public class JwtCache {
      * @param jit The desired cached token
      * @return Optional token; empty when the token with given jit is not in store
      */
-    public synchronized Optional<JwtToken> getCachedToken(@Nullable UUID jit) {
-        JwtToken tokenCopy = tokenStore.get(jit);
-        if (tokenCopy != null) {
-            tokenCopy = tokenCopy.copy();
-        } else {
-//            storage.ifPresent(s -> s.findBJit(jit.toString()));
+    public Optional<JwtToken> getCachedToken(@Nullable UUID jit) {
+        return viewCachedToken(jit).map(ReadOnlyJwtToken::copy);
+    }
+
+    /**
+     * Returns a copy of the token from the cache or - when it isn't cached - from the storage. Unlocked token are 
+     * only cached as objects when the storage can't return them.
+     * 
+     * @param jit The desired token
+     * @return Optional token; empty when the token is neither cached nor stored
+     */
+    public Optional<JwtToken> findToken(@Nullable UUID jit) {
+        Optional<JwtToken> token = getCachedToken(jit);
+        if (token.isEmpty() && jit != null) {
+            token = storage.flatMap(s -> s.findByJti(jit));
+        }
+        return notNull(token);
+    }
+
+    /**
+     * Returns the cached token without copying it. Prefer this over {@link #getCachedToken(UUID)} when the token 
+     * is only read.
+     * 
+     * @param jit The desired cached token
+     * @return Optional read only token; empty when the token with given jit is not in store
+     */
+    public Optional<ReadOnlyJwtToken> viewCachedToken(@Nullable UUID jit) {
+        ReadOnlyJwtToken token = null;
+        if (jit != null) {
+            token = tokenStore.get(jit);
         }
-        return Optional.ofNullable(tokenCopy);
+        return Optional.ofNullable(token);
+    }
+
+    /**
+     * Checks if the state of the token with the given jit is cached. Doesn't block.
+     * 
+     * @param jit The JIT to look for
+     * @return <code>true</code> when the token is cached - as object or only with its state
+     */
+    public boolean contains(UUID jit) {
+        return tokenStates.contains(jit);
+    }
+
+    /**
+     * The JITs of all cached token of a user which weren't revoked together with all token of the user. Locked and 
+     * expired token are included until they are evicted. Doesn't block.
+     * 
+     * @param owner Principal string of the user, see {@link SparkysAuthPrincipal#toIdentifier}
+     * @return Copy of the JITs - empty when the user has no cached token
+     */
+    public Set<UUID> getTokenIdsOf(String owner) {
+        return ownerIndex.get(owner);
+    }
+
+    /**
+     * The JITs of all token of a user which can still be used for authorization: They are neither locked, nor 
+     * expired, nor revoked together with all token of the user. Doesn't block and doesn't touch the storage.
+     * 
+     * @param owner Principal string of the user, see {@link SparkysAuthPrincipal#toIdentifier}
+     * @param now Time in milliseconds since epoch
+     * @return JITs of the active token
+     */
+    public List<UUID> getActiveTokenIdsOf(String owner, long now) {
+        final TokenStateTable states = tokenStates;
+        return ownerIndex.get(owner).stream()
+            .filter(jti -> !states.isLocked(jti))
+            .filter(jti -> {
+                long expiresAt = states.getExpiresAt(jti);
+                return expiresAt == 0 || expiresAt > now;
+            })
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks if a cached token belongs to a user and wasn't revoked together with all token of the user. Doesn't 
+     * block.
+     * 
+     * @param jit The JIT of the token
+     * @param owner Principal string of the user, see {@link SparkysAuthPrincipal#toIdentifier}
+     * @return <code>true</code> when the token is indexed for the user
+     */
+    public boolean isOwnedBy(UUID jit, String owner) {
+        return ownerIndex.contains(owner, jit);
+    }
+
+    /**
+     * The expiration of a cached token with a precision of seconds. Doesn't block.
+     * 
+     * @param jit The JIT of the token
+     * @return Expiration in milliseconds since epoch - -1 when the token isn't cached and 0 when it doesn't expire
+     */
+    public long getExpiresAt(UUID jit) {
+        return tokenStates.getExpiresAt(jit);
+    }
+
+    /**
+     * Number of users with indexed token.
+     * 
+     * @return Size of the owner index
+     */
+    public int getIndexedOwnerCount() {
+        return ownerIndex.ownerCount();
+    }
+
+    /**
+     * Checks if the token with the given jit is cached and locked. This is the lookup of each authorization and 
+     * does neither block nor copy.
+     * 
+     * @param jit The JIT to look for
+     * @return <code>true</code> when the token is known and locked
+     */
+    public boolean isLocked(UUID jit) {
+        final LockedJtiFilter filter = lockedFilter;
+        boolean locked = false;
+        if (filter.mightContain(jit)) {
+            locked = tokenStates.isLocked(jit);
+            if (!locked) {
+                filter.recordFalsePositive();
+            }
+        }
+        return locked;
+    }
+
+    /**
+     * Checks if the given token is locked. Token with a serial are looked up in the compressed serial set first, 
+     * so most unlocked token are answered without a JIT lookup. A hit is confirmed by the JIT, because token of 
+     * different nodes may share a serial. Neither blocks nor copies.
+     * 
+     * @param token The token to check
+     * @return <code>true</code> when the token is locked
+     */
+    public boolean isLocked(ReadOnlyJwtToken token) {
+        long serial = token.getSerial();
+        return serial != 0 ? lockedSerials.contains(serial) && isLocked(token.getJti()) : isLocked(token.getJti());
+    }
+
+    /**
+     * The false positive rate of the locked JTI filter which was observed since it was built.
+     * 
+     * @return Share of unlocked token for which the map was probed anyway
+     */
+    public double getFilterFalsePositiveRate() {
+        return lockedFilter.getObservedFalsePositiveRate();
+    }
+
+    /**
+     * The false positive rate of the locked JTI filter which is expected for its current number of JTIs.
+     * 
+     * @return Probability between 0 and 1
+     */
+    public double getFilterExpectedFalsePositiveRate() {
+        return lockedFilter.getExpectedFalsePositiveRate();
+    }
+
+    /**
+     * Number of serials of locked token. Serials of token which were unlocked or evicted are counted until the 
+     * serial set is rebuilt.
+     * 
+     * @return Size of the serial set
+     */
+    public long getLockedSerialCount() {
+        return lockedSerials.size();
+    }
+
+    /**
+     * Approximate memory which is needed for the serials of locked token.
+     * 
+     * @return Size in bytes
+     */
+    public long getLockedSerialBytes() {
+        return lockedSerials.sizeInBytes();
     }
     
+    /**
+     * The current token generation of a user. Only token with this generation are valid.
+     * 
+     * @param owner The user
+     * @return Token generation - 0 when the token of the user were never revoked
+     */
+    public int getTokenGeneration(SparkysAuthPrincipal owner) {
+        return tokenGenerations.getOrDefault(owner.asString(), 0);
+    }
+
+    /**
+     * Checks if the token was revoked together with all other token of its owner. This is done in memory and 
+     * does neither block nor copy.
+     * 
+     * @param token The token to check
+     * @return <code>true</code> when the token has an older generation than its owner
+     */
+    public boolean isRevoked(ReadOnlyJwtToken token) {
+        return token.getTokenGeneration() < getTokenGeneration(token.getUserInfo());
+    }
+
+    /**
+     * Revokes all token of the given user by incrementing the token generation of the user. No token is 
+     * modified, but the token are removed from the owner index. When the user is stored, the new generation is 
+     * saved as well.
+     * 
+     * @param user The owner of the token
+     * @return The new token generation of the user
+     */
+    public int revokeAllFrom(SparkyUser user) {
+        String owner = SparkysAuthPrincipal.toIdentifier(user.getUsername(), user.getRealm());
+        int storedGeneration = storage.flatMap(s -> s.incrementTokenGeneration(user)).orElse(0);
+        int generation = notNull(tokenGenerations.merge(owner, Math.max(1, storedGeneration), 
+            (current, ignored) -> Math.max(current + 1, storedGeneration)));
+        synchronized (writeLock) {
+            removeOwner(owner);
+        }
+        revocationLog.recordGeneration(owner);
+        return generation;
+    }
+
+    /**
+     * Applies a token generation which was increased outside of this cache, for example by another node. The 
+     * generation is neither saved nor decreased.
+     * 
+     * @param owner Principal string of the user, see {@link SparkysAuthPrincipal#toIdentifier}
+     * @param generation New token generation
+     * @return <code>true</code> when the generation was increased
+     */
+    public boolean applyTokenGeneration(String owner, int generation) {
+        int previous = tokenGenerations.getOrDefault(owner, 0);
+        int current = notNull(tokenGenerations.merge(owner, generation, Math::max));
+        boolean increased = current == generation && previous < generation;
+        if (increased) {
+            synchronized (writeLock) {
+                removeOwner(owner);
+            }
+            revocationLog.recordGeneration(owner);
+        }
+        return increased;
+    }
+
+    /**
+     * Removes all token of a user from the owner index and - during a refresh - from the index which is built. 
+     * Must be called while holding the write lock.
+     * 
+     * @param owner Principal string of the user, see {@link SparkysAuthPrincipal#toIdentifier}
+     */
+    private void removeOwner(String owner) {
+        ownerIndex.removeOwner(owner);
+        var revokedOwners = rebuildRevokedOwners;
+        if (revokedOwners != null) {
+            revokedOwners.add(owner);
+        }
+    }
+
+    /**
+     * Returns the token generations of all users whose token were revoked as a whole.
+     * 
+     * @return Copy of the generations keyed by {@link SparkysAuthPrincipal#toIdentifier}
+     */
+    public Map<String, Integer> getTokenGenerations() {
+        return new HashMap<String, Integer>(tokenGenerations);
+    }
+
+    /**
+     * The log of all revocation changes of this cache.
+     * 
+     * @return Revocation log
+     */
+    public RevocationLog getRevocationLog() {
+        return revocationLog;
+    }
+
     /**
      * Returns a copy of the currently locked token.
      * 
@@ -141,7 +1044,8 @@ public class JwtCache {
     }
 
     /**
-     * Returns a copy of the stored tokens.
+     * Returns a copy of the cached token objects. When a storage is present, these are only the locked token and 
+     * the token which can't be loaded from the storage.
      * 
      * @return Set of tokens in the cache
      */
@@ -159,7 +1063,7 @@ public class JwtCache {
      * 
      * @return Thread safe instance
      */
-    public static synchronized JwtCache getInstance() {
+    public static JwtCache getInstance() {
         return instance;
     }
 
@@ -179,7 +1083,7 @@ public class JwtCache {
      */
     public static void initNewCache(Collection<JwtToken>  cacheStore, @Nullable JwtStorageService storage) {
         Map<UUID, JwtToken> cacheMap = new ConcurrentHashMap<UUID, JwtToken>();
-        cacheStore.forEach(jwt -> cacheMap.put(jwt.getJti(), jwt));
+        cacheStore.forEach(jwt -> cacheMap.put(jwt.getJti(), jwt.copy()));
         instance = new JwtCache(cacheMap, storage);
     }
 }
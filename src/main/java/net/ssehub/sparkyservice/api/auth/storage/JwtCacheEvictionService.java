@@ -0,0 +1,190 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+
+/**
+ * Evicts expired {@link JwtToken} from {@link JwtCache} and purges them afterwards from the storage. Both steps run
+ * periodically in the background; the storage is purged in batches of a configurable size.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class JwtCacheEvictionService implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(JwtCacheEvictionService.class);
+
+    @Nonnull
+    private final JwtStorageService storageService;
+
+    private final int purgeBatchSize;
+
+    private final Queue<UUID> pendingPurges = new ConcurrentLinkedQueue<UUID>();
+    private final AtomicLong evictedTokens = new AtomicLong();
+    private final AtomicLong purgedTokens = new AtomicLong();
+
+    /**
+     * Service which evicts expired tokens.
+     *
+     * @param storageService Storage where the evicted tokens are purged from
+     * @param purgeBatchSize Maximum number of tokens which are deleted with a single statement
+     */
+    @Autowired
+    public JwtCacheEvictionService(JwtStorageService storageService,
+            @Value("${jwt.eviction.purge-batch-size:500}") int purgeBatchSize) {
+        if (purgeBatchSize < 1) {
+            throw new IllegalArgumentException("jwt.eviction.purge-batch-size must be positive");
+        }
+        this.storageService = storageService;
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    /**
+     * Evicts all expired tokens from the cache and purges them from the storage. Is periodically invoked by spring.
+     */
+    @Scheduled(fixedDelayString = "${jwt.eviction.interval-ms:60000}")
+    public void evictExpired() {
+        evict(System.currentTimeMillis());
+        purgePending();
+    }
+
+    /**
+     * Evicts all tokens from the cache which are expired at the given time. The tokens are marked for the next
+     * purge of the storage.
+     *
+     * @param now Time in milliseconds since epoch
+     * @return Number of evicted tokens
+     */
+    public int evict(long now) {
+        List<UUID> evicted = JwtCache.getInstance().evictExpired(now);
+        pendingPurges.addAll(evicted);
+        evictedTokens.addAndGet(evicted.size());
+        if (!evicted.isEmpty()) {
+            log.debug("Evicted {} expired JWT token from cache", evicted.size());
+        }
+        return evicted.size();
+    }
+
+    /**
+     * Deletes all evicted tokens from the storage. Each batch is deleted with a single statement. When the storage
+     * isn't available, the remaining tokens are kept for the next run.
+     *
+     * @return Number of purged tokens
+     */
+    public int purgePending() {
+        int purged = 0;
+        List<UUID> batch = nextBatch();
+        while (!batch.isEmpty()) {
+            try {
+                storageService.delete(batch);
+            } catch (DataAccessException e) {
+                log.warn("Could not purge expired JWT token from storage: {}", e.getMessage());
+                pendingPurges.addAll(batch);
+                break;
+            }
+            purged += batch.size();
+            purgedTokens.addAndGet(batch.size());
+            batch = nextBatch();
+        }
+        return purged;
+    }
+
+    /**
+     * Removes the next batch from the pending purges.
+     *
+     * @return List with at most {@link #purgeBatchSize} entries - empty if nothing is pending
+     */
+    private List<UUID> nextBatch() {
+        List<UUID> batch = new ArrayList<UUID>(purgeBatchSize);
+        UUID jti = pendingPurges.poll();
+        while (jti != null) {
+            batch.add(jti);
+            jti = batch.size() < purgeBatchSize ? pendingPurges.poll() : null;
+        }
+        return batch;
+    }
+
+    /**
+     * Total number of tokens which were evicted from the cache.
+     *
+     * @return Eviction counter
+     */
+    public long getEvictedTokenCount() {
+        return evictedTokens.get();
+    }
+
+    /**
+     * Total number of evicted tokens which were purged from the storage.
+     *
+     * @return Purge counter
+     */
+    public long getPurgedTokenCount() {
+        return purgedTokens.get();
+    }
+
+    /**
+     * Number of evicted tokens which are not purged from the storage yet.
+     *
+     * @return Tokens waiting for the next purge
+     */
+    public int getPendingPurgeCount() {
+        return pendingPurges.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("sparky.jwt.cache.evicted", evictedTokens, AtomicLong::get)
+            .description("Expired JWT token evicted from the cache")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.storage.purged", purgedTokens, AtomicLong::get)
+            .description("Expired JWT token purged from the storage")
+            .register(registry);
+        Gauge.builder("sparky.jwt.storage.purge.pending", pendingPurges, Queue::size)
+            .description("Evicted JWT token which are not purged from the storage yet")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.size", () -> JwtCache.getInstance().size())
+            .description("Number of cached JWT token")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.states.bytes", () -> JwtCache.getInstance().getStateTableBytes())
+            .description("Memory of the primitive JWT state table")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.owners", () -> JwtCache.getInstance().getIndexedOwnerCount())
+            .description("Users with indexed JWT token")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.filter.fpp", () -> JwtCache.getInstance().getFilterFalsePositiveRate())
+            .description("Observed false positive rate of the locked JTI filter")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.filter.fpp.expected", 
+            () -> JwtCache.getInstance().getFilterExpectedFalsePositiveRate())
+            .description("Expected false positive rate of the locked JTI filter")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.serials.locked", () -> JwtCache.getInstance().getLockedSerialCount())
+            .description("Locked JWT token in the compressed serial set")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.serials.bytes", () -> JwtCache.getInstance().getLockedSerialBytes())
+            .description("Approximate memory of the compressed serial set")
+            .register(registry);
+    }
+}
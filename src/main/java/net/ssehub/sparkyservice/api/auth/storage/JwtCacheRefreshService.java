@@ -0,0 +1,177 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.token.JpaJwtToken;
+
+/**
+ * Merges locked token which were changed in the storage, for example by another node, into the {@link JwtCache}.
+ * Each locked token is saved with a change version from a database sequence (see
+ * {@link JpaJwtToken#getChangeVersion()}) and each refresh only loads the token with a greater version than the
+ * previous refresh, so its cost depends on the number of changes and not on the size of the table. The cache is
+ * never replaced and readers are never blocked. <br>
+ * A version is taken before its transaction commits, so a lower version may become visible after a greater one.
+ * Skipped versions are loaded again until they show up or a timeout passes (see {@link VersionWatermark}). Unlocks
+ * aren't merged: A stored row may be older than the cached state while saves are queued, and a lock must never be
+ * lost this way. Unlocks are propagated through the {@link RevocationSyncService}.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class JwtCacheRefreshService implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(JwtCacheRefreshService.class);
+
+    @Nonnull
+    private final JwtStorageService storageService;
+
+    private final boolean enabled;
+
+    private final int pageSize;
+
+    @Nonnull
+    private final VersionWatermark watermark;
+
+    private volatile long lastRefreshMs;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong loadedTokens = new AtomicLong();
+    private final AtomicLong mergedTokens = new AtomicLong();
+    private final AtomicLong durationMs = new AtomicLong();
+    private final AtomicLong gapSize = new AtomicLong();
+
+    /**
+     * Service which refreshes the cache incrementally. Starts after the greatest change version which is stored
+     * now; older changes are already part of the storage which the cache is loaded from.
+     *
+     * @param storageService Storage where the changed token are loaded from
+     * @param enabled Decides if the cache is refreshed at all
+     * @param pageSize Maximum number of token which are loaded with a single query
+     * @param gapTimeoutMs Time after which a skipped change version is given up
+     */
+    @Autowired
+    public JwtCacheRefreshService(JwtStorageService storageService,
+            @Value("${jwt.refresh.enabled:false}") boolean enabled,
+            @Value("${jwt.refresh.page-size:1000}") int pageSize,
+            @Value("${jwt.refresh.gap-timeout-ms:10000}") long gapTimeoutMs) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("jwt.refresh.page-size must be positive");
+        }
+        this.storageService = storageService;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        this.watermark = new VersionWatermark(enabled ? storageService.findMaxChangeVersion() : 0, gapTimeoutMs);
+        this.lastRefreshMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Merges the changes since the last refresh. Is periodically invoked by spring.
+     */
+    @Scheduled(fixedDelayString = "${jwt.refresh.interval-ms:30000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            try {
+                refresh();
+            } catch (DataAccessException e) {
+                log.warn("Could not refresh the JWT cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Loads all locked token which were skipped before or have a greater change version than the previous refresh
+     * and merges them into the current cache.
+     *
+     * @return Number of token which were locked in the cache by this refresh
+     */
+    public synchronized int refresh() {
+        long start = System.currentTimeMillis();
+        var merged = new AtomicLong();
+        long loaded = 0;
+        for (var gap : watermark.getGaps()) {
+            var page = storageService.findLockedChangedBetween(gap.getFrom(), gap.getTo());
+            merged.addAndGet(merge(page, start));
+            loaded += page.values().stream().mapToInt(List::size).sum();
+        }
+        loaded += storageService.forEachLockedPageChangedAfter(watermark.getVersion(), pageSize,
+            page -> merged.addAndGet(merge(page, start)));
+        watermark.expireGaps(start);
+        lastRefreshMs = start;
+        durationMs.set(System.currentTimeMillis() - start);
+        gapSize.set(watermark.getGapSize());
+        refreshes.incrementAndGet();
+        loadedTokens.addAndGet(loaded);
+        mergedTokens.addAndGet(merged.get());
+        if (merged.get() > 0) {
+            log.debug("Merged {} of {} changed JWT token into the cache", merged.get(), loaded);
+        }
+        return (int) merged.get();
+    }
+
+    /**
+     * Merges a page of changed token into the cache and advances the watermark.
+     *
+     * @param page Change versions mapped to the token which were saved with them
+     * @param now Start of the refresh
+     * @return Number of token which were locked in the cache
+     */
+    private int merge(SortedMap<Long, List<JwtToken>> page, long now) {
+        page.keySet().forEach(version -> watermark.advance(version, now));
+        var tokens = new ArrayList<JwtToken>();
+        page.values().forEach(tokens::addAll);
+        return JwtCache.getInstance().merge(tokens);
+    }
+
+    /**
+     * The change version up to which changes are merged.
+     *
+     * @return Greatest merged version
+     */
+    public synchronized long getVersion() {
+        return watermark.getVersion();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("sparky.jwt.cache.refresh.count", refreshes, AtomicLong::get)
+            .description("Incremental refreshes of the JWT cache")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.cache.refresh.loaded", loadedTokens, AtomicLong::get)
+            .description("Changed JWT token loaded from the storage")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.cache.refresh.merged", mergedTokens, AtomicLong::get)
+            .description("Loaded JWT token which were locked in the cache")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.refresh.duration", durationMs, AtomicLong::get)
+            .description("Time in milliseconds which was needed for the latest refresh")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.refresh.gaps", gapSize, AtomicLong::get)
+            .description("Skipped change versions which are loaded again until they show up or time out")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.refresh.lag", this,
+            s -> TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - s.lastRefreshMs))
+            .description("Seconds since the changes were merged the last time")
+            .register(registry);
+    }
+}
@@ -0,0 +1,270 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+
+/**
+ * Fills the {@link JwtCache} with the token of the storage which aren't expired when the application starts. Locked
+ * token are needed for the revocation checks and unlocked ones for the session of each user. The token are loaded
+ * page by page on a background thread, so the startup doesn't wait for the storage. The existing cache instance is
+ * filled in place, so references to it stay valid. <br>
+ * Until the warm up is finished, the health of this service is OUT_OF_SERVICE and the {@link
+ * net.ssehub.sparkyservice.api.auth.JwtAuthorizationFilter} answers requests with a JWT token with <code>503</code>
+ * because locked token aren't known yet. <br>
+ * When the storage service has a revocation journal from a previous run, the journaled token are cached during the 
+ * startup and the service is ready right away. The storage is then only reconciled in the background: Journaled 
+ * token which are missing in the storage are saved again. A journal which wasn't recovered, for example a new or 
+ * stale one, is filled with the stored locks during the warm up and marked as complete afterwards.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class JwtCacheWarmupService implements HealthIndicator, MeterBinder {
+
+    /**
+     * State of the warm up.
+     *
+     * @author marcel
+     */
+    public enum State {
+        PENDING, LOADING, FINISHED, FAILED
+    }
+
+    private final Logger log = LoggerFactory.getLogger(JwtCacheWarmupService.class);
+
+    @Nonnull
+    private final JwtStorageService storageService;
+
+    private final int pageSize;
+
+    private final boolean async;
+
+    @Nonnull
+    private volatile State state = State.PENDING;
+
+    @Nullable
+    private volatile String failure;
+
+    @Nullable
+    private volatile Thread worker;
+
+    private volatile boolean journalLoaded;
+
+    @Nonnull
+    private final Map<UUID, JwtToken> unconfirmedJournalTokens = new HashMap<UUID, JwtToken>();
+
+    private final AtomicLong loadedTokens = new AtomicLong();
+    private final AtomicLong cachedTokens = new AtomicLong();
+    private final AtomicLong loadedPages = new AtomicLong();
+    private final AtomicLong durationMs = new AtomicLong();
+    private final AtomicLong journalTokens = new AtomicLong();
+
+    /**
+     * Service which warms up the cache.
+     *
+     * @param storageService Storage where the locked token are loaded from
+     * @param pageSize Maximum number of token which are loaded with a single query
+     * @param async Decides if the token are loaded on a background thread or during the startup
+     */
+    @Autowired
+    public JwtCacheWarmupService(JwtStorageService storageService,
+            @Value("${jwt.warmup.page-size:1000}") int pageSize, @Value("${jwt.warmup.async:true}") boolean async) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("jwt.warmup.page-size must be positive");
+        }
+        this.storageService = storageService;
+        this.pageSize = pageSize;
+        this.async = async;
+    }
+
+    /**
+     * Attaches the storage to the current cache, caches the journaled token and starts loading the stored token. 
+     * Token which are cached before the load reaches them aren't overwritten. Is invoked by spring.
+     */
+    @PostConstruct
+    public void start() {
+        JwtCache.getInstance().attachStorage(storageService);
+        loadJournal();
+        if (async) {
+            var thread = new Thread(this::warmup, "jwt-cache-warmup");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        } else {
+            warmup();
+        }
+    }
+
+    /**
+     * Caches the locked token of the revocation journal.
+     */
+    private void loadJournal() {
+        long start = System.nanoTime();
+        var journaled = storageService.findJournaledTokens();
+        if (!journaled.isEmpty()) {
+            JwtCache.getInstance().loadFromStorage(journaled);
+            synchronized (unconfirmedJournalTokens) {
+                journaled.forEach(token -> unconfirmedJournalTokens.put(token.getJti(), token));
+            }
+        }
+        journalTokens.set(journaled.size());
+        journalLoaded = storageService.isJournalRecovered();
+        if (journalLoaded) {
+            log.info("Loaded {} locked JWT token from the journal in {} ms", journaled.size(), 
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Stops a running warm up. Is invoked by spring.
+     */
+    @PreDestroy
+    public void stop() {
+        final Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Loads all token which aren't expired into the current cache.
+     */
+    public void warmup() {
+        state = State.LOADING;
+        long start = System.nanoTime();
+        try {
+            long loaded = storageService.forEachActivePage(pageSize, page -> {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException("JWT cache warm up was interrupted");
+                }
+                cachedTokens.addAndGet(JwtCache.getInstance().loadFromStorage(page));
+                loadedTokens.addAndGet(page.size());
+                loadedPages.incrementAndGet();
+                synchronized (unconfirmedJournalTokens) {
+                    page.forEach(token -> unconfirmedJournalTokens.remove(token.getJti()));
+                }
+                if (!journalLoaded) {
+                    storageService.journalStoredLocks(page);
+                }
+            });
+            saveUnconfirmedJournalTokens();
+            if (!journalLoaded) {
+                storageService.completeJournal();
+            }
+            durationMs.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            state = State.FINISHED;
+            log.info("Loaded {} JWT token in {} ms", loaded, durationMs.get());
+        } catch (RuntimeException e) {
+            durationMs.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            failure = e.getMessage();
+            state = State.FAILED;
+            log.error("Could not load JWT token into the cache", e);
+        } finally {
+            worker = null;
+        }
+    }
+
+    /**
+     * Saves the journaled token which weren't found in the storage. They were probably queued for saving when 
+     * the application stopped.
+     */
+    private void saveUnconfirmedJournalTokens() {
+        JwtToken[] missing;
+        synchronized (unconfirmedJournalTokens) {
+            missing = unconfirmedJournalTokens.values().toArray(JwtToken[]::new);
+            unconfirmedJournalTokens.clear();
+        }
+        if (missing.length > 0) {
+            log.info("Save {} journaled JWT token which are missing in the storage", missing.length);
+            storageService.commit(missing);
+        }
+    }
+
+    /**
+     * The current state of the warm up.
+     *
+     * @return Warm up state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Indicates if all locked token are cached, so revocation checks are correct. Unlocked token of the storage may 
+     * still be loading when the locked ones were recovered from the journal.
+     *
+     * @return <code>true</code> when the warm up is finished or the token were recovered from the journal
+     */
+    public boolean isReady() {
+        return state == State.FINISHED || journalLoaded && state != State.FAILED;
+    }
+
+    /**
+     * Number of token which were loaded from the storage.
+     *
+     * @return Loaded rows
+     */
+    public long getLoadedTokenCount() {
+        return loadedTokens.get();
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder;
+        if (state == State.FAILED) {
+            builder = Health.down().withDetail("error", String.valueOf(failure));
+        } else if (isReady()) {
+            builder = Health.up();
+        } else {
+            builder = Health.outOfService();
+        }
+        return builder.withDetail("state", state)
+            .withDetail("journalToken", journalTokens.get())
+            .withDetail("loadedToken", loadedTokens.get())
+            .withDetail("durationMs", durationMs.get())
+            .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("sparky.jwt.cache.warmup.duration", durationMs, AtomicLong::get)
+            .description("Time in milliseconds which was needed to load the JWT token")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.cache.warmup.loaded", loadedTokens, AtomicLong::get)
+            .description("JWT token loaded from the storage at startup")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.cache.warmup.cached", cachedTokens, AtomicLong::get)
+            .description("Loaded JWT token which weren't cached before")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.cache.warmup.pages", loadedPages, AtomicLong::get)
+            .description("Pages queried during the warm up")
+            .register(registry);
+        Gauge.builder("sparky.jwt.cache.warmup.ready", this, s -> s.isReady() ? 1 : 0)
+            .description("1 when all locked JWT token are cached")
+            .register(registry);
+    }
+}
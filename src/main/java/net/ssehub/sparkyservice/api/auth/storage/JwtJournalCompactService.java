@@ -0,0 +1,43 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Periodically compacts the revocation journal of {@link JwtStorageService} into a new snapshot. Thus the snapshot
+ * is written in the background and not by the request which journals the last event. The service only exists when
+ * a journal directory is configured (<code>jwt.storage.journal-directory</code>).
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+@ConditionalOnProperty(prefix = "jwt.storage", name = "journal-directory")
+public class JwtJournalCompactService {
+
+    @Nonnull
+    private final JwtStorageService storageService;
+
+    /**
+     * Service which compacts the journal.
+     *
+     * @param storageService Storage with the journal
+     */
+    @Autowired
+    public JwtJournalCompactService(JwtStorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    /**
+     * Writes a new snapshot when the journal got too long. Is periodically invoked by spring.
+     */
+    @Scheduled(fixedDelayString = "${jwt.storage.journal-compact-interval-ms:1000}")
+    public void scheduledCompaction() {
+        storageService.compactJournal();
+    }
+}
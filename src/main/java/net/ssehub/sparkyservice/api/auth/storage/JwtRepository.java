@@ -1,13 +1,22 @@
 package net.ssehub.sparkyservice.api.auth.storage;
 
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import net.ssehub.sparkyservice.api.jpa.token.JpaJwtToken;
+import net.ssehub.sparkyservice.api.jpa.token.JwtChangeSequenceContributor;
 import net.ssehub.sparkyservice.api.jpa.user.User;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 
 @Repository
 public interface JwtRepository extends CrudRepository<JpaJwtToken, String> {
@@ -16,4 +25,119 @@ public interface JwtRepository extends CrudRepository<JpaJwtToken, String> {
     List<JpaJwtToken> findByUser(User user);
 
     Set<JpaJwtToken> findByLocked(boolean nonLocked);
+
+    /**
+     * Finds locked and unlocked tokens which aren't expired at the given time, ordered by their JTI. Tokens without 
+     * expiration date are included. Pages are selected by the last JTI of the previous page, so late pages are as 
+     * fast as the first one. The owners are fetched with the same statement.
+     * 
+     * @param now Tokens which expire until this time are skipped
+     * @param afterJti Only tokens with a greater JTI are returned - empty string for the first page
+     * @param page Limits the number of tokens - only the size is used
+     * @return Next page of tokens
+     */
+    @Query("select t from JpaJwtToken t join fetch t.user where "
+        + "(t.expirationTime is null or t.expirationTime > :now) and t.jti > :afterJti order by t.jti")
+    List<JpaJwtToken> findNotExpiredAfter(@Param("now") Timestamp now, @Param("afterJti") String afterJti,
+            Pageable page);
+
+    /**
+     * Finds the unlocked tokens of a single user which aren't expired at the given time. Tokens without expiration 
+     * date are included. Used to list the sessions of a user, including the ones which were issued by other nodes.
+     * 
+     * @param userName Name of the owner
+     * @param realm Realm of the owner
+     * @param now Tokens which expire until this time are skipped
+     * @return Unlocked tokens of the user
+     */
+    @Query("select t from JpaJwtToken t join fetch t.user u where u.userName = :userName and u.realm = :realm "
+        + "and t.locked = false and (t.expirationTime is null or t.expirationTime > :now)")
+    List<JpaJwtToken> findUnlockedOfUser(@Param("userName") String userName, @Param("realm") UserRealm realm, 
+            @Param("now") Timestamp now);
+
+    /**
+     * Finds locked tokens with a greater change version, ordered by their version and JTI. The owners are fetched 
+     * with the same statement.
+     * 
+     * @param afterVersion Only tokens with a greater change version are returned
+     * @param page Limits the number of tokens - only the size is used
+     * @return First page of tokens
+     */
+    @Query("select t from JpaJwtToken t join fetch t.user where t.locked = true and t.changeVersion > :afterVersion "
+        + "order by t.changeVersion, t.jti")
+    List<JpaJwtToken> findLockedChangedAfter(@Param("afterVersion") long afterVersion, Pageable page);
+
+    /**
+     * Finds the next page of locked tokens after the last token of the previous page, ordered by their version and 
+     * JTI. Tokens which were saved together share a version, so the JTI is needed to continue within a version.
+     * 
+     * @param afterVersion Change version of the last token of the previous page
+     * @param afterJti JTI of the last token of the previous page
+     * @param page Limits the number of tokens - only the size is used
+     * @return Next page of tokens
+     */
+    @Query("select t from JpaJwtToken t join fetch t.user where t.locked = true and (t.changeVersion > :afterVersion "
+        + "or (t.changeVersion = :afterVersion and t.jti > :afterJti)) order by t.changeVersion, t.jti")
+    List<JpaJwtToken> findLockedChangedAfter(@Param("afterVersion") long afterVersion, 
+            @Param("afterJti") String afterJti, Pageable page);
+
+    /**
+     * Finds locked tokens whose change version is in the given range, ordered by their version.
+     * 
+     * @param from Smallest version
+     * @param to Greatest version
+     * @return Tokens in the range
+     */
+    @Query("select t from JpaJwtToken t join fetch t.user where t.locked = true "
+        + "and t.changeVersion between :from and :to order by t.changeVersion")
+    List<JpaJwtToken> findLockedChangedBetween(@Param("from") long from, @Param("to") long to);
+
+    /**
+     * Finds the greatest change version of all stored tokens.
+     * 
+     * @return Version - 0 when no token was saved as locked
+     */
+    @Query("select coalesce(max(t.changeVersion), 0) from JpaJwtToken t")
+    long findMaxChangeVersion();
+
+    /**
+     * Takes the next change version from the sequence (see {@link JwtChangeSequenceContributor}). Versions which are 
+     * taken by a transaction which is rolled back are never used.
+     * 
+     * @return New version
+     */
+    @Transactional
+    @Query(value = "select nextval('jwt_token_change_seq')", nativeQuery = true)
+    long nextChangeVersion();
+
+    /**
+     * Finds tokens which expired before the given time, the oldest first. Uses the index on the expiration, so a 
+     * page is found without scanning the table. Tokens without expiration date are never returned.
+     * 
+     * @param before Only tokens which expired before this time are returned
+     * @param page Limits the number of tokens - only the size is used
+     * @return JTIs of the expired tokens
+     */
+    @Query("select t.jti from JpaJwtToken t where t.expirationTime < :before order by t.expirationTime")
+    List<String> findExpiredJtis(@Param("before") Timestamp before, Pageable page);
+
+    /**
+     * Finds which of the given tokens are already stored with a single statement.
+     * 
+     * @param jtis
+     * @return JTIs of the stored tokens
+     */
+    @Query("select t.jti from JpaJwtToken t where t.jti in :jtis")
+    Set<String> findStoredJtis(@Param("jtis") Collection<String> jtis);
+
+    /**
+     * Deletes all tokens with the given JITs in a single statement (without loading them first).
+     * 
+     * @param jtis
+     * @return Number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from JpaJwtToken t where t.jti in :jtis")
+    int deleteByJtiIn(@Param("jtis") Collection<String> jtis);
 }
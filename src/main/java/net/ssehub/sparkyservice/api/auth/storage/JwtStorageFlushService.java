@@ -0,0 +1,42 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Periodically saves the token which {@link JwtStorageService} queued for write behind. The service only exists
+ * when write behind is enabled (<code>jwt.storage.write-behind</code>), so no flush is scheduled otherwise.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+@ConditionalOnProperty(prefix = "jwt.storage", name = "write-behind", havingValue = "true")
+public class JwtStorageFlushService {
+
+    @Nonnull
+    private final JwtStorageService storageService;
+
+    /**
+     * Service which flushes the write behind queue.
+     *
+     * @param storageService Storage with the write behind queue
+     */
+    @Autowired
+    public JwtStorageFlushService(JwtStorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    /**
+     * Saves all queued token. Is periodically invoked by spring.
+     */
+    @Scheduled(fixedDelayString = "${jwt.storage.flush-interval-ms:500}")
+    public void scheduledFlush() {
+        storageService.flush();
+    }
+}
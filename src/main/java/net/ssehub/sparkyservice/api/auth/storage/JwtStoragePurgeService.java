@@ -0,0 +1,141 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Deletes expired token rows from the storage, also the ones which were never cached by this node, for example
+ * because they were issued by another node or before a restart. The {@link JwtCacheEvictionService} only purges the
+ * token which it evicted from the cache. <br>
+ * Rows are found through the index on the expiration and deleted in chunks of a configurable size. Each chunk is a
+ * short transaction of its own, so a purge never holds locks on many rows. The number of chunks per run is limited;
+ * a large backlog is deleted over multiple runs. <br>
+ * The purge is disabled by default and must be enabled with <code>jwt.purge.enabled</code>.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class JwtStoragePurgeService implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(JwtStoragePurgeService.class);
+
+    @Nonnull
+    private final JwtStorageService storageService;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final int maxBatches;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong purgedTokens = new AtomicLong();
+    private final AtomicLong lastPurged = new AtomicLong();
+    private final AtomicLong durationMs = new AtomicLong();
+
+    /**
+     * Service which purges expired token rows.
+     *
+     * @param storageService Storage where the expired token are deleted from
+     * @param enabled Decides if expired token are purged at all - <code>false</code> by default
+     * @param batchSize Maximum number of token which are deleted with a single statement
+     * @param maxBatches Maximum number of statements per run
+     */
+    @Autowired
+    public JwtStoragePurgeService(JwtStorageService storageService,
+            @Value("${jwt.purge.enabled:false}") boolean enabled,
+            @Value("${jwt.purge.batch-size:500}") int batchSize,
+            @Value("${jwt.purge.max-batches:100}") int maxBatches) {
+        if (batchSize < 1 || maxBatches < 1) {
+            throw new IllegalArgumentException("jwt.purge.batch-size and jwt.purge.max-batches must be positive");
+        }
+        this.storageService = storageService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    /**
+     * Purges expired token. Is periodically invoked by spring.
+     */
+    @Scheduled(fixedDelayString = "${jwt.purge.interval-ms:3600000}")
+    public void scheduledPurge() {
+        if (enabled) {
+            try {
+                purge(System.currentTimeMillis());
+            } catch (DataAccessException e) {
+                log.warn("Could not purge expired JWT token from storage: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes token which expired before the given time, chunk by chunk, until no expired token is left or the
+     * maximum number of chunks was deleted.
+     *
+     * @param now Time in milliseconds since epoch
+     * @return Number of deleted token
+     */
+    public synchronized int purge(long now) {
+        long start = System.currentTimeMillis();
+        var before = new Timestamp(now);
+        int purged = 0;
+        int batches = 0;
+        int deleted;
+        do {
+            deleted = storageService.deleteExpired(before, batchSize);
+            purged += deleted;
+            purgedTokens.addAndGet(deleted);
+            batches++;
+        } while (deleted == batchSize && batches < maxBatches);
+        runs.incrementAndGet();
+        lastPurged.set(purged);
+        durationMs.set(System.currentTimeMillis() - start);
+        if (purged > 0) {
+            log.debug("Purged {} expired JWT token from storage with {} statements", purged, batches);
+        }
+        return purged;
+    }
+
+    /**
+     * Total number of token which were purged by this service.
+     *
+     * @return Purge counter
+     */
+    public long getPurgedTokenCount() {
+        return purgedTokens.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("sparky.jwt.storage.expired.runs", runs, AtomicLong::get)
+            .description("Runs of the purge of expired JWT token rows")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.storage.expired.purged", purgedTokens, AtomicLong::get)
+            .description("Expired JWT token rows deleted from the storage")
+            .register(registry);
+        Gauge.builder("sparky.jwt.storage.expired.last", lastPurged, AtomicLong::get)
+            .description("Expired JWT token rows deleted by the latest run")
+            .register(registry);
+        Gauge.builder("sparky.jwt.storage.expired.duration", durationMs, AtomicLong::get)
+            .description("Time in milliseconds which was needed for the latest run")
+            .register(registry);
+    }
+}
@@ -2,21 +2,49 @@ package net.ssehub.sparkyservice.api.auth.storage;
 
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.jwt.ReadOnlyJwtToken;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtStorageSettings;
 import net.ssehub.sparkyservice.api.jpa.token.JpaJwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.User;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.user.SparkyUser;
 import net.ssehub.sparkyservice.api.user.storage.NoTransactionUnitException;
 import net.ssehub.sparkyservice.api.user.storage.UserNotFoundException;
@@ -29,7 +57,7 @@ import net.ssehub.sparkyservice.api.util.SparkyUtil;
  * @author marcel
  */
 @Service
-public class JwtStorageService {
+public class JwtStorageService implements MeterBinder {
 
     private final Logger log = LoggerFactory.getLogger(JwtStorageService.class);
 
@@ -38,18 +66,86 @@ public class JwtStorageService {
 
     @Nonnull
     private final UserStorageService userStorageService;
+
+    @Nonnull
+    private final JwtStorageSettings settings;
+
+    @Nullable
+    private final JwtWriteBehindQueue writeBehindQueue;
+
+    @Nullable
+    private final RevocationJournal journal;
+
+    @Nonnull
+    private final Object saveLock = new Object();
+
+    @Nonnull
+    private final Object flushLock = new Object();
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushTimeNanos = new AtomicLong();
+    private final AtomicLong synchronousFallbacks = new AtomicLong();
+    private final AtomicLong droppedTokens = new AtomicLong();
     
+    /**
+     * Storage service which persists every committed token synchronously. 
+     * 
+     * @param repo
+     * @param userStorageService
+     */
+    public JwtStorageService(@Nonnull JwtRepository repo, @Nonnull UserStorageService userStorageService) {
+        this(repo, userStorageService, new JwtStorageSettings());
+    }
+
     /**
      * Constructor for dependency injection. 
      * 
      * @param repo
      * @param userStorageService
+     * @param settings - Decides which tokens are persisted and if they are saved asynchronously
      */
     @Autowired 
-    public JwtStorageService(@Nonnull JwtRepository repo, @Nonnull UserStorageService userStorageService) {
+    public JwtStorageService(@Nonnull JwtRepository repo, @Nonnull UserStorageService userStorageService,
+            @Nonnull JwtStorageSettings settings) {
         super();
         this.repo = repo;
         this.userStorageService = userStorageService;
+        this.settings = settings;
+        if (settings.isRevocationOnly()) {
+            log.info("Only locked JWT token are persisted");
+        }
+        if (settings.isWriteBehind()) {
+            if (settings.getBatchSize() < 1) {
+                throw new IllegalArgumentException("jwt.storage.batch-size must be positive");
+            }
+            this.writeBehindQueue = new JwtWriteBehindQueue(settings.getQueueCapacity());
+        } else {
+            this.writeBehindQueue = null;
+        }
+        this.journal = openJournal(settings);
+    }
+
+    /**
+     * Opens the revocation journal when a directory is configured. The journal is optional: When it can't be 
+     * opened, the token are only saved to the storage.
+     * 
+     * @param settings
+     * @return The journal - <code>null</code> when it isn't configured or can't be opened
+     */
+    @Nullable
+    private RevocationJournal openJournal(JwtStorageSettings settings) {
+        RevocationJournal openedJournal = null;
+        String directory = settings.getJournalDirectory();
+        if (directory != null && !directory.isBlank()) {
+            try {
+                openedJournal = new RevocationJournal(notNull(Path.of(directory)), 
+                    settings.getJournalCompactThreshold(), settings.getJournalMaxAgeMs());
+                log.info("Journal locked JWT token in {}", directory);
+            } catch (IOException e) {
+                log.warn("Could not open revocation journal in {}: {}", directory, e.getMessage());
+            }
+        }
+        return openedJournal;
     }
 
     /**
@@ -62,21 +158,528 @@ public class JwtStorageService {
         return jpaList.stream().map(JwtToken::new).collect(Collectors.toList());
     }
 
+    /**
+     * Finds a single token in the storage. Token which wait for being saved with write behind are found as well.
+     * 
+     * @param jti Identifier of the token
+     * @return The stored token - empty when it isn't stored
+     */
+    public Optional<JwtToken> findByJti(UUID jti) {
+        Optional<JwtToken> token = findQueued(jti);
+        if (token.isEmpty()) {
+            token = repo.findById(notNull(jti.toString())).map(JwtToken::new);
+        }
+        return notNull(token);
+    }
+
+    /**
+     * Indicates if the given token can be found with {@link #findByJti(UUID)} after it was committed. Unlocked 
+     * token aren't saved in revocation only mode, and token of users which aren't stored are never saved.
+     * 
+     * @param token Committed token
+     * @return <code>true</code> when the storage returns the token, <code>false</code> when it must be kept 
+     *     elsewhere
+     */
+    public boolean canLoad(ReadOnlyJwtToken token) {
+        UserRealm realm = token.getUserInfo().getRealm();
+        return (token.isLocked() || !settings.isRevocationOnly()) && realm != UserRealm.MEMORY 
+            && realm != UserRealm.UNKNOWN;
+    }
+
+    /**
+     * Loads all token which aren't expired yet page by page, locked and unlocked ones. Only one page is held in 
+     * memory at once. Unlocked token are loaded as well, so the sessions of each user are known. In revocation only 
+     * mode only locked token are stored.
+     * 
+     * @param pageSize Maximum number of token per page
+     * @param consumer Receives each page
+     * @return Total number of loaded token
+     */
+    public long forEachActivePage(int pageSize, Consumer<List<JwtToken>> consumer) {
+        var now = new Timestamp(System.currentTimeMillis());
+        var pageRequest = PageRequest.of(0, pageSize);
+        String lastJti = "";
+        long count = 0;
+        List<JpaJwtToken> page;
+        do {
+            page = repo.findNotExpiredAfter(now, lastJti, pageRequest);
+            if (!page.isEmpty()) {
+                consumer.accept(page.stream().map(JwtToken::new).collect(Collectors.toList()));
+                lastJti = page.get(page.size() - 1).getJti();
+                count += page.size();
+            }
+        } while (page.size() == pageSize);
+        return count;
+    }
+
+    /**
+     * Finds the unlocked token of a user which aren't expired yet. Nothing is found for users which aren't stored 
+     * and in revocation only mode, because unlocked token aren't saved then.
+     * 
+     * @param owner Owner of the token
+     * @param now Token which expire until this time are skipped
+     * @return Active token of the user
+     */
+    public List<JwtToken> findActiveOf(SparkysAuthPrincipal owner, Timestamp now) {
+        UserRealm realm = owner.getRealm();
+        List<JwtToken> tokens;
+        if (settings.isRevocationOnly() || realm == UserRealm.MEMORY || realm == UserRealm.UNKNOWN) {
+            tokens = new ArrayList<>();
+        } else {
+            tokens = repo.findUnlockedOfUser(owner.getName(), realm, now).stream()
+                .map(JwtToken::new)
+                .collect(Collectors.toList());
+        }
+        return notNull(tokens);
+    }
+
+    /**
+     * Loads all locked token with a greater change version page by page. Only one page is held in memory at once. 
+     * Pages are selected by the version and JTI of the last token of the previous page, so token which share a 
+     * version are split across pages without skipping any.
+     * 
+     * @param afterVersion Change version after which token are loaded
+     * @param pageSize Maximum number of token per page
+     * @param consumer Receives each page, which maps the change versions to the token in ascending order
+     * @return Total number of loaded token
+     */
+    public long forEachLockedPageChangedAfter(long afterVersion, int pageSize,
+            Consumer<SortedMap<Long, List<JwtToken>>> consumer) {
+        var pageRequest = PageRequest.of(0, pageSize);
+        long count = 0;
+        List<JpaJwtToken> page = repo.findLockedChangedAfter(afterVersion, pageRequest);
+        while (!page.isEmpty()) {
+            consumer.accept(byChangeVersion(page));
+            count += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            JpaJwtToken last = page.get(page.size() - 1);
+            page = repo.findLockedChangedAfter(last.getChangeVersion(), last.getJti(), pageRequest);
+        }
+        return count;
+    }
+
+    /**
+     * Loads the locked token whose change version is in the given range.
+     * 
+     * @param from Smallest version
+     * @param to Greatest version
+     * @return Change versions mapped to the token in ascending order
+     */
+    @Nonnull
+    public SortedMap<Long, List<JwtToken>> findLockedChangedBetween(long from, long to) {
+        return byChangeVersion(repo.findLockedChangedBetween(from, to));
+    }
+
+    /**
+     * The greatest change version of all stored token.
+     * 
+     * @return Version - 0 when no token was saved as locked
+     */
+    public long findMaxChangeVersion() {
+        return repo.findMaxChangeVersion();
+    }
+
+    /**
+     * Groups the token by their change versions.
+     * 
+     * @param tokens Stored token
+     * @return Token in ascending order of their versions
+     */
+    @Nonnull
+    private static SortedMap<Long, List<JwtToken>> byChangeVersion(List<JpaJwtToken> tokens) {
+        var page = new TreeMap<Long, List<JwtToken>>();
+        tokens.forEach(token -> page.computeIfAbsent(token.getChangeVersion(), v -> new ArrayList<JwtToken>())
+            .add(new JwtToken(token)));
+        return page;
+    }
+
     /**
      * Saves a JwtToken to the database. This creates a new entry if the token isn't in the storage yet. Otherwise 
-     * it will edit them.
+     * it will edit them. <br>
+     * In revocation only mode, unlocked tokens are skipped without any storage operation. With write behind, 
+     * the tokens are only queued and saved with the next {@link #flush()}. When the queue stays full, the tokens 
+     * are saved synchronously instead. When a journal is configured, lock changes are journaled first.
      * 
      * @param jwt - Desired tokens to saved. Each token will be saved successively
      */
     public void commit(JwtToken... jwt) {
+        final RevocationJournal revocationJournal = journal;
+        if (revocationJournal != null) {
+            try {
+                revocationJournal.record(notNull(Arrays.asList(jwt)));
+            } catch (IOException e) {
+                log.warn("Could not journal JWT token: {}", e.getMessage());
+            }
+        }
+        List<JwtToken> tokens = Arrays.stream(jwt)
+                .filter(obj -> !settings.isRevocationOnly() || obj.isLocked())
+                .collect(Collectors.toList());
+        final JwtWriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            tokens = enqueue(queue, tokens);
+            if (!tokens.isEmpty()) {
+                log.debug("Write behind queue is full, save {} JWT token synchronously", tokens.size());
+                synchronousFallbacks.addAndGet(tokens.size());
+            }
+        }
+        if (!tokens.isEmpty()) {
+            save(tokens);
+        }
+    }
+
+    /**
+     * Persists that the given token were unlocked again. In revocation only mode unlocked token aren't stored, so 
+     * their rows are deleted; otherwise the unlocked state was already saved with {@link #commit(JwtToken...)} and 
+     * nothing happens.
+     * 
+     * @param jtis Identifiers of token which were locked before and are unlocked now
+     */
+    public void commitUnlocked(Collection<UUID> jtis) {
+        if (settings.isRevocationOnly() && !jtis.isEmpty()) {
+            delete(jtis);
+        }
+    }
+
+    /**
+     * Adds the tokens to the write behind queue.
+     * 
+     * @param queue
+     * @param tokens
+     * @return Tokens which couldn't be queued in time
+     */
+    private List<JwtToken> enqueue(JwtWriteBehindQueue queue, List<JwtToken> tokens) {
+        List<JwtToken> rejected = new ArrayList<JwtToken>();
+        for (JwtToken token : tokens) {
+            try {
+                if (!queue.offer(token, settings.getOfferTimeoutMs())) {
+                    rejected.add(token);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.add(token);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Saves the tokens with a single operation. Saves are serialized, so an older state of a token never 
+     * overwrites a newer one. <br>
+     * The owners of all tokens are resolved with one query and the already stored tokens are found with a second 
+     * one. New tokens are inserted in JDBC batches without loading them first; only stored tokens are merged. 
+     * Tokens of users which aren't stored are skipped. Locked tokens get a new change version, so other nodes load 
+     * the lock with their next refresh (see {@link JwtCacheRefreshService}). All locked tokens of one save share 
+     * the version, so it costs a single sequence query.
+     * 
+     * @param tokens
+     */
+    private void save(Collection<JwtToken> tokens) {
+        synchronized (saveLock) {
+            Map<String, User> owners = userStorageService.findUserReferences(
+                tokens.stream().map(JwtToken::getUserInfo).collect(Collectors.toList()));
+            Map<String, JpaJwtToken> jpaTokens = new LinkedHashMap<String, JpaJwtToken>();
+            long changeVersion = 0;
+            for (var token : tokens) {
+                User owner = owners.get(token.getUserInfo().asString());
+                if (owner != null) {
+                    var jpaToken = token.getJpa(owner);
+                    if (jpaToken.isLocked()) {
+                        if (changeVersion == 0) {
+                            changeVersion = repo.nextChangeVersion();
+                        }
+                        jpaToken.setChangeVersion(changeVersion);
+                    }
+                    jpaTokens.put(jpaToken.getJti(), jpaToken);
+                }
+            }
+            if (jpaTokens.size() < tokens.size()) {
+                log.debug("Don't save {} JWT token of users which aren't stored", tokens.size() - jpaTokens.size());
+            }
+            if (!jpaTokens.isEmpty()) {
+                repo.findStoredJtis(jpaTokens.keySet()).forEach(jti -> jpaTokens.get(jti).markStored());
+                try {
+                    repo.saveAll(jpaTokens.values());
+                } catch (DataIntegrityViolationException e) {
+                    log.debug("JWT token were inserted concurrently, update them instead: {}", e.getMessage());
+                    jpaTokens.values().forEach(JpaJwtToken::markStored);
+                    repo.saveAll(jpaTokens.values());
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves all queued tokens in batches. Is periodically invoked by the {@link JwtStorageFlushService} and does 
+     * nothing without write behind. Each batch is taken from the queue at once and the save lock is only held while 
+     * this batch is written, so synchronous saves and deletes aren't blocked by the whole queue. Tokens which were 
+     * deleted or queued again in the meantime are skipped. <br>
+     * When the storage fails, the remaining tokens are queued again for the next run as far as the capacity allows.
+     * 
+     * @return Number of saved tokens
+     */
+    public int flush() {
+        int saved = 0;
+        final JwtWriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            synchronized (flushLock) {
+                List<JwtToken> batch = queue.drain(settings.getBatchSize());
+                while (!batch.isEmpty()) {
+                    long start = System.nanoTime();
+                    try {
+                        synchronized (saveLock) {
+                            List<JwtToken> retained = queue.retainInFlight(batch);
+                            if (!retained.isEmpty()) {
+                                save(retained);
+                            }
+                        }
+                        queue.complete(batch);
+                    } catch (DataAccessException e) {
+                        log.warn("Could not save queued JWT token: {}", e.getMessage());
+                        int dropped = queue.requeue(batch);
+                        if (dropped > 0) {
+                            log.warn("Write behind queue is full, dropped {} unsaved JWT token", dropped);
+                            droppedTokens.addAndGet(dropped);
+                        }
+                        break;
+                    } finally {
+                        flushTimeNanos.addAndGet(System.nanoTime() - start);
+                        flushCount.incrementAndGet();
+                    }
+                    saved += batch.size();
+                    batch = queue.drain(settings.getBatchSize());
+                }
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Indicates if tokens are saved asynchronously by {@link #flush()}.
+     * 
+     * @return <code>true</code> with write behind
+     */
+    public boolean isWriteBehind() {
+        return writeBehindQueue != null;
+    }
+
+    /**
+     * Finds the newest state of a token which waits for being saved.
+     * 
+     * @param jti Identifier of the token
+     * @return The queued token - empty without write behind or when the token isn't queued
+     */
+    public Optional<JwtToken> findQueued(UUID jti) {
+        final JwtWriteBehindQueue queue = writeBehindQueue;
+        return notNull(queue != null ? queue.find(jti) : Optional.<JwtToken>empty());
+    }
+
+    /**
+     * Saves all queued tokens before the application stops and writes a final snapshot of the journal.
+     */
+    @PreDestroy
+    public void shutdown() {
+        int saved = flush();
+        if (saved > 0) {
+            log.info("Saved {} queued JWT token on shutdown", saved);
+        }
+        final RevocationJournal revocationJournal = journal;
+        if (revocationJournal != null) {
+            try {
+                revocationJournal.close();
+            } catch (IOException e) {
+                log.warn("Could not write revocation snapshot: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Locked token which aren't expired from the local journal. Reading them is much faster than querying the 
+     * storage. They may be newer than the stored ones, for example when queued token weren't saved before a crash.
+     * 
+     * @return Journaled locked token - empty without journal
+     */
+    public List<JwtToken> findJournaledTokens() {
+        final RevocationJournal revocationJournal = journal;
+        return revocationJournal != null ? revocationJournal.getLockedTokens() : new ArrayList<JwtToken>();
+    }
+
+    /**
+     * Indicates if the journal was recovered from complete files of a previous run which aren't older than
+     * <code>jwt.storage.journal-max-age-ms</code>. Only then it contains all locked token.
+     * 
+     * @return <code>true</code> when the journal can be used instead of the stored locks
+     */
+    public boolean isJournalRecovered() {
+        final RevocationJournal revocationJournal = journal;
+        return revocationJournal != null && revocationJournal.isRecovered();
+    }
+
+    /**
+     * Journals the locked token which were loaded from the storage. A journal which wasn't recovered needs them 
+     * before it can be marked complete with {@link #completeJournal()}.
+     * 
+     * @param storedTokens Token from the storage - unlocked ones are skipped
+     */
+    public void journalStoredLocks(Collection<JwtToken> storedTokens) {
+        final RevocationJournal revocationJournal = journal;
+        if (revocationJournal != null) {
+            try {
+                revocationJournal.record(notNull(storedTokens.stream()
+                    .filter(JwtToken::isLocked)
+                    .collect(Collectors.toList())));
+            } catch (IOException e) {
+                log.warn("Could not journal stored JWT token: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Marks the journal as complete after all stored locks were journaled with 
+     * {@link #journalStoredLocks(Collection)}, so it is recovered after the next restart.
+     */
+    public void completeJournal() {
+        final RevocationJournal revocationJournal = journal;
+        if (revocationJournal != null) {
+            try {
+                revocationJournal.markComplete();
+            } catch (IOException e) {
+                log.warn("Could not write revocation snapshot: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compacts the journal into a new snapshot when it got too long. Is called periodically by 
+     * {@link JwtJournalCompactService}, so requests which journal token don't wait for the snapshot.
+     * 
+     * @return <code>true</code> when a snapshot was written
+     */
+    public boolean compactJournal() {
+        final RevocationJournal revocationJournal = journal;
+        boolean compacted = false;
+        if (revocationJournal != null) {
+            try {
+                compacted = revocationJournal.compactIfNeeded();
+            } catch (IOException e) {
+                log.warn("Could not write revocation snapshot: {}", e.getMessage());
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Number of tokens which wait for the next {@link #flush()}.
+     * 
+     * @return Queue depth - always 0 without write behind
+     */
+    public int getQueuedTokenCount() {
+        final JwtWriteBehindQueue queue = writeBehindQueue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("sparky.jwt.storage.queue.depth", this, JwtStorageService::getQueuedTokenCount)
+            .description("JWT token which wait for being saved")
+            .register(registry);
+        FunctionTimer.builder("sparky.jwt.storage.flush", this, s -> s.flushCount.get(), 
+            s -> s.flushTimeNanos.get(), TimeUnit.NANOSECONDS)
+            .description("Batches of queued JWT token saved to the storage")
+            .register(registry);
+        final RevocationJournal revocationJournal = journal;
+        if (revocationJournal != null) {
+            Gauge.builder("sparky.jwt.storage.journal.length", revocationJournal, RevocationJournal::getJournalEvents)
+                .description("Journaled lock changes since the last revocation snapshot")
+                .register(registry);
+        }
+        FunctionCounter.builder("sparky.jwt.storage.sync.fallback", synchronousFallbacks, AtomicLong::get)
+            .description("JWT token saved synchronously because the write behind queue was full")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.storage.queue.dropped", droppedTokens, AtomicLong::get)
+            .description("JWT token which failed to save and didn't fit into the write behind queue anymore")
+            .register(registry);
+    }
+
+    /**
+     * Indicates if only locked tokens are persisted.
+     * 
+     * @return <code>true</code> when unlocked tokens are not saved to the storage
+     */
+    public boolean isRevocationOnly() {
+        return settings.isRevocationOnly();
+    }
+
+    /**
+     * Deletes the next chunk of tokens which expired before the given time. The chunk is selected through the 
+     * expiration index and deleted like {@link #delete(Collection)}, so each chunk is a short transaction of its own.
+     * 
+     * @param before Tokens which expired before this time are deleted
+     * @param chunkSize Maximum number of tokens which are deleted
+     * @return Number of deleted tokens - less than the chunk size when no more expired tokens are stored
+     */
+    public int deleteExpired(Timestamp before, int chunkSize) {
+        List<UUID> jtis = repo.findExpiredJtis(before, PageRequest.of(0, chunkSize)).stream()
+            .map(UUID::fromString)
+            .collect(Collectors.toList());
+        return delete(jtis);
+    }
+
+    /**
+     * Deletes the tokens with the given JITs from the storage. Unknown JITs are ignored. Queued tokens are 
+     * removed from the write behind queue as well.
+     * 
+     * @param jtis - Identifiers of the tokens to delete; all of them are deleted with a single statement
+     * @return Number of deleted tokens
+     */
+    public int delete(Collection<UUID> jtis) {
+        int deleted = 0;
+        if (!jtis.isEmpty()) {
+            List<String> jtiStrings = jtis.stream().map(UUID::toString).collect(Collectors.toList());
+            synchronized (saveLock) {
+                final JwtWriteBehindQueue queue = writeBehindQueue;
+                if (queue != null) {
+                    queue.remove(jtis);
+                }
+                final RevocationJournal revocationJournal = journal;
+                if (revocationJournal != null) {
+                    try {
+                        revocationJournal.remove(jtis);
+                    } catch (IOException e) {
+                        log.warn("Could not journal deleted JWT token: {}", e.getMessage());
+                    }
+                }
+                deleted = repo.deleteByJtiIn(notNull(jtiStrings));
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Increments the token generation of the given user in the storage.
+     * 
+     * @param user
+     * @return The new token generation - empty when the user isn't stored
+     */
+    public Optional<Integer> incrementTokenGeneration(SparkyUser user) {
+        Optional<Integer> generation;
         try {
-            List<JpaJwtToken> list = Arrays.stream(jwt)
-                    .map(obj -> obj.getJpa(userStorageService))
-                    .collect(Collectors.toList());
-            repo.saveAll(list);
+            generation = Optional.of(userStorageService.incrementTokenGeneration(user));
         } catch (UserNotFoundException e) {
-           log.debug("Don't safe JWT token to storage for user.");
+            log.debug("Token generation of {}@{} is only known to the cache", user.getUsername(), user.getRealm());
+            generation = Optional.empty();
         }
+        return notNull(generation);
+    }
+
+    /**
+     * Finds the token generation of all users whose token were revoked at least once.
+     * 
+     * @return Token generation per principal string of the user
+     */
+    public Map<String, Integer> findTokenGenerations() {
+        return userStorageService.findTokenGenerations();
     }
 
     /**
@@ -0,0 +1,223 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+
+/**
+ * Bounded queue of {@link JwtToken} which are not saved to a storage yet. Updates of a token which is already
+ * queued replace the queued state instead of adding a second entry, so each token is saved at most once per batch.
+ * <br>
+ * Drained tokens stay in flight until their batch is completed or queued again. Tokens which are removed while they
+ * are in flight are not saved anymore, see {@link #retainInFlight(Collection)}.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class JwtWriteBehindQueue {
+
+    @Nonnull
+    private final Map<UUID, JwtToken> pending = new LinkedHashMap<UUID, JwtToken>();
+    @Nonnull
+    private final Map<UUID, JwtToken> inFlight = new HashMap<UUID, JwtToken>();
+    @Nonnull
+    private final ReentrantLock lock = new ReentrantLock();
+    @Nonnull
+    private final Condition notFull = lock.newCondition();
+    private final int capacity;
+
+    /**
+     * Queue with a maximum number of distinct tokens.
+     *
+     * @param capacity Maximum number of queued tokens - must be positive
+     */
+    JwtWriteBehindQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity of the write behind queue must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a copy of the given token. When the token is already queued or in flight, the queued state is replaced 
+     * or added without waiting for space, so a newer state is always saved after an older one. Otherwise this waits 
+     * until space is available.
+     *
+     * @param token The token to queue
+     * @param timeoutMs Maximum time to wait for space in milliseconds
+     * @return <code>true</code> when the token was queued, <code>false</code> when the queue stayed full
+     * @throws InterruptedException When the thread is interrupted while waiting
+     */
+    boolean offer(JwtToken token, long timeoutMs) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (!pending.containsKey(token.getJti()) && !inFlight.containsKey(token.getJti()) 
+                    && pending.size() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            pending.put(token.getJti(), token.copy());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues tokens again which couldn't be saved. Tokens which were queued or removed in the meantime are skipped 
+     * because the queued state is newer. The capacity is respected: Locked tokens are queued first and the tokens 
+     * which don't fit anymore are dropped.
+     *
+     * @param tokens Tokens which were removed with {@link #drain(int)}
+     * @return Number of dropped tokens
+     */
+    int requeue(Collection<JwtToken> tokens) {
+        List<JwtToken> ordered = new ArrayList<JwtToken>(tokens);
+        ordered.sort(Comparator.comparing(JwtToken::isLocked).reversed());
+        int dropped = 0;
+        lock.lock();
+        try {
+            for (JwtToken token : ordered) {
+                if (inFlight.remove(token.getJti(), token) && !pending.containsKey(token.getJti())) {
+                    if (pending.size() < capacity) {
+                        pending.put(token.getJti(), token);
+                    } else {
+                        dropped++;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return dropped;
+    }
+
+    /**
+     * Marks drained tokens as saved.
+     *
+     * @param tokens Tokens which were removed with {@link #drain(int)}
+     */
+    void complete(Collection<JwtToken> tokens) {
+        lock.lock();
+        try {
+            tokens.forEach(token -> inFlight.remove(token.getJti(), token));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Filters drained tokens to the ones which are still in flight. Tokens which were removed after they were 
+     * drained must not be saved anymore.
+     *
+     * @param tokens Tokens which were removed with {@link #drain(int)}
+     * @return Tokens which still need to be saved
+     */
+    List<JwtToken> retainInFlight(Collection<JwtToken> tokens) {
+        lock.lock();
+        try {
+            return tokens.stream()
+                .filter(token -> inFlight.get(token.getJti()) == token)
+                .collect(Collectors.toList());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the tokens with the given JITs from the queue and from the tokens in flight.
+     *
+     * @param jtis Identifiers of tokens which must not be saved anymore
+     */
+    void remove(Collection<UUID> jtis) {
+        lock.lock();
+        try {
+            inFlight.keySet().removeAll(jtis);
+            if (pending.keySet().removeAll(jtis)) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the newest state of a token which is queued or in flight.
+     *
+     * @param jti Identifier of the token
+     * @return Copy of the token - empty when it isn't waiting for being saved
+     */
+    Optional<JwtToken> find(UUID jti) {
+        lock.lock();
+        try {
+            JwtToken token = pending.get(jti);
+            if (token == null) {
+                token = inFlight.get(jti);
+            }
+            return token != null ? Optional.of(token.copy()) : Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest queued tokens. They stay in flight until they are completed or queued again.
+     *
+     * @param maxSize Maximum number of returned tokens
+     * @return Removed tokens in the order they were queued - empty when nothing is queued
+     */
+    List<JwtToken> drain(int maxSize) {
+        List<JwtToken> batch = new ArrayList<JwtToken>(Math.min(maxSize, capacity));
+        lock.lock();
+        try {
+            Iterator<JwtToken> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < maxSize) {
+                JwtToken token = iterator.next();
+                batch.add(token);
+                inFlight.put(token.getJti(), token);
+                iterator.remove();
+            }
+            if (!batch.isEmpty()) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return batch;
+    }
+
+    /**
+     * Number of queued tokens.
+     *
+     * @return Current queue depth
+     */
+    int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.maybeNull;
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+
+/**
+ * Recreates a locked token from the few fields which are kept outside of the token table, for example in the
+ * {@link RevocationJournal} or in a change of another node. Such a record only carries what revocation checks
+ * need: no permissions and no user object.
+ *
+ * @author marcel
+ */
+@ParametersAreNonnullByDefault
+final class LockRecord {
+
+    /**
+     * Utility class.
+     */
+    private LockRecord() {
+    }
+
+    /**
+     * Creates a locked token without permissions.
+     *
+     * @param jti Identifier of the token
+     * @param expirationDate Expiration date - <code>null</code> if the token never expires
+     * @param serial Serial of the token - 0 if it has none
+     * @param name Name of the owner
+     * @param realm Realm of the owner
+     * @return Locked token
+     */
+    static @Nonnull JwtToken create(UUID jti, @Nullable Date expirationDate, long serial, String name,
+            UserRealm realm) {
+        var userInfo = new SparkysAuthPrincipal() {
+
+            @Override
+            public @Nonnull String getName() {
+                return name;
+            }
+
+            @Override
+            public @Nonnull UserRealm getRealm() {
+                return realm;
+            }
+
+            @Override
+            public @Nonnull String asString() {
+                return SparkysAuthPrincipal.toIdentifier(name, realm);
+            }
+        };
+        var token = new JwtToken(jti, expirationDate != null ? expirationDate : new Date(0), userInfo,
+            notNull(List.<UserRole>of()));
+        if (expirationDate == null) {
+            token.setExpirationDate(maybeNull(null));
+        }
+        token.setSerial(serial);
+        token.setLocked(true);
+        return token;
+    }
+}
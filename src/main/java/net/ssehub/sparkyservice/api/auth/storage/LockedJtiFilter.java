@@ -0,0 +1,163 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.ssehub.sparkyservice.api.auth.jwt.ReadOnlyJwtToken;
+
+/**
+ * Bloom filter over the JTIs of locked token. When the filter doesn't contain a JTI, the token is definitely not
+ * locked and the token map isn't probed at all. Entries can't be removed; unlocked and evicted token stay in the
+ * filter until it is rebuilt. <br>
+ * Lookups and inserts never block. The filter counts its lookups, so the observed false positive rate can be
+ * reported.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class LockedJtiFilter {
+
+    static final int MIN_CAPACITY = 1024;
+
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+
+    @Nonnull
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int capacity;
+    @Nonnull
+    private final AtomicInteger insertions = new AtomicInteger();
+    @Nonnull
+    private final LongAdder negatives = new LongAdder();
+    @Nonnull
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Empty filter.
+     *
+     * @param capacity Number of JTIs for which the false positive rate stays at about one percent
+     */
+    LockedJtiFilter(int capacity) {
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        int wordCount = (int) Math.min(Integer.MAX_VALUE, ((long) this.capacity * BITS_PER_ENTRY + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * Long.SIZE;
+    }
+
+    /**
+     * Creates a filter with the JTIs of all locked token. The capacity is twice the number of locked token, so the
+     * filter doesn't need to be rebuilt right away.
+     *
+     * @param tokens Token of which only the locked ones are added
+     * @return New filter
+     */
+    static LockedJtiFilter of(Collection<? extends ReadOnlyJwtToken> tokens) {
+        long lockedCount = tokens.stream().filter(ReadOnlyJwtToken::isLocked).count();
+        var filter = new LockedJtiFilter((int) Math.min(Integer.MAX_VALUE / 2, lockedCount) * 2);
+        tokens.stream().filter(ReadOnlyJwtToken::isLocked).forEach(token -> filter.put(token.getJti()));
+        return filter;
+    }
+
+    /**
+     * Computes the i-th bit index of a JTI with double hashing. Random UUIDs are already well distributed.
+     *
+     * @param jti
+     * @param index Number of the hash function
+     * @return Bit index
+     */
+    private long bitIndex(UUID jti, int index) {
+        long hash1 = jti.getLeastSignificantBits();
+        long hash2 = jti.getMostSignificantBits() | 1;
+        return Long.remainderUnsigned(hash1 + index * hash2, bitCount);
+    }
+
+    /**
+     * Adds a JTI.
+     *
+     * @param jti JTI of a locked token
+     */
+    void put(UUID jti) {
+        for (int i = 0; i < HASHES; i++) {
+            long bit = bitIndex(jti, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * Checks if the JTI may be locked.
+     *
+     * @param jti JTI of a token
+     * @return <code>false</code> when the token is definitely not locked
+     */
+    boolean mightContain(UUID jti) {
+        boolean contained = true;
+        for (int i = 0; i < HASHES && contained; i++) {
+            long bit = bitIndex(jti, i);
+            contained = (words.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+        }
+        if (!contained) {
+            negatives.increment();
+        }
+        return contained;
+    }
+
+    /**
+     * Records that a JTI was contained although its token isn't locked.
+     */
+    void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Indicates if more JTIs were added than the filter was sized for.
+     *
+     * @return <code>true</code> when the filter should be rebuilt with a larger capacity
+     */
+    boolean isSaturated() {
+        return insertions.get() > capacity;
+    }
+
+    /**
+     * Number of added JTIs including the ones which aren't locked anymore.
+     *
+     * @return Insertions since the filter was created
+     */
+    int getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * The false positive rate which is expected for the current number of insertions.
+     *
+     * @return Probability between 0 and 1
+     */
+    double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-HASHES * (double) insertions.get() / bitCount), HASHES);
+    }
+
+    /**
+     * The observed false positive rate of all lookups of unlocked token since the filter was created.
+     *
+     * @return Probability between 0 and 1 - 0 when nothing was looked up yet
+     */
+    double getObservedFalsePositiveRate() {
+        long falsePositiveCount = falsePositives.sum();
+        long unlockedLookups = negatives.sum() + falsePositiveCount;
+        return unlockedLookups == 0 ? 0 : (double) falsePositiveCount / unlockedLookups;
+    }
+}
@@ -0,0 +1,124 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
+
+/**
+ * Secondary index from the owner of a token to the JTIs of its token. The owner is identified by
+ * {@link SparkysAuthPrincipal#toIdentifier}. The index only holds JTIs, so it also covers token whose objects
+ * aren't cached. <br>
+ * Lookups never block. Writers must be synchronized among each other.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class OwnerIndex {
+
+    @Nonnull
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The JTIs of a single owner.
+     *
+     * @author marcel
+     */
+    private static final class Entry {
+        @Nonnull
+        private final String owner;
+        @Nonnull
+        private final Set<UUID> jtis = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Entry without JTIs.
+         *
+         * @param owner Identifier of the owner
+         */
+        private Entry(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Adds the JTI of a token. Must be called while holding the write lock of the owner.
+     *
+     * @param owner Identifier of the owner
+     * @param jti Identifier of the token
+     * @return The identifier of the owner as it is held by the index - can be stored instead of the given one, so
+     *         each owner is held only once
+     */
+    @Nonnull
+    String add(String owner, UUID jti) {
+        Entry entry = entries.computeIfAbsent(owner, Entry::new);
+        entry.jtis.add(jti);
+        return entry.owner;
+    }
+
+    /**
+     * Removes the JTI of a token. Owners without token are removed as well. Must be called while holding the write
+     * lock of the owner.
+     *
+     * @param owner Identifier of the owner
+     * @param jti Identifier of the token
+     */
+    void remove(String owner, UUID jti) {
+        Entry entry = entries.get(owner);
+        if (entry != null && entry.jtis.remove(jti) && entry.jtis.isEmpty()) {
+            entries.remove(owner);
+        }
+    }
+
+    /**
+     * Removes all JTIs of an owner. Must be called while holding the write lock of the owner.
+     *
+     * @param owner Identifier of the owner
+     * @return <code>true</code> when the owner had token
+     */
+    boolean removeOwner(String owner) {
+        return entries.remove(owner) != null;
+    }
+
+    /**
+     * The JTIs of all token of an owner. Doesn't block.
+     *
+     * @param owner Identifier of the owner
+     * @return Copy of the JTIs - empty when the owner has no token
+     */
+    @Nonnull
+    Set<UUID> get(String owner) {
+        Entry entry = entries.get(owner);
+        Set<UUID> jtis = entry != null ? new HashSet<UUID>(entry.jtis) : Collections.emptySet();
+        return jtis;
+    }
+
+    /**
+     * Checks if a token belongs to an owner. Doesn't block.
+     *
+     * @param owner Identifier of the owner
+     * @param jti Identifier of the token
+     * @return <code>true</code> when the token is indexed for the owner
+     */
+    boolean contains(String owner, UUID jti) {
+        Entry entry = entries.get(owner);
+        return entry != null && entry.jtis.contains(jti);
+    }
+
+    /**
+     * Number of owners with at least one token.
+     *
+     * @return Number of owners
+     */
+    int ownerCount() {
+        return entries.size();
+    }
+}
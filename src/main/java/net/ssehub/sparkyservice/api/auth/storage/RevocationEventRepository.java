@@ -0,0 +1,58 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import net.ssehub.sparkyservice.api.jpa.token.JpaRevocationEvent;
+
+@Repository
+public interface RevocationEventRepository extends CrudRepository<JpaRevocationEvent, Long> {
+
+    /**
+     * Finds the changes after the given version in the order of their versions.
+     * 
+     * @param after Only changes with a greater version are returned
+     * @param page Limits the number of changes - only the size is used
+     * @return Next changes
+     */
+    @Query("select e from JpaRevocationEvent e where e.version > :after order by e.version")
+    List<JpaRevocationEvent> findAfter(@Param("after") long after, Pageable page);
+
+    /**
+     * Finds the changes within the given range of versions in the order of their versions.
+     * 
+     * @param from First version of the range
+     * @param to Last version of the range
+     * @param page Limits the number of changes - only the size is used
+     * @return Changes within the range
+     */
+    @Query("select e from JpaRevocationEvent e where e.version between :from and :to order by e.version")
+    List<JpaRevocationEvent> findBetween(@Param("from") long from, @Param("to") long to, Pageable page);
+
+    /**
+     * The version of the latest change.
+     * 
+     * @return Greatest version - 0 when there are no changes
+     */
+    @Query("select coalesce(max(e.version), 0) from JpaRevocationEvent e")
+    long findMaxVersion();
+
+    /**
+     * Deletes all changes which were created before the given time in a single statement.
+     * 
+     * @param time
+     * @return Number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from JpaRevocationEvent e where e.createdAt < :time")
+    int deleteCreatedBefore(@Param("time") Timestamp time);
+}
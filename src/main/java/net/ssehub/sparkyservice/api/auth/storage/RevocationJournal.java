@@ -0,0 +1,514 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.jwt.ReadOnlyJwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Local copy of all locked {@link JwtToken} in a directory. It consists of a snapshot file and an append only
+ * journal of lock and removal events. The snapshot is written and read memory mapped; the journal is compacted into
+ * a new snapshot by {@link #compactIfNeeded()} after a configurable number of events. Thus the locked token are known
+ * right after a restart without querying the database. <br>
+ * The journal only knows the locks which were journaled since it was created. It is marked as complete with
+ * {@link #markComplete()} after all stored locks were journaled, and only a complete journal whose files aren't older
+ * than a maximum age counts as recovered. A corrupt snapshot is dropped. <br>
+ * Events are written to the operating system without waiting for the disk. A crash of the process loses nothing, a
+ * crash of the system may lose the latest events. A torn last event is dropped during recovery.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class RevocationJournal implements AutoCloseable {
+
+    static final String SNAPSHOT_FILE = "revocations.snapshot";
+    static final String JOURNAL_FILE = "revocations.journal";
+
+    private static final int SNAPSHOT_MAGIC = 0x53504A53;
+    private static final int FORMAT_VERSION = 2;
+    private static final int SNAPSHOT_HEADER_SIZE = 16;
+    private static final int FLAG_COMPLETE = 1;
+    private static final byte LOCKED = 1;
+    private static final byte REMOVED = 2;
+    private static final long NO_EXPIRATION = -1;
+
+    @Nonnull
+    private final Path snapshotFile;
+    @Nonnull
+    private final Path journalFile;
+    private final int compactThreshold;
+    @Nonnull
+    private final Map<UUID, Entry> locked = new HashMap<UUID, Entry>();
+    @Nonnull
+    private final FileChannel journal;
+    private int journalEvents;
+    private boolean complete;
+    private final boolean recovered;
+
+    /**
+     * A single locked token with all information needed to recreate it.
+     *
+     * @author marcel
+     */
+    private static final class Entry {
+        @Nonnull
+        private final UUID jti;
+        private final long expiresAt;
+        private final long serial;
+        @Nonnull
+        private final String name;
+        @Nonnull
+        private final UserRealm realm;
+
+        /**
+         * Locked token.
+         *
+         * @param jti Identifier of the token
+         * @param expiresAt Expiration date in milliseconds since epoch - {@link #NO_EXPIRATION} if it never expires
+         * @param serial Serial of the token - 0 if it has none
+         * @param name Name of the owner
+         * @param realm Realm of the owner
+         */
+        private Entry(UUID jti, long expiresAt, long serial, String name, UserRealm realm) {
+            this.jti = jti;
+            this.expiresAt = expiresAt;
+            this.serial = serial;
+            this.name = name;
+            this.realm = realm;
+        }
+
+        /**
+         * Creates an entry of the given token.
+         *
+         * @param token
+         * @return Entry with the owner of the token
+         */
+        private static Entry of(ReadOnlyJwtToken token) {
+            Date expirationDate = token.getExpirationDate();
+            long expiresAt = expirationDate != null ? expirationDate.getTime() : NO_EXPIRATION;
+            return new Entry(token.getJti(), expiresAt, token.getSerial(), token.getUserInfo().getName(), 
+                token.getUserInfo().getRealm());
+        }
+
+        /**
+         * Recreates the locked token. Permissions aren't journaled because they aren't needed for revocation
+         * checks.
+         *
+         * @return Locked token
+         */
+        private JwtToken toToken() {
+            return LockRecord.create(jti, expiresAt != NO_EXPIRATION ? new Date(expiresAt) : null, serial, name,
+                realm);
+        }
+    }
+
+    /**
+     * Opens the journal in the given directory and recovers all locked token. The directory is created if it
+     * doesn't exist.
+     *
+     * @param directory Directory of the snapshot and journal files
+     * @param compactThreshold Number of journaled events which trigger a new snapshot
+     * @param maxAgeMs Maximum age of the files in milliseconds which still counts as recovered
+     * @throws IOException When the files can't be read or created
+     */
+    RevocationJournal(Path directory, int compactThreshold, long maxAgeMs) throws IOException {
+        if (compactThreshold < 1) {
+            throw new IllegalArgumentException("jwt.storage.journal-compact-threshold must be positive");
+        }
+        Files.createDirectories(directory);
+        this.snapshotFile = notNull(directory.resolve(SNAPSHOT_FILE));
+        this.journalFile = notNull(directory.resolve(JOURNAL_FILE));
+        this.compactThreshold = compactThreshold;
+        long lastModified = Math.max(lastModified(snapshotFile), lastModified(journalFile));
+        boolean intact = readSnapshot();
+        this.journal = notNull(FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE));
+        replayJournal();
+        this.recovered = intact && complete && lastModified >= System.currentTimeMillis() - maxAgeMs;
+        this.complete = recovered;
+    }
+
+    /**
+     * The time of the last modification of a file.
+     *
+     * @param file
+     * @return Milliseconds since epoch - 0 when the file doesn't exist
+     * @throws IOException
+     */
+    private static long lastModified(Path file) throws IOException {
+        return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+    }
+
+    /**
+     * Loads the snapshot file into {@link #locked}. A snapshot with an unknown format or a truncated one is
+     * dropped, so only the journal is replayed.
+     *
+     * @return <code>true</code> when the snapshot was read or doesn't exist, <code>false</code> when it was dropped
+     * @throws IOException
+     */
+    private boolean readSnapshot() throws IOException {
+        boolean intact = true;
+        if (Files.exists(snapshotFile)) {
+            try (var channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt() != SNAPSHOT_MAGIC
+                        || buffer.getInt() != FORMAT_VERSION) {
+                    intact = false;
+                } else {
+                    complete = (buffer.getInt() & FLAG_COMPLETE) != 0;
+                    int count = buffer.getInt();
+                    for (int i = 0; i < count; i++) {
+                        Entry entry = readEntry(buffer, readUuid(buffer));
+                        locked.put(entry.jti, entry);
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                intact = false;
+            }
+            if (!intact) {
+                locked.clear();
+                complete = false;
+            }
+        }
+        return intact;
+    }
+
+    /**
+     * Applies all events of the journal to {@link #locked}. A torn or corrupt event and all following ones are cut
+     * off.
+     *
+     * @throws IOException
+     */
+    private void replayJournal() throws IOException {
+        var buffer = journal.map(FileChannel.MapMode.READ_ONLY, 0, journal.size());
+        int validEnd = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            var event = buffer.slice();
+            event.limit(length);
+            try {
+                applyEvent(event);
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            validEnd = buffer.position();
+            journalEvents++;
+        }
+        if (validEnd < journal.size()) {
+            journal.truncate(validEnd);
+        }
+        journal.position(validEnd);
+    }
+
+    /**
+     * Applies a single journaled event.
+     *
+     * @param event
+     */
+    private void applyEvent(ByteBuffer event) {
+        byte type = event.get();
+        UUID jti = readUuid(event);
+        if (type == LOCKED) {
+            locked.put(jti, readEntry(event, jti));
+        } else {
+            locked.remove(jti);
+        }
+    }
+
+    /**
+     * Reads a UUID as two longs.
+     *
+     * @param buffer
+     * @return UUID
+     */
+    private static UUID readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Reads an entry without its jti.
+     *
+     * @param buffer
+     * @param jti The already read jti
+     * @return Entry
+     */
+    private static Entry readEntry(ByteBuffer buffer, UUID jti) {
+        long expiresAt = buffer.getLong();
+        long serial = buffer.getLong();
+        String name = readString(buffer);
+        UserRealm realm;
+        try {
+            realm = UserRealm.valueOf(readString(buffer));
+        } catch (IllegalArgumentException e) {
+            realm = UserRealm.UNKNOWN;
+        }
+        return new Entry(jti, expiresAt, serial, name, notNull(realm));
+    }
+
+    /**
+     * Reads a string with a preceding length.
+     *
+     * @param buffer
+     * @return String
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Size of an encoded entry.
+     *
+     * @param entry
+     * @return Number of bytes written by {@link #writeEntry(ByteBuffer, Entry)}
+     */
+    private static int entrySize(Entry entry) {
+        return 2 * Long.BYTES + 2 * Long.BYTES + 2 * Short.BYTES + utf8(entry.name).length
+            + utf8(entry.realm.name()).length;
+    }
+
+    /**
+     * Writes the jti, expiration, serial and owner of the entry.
+     *
+     * @param buffer
+     * @param entry
+     */
+    private static void writeEntry(ByteBuffer buffer, Entry entry) {
+        buffer.putLong(entry.jti.getMostSignificantBits());
+        buffer.putLong(entry.jti.getLeastSignificantBits());
+        buffer.putLong(entry.expiresAt);
+        buffer.putLong(entry.serial);
+        writeString(buffer, entry.name);
+        writeString(buffer, entry.realm.name());
+    }
+
+    /**
+     * Writes a string with a preceding length.
+     *
+     * @param buffer
+     * @param value
+     */
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = utf8(value);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Encodes a string.
+     *
+     * @param value
+     * @return UTF-8 bytes
+     */
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Journals the lock state of the given token. Only changes are written: locked token which aren't journaled
+     * yet and unlocked token which were journaled as locked. All events are appended with a single write.
+     *
+     * @param tokens The committed token
+     * @throws IOException When the journal can't be written
+     */
+    synchronized void record(Collection<? extends ReadOnlyJwtToken> tokens) throws IOException {
+        var lockedEntries = new ArrayList<Entry>();
+        var removed = new ArrayList<UUID>();
+        for (var token : tokens) {
+            boolean journaled = locked.containsKey(token.getJti());
+            if (token.isLocked() && !journaled) {
+                lockedEntries.add(Entry.of(token));
+            } else if (!token.isLocked() && journaled) {
+                removed.add(token.getJti());
+            }
+        }
+        append(lockedEntries, removed);
+    }
+
+    /**
+     * Journals that the given token were deleted.
+     *
+     * @param jtis Identifiers of the token
+     * @throws IOException When the journal can't be written
+     */
+    synchronized void remove(Collection<UUID> jtis) throws IOException {
+        var removed = new ArrayList<UUID>();
+        for (var jti : jtis) {
+            if (locked.containsKey(jti)) {
+                removed.add(jti);
+            }
+        }
+        append(new ArrayList<Entry>(), removed);
+    }
+
+    /**
+     * Appends the events to the journal. Must be called while holding the monitor.
+     *
+     * @param lockedEntries
+     * @param removed
+     * @throws IOException
+     */
+    private void append(List<Entry> lockedEntries, List<UUID> removed) throws IOException {
+        if (lockedEntries.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        int removedSize = Integer.BYTES + 1 + 2 * Long.BYTES;
+        int size = removed.size() * removedSize;
+        for (var entry : lockedEntries) {
+            size += Integer.BYTES + 1 + entrySize(entry);
+        }
+        var buffer = ByteBuffer.allocate(size);
+        for (var entry : lockedEntries) {
+            buffer.putInt(1 + entrySize(entry));
+            buffer.put(LOCKED);
+            writeEntry(buffer, entry);
+        }
+        for (var jti : removed) {
+            buffer.putInt(removedSize - Integer.BYTES);
+            buffer.put(REMOVED);
+            buffer.putLong(jti.getMostSignificantBits());
+            buffer.putLong(jti.getLeastSignificantBits());
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        lockedEntries.forEach(entry -> locked.put(entry.jti, entry));
+        removed.forEach(locked::remove);
+        journalEvents += lockedEntries.size() + removed.size();
+    }
+
+    /**
+     * Marks the journal as complete after all locks of the storage were journaled and writes a snapshot with this
+     * mark. Only then the journal counts as recovered after a restart.
+     *
+     * @throws IOException When the snapshot can't be written
+     */
+    synchronized void markComplete() throws IOException {
+        complete = true;
+        compact();
+    }
+
+    /**
+     * Compacts the journal into a new snapshot when it reached the compact threshold. This is meant to be called
+     * periodically by a background thread, so no request waits for the snapshot.
+     *
+     * @return <code>true</code> when a snapshot was written
+     * @throws IOException When the snapshot can't be written
+     */
+    synchronized boolean compactIfNeeded() throws IOException {
+        boolean needed = journalEvents >= compactThreshold;
+        if (needed) {
+            compact();
+        }
+        return needed;
+    }
+
+    /**
+     * Writes all locked token which aren't expired into a new snapshot and clears the journal. The snapshot is
+     * written to a temporary file first, so a crash never leaves a partial snapshot.
+     *
+     * @throws IOException When the snapshot can't be written
+     */
+    synchronized void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        locked.values().removeIf(entry -> entry.expiresAt != NO_EXPIRATION && entry.expiresAt <= now);
+        long size = SNAPSHOT_HEADER_SIZE;
+        for (var entry : locked.values()) {
+            size += entrySize(entry);
+        }
+        Path tmpFile = notNull(snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp"));
+        try (var channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(complete ? FLAG_COMPLETE : 0);
+            buffer.putInt(locked.size());
+            locked.values().forEach(entry -> writeEntry(buffer, entry));
+            buffer.force();
+        }
+        Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.position(0);
+        journalEvents = 0;
+    }
+
+    /**
+     * Recreates all journaled locked token which aren't expired.
+     *
+     * @return Locked token
+     */
+    synchronized List<JwtToken> getLockedTokens() {
+        long now = System.currentTimeMillis();
+        var tokens = new ArrayList<JwtToken>(locked.size());
+        for (var entry : locked.values()) {
+            if (entry.expiresAt == NO_EXPIRATION || entry.expiresAt > now) {
+                tokens.add(entry.toToken());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Indicates if the journal was recovered from complete and intact files of a previous run which weren't older
+     * than the maximum age. Otherwise locks of the storage may be missing.
+     *
+     * @return <code>true</code> when all locked token were recovered from previous files
+     */
+    boolean isRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Number of events since the last snapshot.
+     *
+     * @return Length of the journal
+     */
+    synchronized int getJournalEvents() {
+        return journalEvents;
+    }
+
+    /**
+     * Writes a final snapshot and closes the journal.
+     *
+     * @throws IOException When the snapshot can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            compact();
+        } finally {
+            journal.close();
+        }
+    }
+}
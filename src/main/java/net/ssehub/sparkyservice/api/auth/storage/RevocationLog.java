@@ -0,0 +1,339 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
+
+/**
+ * Versioned log of revocation changes in {@link JwtCache}. Each change gets a new version, so consumers can ask for
+ * all changes since the last version they know instead of loading all locked token again. Only a limited number of
+ * changes are kept; consumers with an older version need a full snapshot. <br>
+ * Versions are unique across all logs of this process and start with the start time in microseconds. Thus a
+ * version of a replaced cache or a previous process is not mistaken for a current one.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class RevocationLog {
+
+    private static final AtomicLong VERSIONS = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final int capacity;
+    @Nonnull
+    private final Deque<Change> changes = new ArrayDeque<Change>();
+    @Nonnull
+    private final Map<String, Long> generationChanges = new HashMap<String, Long>();
+    private final long createdVersion;
+    private long version;
+    private long oldestVersion;
+    @Nonnull
+    private CompletableFuture<Long> nextChange = new CompletableFuture<Long>();
+
+    /**
+     * A single lock state change of a token.
+     *
+     * @author marcel
+     */
+    private static final class Change {
+        private final long version;
+        @Nonnull
+        private final UUID jti;
+        private final boolean locked;
+
+        /**
+         * Change of a single token.
+         *
+         * @param version Version of the change
+         * @param jti Identifier of the token
+         * @param locked <code>true</code> when the token was locked, <code>false</code> when it was removed
+         */
+        private Change(long version, UUID jti, boolean locked) {
+            this.version = version;
+            this.jti = jti;
+            this.locked = locked;
+        }
+    }
+
+    /**
+     * All changes between two versions. Multiple changes of the same token are merged into the last one.
+     *
+     * @author marcel
+     */
+    public static final class Delta {
+        private final long version;
+        @Nonnull
+        private final Set<UUID> locked;
+        @Nonnull
+        private final Set<UUID> removed;
+        @Nonnull
+        private final Set<String> owners;
+
+        /**
+         * Changes up to the given version.
+         *
+         * @param version Latest version of the changes
+         * @param locked Newly locked token
+         * @param removed Token which are not locked anymore or evicted
+         * @param owners Users whose token generation changed
+         */
+        private Delta(long version, Set<UUID> locked, Set<UUID> removed, Set<String> owners) {
+            this.version = version;
+            this.locked = notNull(Collections.unmodifiableSet(locked));
+            this.removed = notNull(Collections.unmodifiableSet(removed));
+            this.owners = notNull(Collections.unmodifiableSet(owners));
+        }
+
+        /**
+         * The version which includes all changes of this delta.
+         *
+         * @return Latest version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * JTIs of token which were locked.
+         *
+         * @return Locked JTIs
+         */
+        public @Nonnull Set<UUID> getLocked() {
+            return locked;
+        }
+
+        /**
+         * JTIs of token which were unlocked or evicted after they expired.
+         *
+         * @return Removed JTIs
+         */
+        public @Nonnull Set<UUID> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Identifiers of users whose token were revoked as a whole.
+         *
+         * @return Identifiers as created by {@link SparkysAuthPrincipal#toIdentifier}
+         */
+        public @Nonnull Set<String> getOwners() {
+            return owners;
+        }
+
+        /**
+         * Checks if nothing changed.
+         *
+         * @return <code>true</code> when the delta has no changes
+         */
+        public boolean isEmpty() {
+            return locked.isEmpty() && removed.isEmpty() && owners.isEmpty();
+        }
+    }
+
+    /**
+     * Empty log.
+     *
+     * @param capacity Maximum number of kept token changes
+     */
+    RevocationLog(int capacity) {
+        this.capacity = capacity;
+        this.version = VERSIONS.incrementAndGet();
+        this.createdVersion = version;
+        this.oldestVersion = version;
+    }
+
+    /**
+     * Records that a token was locked.
+     *
+     * @param jti Identifier of the token
+     */
+    void recordLocked(UUID jti) {
+        record(jti, true);
+    }
+
+    /**
+     * Records that token aren't locked anymore or were evicted.
+     *
+     * @param jtis Identifiers of the token
+     */
+    void recordRemoved(Collection<UUID> jtis) {
+        jtis.forEach(jti -> record(jti, false));
+    }
+
+    /**
+     * Records a single token change and notifies waiting consumers.
+     *
+     * @param jti
+     * @param locked
+     */
+    private void record(UUID jti, boolean locked) {
+        CompletableFuture<Long> changed;
+        long newVersion;
+        synchronized (this) {
+            newVersion = nextVersion();
+            changes.addLast(new Change(newVersion, jti, locked));
+            while (changes.size() > capacity) {
+                oldestVersion = changes.removeFirst().version;
+            }
+            changed = swapNextChange();
+        }
+        changed.complete(newVersion);
+    }
+
+    /**
+     * Records that the token generation of a user changed.
+     *
+     * @param owner Identifier of the user
+     */
+    void recordGeneration(String owner) {
+        CompletableFuture<Long> changed;
+        long newVersion;
+        synchronized (this) {
+            newVersion = nextVersion();
+            generationChanges.put(owner, newVersion);
+            changed = swapNextChange();
+        }
+        changed.complete(newVersion);
+    }
+
+    /**
+     * Invalidates all versions and drops the recorded changes, for example after the cache was reloaded as a 
+     * whole. All consumers need a new snapshot afterwards.
+     */
+    void reset() {
+        CompletableFuture<Long> changed;
+        long newVersion;
+        synchronized (this) {
+            newVersion = nextVersion();
+            changes.clear();
+            generationChanges.clear();
+            oldestVersion = newVersion;
+            changed = swapNextChange();
+        }
+        changed.complete(newVersion);
+    }
+
+    /**
+     * Creates the next version. Must be called while holding the monitor.
+     *
+     * @return New version
+     */
+    private long nextVersion() {
+        version = VERSIONS.incrementAndGet();
+        return version;
+    }
+
+    /**
+     * Replaces the future of waiting consumers. Must be called while holding the monitor.
+     *
+     * @return The replaced future which must be completed outside of the monitor
+     */
+    private @Nonnull CompletableFuture<Long> swapNextChange() {
+        var changed = nextChange;
+        nextChange = new CompletableFuture<Long>();
+        return changed;
+    }
+
+    /**
+     * The current version.
+     *
+     * @return Version of the latest change
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Collects all changes after the given version.
+     *
+     * @param since Version which is known by the consumer
+     * @return The changes - empty when they are not logged anymore or the version is unknown and a snapshot is
+     *         needed
+     */
+    public synchronized Optional<Delta> changesSince(long since) {
+        Delta delta = null;
+        if (since >= oldestVersion && since <= version) {
+            delta = collect(since);
+        }
+        return notNull(Optional.ofNullable(delta));
+    }
+
+    /**
+     * Collects all recorded changes after the given version. Token which were loaded with a reload are not 
+     * recorded, so this is meant for consumers which forward the changes made through this cache, for example to 
+     * other nodes. A version before the creation of this log returns all recorded changes unless the log was reset 
+     * or trimmed since then.
+     *
+     * @param since Version which is known by the consumer
+     * @return The changes - empty when some of them are not logged anymore and all state must be forwarded
+     */
+    public synchronized Optional<Delta> recordedChangesSince(long since) {
+        long from = Math.max(since, createdVersion);
+        Delta delta = null;
+        if (from >= oldestVersion && from <= version) {
+            delta = collect(from);
+        }
+        return notNull(Optional.ofNullable(delta));
+    }
+
+    /**
+     * Collects the changes after a version which is still logged. Must be called while holding the monitor.
+     *
+     * @param since
+     * @return The merged changes
+     */
+    private Delta collect(long since) {
+        var changedTokens = new LinkedHashMap<UUID, Boolean>();
+        var iterator = changes.descendingIterator();
+        Change change = iterator.hasNext() ? iterator.next() : null;
+        while (change != null && change.version > since) {
+            changedTokens.putIfAbsent(change.jti, change.locked);
+            change = iterator.hasNext() ? iterator.next() : null;
+        }
+        var locked = new HashSet<UUID>();
+        var removed = new HashSet<UUID>();
+        changedTokens.forEach((jti, isLocked) -> (isLocked ? locked : removed).add(jti));
+        var owners = new HashSet<String>();
+        generationChanges.forEach((owner, changeVersion) -> {
+            if (changeVersion > since) {
+                owners.add(owner);
+            }
+        });
+        return new Delta(version, locked, removed, owners);
+    }
+
+    /**
+     * Returns a future which completes with the new version as soon as something changed after the given version.
+     * Each call returns its own future, so callers may complete or cancel it, for example on a timeout.
+     *
+     * @param since Version which is known by the consumer
+     * @return Future of the next version - already completed when there are newer changes
+     */
+    public synchronized CompletableFuture<Long> awaitChangeAfter(long since) {
+        CompletableFuture<Long> result;
+        if (version != since) {
+            result = CompletableFuture.completedFuture(version);
+        } else {
+            result = nextChange.copy();
+        }
+        return notNull(result);
+    }
+}
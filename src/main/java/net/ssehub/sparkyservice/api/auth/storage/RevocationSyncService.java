@@ -0,0 +1,368 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.jwt.ReadOnlyJwtToken;
+import net.ssehub.sparkyservice.api.jpa.token.JpaRevocationEvent;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Propagates revocations between multiple nodes which share a storage. Each node publishes the lock changes and
+ * token generations which were recorded in the {@link RevocationLog} of its {@link JwtCache} to a change log table
+ * and polls the changes of the other nodes by their version. Thus a revocation reaches every node within one poll
+ * interval without reloading the cache. <br>
+ * The versions are generated by the database when a change is inserted, so a change with a lower version may
+ * become visible after a greater one. Skipped versions are therefore tracked by a {@link VersionWatermark} and
+ * polled again until they show up or a timeout passes. Changes are idempotent, so a change which is applied twice
+ * doesn't hurt. <br>
+ * The synchronization is disabled by default and is only needed when more than one node runs.
+ *
+ * @author marcel
+ */
+@Service
+@ParametersAreNonnullByDefault
+public class RevocationSyncService implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(RevocationSyncService.class);
+
+    @Nonnull
+    private final RevocationEventRepository repo;
+
+    private final boolean enabled;
+
+    @Nonnull
+    private final String nodeId;
+
+    private final int pageSize;
+
+    private final long gapTimeoutMs;
+
+    private final long retentionMs;
+
+    @Nullable
+    private RevocationLog publishedLog;
+
+    private long publishedVersion;
+
+    @Nonnull
+    private VersionWatermark watermark;
+
+    @Nonnull
+    private final Set<String> appliedRemoteChanges = new HashSet<String>();
+
+    private final AtomicLong publishedEvents = new AtomicLong();
+    private final AtomicLong appliedEvents = new AtomicLong();
+    private final AtomicLong lastDelayMs = new AtomicLong();
+    private final AtomicLong gapSize = new AtomicLong();
+
+    /**
+     * Service which synchronizes the revocations of this node with all other nodes.
+     *
+     * @param repo Change log table which is shared by all nodes
+     * @param enabled Decides if changes are published and polled at all
+     * @param nodeId Identifier of this node - a random one is used when it is blank
+     * @param pageSize Maximum number of changes which are polled with a single query
+     * @param gapTimeoutMs Time after which a skipped version is given up
+     * @param retentionMs Age after which changes are deleted from the change log
+     */
+    @Autowired
+    public RevocationSyncService(RevocationEventRepository repo, @Value("${jwt.sync.enabled:false}") boolean enabled,
+            @Value("${jwt.sync.node-id:}") String nodeId, @Value("${jwt.sync.page-size:500}") int pageSize,
+            @Value("${jwt.sync.gap-timeout-ms:10000}") long gapTimeoutMs,
+            @Value("${jwt.sync.retention-ms:3600000}") long retentionMs) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("jwt.sync.page-size must be positive");
+        }
+        this.repo = repo;
+        this.enabled = enabled;
+        this.nodeId = nodeId.isBlank() ? notNull(UUID.randomUUID().toString()) : nodeId;
+        this.pageSize = pageSize;
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.retentionMs = retentionMs;
+        this.watermark = new VersionWatermark(0, gapTimeoutMs);
+    }
+
+    /**
+     * Starts polling after the latest change which exists now. Older changes are already part of the storage
+     * which the cache is loaded from. Is invoked by spring.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (enabled) {
+            watermark = new VersionWatermark(repo.findMaxVersion(), gapTimeoutMs);
+            log.info("Synchronize JWT revocations as node {} starting after version {}", nodeId,
+                watermark.getVersion());
+        }
+    }
+
+    /**
+     * Publishes the local changes and applies the changes of other nodes. Is periodically invoked by spring.
+     */
+    @Scheduled(fixedDelayString = "${jwt.sync.interval-ms:1000}")
+    public void synchronize() {
+        if (enabled) {
+            try {
+                publish();
+                poll();
+            } catch (DataAccessException e) {
+                log.warn("Could not synchronize JWT revocations: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publishes all changes of the local cache since the last call. Changes which were applied from other nodes
+     * are not published again. When too many changes happened since the last call, all locked token and token
+     * generations are published.
+     *
+     * @return Number of published changes
+     */
+    public synchronized int publish() {
+        var cache = JwtCache.getInstance();
+        var revocationLog = cache.getRevocationLog();
+        if (revocationLog != publishedLog) {
+            publishedLog = revocationLog;
+            publishedVersion = 0;
+        }
+        var events = new ArrayList<JpaRevocationEvent>();
+        var delta = revocationLog.recordedChangesSince(publishedVersion);
+        if (delta.isPresent()) {
+            delta.get().getLocked().forEach(jti -> cache.viewCachedToken(jti)
+                .filter(ReadOnlyJwtToken::isLocked)
+                .ifPresent(token -> addTokenEvent(events, token)));
+            for (UUID jti : delta.get().getRemoved()) {
+                if (cache.contains(jti) && !cache.isLocked(jti) && !appliedRemoteChanges.remove(key(jti, false))) {
+                    var event = new JpaRevocationEvent(nodeId, JpaRevocationEvent.Type.UNLOCKED);
+                    event.setToken(notNull(jti.toString()), "", UserRealm.UNKNOWN);
+                    events.add(event);
+                }
+            }
+            delta.get().getOwners().forEach(owner -> addGenerationEvent(events, cache, owner));
+            publishedVersion = delta.get().getVersion();
+        } else {
+            log.warn("Too many JWT revocations since the last synchronization, publish all locked token");
+            cache.getLockedTokenObjects().forEach(token -> addTokenEvent(events, token));
+            cache.getTokenGenerations().keySet().forEach(owner -> addGenerationEvent(events, cache, owner));
+            publishedVersion = revocationLog.getVersion();
+        }
+        appliedRemoteChanges.clear();
+        if (!events.isEmpty()) {
+            repo.saveAll(events);
+            publishedEvents.addAndGet(events.size());
+        }
+        return events.size();
+    }
+
+    /**
+     * Adds a change for a locked token unless it was applied from another node.
+     *
+     * @param events
+     * @param token
+     */
+    private void addTokenEvent(List<JpaRevocationEvent> events, ReadOnlyJwtToken token) {
+        if (!appliedRemoteChanges.remove(key(token.getJti(), true))) {
+            var event = new JpaRevocationEvent(nodeId, JpaRevocationEvent.Type.LOCKED);
+            event.setToken(notNull(token.getJti().toString()), token.getUserInfo().getName(),
+                token.getUserInfo().getRealm());
+            event.setExpirationDate(token.getExpirationDate());
+            event.setSerial(token.getSerial());
+            events.add(event);
+        }
+    }
+
+    /**
+     * Adds a change for the current token generation of a user unless it was applied from another node.
+     *
+     * @param events
+     * @param cache
+     * @param owner
+     */
+    private void addGenerationEvent(List<JpaRevocationEvent> events, JwtCache cache, String owner) {
+        Integer generation = cache.getTokenGenerations().get(owner);
+        if (generation != null && !appliedRemoteChanges.remove(owner + "#" + generation)) {
+            var event = new JpaRevocationEvent(nodeId, JpaRevocationEvent.Type.GENERATION);
+            event.setGeneration(owner, generation);
+            events.add(event);
+        }
+    }
+
+    /**
+     * Key of an applied token change.
+     *
+     * @param jti
+     * @param locked
+     * @return Key which is unique for the token and its lock state
+     */
+    private static String key(UUID jti, boolean locked) {
+        return jti + (locked ? "#locked" : "#unlocked");
+    }
+
+    /**
+     * Applies all changes of other nodes since the last call, including changes with skipped versions which showed
+     * up in the meantime.
+     *
+     * @return Number of applied changes
+     */
+    public synchronized int poll() {
+        var events = new ArrayList<JpaRevocationEvent>();
+        long now = System.currentTimeMillis();
+        for (var gap : watermark.getGaps()) {
+            pollGap(gap, events, now);
+        }
+        List<JpaRevocationEvent> page;
+        do {
+            page = repo.findAfter(watermark.getVersion(), PageRequest.of(0, pageSize));
+            for (var event : page) {
+                watermark.advance(event.getVersion(), now);
+                events.add(event);
+            }
+        } while (page.size() == pageSize);
+        watermark.expireGaps(now);
+        gapSize.set(watermark.getGapSize());
+        int applied = apply(events);
+        appliedEvents.addAndGet(applied);
+        return applied;
+    }
+
+    /**
+     * Polls the changes of skipped versions which showed up in the meantime, page by page.
+     *
+     * @param gap Range of skipped versions
+     * @param events Collects the polled changes
+     * @param now Current time in milliseconds since epoch
+     */
+    private void pollGap(VersionWatermark.Gap gap, List<JpaRevocationEvent> events, long now) {
+        long from = gap.getFrom();
+        List<JpaRevocationEvent> page;
+        do {
+            page = repo.findBetween(from, gap.getTo(), PageRequest.of(0, pageSize));
+            for (var event : page) {
+                watermark.advance(event.getVersion(), now);
+                events.add(event);
+                from = event.getVersion() + 1;
+            }
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * Applies the changes of other nodes to the local cache without saving them again.
+     *
+     * @param events Polled changes
+     * @return Number of applied changes
+     */
+    private int apply(List<JpaRevocationEvent> events) {
+        var cache = JwtCache.getInstance();
+        var lockedTokens = new ArrayList<JwtToken>();
+        var unlockedJtis = new ArrayList<UUID>();
+        int applied = 0;
+        long now = System.currentTimeMillis();
+        for (var event : events) {
+            if (!nodeId.equals(event.getNode())) {
+                if (event.getType() == JpaRevocationEvent.Type.GENERATION) {
+                    String owner = notNull(event.getOwner().orElse(""));
+                    if (cache.applyTokenGeneration(owner, event.getGeneration())) {
+                        appliedRemoteChanges.add(owner + "#" + event.getGeneration());
+                    }
+                } else if (event.getType() == JpaRevocationEvent.Type.LOCKED) {
+                    event.getJti().ifPresent(jti -> lockedTokens.add(toLockRecord(event, jti)));
+                } else {
+                    event.getJti().map(UUID::fromString).ifPresent(unlockedJtis::add);
+                }
+                lastDelayMs.set(now - event.getCreatedAt().getTime());
+                applied++;
+            }
+        }
+        lockedTokens.forEach(token -> appliedRemoteChanges.add(key(token.getJti(), true)));
+        unlockedJtis.forEach(jti -> appliedRemoteChanges.add(key(jti, false)));
+        cache.lockRemote(lockedTokens);
+        cache.unlockCached(unlockedJtis);
+        return applied;
+    }
+
+    /**
+     * Recreates the token of a lock change. It is only cached when the token is neither cached nor stored on this
+     * node; permissions aren't published because they aren't needed for revocation checks.
+     *
+     * @param event
+     * @param jti
+     * @return Locked token
+     */
+    private static JwtToken toLockRecord(JpaRevocationEvent event, String jti) {
+        Date expirationDate = event.getExpirationDate().map(time -> new Date(time.getTime())).orElse(null);
+        return LockRecord.create(notNull(UUID.fromString(jti)), expirationDate, event.getSerial(),
+            notNull(event.getUsername().orElse("")),
+            notNull(event.getRealm().orElse(UserRealm.UNKNOWN)));
+    }
+
+    /**
+     * Deletes old changes from the change log. Nodes which are offline for longer than the retention need to
+     * reload their cache anyway. Is periodically invoked by spring.
+     *
+     * @return Number of deleted changes
+     */
+    @Scheduled(fixedDelayString = "${jwt.sync.cleanup-interval-ms:600000}")
+    public int cleanup() {
+        int deleted = 0;
+        if (enabled) {
+            try {
+                deleted = repo.deleteCreatedBefore(new Timestamp(System.currentTimeMillis() - retentionMs));
+            } catch (DataAccessException e) {
+                log.warn("Could not delete old JWT revocation changes: {}", e.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The identifier of this node in the change log.
+     *
+     * @return Node identifier
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("sparky.jwt.sync.published", publishedEvents, AtomicLong::get)
+            .description("JWT revocation changes published to other nodes")
+            .register(registry);
+        FunctionCounter.builder("sparky.jwt.sync.applied", appliedEvents, AtomicLong::get)
+            .description("JWT revocation changes applied from other nodes")
+            .register(registry);
+        Gauge.builder("sparky.jwt.sync.delay", lastDelayMs, AtomicLong::get)
+            .description("Time in milliseconds between publishing and applying the latest remote change")
+            .register(registry);
+        Gauge.builder("sparky.jwt.sync.gaps", gapSize, AtomicLong::get)
+            .description("Skipped change versions which are polled again")
+            .register(registry);
+    }
+}
@@ -0,0 +1,339 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Compressed set of token serials in the style of a roaring bitmap. Serials are grouped into chunks of 65536 by
+ * their upper 48 bits. A chunk with few serials stores the lower 16 bits in a sorted array; a chunk with more than
+ * {@value #ARRAY_MAX} serials stores a bitmap of 8 KiB. A serial therefore needs at most two bytes; serials which are
+ * issued in sequence and revoked in bulk need about one bit each. <br>
+ * Lookups never block: Chunks are never modified after they were published. Writers replace a changed chunk with a
+ * new one and must be synchronized among each other.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class RevokedSerialSet {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    @Nonnull
+    private final Map<Long, Chunk> chunks = new ConcurrentHashMap<Long, Chunk>();
+    private volatile long cardinality;
+
+    /**
+     * Immutable set of the lower 16 bits of the serials in one chunk.
+     *
+     * @author marcel
+     */
+    private abstract static class Chunk {
+
+        /**
+         * Checks if the chunk contains the value.
+         *
+         * @param low Lower 16 bits of a serial
+         * @return <code>true</code> when the value is contained
+         */
+        abstract boolean contains(char low);
+
+        /**
+         * Creates a chunk which additionally contains the value.
+         *
+         * @param low Lower 16 bits of a serial which isn't contained yet
+         * @return New chunk
+         */
+        abstract Chunk with(char low);
+
+        /**
+         * Creates a chunk without the value.
+         *
+         * @param low Lower 16 bits of a contained serial
+         * @return New chunk - <code>null</code> when it would be empty
+         */
+        @Nullable
+        abstract Chunk without(char low);
+
+        /**
+         * Approximate memory of the chunk.
+         *
+         * @return Size in bytes
+         */
+        abstract int sizeInBytes();
+    }
+
+    /**
+     * Chunk with a sorted array of values.
+     *
+     * @author marcel
+     */
+    private static final class ArrayChunk extends Chunk {
+        @Nonnull
+        private final char[] values;
+
+        /**
+         * Chunk with the given values.
+         *
+         * @param values Sorted values without duplicates
+         */
+        private ArrayChunk(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, low) >= 0;
+        }
+
+        @Override
+        Chunk with(char low) {
+            Chunk result;
+            if (values.length < ARRAY_MAX) {
+                int index = -Arrays.binarySearch(values, low) - 1;
+                char[] newValues = new char[values.length + 1];
+                System.arraycopy(values, 0, newValues, 0, index);
+                newValues[index] = low;
+                System.arraycopy(values, index, newValues, index + 1, values.length - index);
+                result = new ArrayChunk(newValues);
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                for (char value : values) {
+                    words[value >>> 6] |= 1L << value;
+                }
+                words[low >>> 6] |= 1L << low;
+                result = new BitmapChunk(words, values.length + 1);
+            }
+            return result;
+        }
+
+        @Override
+        @Nullable
+        Chunk without(char low) {
+            Chunk result = null;
+            if (values.length > 1) {
+                int index = Arrays.binarySearch(values, low);
+                char[] newValues = new char[values.length - 1];
+                System.arraycopy(values, 0, newValues, 0, index);
+                System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+                result = new ArrayChunk(newValues);
+            }
+            return result;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return Character.BYTES * values.length;
+        }
+    }
+
+    /**
+     * Chunk with one bit per possible value.
+     *
+     * @author marcel
+     */
+    private static final class BitmapChunk extends Chunk {
+        @Nonnull
+        private final long[] words;
+        private final int cardinality;
+
+        /**
+         * Chunk with the given bits.
+         *
+         * @param words {@value #BITMAP_WORDS} words
+         * @param cardinality Number of set bits
+         */
+        private BitmapChunk(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Chunk with(char low) {
+            long[] newWords = words.clone();
+            newWords[low >>> 6] |= 1L << low;
+            return new BitmapChunk(newWords, cardinality + 1);
+        }
+
+        @Override
+        @Nullable
+        Chunk without(char low) {
+            Chunk result;
+            if (cardinality - 1 > ARRAY_MAX) {
+                long[] newWords = words.clone();
+                newWords[low >>> 6] &= ~(1L << low);
+                result = new BitmapChunk(newWords, cardinality - 1);
+            } else {
+                char[] values = new char[cardinality - 1];
+                int index = 0;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = words[word];
+                    while (bits != 0) {
+                        char value = (char) (word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                        if (value != low) {
+                            values[index++] = value;
+                        }
+                        bits &= bits - 1;
+                    }
+                }
+                result = new ArrayChunk(values);
+            }
+            return result;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return Long.BYTES * BITMAP_WORDS;
+        }
+    }
+
+    /**
+     * Checks if the serial is contained. Doesn't block.
+     *
+     * @param serial Token serial
+     * @return <code>true</code> when the serial is contained
+     */
+    public boolean contains(long serial) {
+        Chunk chunk = chunks.get(serial >>> Character.SIZE);
+        return chunk != null && chunk.contains((char) serial);
+    }
+
+    /**
+     * Adds a serial. Must not be called concurrently with other writes.
+     *
+     * @param serial Token serial
+     * @return <code>true</code> when the serial wasn't contained before
+     */
+    public boolean add(long serial) {
+        Long key = serial >>> Character.SIZE;
+        char low = (char) serial;
+        Chunk chunk = chunks.get(key);
+        boolean added = false;
+        if (chunk == null) {
+            chunks.put(key, new ArrayChunk(new char[] {low}));
+            added = true;
+        } else if (!chunk.contains(low)) {
+            chunks.put(key, chunk.with(low));
+            added = true;
+        }
+        if (added) {
+            cardinality++;
+        }
+        return added;
+    }
+
+    /**
+     * Adds multiple serials. Each new chunk is built only once, which is much faster than single adds when a set is
+     * filled from a storage. Must not be called concurrently with other writes.
+     *
+     * @param newSerials Token serials in any order - the array is sorted
+     */
+    public void addAll(long[] newSerials) {
+        Arrays.sort(newSerials);
+        int start = 0;
+        while (start < newSerials.length) {
+            long key = newSerials[start] >>> Character.SIZE;
+            int end = start;
+            while (end < newSerials.length && newSerials[end] >>> Character.SIZE == key) {
+                end++;
+            }
+            if (chunks.containsKey(key)) {
+                for (int i = start; i < end; i++) {
+                    add(newSerials[i]);
+                }
+            } else {
+                addChunk(key, newSerials, start, end);
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Creates a new chunk from a sorted range of serials with the same key.
+     *
+     * @param key Upper 48 bits of the serials
+     * @param sorted Sorted serials
+     * @param start First index of the range
+     * @param end Index after the range
+     */
+    private void addChunk(long key, long[] sorted, int start, int end) {
+        char[] values = new char[end - start];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char low = (char) sorted[i];
+            if (count == 0 || values[count - 1] != low) {
+                values[count++] = low;
+            }
+        }
+        Chunk chunk;
+        if (count <= ARRAY_MAX) {
+            chunk = new ArrayChunk(Arrays.copyOf(values, count));
+        } else {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            chunk = new BitmapChunk(words, count);
+        }
+        chunks.put(key, chunk);
+        cardinality += count;
+    }
+
+    /**
+     * Removes a serial. Must not be called concurrently with other writes.
+     *
+     * @param serial Token serial
+     * @return <code>true</code> when the serial was contained
+     */
+    public boolean remove(long serial) {
+        Long key = serial >>> Character.SIZE;
+        char low = (char) serial;
+        Chunk chunk = chunks.get(key);
+        boolean removed = false;
+        if (chunk != null && chunk.contains(low)) {
+            Chunk newChunk = chunk.without(low);
+            if (newChunk == null) {
+                chunks.remove(key);
+            } else {
+                chunks.put(key, newChunk);
+            }
+            cardinality--;
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Number of contained serials.
+     *
+     * @return Cardinality of the set
+     */
+    public long size() {
+        return cardinality;
+    }
+
+    /**
+     * Approximate memory of the stored serials without the overhead of the chunk map.
+     *
+     * @return Size in bytes
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (Chunk chunk : chunks.values()) {
+            size += Long.BYTES + chunk.sizeInBytes();
+        }
+        return size;
+    }
+}
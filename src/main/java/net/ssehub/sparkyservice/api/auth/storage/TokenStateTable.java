@@ -0,0 +1,268 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Open addressing hash table which keeps only the state of a token: The JTI is stored as two <code>long</code>
+ * values and the state as a single <code>long</code> with the lock flag and the expiration in seconds. The three
+ * values are held in parallel primitive arrays, so an entry needs 24 bytes per slot instead of a map node, a boxed
+ * {@link UUID} and a full token object. <br>
+ * Lookups never block and never allocate. The key of a slot is written before its state is published and never
+ * changes afterwards; removed entries only become tombstones. When the table is too full, a writer builds a new
+ * table and publishes it as a whole. Writers must be synchronized among each other.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class TokenStateTable {
+
+    static final int MIN_CAPACITY = 1024;
+
+    private static final long USED = 1;
+    private static final long LOCKED = 2;
+    private static final long REMOVED = 4;
+    private static final int EXPIRY_SHIFT = 8;
+
+    @Nonnull
+    private volatile Slots slots;
+    private volatile int size;
+    private int tombstones;
+
+    /**
+     * The arrays of one table generation.
+     *
+     * @author marcel
+     */
+    private static final class Slots {
+        @Nonnull
+        private final long[] mostSigBits;
+        @Nonnull
+        private final long[] leastSigBits;
+        @Nonnull
+        private final AtomicLongArray states;
+        private final int mask;
+
+        /**
+         * Empty slots.
+         *
+         * @param capacity Power of two
+         */
+        private Slots(int capacity) {
+            this.mostSigBits = new long[capacity];
+            this.leastSigBits = new long[capacity];
+            this.states = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Finds the slot of a JTI.
+         *
+         * @param msb Most significant bits of the JTI
+         * @param lsb Least significant bits of the JTI
+         * @return Index of the slot or -1 when the JTI isn't contained
+         */
+        private int find(long msb, long lsb) {
+            int index = spread(msb, lsb) & mask;
+            int result = -1;
+            long state = states.get(index);
+            while (state != 0 && result == -1) {
+                if (mostSigBits[index] == msb && leastSigBits[index] == lsb && (state & REMOVED) == 0) {
+                    result = index;
+                } else {
+                    index = (index + 1) & mask;
+                    state = states.get(index);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Writes a JTI which isn't contained into the next free slot. Tombstones are not reused, so the key of a
+         * published slot never changes.
+         *
+         * @param msb Most significant bits of the JTI
+         * @param lsb Least significant bits of the JTI
+         * @param state State with the {@link #USED} flag
+         */
+        private void insert(long msb, long lsb, long state) {
+            int index = spread(msb, lsb) & mask;
+            while (states.get(index) != 0) {
+                index = (index + 1) & mask;
+            }
+            mostSigBits[index] = msb;
+            leastSigBits[index] = lsb;
+            states.set(index, state);
+        }
+    }
+
+    /**
+     * Empty table.
+     *
+     * @param expectedSize Number of entries which are expected
+     */
+    TokenStateTable(int expectedSize) {
+        this.slots = new Slots(capacityFor(expectedSize));
+    }
+
+    /**
+     * Smallest power of two which keeps the table at most three quarters full.
+     *
+     * @param entries Number of used slots
+     * @return Capacity
+     */
+    private static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (1 << 30) && capacity / 4 * 3 < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Random UUIDs are already well distributed, the hash only mixes both halves for other UUID versions.
+     *
+     * @param msb
+     * @param lsb
+     * @return Hash of the JTI
+     */
+    private static int spread(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32);
+    }
+
+    /**
+     * Encodes the state of a token.
+     *
+     * @param locked Lock state
+     * @param expiresAt Expiration date in milliseconds since epoch - 0 when the token doesn't expire
+     * @return State word
+     */
+    private static long encode(boolean locked, long expiresAt) {
+        long seconds = Math.max(0, expiresAt / 1000);
+        return seconds << EXPIRY_SHIFT | (locked ? LOCKED : 0) | USED;
+    }
+
+    /**
+     * Adds or updates the state of a token. Must be called while holding the write lock of the owner.
+     *
+     * @param jti Identifier of the token
+     * @param locked Lock state
+     * @param expiresAt Expiration date in milliseconds since epoch - 0 when the token doesn't expire
+     * @return <code>true</code> when the token was locked before
+     */
+    boolean put(UUID jti, boolean locked, long expiresAt) {
+        long msb = jti.getMostSignificantBits();
+        long lsb = jti.getLeastSignificantBits();
+        long state = encode(locked, expiresAt);
+        var current = slots;
+        int index = current.find(msb, lsb);
+        boolean wasLocked = false;
+        if (index >= 0) {
+            wasLocked = (current.states.get(index) & LOCKED) != 0;
+            current.states.set(index, state);
+        } else {
+            if (size + tombstones + 1 > (current.mask + 1) / 4 * 3) {
+                current = rehash(2 * (size + 1));
+            }
+            current.insert(msb, lsb, state);
+            size++;
+        }
+        return wasLocked;
+    }
+
+    /**
+     * Removes the state of a token. Must be called while holding the write lock of the owner.
+     *
+     * @param jti Identifier of the token
+     * @return <code>true</code> when the token was contained
+     */
+    boolean remove(UUID jti) {
+        var current = slots;
+        int index = current.find(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+        if (index >= 0) {
+            current.states.set(index, current.states.get(index) | REMOVED);
+            size--;
+            tombstones++;
+        }
+        return index >= 0;
+    }
+
+    /**
+     * Builds and publishes new slots without tombstones.
+     *
+     * @param entries Number of entries which must fit without rehashing again
+     * @return The new slots
+     */
+    private Slots rehash(int entries) {
+        var old = slots;
+        var rehashed = new Slots(capacityFor(entries));
+        for (int i = 0; i <= old.mask; i++) {
+            long state = old.states.get(i);
+            if (state != 0 && (state & REMOVED) == 0) {
+                rehashed.insert(old.mostSigBits[i], old.leastSigBits[i], state);
+            }
+        }
+        tombstones = 0;
+        slots = rehashed;
+        return rehashed;
+    }
+
+    /**
+     * Checks if the token is contained and locked. Doesn't block.
+     *
+     * @param jti Identifier of the token
+     * @return <code>true</code> when the token is locked
+     */
+    boolean isLocked(UUID jti) {
+        final Slots current = slots;
+        int index = current.find(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+        return index >= 0 && (current.states.get(index) & (LOCKED | REMOVED)) == LOCKED;
+    }
+
+    /**
+     * Checks if the token is contained. Doesn't block.
+     *
+     * @param jti Identifier of the token
+     * @return <code>true</code> when the state of the token is known
+     */
+    boolean contains(UUID jti) {
+        return slots.find(jti.getMostSignificantBits(), jti.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * The expiration of a token with a precision of seconds. Doesn't block.
+     *
+     * @param jti Identifier of the token
+     * @return Expiration in milliseconds since epoch rounded down to seconds - -1 when the token isn't contained and
+     *         0 when it doesn't expire
+     */
+    long getExpiresAt(UUID jti) {
+        final Slots current = slots;
+        int index = current.find(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+        return index >= 0 ? (current.states.get(index) >>> EXPIRY_SHIFT) * 1000 : -1;
+    }
+
+    /**
+     * Number of contained token.
+     *
+     * @return Size of the table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Memory of the slot arrays.
+     *
+     * @return Size in bytes
+     */
+    long sizeInBytes() {
+        return 3L * Long.BYTES * (slots.mask + 1);
+    }
+}
@@ -0,0 +1,163 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Tracks up to which version the changes of a storage were applied. The versions are generated by the database
+ * before a change is committed, so a change with a lower version may become visible after a greater one. Versions
+ * which were skipped are therefore remembered as gaps and polled again until they show up or a timeout passes, for
+ * example because their transaction was rolled back. <br>
+ * Gaps are kept as ranges, so a large jump of the versions neither loses versions nor needs memory per version.
+ *
+ * @author marcel
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class VersionWatermark {
+
+    private final long gapTimeoutMs;
+
+    private long version;
+
+    @Nonnull
+    private final NavigableMap<Long, Gap> gaps = new TreeMap<>();
+
+    /**
+     * A range of skipped versions.
+     *
+     * @author marcel
+     */
+    static final class Gap {
+
+        private final long from;
+
+        private final long to;
+
+        private final long deadline;
+
+        /**
+         * Range of skipped versions.
+         *
+         * @param from First skipped version
+         * @param to Last skipped version
+         * @param deadline Time in milliseconds since epoch after which the versions are given up
+         */
+        private Gap(long from, long to, long deadline) {
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        /**
+         * The first skipped version.
+         *
+         * @return Version
+         */
+        long getFrom() {
+            return from;
+        }
+
+        /**
+         * The last skipped version.
+         *
+         * @return Version - at least {@link #getFrom()}
+         */
+        long getTo() {
+            return to;
+        }
+    }
+
+    /**
+     * Watermark which starts after the given version.
+     *
+     * @param version All changes up to this version are already applied
+     * @param gapTimeoutMs Time after which a skipped version is given up
+     */
+    VersionWatermark(long version, long gapTimeoutMs) {
+        this.version = version;
+        this.gapTimeoutMs = gapTimeoutMs;
+    }
+
+    /**
+     * The greatest version which was applied.
+     *
+     * @return Version - the next poll starts after it
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Records an applied version. Versions between the watermark and a greater version are remembered as gaps; a
+     * lower version fills its gap.
+     *
+     * @param applied Version of an applied change
+     * @param now Current time in milliseconds since epoch
+     */
+    void advance(long applied, long now) {
+        if (applied > version) {
+            if (applied > version + 1) {
+                gaps.put(version + 1, new Gap(version + 1, applied - 1, now + gapTimeoutMs));
+            }
+            version = applied;
+        } else {
+            Map.Entry<Long, Gap> entry = gaps.floorEntry(applied);
+            if (entry != null && entry.getValue().to >= applied) {
+                Gap gap = entry.getValue();
+                gaps.remove(gap.from);
+                if (gap.from < applied) {
+                    gaps.put(gap.from, new Gap(gap.from, applied - 1, gap.deadline));
+                }
+                if (applied < gap.to) {
+                    gaps.put(applied + 1, new Gap(applied + 1, gap.to, gap.deadline));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives up all gaps whose timeout passed.
+     *
+     * @param now Current time in milliseconds since epoch
+     */
+    void expireGaps(long now) {
+        Iterator<Gap> iterator = gaps.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().deadline < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The ranges of skipped versions which should be polled again.
+     *
+     * @return Copy of the gaps, ordered by their versions
+     */
+    @Nonnull
+    List<Gap> getGaps() {
+        return new ArrayList<>(gaps.values());
+    }
+
+    /**
+     * The number of skipped versions which are still expected.
+     *
+     * @return Sum of the sizes of all gaps
+     */
+    long getGapSize() {
+        long size = 0;
+        for (var gap : gaps.values()) {
+            size += gap.to - gap.from + 1;
+        }
+        return size;
+    }
+}
@@ -1,7 +1,9 @@
 package net.ssehub.sparkyservice.api.conf;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -79,6 +81,81 @@ public class ConfigurationValues {
         private String issuer;
         private String prefix;
         private String audience;
+        private int maxRefreshes = 6;
+        private long maxLifetimeSeconds = 604_800;
+        private List<SigningKey> keys = new ArrayList<SigningKey>();
+        private String activeKey;
+        private long jwksMaxAgeSeconds = 3600;
+        private boolean serials;
+        private Integer serialNodeId;
+        private Boolean acceptSecret;
+
+        /**
+         * An asymmetric RSA key pair which is used to sign JWT token. Keys are encoded as Base64 without PEM 
+         * header lines.
+         * 
+         * @author marcel
+         */
+        public static class SigningKey {
+            private String id;
+            private String privateKey;
+            private String publicKey;
+
+            /**
+             * Unique identifier of the key. It is written into the "kid" header of each token signed with this key.
+             * 
+             * @return Key identifier
+             */
+            public String getId() {
+                return id;
+            }
+
+            /**
+             * See {@link #getId()}.
+             * 
+             * @param id
+             */
+            public void setId(String id) {
+                this.id = id;
+            }
+
+            /**
+             * Private RSA key in PKCS#8 format. Retired keys don't need one because they are only used to verify
+             * token which were issued before the rotation.
+             * 
+             * @return Base64 encoded private key - may be <code>null</code>
+             */
+            public String getPrivateKey() {
+                return privateKey;
+            }
+
+            /**
+             * See {@link #getPrivateKey()}.
+             * 
+             * @param privateKey
+             */
+            public void setPrivateKey(String privateKey) {
+                this.privateKey = privateKey;
+            }
+
+            /**
+             * Public RSA key in X.509 format. It is published to other services.
+             * 
+             * @return Base64 encoded public key
+             */
+            public String getPublicKey() {
+                return publicKey;
+            }
+
+            /**
+             * See {@link #getPublicKey()}.
+             * 
+             * @param publicKey
+             */
+            public void setPublicKey(String publicKey) {
+                this.publicKey = publicKey;
+            }
+        }
 
         /**
          * .
@@ -191,6 +268,506 @@ public class ConfigurationValues {
         public void setSecret(String secret) {
             this.secret = secret;
         }
+
+        /**
+         * How often a newly issued token can be refreshed. Each refresh creates a new token with one refresh less. 
+         * 
+         * @return Number of refreshes of a new token
+         */
+        public int getMaxRefreshes() {
+            return maxRefreshes;
+        }
+
+        /**
+         * See {@link #getMaxRefreshes()}.
+         * 
+         * @param maxRefreshes
+         */
+        public void setMaxRefreshes(int maxRefreshes) {
+            this.maxRefreshes = maxRefreshes;
+        }
+
+        /**
+         * How long token can be refreshed after the user authenticated. Refreshed token never expire later than 
+         * this, so a stolen token can't be refreshed forever. 
+         * 
+         * @return Lifetime in seconds since the login - default is 7 days
+         */
+        public long getMaxLifetimeSeconds() {
+            return maxLifetimeSeconds;
+        }
+
+        /**
+         * See {@link #getMaxLifetimeSeconds()}.
+         * 
+         * @param maxLifetimeSeconds
+         */
+        public void setMaxLifetimeSeconds(long maxLifetimeSeconds) {
+            this.maxLifetimeSeconds = maxLifetimeSeconds;
+        }
+
+        /**
+         * Asymmetric keys for signing JWT token. When no key is configured, token are signed with the 
+         * {@link #getSecret() secret}. Token signed with the secret are only accepted with an active key when 
+         * {@link #getAcceptSecret()} is enabled.
+         * 
+         * @return Configured signing keys - active and retired ones
+         */
+        public List<SigningKey> getKeys() {
+            return keys;
+        }
+
+        /**
+         * See {@link #getKeys()}.
+         * 
+         * @param keys
+         */
+        public void setKeys(List<SigningKey> keys) {
+            this.keys = keys;
+        }
+
+        /**
+         * The id of the key which signs new token. When not set, the first key with a private key is used.
+         * 
+         * @return Id of a configured key - may be <code>null</code>
+         */
+        public String getActiveKey() {
+            return activeKey;
+        }
+
+        /**
+         * See {@link #getActiveKey()}.
+         * 
+         * @param activeKey
+         */
+        public void setActiveKey(String activeKey) {
+            this.activeKey = activeKey;
+        }
+
+        /**
+         * How long other services may cache the published public keys. A new key should be configured at least this
+         * long before it becomes active.
+         * 
+         * @return Maximum age in seconds
+         */
+        public long getJwksMaxAgeSeconds() {
+            return jwksMaxAgeSeconds;
+        }
+
+        /**
+         * See {@link #getJwksMaxAgeSeconds()}.
+         * 
+         * @param jwksMaxAgeSeconds
+         */
+        public void setJwksMaxAgeSeconds(long jwksMaxAgeSeconds) {
+            this.jwksMaxAgeSeconds = jwksMaxAgeSeconds;
+        }
+
+        /**
+         * Indicates if new token get sequential serials. Locked serials are kept in a compressed set which needs 
+         * much less memory than a set of random JTIs.
+         * 
+         * @return <code>true</code> when serials are assigned
+         */
+        public boolean isSerials() {
+            return serials;
+        }
+
+        /**
+         * See {@link #isSerials()}.
+         * 
+         * @param serials
+         */
+        public void setSerials(boolean serials) {
+            this.serials = serials;
+        }
+
+        /**
+         * Id of this node which is part of each serial, so nodes with different ids never assign the same serial. 
+         * Each node of a cluster should get its own id.
+         * 
+         * @return Id between 0 and 1023 - <code>null</code> when each start chooses a random id
+         */
+        public Integer getSerialNodeId() {
+            return serialNodeId;
+        }
+
+        /**
+         * See {@link #getSerialNodeId()}.
+         * 
+         * @param serialNodeId
+         */
+        public void setSerialNodeId(Integer serialNodeId) {
+            this.serialNodeId = serialNodeId;
+        }
+
+        /**
+         * Indicates if token signed with HS512 and the shared secret are accepted. When it isn't set, they are only 
+         * accepted as long as no RSA key is active. Set it to <code>true</code> while migrating to RSA keys, so 
+         * token issued before the migration stay valid until they expire.
+         * 
+         * @return <code>true</code> when HS512 token are accepted, <code>null</code> when not configured
+         */
+        public Boolean getAcceptSecret() {
+            return acceptSecret;
+        }
+
+        /**
+         * See {@link #getAcceptSecret()}.
+         * 
+         * @param acceptSecret
+         */
+        public void setAcceptSecret(Boolean acceptSecret) {
+            this.acceptSecret = acceptSecret;
+        }
+    }
+
+    /**
+     * Provides configuration about how issued JWT token are persisted.
+     * 
+     * @author marcel
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "jwt.storage")
+    public static class JwtStorageSettings {
+        private boolean revocationOnly;
+        private boolean writeBehind;
+        private int batchSize = 100;
+        private int queueCapacity = 10_000;
+        private long offerTimeoutMs = 50;
+        private String journalDirectory;
+        private int journalCompactThreshold = 10_000;
+        private long journalMaxAgeMs = 300_000;
+
+        /**
+         * Indicates if only locked token are persisted. Unlocked token are only known to the cache. 
+         * 
+         * @return <code>true</code> when unlocked token are not saved
+         */
+        public boolean isRevocationOnly() {
+            return revocationOnly;
+        }
+
+        /**
+         * See {@link #isRevocationOnly()}.
+         * 
+         * @param revocationOnly
+         */
+        public void setRevocationOnly(boolean revocationOnly) {
+            this.revocationOnly = revocationOnly;
+        }
+
+        /**
+         * Indicates if token are queued and saved asynchronously in batches instead of saving them during the 
+         * commit.
+         * 
+         * @return <code>true</code> when write behind is enabled
+         */
+        public boolean isWriteBehind() {
+            return writeBehind;
+        }
+
+        /**
+         * See {@link #isWriteBehind()}.
+         * 
+         * @param writeBehind
+         */
+        public void setWriteBehind(boolean writeBehind) {
+            this.writeBehind = writeBehind;
+        }
+
+        /**
+         * Maximum number of queued token which are saved together.
+         * 
+         * @return Batch size of a single save operation
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * See {@link #getBatchSize()}.
+         * 
+         * @param batchSize
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Maximum number of token which wait for being saved. 
+         * 
+         * @return Capacity of the write behind queue
+         */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * See {@link #getQueueCapacity()}.
+         * 
+         * @param queueCapacity
+         */
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * How long a commit waits for space in a full queue. Afterwards the token is saved synchronously.
+         * 
+         * @return Timeout in milliseconds
+         */
+        public long getOfferTimeoutMs() {
+            return offerTimeoutMs;
+        }
+
+        /**
+         * See {@link #getOfferTimeoutMs()}.
+         * 
+         * @param offerTimeoutMs
+         */
+        public void setOfferTimeoutMs(long offerTimeoutMs) {
+            this.offerTimeoutMs = offerTimeoutMs;
+        }
+
+        /**
+         * Directory where locked token are journaled locally. The journal is read at startup before the database
+         * is queried. When not set, nothing is journaled.
+         * 
+         * @return Path of the journal directory - may be <code>null</code>
+         */
+        public String getJournalDirectory() {
+            return journalDirectory;
+        }
+
+        /**
+         * See {@link #getJournalDirectory()}.
+         * 
+         * @param journalDirectory
+         */
+        public void setJournalDirectory(String journalDirectory) {
+            this.journalDirectory = journalDirectory;
+        }
+
+        /**
+         * Number of journaled lock changes after which the journal is compacted into a new snapshot.
+         * 
+         * @return Maximum length of the journal
+         */
+        public int getJournalCompactThreshold() {
+            return journalCompactThreshold;
+        }
+
+        /**
+         * See {@link #getJournalCompactThreshold()}.
+         * 
+         * @param journalCompactThreshold
+         */
+        public void setJournalCompactThreshold(int journalCompactThreshold) {
+            this.journalCompactThreshold = journalCompactThreshold;
+        }
+
+        /**
+         * Maximum age of the journal files in milliseconds which is still trusted after a restart. Older files 
+         * may miss locks which other nodes made in the meantime, so the startup waits for the database instead.
+         * 
+         * @return Maximum age of the journal
+         */
+        public long getJournalMaxAgeMs() {
+            return journalMaxAgeMs;
+        }
+
+        /**
+         * See {@link #getJournalMaxAgeMs()}.
+         * 
+         * @param journalMaxAgeMs
+         */
+        public void setJournalMaxAgeMs(long journalMaxAgeMs) {
+            this.journalMaxAgeMs = journalMaxAgeMs;
+        }
     }
 
-}
\ No newline at end of file
+    /**
+     * Provides configuration about how local passwords are hashed. The cost parameters can be tuned against the
+     * login latency: Stored hashes with other parameters are upgraded on the next login.
+     * 
+     * @author marcel
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "password")
+    public static class PasswordSettings {
+        private String algorithm = "bcrypt";
+        private int bcryptStrength = 10;
+        private int argon2Memory = 4096;
+        private int argon2Iterations = 3;
+        private int argon2Parallelism = 1;
+        private int pbkdf2Iterations = 185_000;
+        private boolean rehashOnLogin = true;
+        private boolean calibrate;
+        private long targetMs = 250;
+
+        /**
+         * Algorithm which is used for new hashes: <code>bcrypt</code>, <code>argon2</code> or <code>pbkdf2</code>.
+         * 
+         * @return Name of the algorithm
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * See {@link #getAlgorithm()}.
+         * 
+         * @param algorithm
+         */
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        /**
+         * Log rounds of BCrypt. Each increment doubles the cost.
+         * 
+         * @return Strength between 4 and 31
+         */
+        public int getBcryptStrength() {
+            return bcryptStrength;
+        }
+
+        /**
+         * See {@link #getBcryptStrength()}.
+         * 
+         * @param bcryptStrength
+         */
+        public void setBcryptStrength(int bcryptStrength) {
+            this.bcryptStrength = bcryptStrength;
+        }
+
+        /**
+         * Memory which is needed by a single Argon2 hash.
+         * 
+         * @return Memory in KiB
+         */
+        public int getArgon2Memory() {
+            return argon2Memory;
+        }
+
+        /**
+         * See {@link #getArgon2Memory()}.
+         * 
+         * @param argon2Memory
+         */
+        public void setArgon2Memory(int argon2Memory) {
+            this.argon2Memory = argon2Memory;
+        }
+
+        /**
+         * Number of passes of Argon2 over the memory.
+         * 
+         * @return Iterations
+         */
+        public int getArgon2Iterations() {
+            return argon2Iterations;
+        }
+
+        /**
+         * See {@link #getArgon2Iterations()}.
+         * 
+         * @param argon2Iterations
+         */
+        public void setArgon2Iterations(int argon2Iterations) {
+            this.argon2Iterations = argon2Iterations;
+        }
+
+        /**
+         * Number of lanes of Argon2.
+         * 
+         * @return Parallelism
+         */
+        public int getArgon2Parallelism() {
+            return argon2Parallelism;
+        }
+
+        /**
+         * See {@link #getArgon2Parallelism()}.
+         * 
+         * @param argon2Parallelism
+         */
+        public void setArgon2Parallelism(int argon2Parallelism) {
+            this.argon2Parallelism = argon2Parallelism;
+        }
+
+        /**
+         * Iterations of PBKDF2. They are stored with each hash, so they can be raised without breaking existing
+         * hashes. Hashes from before the iterations were stored are checked with this value.
+         * 
+         * @return Iterations
+         */
+        public int getPbkdf2Iterations() {
+            return pbkdf2Iterations;
+        }
+
+        /**
+         * See {@link #getPbkdf2Iterations()}.
+         * 
+         * @param pbkdf2Iterations
+         */
+        public void setPbkdf2Iterations(int pbkdf2Iterations) {
+            this.pbkdf2Iterations = pbkdf2Iterations;
+        }
+
+        /**
+         * Indicates if stored hashes with another algorithm or lower cost are replaced after a successful login.
+         * 
+         * @return <code>true</code> when hashes are upgraded on login
+         */
+        public boolean isRehashOnLogin() {
+            return rehashOnLogin;
+        }
+
+        /**
+         * See {@link #isRehashOnLogin()}.
+         * 
+         * @param rehashOnLogin
+         */
+        public void setRehashOnLogin(boolean rehashOnLogin) {
+            this.rehashOnLogin = rehashOnLogin;
+        }
+
+        /**
+         * Indicates if the cost of the algorithm is raised on startup until a single hash takes about
+         * {@link #getTargetMs()}. The configured cost is never lowered.
+         * 
+         * @return <code>true</code> when the cost is calibrated on startup
+         */
+        public boolean isCalibrate() {
+            return calibrate;
+        }
+
+        /**
+         * See {@link #isCalibrate()}.
+         * 
+         * @param calibrate
+         */
+        public void setCalibrate(boolean calibrate) {
+            this.calibrate = calibrate;
+        }
+
+        /**
+         * Time which a single hash should take on this machine when the cost is calibrated.
+         * 
+         * @return Target latency in milliseconds
+         */
+        public long getTargetMs() {
+            return targetMs;
+        }
+
+        /**
+         * See {@link #getTargetMs()}.
+         * 
+         * @param targetMs
+         */
+        public void setTargetMs(long targetMs) {
+            this.targetMs = targetMs;
+        }
+    }
+}
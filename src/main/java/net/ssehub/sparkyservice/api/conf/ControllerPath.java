@@ -23,5 +23,10 @@ public final class ControllerPath {
     public static final String AUTHENTICATION_AUTH = GLOBAL_PREFIX + "/authenticate";
     public static final String AUTHENTICATION_CHECK = AUTHENTICATION_AUTH + "/check";
     public static final String AUTHENTICATION_VERIFY = AUTHENTICATION_AUTH + "/verify";
+    public static final String AUTHENTICATION_REFRESH = AUTHENTICATION_AUTH + "/refresh";
+    public static final String AUTHENTICATION_JWKS = AUTHENTICATION_AUTH + "/jwks";
+    public static final String AUTHENTICATION_REVOCATIONS = AUTHENTICATION_AUTH + "/revocations";
+    public static final String AUTHENTICATION_SESSIONS = AUTHENTICATION_AUTH + "/sessions";
+    public static final String AUTHENTICATION_SESSIONS_SINGLE = AUTHENTICATION_SESSIONS + "/{jti}";
        
 }
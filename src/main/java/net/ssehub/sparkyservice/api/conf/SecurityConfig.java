@@ -1,12 +1,11 @@
 package net.ssehub.sparkyservice.api.conf;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -14,17 +13,23 @@ import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.ldap.DefaultSpringSecurityContextSource;
+import org.springframework.security.ldap.authentication.BindAuthenticator;
+import org.springframework.security.ldap.authentication.LdapAuthenticationProvider;
 import org.springframework.security.ldap.authentication.ad.ActiveDirectoryLdapAuthenticationProvider;
 
 import net.ssehub.sparkyservice.api.auth.JwtAuthenticationFilter;
 import net.ssehub.sparkyservice.api.auth.JwtAuthorizationFilter;
+import net.ssehub.sparkyservice.api.auth.LocalAuthenticationProvider;
 import net.ssehub.sparkyservice.api.auth.LocalLoginDetailsMapper;
+import net.ssehub.sparkyservice.api.auth.LoginExecutor;
 import net.ssehub.sparkyservice.api.auth.MemoryLoginDetailsService;
-import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.RealmRoutingAuthenticationProvider;
 import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenService;
 import net.ssehub.sparkyservice.api.auth.ldap.SparkyLdapUserDetailsMapper;
-import net.ssehub.sparkyservice.api.auth.storage.JwtCache;
-import net.ssehub.sparkyservice.api.auth.storage.JwtStorageService;
+import net.ssehub.sparkyservice.api.auth.storage.JwtCacheWarmupService;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.user.password.PasswordEncodingService;
 import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
 
 /**
@@ -79,11 +84,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private JwtTokenService jwtService;
 
-    @Autowired 
-    private JwtStorageService jwtStorageService;
-
     @Autowired
     private MemoryLoginDetailsService memoryDetailsService;
+
+    @Autowired
+    private LoginExecutor loginExecutor;
+
+    @Autowired
+    private PasswordEncodingService passwordEncoder;
+
+    @Autowired
+    private RealmRoutingAuthenticationProvider realmRouter;
+
+    @Autowired
+    private JwtCacheWarmupService warmupService;
     
     @Override
     protected void configure(HttpSecurity http) throws Exception {
@@ -98,28 +112,21 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
             .antMatchers(ControllerPath.SWAGGER).permitAll()
             .antMatchers(ControllerPath.AUTHENTICATION_AUTH).permitAll()
             .antMatchers(ControllerPath.AUTHENTICATION_VERIFY).permitAll()
+            .antMatchers(ControllerPath.AUTHENTICATION_REFRESH).permitAll()
+            .antMatchers(ControllerPath.AUTHENTICATION_JWKS).permitAll()
             .antMatchers(ControllerPath.HEARTBEAT).permitAll()            
             .antMatchers(ControllerPath.AUTHENTICATION_CHECK).authenticated()
+            .antMatchers(ControllerPath.AUTHENTICATION_SESSIONS).authenticated()
+            .antMatchers(ControllerPath.AUTHENTICATION_SESSIONS_SINGLE).authenticated()
             .and()
                 .addFilter(
-                    new JwtAuthenticationFilter(authenticationManager(), jwtService)
+                    new JwtAuthenticationFilter(authenticationManager(), jwtService, loginExecutor)
                 )
                 .addFilter(
-                    new JwtAuthorizationFilter(authenticationManager(), jwtService)
+                    new JwtAuthorizationFilter(authenticationManager(), jwtService, warmupService)
                 )
                 .sessionManagement()
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS);
-        fillJwtCache();
-    }
-
-    /**
-     * Fills the {@link JwtCache} with initial values from the database. It stores all JWT token.
-     */
-    private void fillJwtCache() {
-        final List<JwtToken> lockedJwtToken = jwtStorageService.findAll();
-        if (lockedJwtToken != null) {
-            JwtCache.initNewCache(lockedJwtToken, jwtStorageService);
-        }
     }
     
     @Override
@@ -127,24 +134,35 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         web.ignoring().antMatchers("/v3/api-docs/**", "/swagger-ui/**");
     }
 
+    /**
+     * {@inheritDoc}. <br>
+     * All providers are set into the {@link RealmRoutingAuthenticationProvider}, which decides which of them are
+     * asked for a login.
+     */
     @Override
     public void configure(AuthenticationManagerBuilder auth) throws Exception {
         configureInMemory(auth);
-        auth.userDetailsService(localDetailsMapper);
+        realmRouter.setProvider(UserRealm.LOCAL,
+            new LocalAuthenticationProvider(localDetailsMapper, storageService, passwordEncoder));
         configureLdap(auth);
+        auth.authenticationProvider(realmRouter);
     }
 
     /**
      * Configures in memory authentication service.
      * 
      * @param auth - Current builder which is configure with inMemory authentication
+     * @throws Exception When the recovery user is enabled without a password
      */
     public void configureInMemory(AuthenticationManagerBuilder auth) throws Exception {
         if (inMemoryEnabled) {
             if (inMemoryPassword.isEmpty()) {
                 throw new Exception("Set recovery.password or disable the account");
             }
-            auth.userDetailsService(memoryDetailsService);
+            var memoryProvider = new DaoAuthenticationProvider();
+            memoryProvider.setUserDetailsService(memoryDetailsService);
+            memoryProvider.setPasswordEncoder(memoryDetailsService.getPasswordEncoder());
+            realmRouter.setProvider(UserRealm.MEMORY, memoryProvider);
         }
     }
 
@@ -166,17 +184,19 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 if (ldapUserDnPattern != null && ldapUserDnPattern.trim().length() > 0) {
                     adProvider.setSearchFilter(ldapUserDnPattern);
                 }
-                auth.authenticationProvider(adProvider);
+                realmRouter.setProvider(UserRealm.LDAP, adProvider);
                 auth.eraseCredentials(false);
             } else {
-                auth.ldapAuthentication()
-                    .contextSource()
-                    .url(ldapUrls + ldapBaseDn)
-                    .managerDn(ldapSecurityPrincipal)
-                    .managerPassword(ldapPrincipalPassword)
-                    .and()
-                    .userDnPatterns(ldapUserDnPattern)
-                    .userDetailsContextMapper(ldapMapper);
+                // built directly instead of auth.ldapAuthentication() so the router can decide when it is asked
+                var contextSource = new DefaultSpringSecurityContextSource(ldapUrls + ldapBaseDn);
+                contextSource.setUserDn(ldapSecurityPrincipal);
+                contextSource.setPassword(ldapPrincipalPassword);
+                contextSource.afterPropertiesSet();
+                var authenticator = new BindAuthenticator(contextSource);
+                authenticator.setUserDnPatterns(new String[] {ldapUserDnPattern});
+                var ldapProvider = new LdapAuthenticationProvider(authenticator);
+                ldapProvider.setUserDetailsContextMapper(ldapMapper);
+                realmRouter.setProvider(UserRealm.LDAP, ldapProvider);
             }
         }
     }
@@ -5,8 +5,6 @@ import javax.validation.Validator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -28,16 +26,6 @@ public class SpringConfig {
 
     public static final String LOCKED_JWT_BEAN = "lockedJwtToken";
 
-    /**
-     * Defines the PasswordEncoder bean.
-     * 
-     * @return Using BCryptPasswordEncoder
-     */
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
-    }
-
     /**
      * Sets the cors configuration as bean used by springs Tomcat. 
      * 
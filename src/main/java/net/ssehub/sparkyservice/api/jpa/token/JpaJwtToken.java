@@ -1,29 +1,46 @@
 package net.ssehub.sparkyservice.api.jpa.token;
 
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.Optional;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.springframework.data.domain.Persistable;
 
 import net.ssehub.sparkyservice.api.jpa.user.User;
 import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.jpa.user.UserRole;
 
 /**
- * Provides the JPA representation of a JWT token. 
+ * Provides the JPA representation of a JWT token. Locked rows carry a change version from a database sequence, so 
+ * nodes can load the locks since their last refresh. The expiration is indexed, so expired rows are purged without 
+ * scanning the table. <br>
+ * The JTI is assigned by the application, so the token tells Spring Data if it is new (see {@link #isNew()}). New 
+ * token are inserted without loading them first, which allows JDBC batching.
  * @author marcel
  */
 @Entity
-@Table(name = "jwt_issued_token")
+@Table(name = "jwt_issued_token", indexes = {
+    @Index(name = "idx_jwt_token_change", columnList = "changeVersion, jti"),
+    @Index(name = "idx_jwt_token_expiration", columnList = "expirationTime")
+})
 @ParametersAreNonnullByDefault
-public class JpaJwtToken {
+public class JpaJwtToken implements Persistable<String> {
 
     @Id
     @Column(nullable = false, length = 50)
@@ -36,12 +53,31 @@ public class JpaJwtToken {
     @Column
     private boolean locked;
 
+    @Column
+    @Nullable
+    private java.sql.Timestamp expirationTime;
+
+    @Column
+    @Nullable
+    private Long serial;
+
+    @Column
+    @Nullable
+    private Long changeVersion;
+
+    @Column(name = "token_generation")
+    @Nullable
+    private Integer tokenGeneration;
+
     @ManyToOne
     @OnDelete(action = OnDeleteAction.CASCADE)
     @JoinColumn(name = "id")
     @Nonnull
     private User user;
 
+    @Transient
+    private boolean stored;
+
     /**
      * Constructor needed for Hibernate/Spring Data to initialize an empty copy.
      */
@@ -62,11 +98,26 @@ public class JpaJwtToken {
      * @param user The user the token is associated to
      */
     public JpaJwtToken(String jti, int remainingRefreshes, boolean locked, User user) {
+        this(jti, remainingRefreshes, locked, user, null);
+    }
+
+    /**
+     * A jwt token with JPA annotations. It can be saved to a storage.
+     * 
+     * @param jti Unique identifier / primary key
+     * @param remainingRefreshes
+     * @param locked Decides if the token is valid for auth or not
+     * @param user The user the token is associated to
+     * @param expirationDate Date where the token expires - may be <code>null</code>
+     */
+    public JpaJwtToken(String jti, int remainingRefreshes, boolean locked, User user, 
+            @Nullable java.util.Date expirationDate) {
         super();
         this.jti = jti;
         this.remainingRefreshes = remainingRefreshes;
         this.locked = locked;
         this.user = user;
+        setExpirationDate(expirationDate);
     }
 
     /**
@@ -102,6 +153,110 @@ public class JpaJwtToken {
     }
 
 
+    /**
+     * Sequential serial of the token. Tokens which were issued without serials don't have one.
+     * 
+     * @return Serial - 0 when the token has none
+     */
+    public long getSerial() {
+        final Long storedSerial = serial;
+        return storedSerial != null ? storedSerial : 0;
+    }
+
+    /**
+     * See {@link #getSerial()}.
+     * 
+     * @param serial 0 when the token has none
+     */
+    public void setSerial(long serial) {
+        this.serial = serial != 0 ? serial : null;
+    }
+
+    /**
+     * Date where the token expires. Tokens which were saved before this date was stored don't have one.
+     * 
+     * @return Date of expiration
+     */
+    public Optional<java.sql.Timestamp> getExpirationDate() {
+        return notNull(Optional.ofNullable(expirationTime));
+    }
+
+    /**
+     * See {@link #getExpirationDate()}.
+     * 
+     * @param expirationDate
+     */
+    public void setExpirationDate(@Nullable java.util.Date expirationDate) {
+        this.expirationTime = expirationDate == null ? null : new java.sql.Timestamp(expirationDate.getTime());
+    }
+
+    /**
+     * Generation of the owners token when the token was issued. Tokens which were saved before the generation was 
+     * stored don't have one.
+     * 
+     * @return Token generation - 0 when the token has none
+     */
+    public int getTokenGeneration() {
+        final Integer storedGeneration = tokenGeneration;
+        return storedGeneration != null ? storedGeneration : 0;
+    }
+
+    /**
+     * See {@link #getTokenGeneration()}.
+     * 
+     * @param tokenGeneration 0 when the token has none
+     */
+    public void setTokenGeneration(int tokenGeneration) {
+        this.tokenGeneration = tokenGeneration != 0 ? tokenGeneration : null;
+    }
+
+    /**
+     * Version of the latest lock of the token. The versions are taken from a database sequence when a locked token 
+     * is saved, so they increase across all nodes. Token which are saved together share a version (see 
+     * {@link JwtChangeSequenceContributor}).
+     * 
+     * @return Version - 0 when the token wasn't saved as locked
+     */
+    public long getChangeVersion() {
+        final Long storedVersion = changeVersion;
+        return storedVersion != null ? storedVersion : 0;
+    }
+
+    /**
+     * See {@link #getChangeVersion()}.
+     * 
+     * @param changeVersion 0 when the token has none
+     */
+    public void setChangeVersion(long changeVersion) {
+        this.changeVersion = changeVersion != 0 ? changeVersion : null;
+    }
+
+    /**
+     * Marks the token as stored, so saving it updates the existing row instead of inserting a new one. Is invoked 
+     * by JPA after each load and insert.
+     */
+    @PostLoad
+    @PostPersist
+    public void markStored() {
+        stored = true;
+    }
+
+    /**
+     * Token which were created by the application are new unless they were marked with {@link #markStored()}.
+     * 
+     * @return <code>true</code> when saving the token inserts a new row
+     */
+    @Override
+    public boolean isNew() {
+        return !stored;
+    }
+
+    @Override
+    @Nonnull
+    public String getId() {
+        return jti;
+    }
+
     public User getUser() {
         return user;
     }
@@ -0,0 +1,235 @@
+package net.ssehub.sparkyservice.api.jpa.token;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Provides the JPA representation of a revocation change which one node publishes for all other nodes. The
+ * version is generated by the database, so all nodes see the same order of changes.
+ *
+ * @author marcel
+ */
+@Entity
+@Table(name = "jwt_revocation_event", indexes = @Index(name = "idx_revocation_event_created", 
+    columnList = "createdAt"))
+@ParametersAreNonnullByDefault
+public class JpaRevocationEvent {
+
+    /**
+     * Kind of a revocation change.
+     *
+     * @author marcel
+     */
+    public enum Type {
+        LOCKED, UNLOCKED, GENERATION
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long version;
+
+    @Column(nullable = false, length = 50)
+    @Nonnull
+    private String node;
+
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    @Nonnull
+    private Type type;
+
+    @Column(length = 50)
+    @Nullable
+    private String jti;
+
+    @Column
+    @Nullable
+    private String owner;
+
+    @Column
+    @Nullable
+    private String username;
+
+    @Column
+    @Enumerated(EnumType.STRING)
+    @Nullable
+    private UserRealm realm;
+
+    @Column
+    @Nullable
+    private Timestamp expirationTime;
+
+    @Column
+    @Nullable
+    private Long serial;
+
+    @Column
+    private int generation;
+
+    @Column(nullable = false)
+    @Nonnull
+    private Timestamp createdAt;
+
+    /**
+     * Constructor needed for Hibernate/Spring Data to initialize an empty copy.
+     */
+    @SuppressWarnings("unused")
+    private JpaRevocationEvent() {
+        node = "UNKWN";
+        type = Type.LOCKED;
+        createdAt = new Timestamp(0);
+    }
+
+    /**
+     * A new revocation change.
+     *
+     * @param node Identifier of the publishing node
+     * @param type Kind of the change
+     */
+    public JpaRevocationEvent(String node, Type type) {
+        this.node = node;
+        this.type = type;
+        this.createdAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * Version of the change which is generated when the change is saved.
+     *
+     * @return Version - 0 when the change isn't saved yet
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Nonnull
+    public String getNode() {
+        return node;
+    }
+
+    @Nonnull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The token which was locked or unlocked.
+     *
+     * @return JTI - empty for generation changes
+     */
+    public Optional<String> getJti() {
+        return notNull(Optional.ofNullable(jti));
+    }
+
+    /**
+     * Sets the token and its owner of a lock change.
+     *
+     * @param jti Identifier of the token
+     * @param username Name of the owner
+     * @param realm Realm of the owner
+     */
+    public void setToken(String jti, String username, UserRealm realm) {
+        this.jti = jti;
+        this.username = username;
+        this.realm = realm;
+    }
+
+    /**
+     * The owner of a token generation.
+     *
+     * @return Principal string of the owner - empty for lock changes
+     */
+    public Optional<String> getOwner() {
+        return notNull(Optional.ofNullable(owner));
+    }
+
+    /**
+     * Sets the owner and the new token generation of a generation change.
+     *
+     * @param owner Principal string of the owner
+     * @param generation Token generation
+     */
+    public void setGeneration(String owner, int generation) {
+        this.owner = owner;
+        this.generation = generation;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Name of the token owner.
+     *
+     * @return Name - empty for generation changes
+     */
+    public Optional<String> getUsername() {
+        return notNull(Optional.ofNullable(username));
+    }
+
+    /**
+     * Realm of the token owner.
+     *
+     * @return Realm - empty for generation changes
+     */
+    public Optional<UserRealm> getRealm() {
+        return notNull(Optional.ofNullable(realm));
+    }
+
+    /**
+     * Date where the token expires.
+     *
+     * @return Date of expiration - empty when the token doesn't expire
+     */
+    public Optional<Timestamp> getExpirationDate() {
+        return notNull(Optional.ofNullable(expirationTime));
+    }
+
+    /**
+     * See {@link #getExpirationDate()}.
+     *
+     * @param expirationDate
+     */
+    public void setExpirationDate(@Nullable java.util.Date expirationDate) {
+        this.expirationTime = expirationDate == null ? null : new Timestamp(expirationDate.getTime());
+    }
+
+    /**
+     * Serial of the token.
+     *
+     * @return Serial - 0 when the token has none
+     */
+    public long getSerial() {
+        final Long storedSerial = serial;
+        return storedSerial != null ? storedSerial : 0;
+    }
+
+    /**
+     * See {@link #getSerial()}.
+     *
+     * @param serial 0 when the token has none
+     */
+    public void setSerial(long serial) {
+        this.serial = serial != 0 ? serial : null;
+    }
+
+    @Nonnull
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+}
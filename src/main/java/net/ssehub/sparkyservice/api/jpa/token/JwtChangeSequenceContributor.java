@@ -0,0 +1,28 @@
+package net.ssehub.sparkyservice.api.jpa.token;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.spi.InFlightMetadataCollector;
+import org.hibernate.boot.spi.MetadataContributor;
+import org.jboss.jandex.IndexView;
+
+/**
+ * Declares the sequence of the change versions of {@link JpaJwtToken} in the schema, so Hibernate creates, 
+ * updates and validates it like the tables and uses the syntax of the configured dialect. The sequence isn't bound 
+ * to an identifier, so it can't be declared with a generator annotation. <br>
+ * Is registered as Hibernate service in <code>META-INF/services</code>.
+ * 
+ * @author marcel
+ */
+@ParametersAreNonnullByDefault
+public class JwtChangeSequenceContributor implements MetadataContributor {
+
+    public static final String SEQUENCE_NAME = "jwt_token_change_seq";
+
+    @Override
+    public void contribute(InFlightMetadataCollector metadataCollector, IndexView jandexIndex) {
+        metadataCollector.getDatabase().getDefaultNamespace()
+            .createSequence(Identifier.toIdentifier(SEQUENCE_NAME), 1, 1);
+    }
+}
@@ -70,6 +70,12 @@ public class User {
     @Column
     protected java.sql.Date expirationTime;
 
+    /**
+     * Only changed through a dedicated update query, so saving an outdated user object never resets it.
+     */
+    @Column(nullable = false, updatable = false)
+    protected int tokenGeneration;
+
     /**
      * Default constructor used by hibernate.
      */
@@ -112,6 +118,7 @@ public class User {
         this.fullName = user.fullName;
         this.profileConfiguration = user.profileConfiguration;
         this.expirationTime = user.expirationTime;
+        this.tokenGeneration = user.tokenGeneration;
     }
 
     /**
@@ -300,4 +307,14 @@ public class User {
     public UserRole getRole() {
         return role;
     }
+
+    /**
+     * Generation of the JWT token of this user. Each token contains the generation which was present when it was 
+     * issued; token with an older generation are revoked.
+     * 
+     * @return Current token generation - 0 when the token of this user were never revoked
+     */
+    public int getTokenGeneration() {
+        return tokenGeneration;
+    }
 }
@@ -1,7 +1,5 @@
 package net.ssehub.sparkyservice.api.user;
 
-import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
-
 import java.time.LocalDate;
 import java.util.Optional;
 
@@ -12,8 +10,6 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 import net.ssehub.sparkyservice.api.jpa.user.Password;
 import net.ssehub.sparkyservice.api.jpa.user.PersonalSettings;
@@ -22,6 +18,8 @@ import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.jpa.user.UserRole;
 import net.ssehub.sparkyservice.api.user.dto.UserDto;
 import net.ssehub.sparkyservice.api.user.dto.UserDto.ChangePasswordDto;
+import net.ssehub.sparkyservice.api.user.password.HashAlgorithm;
+import net.ssehub.sparkyservice.api.user.password.PasswordEncodingService;
 import net.ssehub.sparkyservice.api.util.DateUtil;
 
 /**
@@ -34,12 +32,11 @@ import net.ssehub.sparkyservice.api.util.DateUtil;
 public class LocalUserDetails extends AbstractSparkyUser implements SparkyUser {
 
     public static final UserRealm DEFAULT_REALM = UserRealm.LOCAL;
-    public static final String DEFAULT_ALGO = BCryptPasswordEncoder.class.getSimpleName().toLowerCase();
+    public static final String DEFAULT_ALGO = HashAlgorithm.BCRYPT.getId();
     private static final long serialVersionUID = 1L;
 
     private final Logger log = LoggerFactory.getLogger(this.getClass().getName());
     private Password passwordEntity;
-    private @Nullable  PasswordEncoder encoder;
 
     /**
      * Default constructor only used for testing purposes.
@@ -117,31 +114,17 @@ public class LocalUserDetails extends AbstractSparkyUser implements SparkyUser {
     }
 
     /**
-     * Encodes a raw string to bcrypt hash sets the local password entity.
+     * Encodes a raw string with the configured hash algorithm (bcrypt by default) and sets the local password entity.
      * 
      * @param rawPassword
      * @return the hashed value - never null but may be empty
      */
     public Password encodeAndSetPassword(String rawPassword) {
-        final Password passwordEntity = new Password(encode(rawPassword), DEFAULT_ALGO);
+        final Password passwordEntity = getEncoder().encodePassword(rawPassword);
         this.passwordEntity = passwordEntity;
         return passwordEntity;
     }
 
-    /**
-     * Encodes a string to hashed password using the default algorithm.
-     * 
-     * @param rawPassword
-     *                    - Plain password as string
-     * @return Encoded password
-     */
-    private @Nonnull String encode(String rawPassword) {
-        final String encodedPass = getEncoder().encode(rawPassword);
-        final String nonNullPass = Optional.ofNullable(encodedPass).orElseThrow(
-            () -> new RuntimeException("BCryptPasswordEncoder returned null - this should not happen"));
-        return notNull(nonNullPass);
-    }
-
     /**
      * Returns the (probably encoded password) of the user. For more information use {@link #getPasswordEntity()}.
      * @return password of the user
@@ -152,17 +135,12 @@ public class LocalUserDetails extends AbstractSparkyUser implements SparkyUser {
     }
 
     /**
-     * Returns springs default {@link BCryptPasswordEncoder}.
+     * Returns the encoder which hashes and checks local passwords with the algorithm of the password entity.
      * 
-     * @return default instance of {@link BCryptPasswordEncoder}
+     * @return Encoding service of the application
      */
-    public @Nonnull PasswordEncoder getEncoder() {
-        PasswordEncoder encoder2 = encoder;
-        if (encoder2 == null) {
-            encoder2 = new BCryptPasswordEncoder();
-            encoder = encoder2;
-        }
-        return encoder2;
+    public @Nonnull PasswordEncodingService getEncoder() {
+        return PasswordEncodingService.getInstance();
     }
 
     @Override
@@ -187,7 +165,7 @@ public class LocalUserDetails extends AbstractSparkyUser implements SparkyUser {
         var jpaUser = new User(
             getUsername(), UserRealm.LOCAL, isEnabled(), getRole()
         );
-        jpaUser.setPasswordEntity(new Password(getPassword()));
+        jpaUser.setPasswordEntity(new Password(getPasswordEntity()));
         jpaUser.setProfileConfiguration(new PersonalSettings(getSettings()));
         jpaUser.setExpirationDate(getExpireDate());
         jpaUser.setId(super.databaseId);
@@ -221,7 +199,7 @@ public class LocalUserDetails extends AbstractSparkyUser implements SparkyUser {
      * @param newPassword
      */
     public void defaultUpdatePassword(@Nullable String oldPassword, String newPassword) {
-        if (getEncoder().matches(oldPassword, getPassword())) {
+        if (getEncoder().matches(oldPassword, getPasswordEntity())) {
             encodeAndSetPassword(newPassword);
         } else {
             log.debug("Password for user {} not changed because they old password didn't matched.", getUsername());
@@ -1,11 +1,13 @@
 package net.ssehub.sparkyservice.api.user.dto;
 
 /**
- * DTO for login credentials. 
+ * DTO for login credentials. The optional realm (or a username like <code>user@ldap</code>) sends the login directly
+ * to the authentication provider of this realm.
  * @author marcel
  */
 //checkstyle: stop visibility modifier check
 public class CredentialsDto {
     public String username;
     public String password;
+    public String realm;
 }
@@ -0,0 +1,314 @@
+package net.ssehub.sparkyservice.api.user.password;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm;
+
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.PasswordSettings;
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+
+/**
+ * Password encoder which delegates to the encoder of the {@link Password#getHashAlgorithm()} of a stored password.
+ * New passwords are hashed with the configured algorithm and cost (see {@link PasswordSettings}); stored passwords
+ * with another algorithm or a lower cost are reported by {@link #upgradeEncoding(Password)}, so they can be hashed
+ * again after a successful login. <br>
+ * {@link HashAlgorithm#PLAIN} passwords are legacy rows: They contain either a BCrypt hash which was stored without
+ * its algorithm or the plain text, which is compared in constant time. Passwords with an unknown algorithm never
+ * match. <br>
+ * PBKDF2 hashes carry their iterations (<code>$pbkdf2-sha256$i=iterations$hash</code>), so the configured
+ * iterations can be changed like the cost of the other algorithms. <br>
+ * The string based methods of {@link PasswordEncoder} detect the algorithm from the format of the hash; prefer the
+ * methods which take a {@link Password}. The application uses it through the {@link PasswordEncodingService}.
+ *
+ * @author marcel
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class DelegatingHashEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    private static final Pattern ARGON2_PARAMETERS = Pattern.compile("\\$m=(\\d+),t=(\\d+),p=(\\d+)\\$");
+
+    private static final String PBKDF2_PREFIX = "$pbkdf2-sha256$i=";
+
+    private static final Pattern PBKDF2_PATTERN = Pattern.compile("\\A\\$pbkdf2-sha256\\$i=(\\d{1,9})\\$(.+)\\z");
+
+    @Nonnull
+    private final Map<HashAlgorithm, PasswordEncoder> encoders = new EnumMap<>(HashAlgorithm.class);
+
+    @Nonnull
+    private final HashAlgorithm defaultAlgorithm;
+
+    @Nonnull
+    private final PasswordSettings settings;
+
+    /**
+     * Encoder with the given algorithm and cost for new hashes.
+     *
+     * @param settings Algorithm and cost parameters
+     * @throws IllegalArgumentException When the algorithm is unknown or {@link HashAlgorithm#PLAIN}
+     */
+    public DelegatingHashEncoder(PasswordSettings settings) {
+        this.settings = settings;
+        this.defaultAlgorithm = HashAlgorithm.fromName(notNull(String.valueOf(settings.getAlgorithm())))
+            .filter(algorithm -> algorithm != HashAlgorithm.PLAIN)
+            .orElseThrow(() -> new IllegalArgumentException("Unsupported password.algorithm: "
+                    + settings.getAlgorithm()));
+        var bcrypt = new BCryptPasswordEncoder(settings.getBcryptStrength());
+        encoders.put(HashAlgorithm.BCRYPT, bcrypt);
+        encoders.put(HashAlgorithm.ARGON2, new Argon2PasswordEncoder(16, 32, settings.getArgon2Parallelism(),
+            settings.getArgon2Memory(), settings.getArgon2Iterations()));
+        encoders.put(HashAlgorithm.PBKDF2, new IteratedPbkdf2Encoder(settings.getPbkdf2Iterations()));
+        encoders.put(HashAlgorithm.PLAIN, new LegacyPlainEncoder(bcrypt));
+    }
+
+    /**
+     * PBKDF2 with HMAC-SHA256 which stores the iterations in front of the hash. Hashes without iterations are
+     * checked with the configured iterations and are marked for an upgrade.
+     *
+     * @author marcel
+     */
+    private static final class IteratedPbkdf2Encoder implements PasswordEncoder {
+
+        private final int iterations;
+
+        @Nonnull
+        private final PasswordEncoder configured;
+
+        /**
+         * Encoder for new hashes with the given iterations.
+         *
+         * @param iterations Iterations of new hashes
+         */
+        private IteratedPbkdf2Encoder(int iterations) {
+            this.iterations = iterations;
+            this.configured = create(iterations);
+        }
+
+        /**
+         * Creates a PBKDF2 encoder.
+         *
+         * @param iterations Iterations of the encoder
+         * @return New encoder
+         */
+        @Nonnull
+        private static PasswordEncoder create(int iterations) {
+            var pbkdf2 = new Pbkdf2PasswordEncoder("", iterations, 256);
+            pbkdf2.setAlgorithm(SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256);
+            return pbkdf2;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return PBKDF2_PREFIX + iterations + "$" + configured.encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            boolean matches;
+            Matcher hash = PBKDF2_PATTERN.matcher(encodedPassword);
+            if (!hash.matches()) {
+                matches = configured.matches(rawPassword, encodedPassword);
+            } else {
+                int storedIterations = Integer.parseInt(hash.group(1));
+                var encoder = storedIterations == iterations ? configured : create(storedIterations);
+                matches = storedIterations > 0 && encoder.matches(rawPassword, hash.group(2));
+            }
+            return matches;
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            Matcher hash = PBKDF2_PATTERN.matcher(encodedPassword);
+            return !hash.matches() || Integer.parseInt(hash.group(1)) < iterations;
+        }
+    }
+
+    /**
+     * Matches legacy {@link HashAlgorithm#PLAIN} passwords. BCrypt hashes are checked with BCrypt, everything else is
+     * compared as plain text in constant time.
+     *
+     * @author marcel
+     */
+    private static final class LegacyPlainEncoder implements PasswordEncoder {
+
+        @Nonnull
+        private final PasswordEncoder bcrypt;
+
+        /**
+         * Encoder for legacy rows.
+         *
+         * @param bcrypt Encoder for legacy rows which contain a BCrypt hash
+         */
+        private LegacyPlainEncoder(PasswordEncoder bcrypt) {
+            this.bcrypt = bcrypt;
+        }
+
+        /**
+         * Creates a BCrypt hash, which this encoder matches as well. Passwords are never stored as plain text.
+         */
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return bcrypt.encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            boolean matches;
+            if (BCRYPT_PATTERN.matcher(encodedPassword).matches()) {
+                matches = bcrypt.matches(rawPassword, encodedPassword);
+            } else {
+                matches = MessageDigest.isEqual(rawPassword.toString().getBytes(StandardCharsets.UTF_8),
+                    encodedPassword.getBytes(StandardCharsets.UTF_8));
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * The algorithm which is used for new hashes.
+     *
+     * @return Configured algorithm
+     */
+    @Nonnull
+    public HashAlgorithm getDefaultAlgorithm() {
+        return defaultAlgorithm;
+    }
+
+    /**
+     * The settings of this encoder.
+     *
+     * @return Algorithm and cost parameters
+     */
+    @Nonnull
+    public PasswordSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Hashes a password with the configured algorithm.
+     *
+     * @param rawPassword Password in plain text
+     * @return Password entity with the hash and its algorithm
+     */
+    @Nonnull
+    public Password encodePassword(CharSequence rawPassword) {
+        return new Password(encode(rawPassword), defaultAlgorithm.getId());
+    }
+
+    /**
+     * Checks a password against a stored password with the algorithm of the stored password.
+     *
+     * @param rawPassword Password in plain text - never matches when <code>null</code>
+     * @param stored Stored password - never matches when its algorithm is unknown
+     * @return <code>true</code> when the password is correct
+     */
+    public boolean matches(@Nullable CharSequence rawPassword, Password stored) {
+        return rawPassword != null && HashAlgorithm.fromId(stored.getHashAlgorithm())
+            .map(algorithm -> encoderOf(algorithm).matches(rawPassword, stored.getPasswordString()))
+            .orElse(false);
+    }
+
+    /**
+     * Checks if a stored password should be hashed again: It has another algorithm than the configured one or was
+     * hashed with a lower cost. Passwords with an unknown algorithm never match, so they are never upgraded.
+     *
+     * @param stored Stored password
+     * @return <code>true</code> when the password should be hashed again after the next successful login
+     */
+    public boolean upgradeEncoding(Password stored) {
+        var knownAlgorithm = HashAlgorithm.fromId(stored.getHashAlgorithm());
+        if (knownAlgorithm.isEmpty()) {
+            return false;
+        }
+        var algorithm = knownAlgorithm.get();
+        boolean upgrade;
+        if (algorithm != defaultAlgorithm) {
+            upgrade = true;
+        } else if (algorithm == HashAlgorithm.ARGON2) {
+            upgrade = isWeakerArgon2(stored.getPasswordString());
+        } else {
+            upgrade = encoderOf(algorithm).upgradeEncoding(stored.getPasswordString());
+        }
+        return upgrade;
+    }
+
+    /**
+     * Checks if an Argon2 hash was created with lower cost parameters than the configured ones.
+     *
+     * @param hash Argon2 hash with encoded parameters
+     * @return <code>true</code> when any of the parameters is lower
+     */
+    private boolean isWeakerArgon2(String hash) {
+        Matcher parameters = ARGON2_PARAMETERS.matcher(hash);
+        return !parameters.find() || Integer.parseInt(parameters.group(1)) < settings.getArgon2Memory()
+            || Integer.parseInt(parameters.group(2)) < settings.getArgon2Iterations()
+            || Integer.parseInt(parameters.group(3)) < settings.getArgon2Parallelism();
+    }
+
+    /**
+     * The encoder of an algorithm.
+     *
+     * @param algorithm Algorithm of a stored password
+     * @return Configured encoder
+     */
+    @Nonnull
+    PasswordEncoder encoderOf(HashAlgorithm algorithm) {
+        return notNull(encoders.get(algorithm));
+    }
+
+    /**
+     * {@inheritDoc}. <br>
+     * Uses the configured algorithm.
+     */
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return encoderOf(defaultAlgorithm).encode(rawPassword);
+    }
+
+    /**
+     * {@inheritDoc}. <br>
+     * Detects the algorithm with {@link #detect(String)}.
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return encoderOf(detect(encodedPassword)).matches(rawPassword, encodedPassword);
+    }
+
+    /**
+     * Detects the algorithm of a hash which is stored without its algorithm. BCrypt, Argon2 and PBKDF2 hashes are
+     * detected by their format, other hashes are assumed to use the configured algorithm.
+     *
+     * @param encodedPassword Hash of a password
+     * @return Probable algorithm of the hash
+     */
+    @Nonnull
+    HashAlgorithm detect(String encodedPassword) {
+        HashAlgorithm algorithm = defaultAlgorithm;
+        if (BCRYPT_PATTERN.matcher(encodedPassword).matches()) {
+            algorithm = HashAlgorithm.BCRYPT;
+        } else if (encodedPassword.startsWith("$argon2")) {
+            algorithm = HashAlgorithm.ARGON2;
+        } else if (encodedPassword.startsWith(PBKDF2_PREFIX)) {
+            algorithm = HashAlgorithm.PBKDF2;
+        }
+        return algorithm;
+    }
+}
@@ -0,0 +1,100 @@
+package net.ssehub.sparkyservice.api.user.password;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+
+/**
+ * Hash algorithms of local passwords. The {@link #getId()} is stored as {@link Password#getHashAlgorithm()}.
+ *
+ * @author marcel
+ */
+public enum HashAlgorithm {
+
+    /**
+     * Hashed with {@link BCryptPasswordEncoder}.
+     */
+    BCRYPT(BCryptPasswordEncoder.class.getSimpleName()),
+
+    /**
+     * Hashed with {@link Argon2PasswordEncoder}.
+     */
+    ARGON2(Argon2PasswordEncoder.class.getSimpleName()),
+
+    /**
+     * Hashed with {@link Pbkdf2PasswordEncoder}.
+     */
+    PBKDF2(Pbkdf2PasswordEncoder.class.getSimpleName()),
+
+    /**
+     * Legacy passwords which aren't hashed or were stored without their algorithm. Are never used for new passwords.
+     */
+    PLAIN("plain");
+
+    @Nonnull
+    private final String id;
+
+    /**
+     * Algorithm with an ID.
+     *
+     * @param id Case insensitive ID
+     */
+    HashAlgorithm(String id) {
+        this.id = id.toLowerCase();
+    }
+
+    /**
+     * The ID as it is stored with a password.
+     *
+     * @return ID in lowercase
+     */
+    @Nonnull
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Finds the algorithm of a stored password. Only the exact IDs are known; passwords which were stored without
+     * algorithm carry the ID of {@link #PLAIN}. Unknown IDs are never treated as {@link #PLAIN}, so a broken label
+     * can't turn a hash into a plain text password.
+     *
+     * @param id Stored ID, case insensitive
+     * @return The algorithm with the given ID - empty when the ID is unknown
+     */
+    @Nonnull
+    public static Optional<HashAlgorithm> fromId(@Nullable String id) {
+        HashAlgorithm found = null;
+        for (var algorithm : values()) {
+            if (algorithm.id.equalsIgnoreCase(id)) {
+                found = algorithm;
+            }
+        }
+        return notNull(Optional.ofNullable(found));
+    }
+
+    /**
+     * Finds an algorithm by its name or ID, for example in a configuration.
+     *
+     * @param name Name like <code>bcrypt</code> or ID, case insensitive
+     * @return The algorithm - empty when the name is unknown
+     */
+    @Nonnull
+    public static Optional<HashAlgorithm> fromName(String name) {
+        HashAlgorithm found = null;
+        for (var algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name) || algorithm.id.equalsIgnoreCase(name)) {
+                found = algorithm;
+            }
+        }
+        return notNull(Optional.ofNullable(found));
+    }
+}
@@ -0,0 +1,357 @@
+package net.ssehub.sparkyservice.api.user.password;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PostConstruct;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.PasswordSettings;
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+import net.ssehub.sparkyservice.api.user.LocalUserDetails;
+
+/**
+ * Hashes and checks all passwords of the application. This is the single {@link PasswordEncoder} bean; objects which
+ * aren't managed by spring, like {@link LocalUserDetails}, use the same instance through {@link #getInstance()}.
+ * <br>
+ * The algorithm is chosen by a {@link DelegatingHashEncoder}. The time of each hash and check is measured per
+ * algorithm. Optionally, the cost of the configured algorithm is raised on startup until a single hash takes about
+ * {@link PasswordSettings#getTargetMs()} on this machine.
+ *
+ * @author marcel
+ */
+@Service
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class PasswordEncodingService implements PasswordEncoder, MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PasswordEncodingService.class);
+
+    private static final int MAX_BCRYPT_STRENGTH = 31;
+
+    private static final int MAX_ITERATION_GROWTH = 8;
+
+    private static final int MAX_CALIBRATION_STEPS = 10;
+
+    private static volatile PasswordEncodingService instance = new PasswordEncodingService(new PasswordSettings());
+
+    @Nonnull
+    private final DelegatingHashEncoder encoder;
+
+    @Nonnull
+    private final Map<HashAlgorithm, Timing> encodeTimings = new EnumMap<>(HashAlgorithm.class);
+
+    @Nonnull
+    private final Map<HashAlgorithm, Timing> matchTimings = new EnumMap<>(HashAlgorithm.class);
+
+    private final long calibratedMs;
+
+    /**
+     * Number and total time of hash operations.
+     *
+     * @author marcel
+     */
+    private static final class Timing {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+    }
+
+    /**
+     * Encoding service with the given settings. Calibrates the cost when configured.
+     *
+     * @param settings Algorithm and cost of new hashes
+     */
+    @Autowired
+    public PasswordEncodingService(PasswordSettings settings) {
+        for (var algorithm : HashAlgorithm.values()) {
+            encodeTimings.put(algorithm, new Timing());
+            matchTimings.put(algorithm, new Timing());
+        }
+        if (settings.isCalibrate()) {
+            var calibrated = calibrate(settings);
+            this.encoder = calibrated.encoder;
+            this.calibratedMs = TimeUnit.NANOSECONDS.toMillis(calibrated.durationNanos);
+        } else {
+            this.encoder = new DelegatingHashEncoder(settings);
+            this.calibratedMs = -1;
+        }
+    }
+
+    /**
+     * Result of a calibration.
+     *
+     * @author marcel
+     */
+    private static final class Calibration {
+        private DelegatingHashEncoder encoder;
+        private long durationNanos;
+    }
+
+    /**
+     * Makes this service available to objects which aren't managed by spring. Is invoked by spring.
+     */
+    @PostConstruct
+    public void register() {
+        instance = this;
+    }
+
+    /**
+     * The service which is used by objects which aren't managed by spring.
+     *
+     * @return The service of the application - a service with the default settings when spring didn't start
+     */
+    @Nonnull
+    public static PasswordEncodingService getInstance() {
+        return notNull(instance);
+    }
+
+    /**
+     * Raises the cost of the configured algorithm until a single hash takes about the target time. The cost is
+     * never lowered below the configured one.
+     *
+     * @param settings Configured settings - aren't changed
+     * @return Encoder with the calibrated cost and the duration of a hash with it
+     */
+    @Nonnull
+    private static Calibration calibrate(PasswordSettings settings) {
+        var calibrated = copy(settings);
+        var result = new Calibration();
+        result.encoder = new DelegatingHashEncoder(calibrated);
+        result.durationNanos = measure(result.encoder); // also warms up
+        result.durationNanos = measure(result.encoder);
+        long target = TimeUnit.MILLISECONDS.toNanos(settings.getTargetMs());
+        switch (result.encoder.getDefaultAlgorithm()) {
+        case BCRYPT:
+            // each increment doubles the cost
+            while (result.durationNanos * 2 <= target && calibrated.getBcryptStrength() < MAX_BCRYPT_STRENGTH) {
+                calibrated.setBcryptStrength(calibrated.getBcryptStrength() + 1);
+                result.encoder = new DelegatingHashEncoder(calibrated);
+                result.durationNanos = measure(result.encoder);
+            }
+            break;
+        case ARGON2:
+            calibrateIterations(result, calibrated, calibrated.getArgon2Iterations(), calibrated::setArgon2Iterations,
+                target);
+            break;
+        case PBKDF2:
+            // the iterations are stored with each hash
+            calibrateIterations(result, calibrated, calibrated.getPbkdf2Iterations(), calibrated::setPbkdf2Iterations,
+                target);
+            break;
+        default:
+            LOG.warn("The cost of {} can't be calibrated", result.encoder.getDefaultAlgorithm());
+            break;
+        }
+        LOG.info("Calibrated password hashing: {} with bcrypt strength {}, argon2 iterations {}, pbkdf2 iterations {} "
+            + "takes {} ms", result.encoder.getDefaultAlgorithm(), calibrated.getBcryptStrength(),
+            calibrated.getArgon2Iterations(), calibrated.getPbkdf2Iterations(),
+            TimeUnit.NANOSECONDS.toMillis(result.durationNanos));
+        return result;
+    }
+
+    /**
+     * Raises iterations whose cost grows linear step by step until a hash takes at least 90 % of the target
+     * time. Each step scales the iterations by the measured time, but at most by {@value #MAX_ITERATION_GROWTH}, so
+     * a too short measurement can't overshoot. Iterations whose hash takes longer than the target are discarded.
+     *
+     * @param result Calibration with the encoder and duration of the configured iterations - receives the ones of
+     *        the chosen iterations
+     * @param calibrated Settings of the calibration - the encoders are created from them and they receive the
+     *        chosen iterations, which are at least the configured ones
+     * @param configured Iterations of the configured settings
+     * @param setIterations Sets the iterations in the calibrated settings
+     * @param targetNanos Target time of a single hash in nanoseconds
+     */
+    private static void calibrateIterations(Calibration result, PasswordSettings calibrated, int configured,
+            IntConsumer setIterations, long targetNanos) {
+        int iterations = configured;
+        for (int step = 0; step < MAX_CALIBRATION_STEPS && result.durationNanos * 10 < targetNanos * 9; step++) {
+            double growth = result.durationNanos > 0 ? (double) targetNanos / result.durationNanos
+                : MAX_ITERATION_GROWTH;
+            long next = (long) Math.min(iterations * Math.min(growth, MAX_ITERATION_GROWTH), Integer.MAX_VALUE);
+            if (next <= iterations) {
+                break;
+            }
+            setIterations.accept((int) next);
+            var encoder = new DelegatingHashEncoder(calibrated);
+            long duration = measure(encoder);
+            if (duration > targetNanos) {
+                break;
+            }
+            iterations = (int) next;
+            result.encoder = encoder;
+            result.durationNanos = duration;
+        }
+        setIterations.accept(iterations);
+    }
+
+    /**
+     * Measures the time of a single hash.
+     *
+     * @param encoder Encoder with the settings under test
+     * @return Time in nanoseconds
+     */
+    private static long measure(DelegatingHashEncoder encoder) {
+        long start = System.nanoTime();
+        encoder.encode("calibration");
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Copies settings.
+     *
+     * @param settings Settings to copy
+     * @return Independent copy
+     */
+    @Nonnull
+    private static PasswordSettings copy(PasswordSettings settings) {
+        var copy = new PasswordSettings();
+        copy.setAlgorithm(settings.getAlgorithm());
+        copy.setBcryptStrength(settings.getBcryptStrength());
+        copy.setArgon2Memory(settings.getArgon2Memory());
+        copy.setArgon2Iterations(settings.getArgon2Iterations());
+        copy.setArgon2Parallelism(settings.getArgon2Parallelism());
+        copy.setPbkdf2Iterations(settings.getPbkdf2Iterations());
+        copy.setRehashOnLogin(settings.isRehashOnLogin());
+        copy.setCalibrate(settings.isCalibrate());
+        copy.setTargetMs(settings.getTargetMs());
+        return copy;
+    }
+
+    /**
+     * The settings which are used for new hashes - includes the calibrated cost.
+     *
+     * @return Algorithm and cost parameters
+     */
+    @Nonnull
+    public PasswordSettings getSettings() {
+        return encoder.getSettings();
+    }
+
+    /**
+     * The algorithm which is used for new hashes.
+     *
+     * @return Configured algorithm
+     */
+    @Nonnull
+    public HashAlgorithm getDefaultAlgorithm() {
+        return encoder.getDefaultAlgorithm();
+    }
+
+    /**
+     * Hashes a password with the configured algorithm.
+     *
+     * @param rawPassword Password in plain text
+     * @return Password entity with the hash and its algorithm
+     */
+    @Nonnull
+    public Password encodePassword(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        var password = encoder.encodePassword(rawPassword);
+        record(encodeTimings, encoder.getDefaultAlgorithm(), start);
+        return password;
+    }
+
+    /**
+     * Checks a password against a stored password with the algorithm of the stored password.
+     *
+     * @param rawPassword Password in plain text - never matches when <code>null</code>
+     * @param stored Stored password - never matches when its algorithm is unknown
+     * @return <code>true</code> when the password is correct
+     */
+    public boolean matches(@Nullable CharSequence rawPassword, Password stored) {
+        var algorithm = HashAlgorithm.fromId(stored.getHashAlgorithm());
+        if (algorithm.isEmpty()) {
+            LOG.warn("Stored password has the unknown algorithm {}", stored.getHashAlgorithm());
+            return false;
+        }
+        return timed(notNull(algorithm.get()), () -> encoder.matches(rawPassword, stored));
+    }
+
+    /**
+     * Checks if a stored password should be hashed again, see {@link DelegatingHashEncoder#upgradeEncoding(Password)}.
+     *
+     * @param stored Stored password
+     * @return <code>true</code> when the password should be hashed again after the next successful login
+     */
+    public boolean upgradeEncoding(Password stored) {
+        return encoder.upgradeEncoding(stored);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return encodePassword(rawPassword).getPasswordString();
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return timed(encoder.detect(encodedPassword), () -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Executes and measures a password check.
+     *
+     * @param algorithm Algorithm of the stored password
+     * @param check The check
+     * @return Result of the check
+     */
+    private boolean timed(HashAlgorithm algorithm, BooleanSupplier check) {
+        long start = System.nanoTime();
+        boolean matches = check.getAsBoolean();
+        record(matchTimings, algorithm, start);
+        return matches;
+    }
+
+    /**
+     * Records the time of an operation.
+     *
+     * @param timings Timings of the operation
+     * @param algorithm Algorithm which was used
+     * @param start Start of the operation in nanoseconds
+     */
+    private static void record(Map<HashAlgorithm, Timing> timings, HashAlgorithm algorithm, long start) {
+        var timing = notNull(timings.get(algorithm));
+        timing.nanos.addAndGet(System.nanoTime() - start);
+        timing.count.incrementAndGet();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (var algorithm : HashAlgorithm.values()) {
+            var encodeTiming = notNull(encodeTimings.get(algorithm));
+            FunctionTimer.builder("sparky.password.encode", encodeTiming, t -> t.count.get(), t -> t.nanos.get(),
+                TimeUnit.NANOSECONDS)
+                .tag("algorithm", algorithm.name().toLowerCase())
+                .description("Time which was needed to hash new passwords")
+                .register(registry);
+            var matchTiming = notNull(matchTimings.get(algorithm));
+            FunctionTimer.builder("sparky.password.match", matchTiming, t -> t.count.get(), t -> t.nanos.get(),
+                TimeUnit.NANOSECONDS)
+                .tag("algorithm", algorithm.name().toLowerCase())
+                .description("Time which was needed to check passwords against stored hashes")
+                .register(registry);
+        }
+        Gauge.builder("sparky.password.calibration.duration", this, s -> s.calibratedMs)
+            .description("Time in milliseconds of a single hash with the calibrated cost - -1 without calibration")
+            .register(registry);
+    }
+}
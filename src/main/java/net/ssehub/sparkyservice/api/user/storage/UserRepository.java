@@ -1,10 +1,15 @@
 package net.ssehub.sparkyservice.api.user.storage;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import net.ssehub.sparkyservice.api.jpa.user.User;
 import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
@@ -17,9 +22,44 @@ import net.ssehub.sparkyservice.api.jpa.user.UserRole;
  */
 @Repository
 interface UserRepository extends CrudRepository<User, Integer> {
+
+    /**
+     * The columns of a user which identify it.
+     *
+     * @author marcel
+     */
+    interface UserKey {
+        int getId();
+        String getUserName();
+        UserRealm getRealm();
+        boolean getIsActive();
+        UserRole getRole();
+    }
+
     Optional<User> findByuserNameAndRealm(String username, UserRealm realm);
     Optional<List<User>> findByuserName(String username);
     Iterable<User> findAll();
     Iterable<User> findByRealm(UserRealm realm);
     Iterable<User> findByRole(UserRole role);
+    Iterable<User> findByTokenGenerationGreaterThan(int tokenGeneration);
+
+    /**
+     * Finds the keys of all users with one of the given names in any realm with a single statement. Neither 
+     * passwords nor settings are loaded.
+     * 
+     * @param usernames
+     * @return Keys of the users
+     */
+    @Query("select u.id as id, u.userName as userName, u.realm as realm, u.isActive as isActive, u.role as role "
+            + "from User u where u.userName in :usernames")
+    List<UserKey> findKeysByUserNameIn(@Param("usernames") Collection<String> usernames);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.tokenGeneration = u.tokenGeneration + 1 "
+            + "where u.userName = :username and u.realm = :realm")
+    int incrementTokenGeneration(@Param("username") String username, @Param("realm") UserRealm realm);
+
+    @Query("select u.tokenGeneration from User u where u.userName = :username and u.realm = :realm")
+    Optional<Integer> findTokenGeneration(@Param("username") String username, @Param("realm") UserRealm realm);
 }
@@ -3,9 +3,13 @@ package net.ssehub.sparkyservice.api.user.storage;
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -18,6 +22,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
 import net.ssehub.sparkyservice.api.jpa.user.User;
 import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.jpa.user.UserRole;
@@ -218,6 +223,49 @@ public class UserStorageImpl implements UserStorageService {
         return fromIterableToUserList(repository.findByRealm(realm));
     }
 
+    @Override
+    public int incrementTokenGeneration(SparkyUser user) throws UserNotFoundException {
+        if (repository.incrementTokenGeneration(user.getUsername(), user.getRealm()) == 0) {
+            throw new UserNotFoundException("Can't revoke token of " + user.getUsername() + "@" + user.getRealm() 
+                + ": User is not stored");
+        }
+        return repository.findTokenGeneration(user.getUsername(), user.getRealm())
+            .orElseThrow(() -> new UserNotFoundException("User was deleted while revoking token"));
+    }
+
+    @Override
+    public @Nonnull Map<String, Integer> findTokenGenerations() {
+        return notNull(
+            SparkyUtil.toList(notNull(repository.findByTokenGenerationGreaterThan(0))).stream()
+                .collect(Collectors.toMap(
+                    u -> SparkysAuthPrincipal.toIdentifier(u.getUserName(), u.getRealm()), 
+                    User::getTokenGeneration
+                ))
+        );
+    }
+
+    @Override
+    public @Nonnull Map<String, User> findUserReferences(Collection<? extends SparkysAuthPrincipal> principals) {
+        Map<String, User> references = new HashMap<String, User>();
+        if (!principals.isEmpty()) {
+            Set<String> identifiers = principals.stream()
+                .map(SparkysAuthPrincipal::asString)
+                .collect(Collectors.toSet());
+            Set<String> usernames = principals.stream()
+                .map(SparkysAuthPrincipal::getName)
+                .collect(Collectors.toSet());
+            for (var key : repository.findKeysByUserNameIn(usernames)) {
+                String identifier = SparkysAuthPrincipal.toIdentifier(key.getUserName(), key.getRealm());
+                if (identifiers.contains(identifier)) {
+                    var reference = new User(key.getUserName(), key.getRealm(), key.getIsActive(), key.getRole());
+                    reference.setId(key.getId());
+                    references.put(identifier, reference);
+                }
+            }
+        }
+        return references;
+    }
+
     /**
      * Mapps an iterable list of jpa users to a List of SparkyUsers.
      * 
@@ -1,12 +1,15 @@
 package net.ssehub.sparkyservice.api.user.storage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.springframework.security.access.annotation.Secured;
 
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
 import net.ssehub.sparkyservice.api.jpa.user.User;
 import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.jpa.user.UserRole;
@@ -118,6 +121,36 @@ public interface UserStorageService {
     @Secured(UserRole.FullName.ADMIN)
     List<SparkyUser> findAllUsersInRealm(UserRealm realm);
 
+    /**
+     * Increments the JWT token generation of the given user. All token which were issued for the user before are 
+     * revoked.
+     * 
+     * @param user
+     * @return The new token generation
+     * @throws UserNotFoundException When the user isn't stored
+     */
+    int incrementTokenGeneration(SparkyUser user) throws UserNotFoundException;
+
+    /**
+     * Finds the JWT token generation of all users whose token were revoked at least once. 
+     * 
+     * @return Token generation per user - the key is the principal identifier of the user 
+     *         ({@link net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal#asString()})
+     */
+    @Nonnull
+    Map<String, Integer> findTokenGenerations();
+
+    /**
+     * Finds multiple users with a single query. Only the identifying columns are loaded, so the returned JPA 
+     * objects can be referenced by other entities but must not be saved themselves.
+     * 
+     * @param principals - Name and realm of the desired users
+     * @return JPA references keyed by the principal identifier of the user ({@link SparkysAuthPrincipal#asString()}) 
+     *         - users which aren't stored are missing
+     */
+    @Nonnull
+    Map<String, User> findUserReferences(Collection<? extends SparkysAuthPrincipal> principals);
+
     /**
      * Load the same user from a storage in order to refresh the values. A new user object is created. 
      * 
@@ -0,0 +1,95 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.PasswordSettings;
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.user.LocalUserDetails;
+import net.ssehub.sparkyservice.api.user.LocalUserFactory;
+import net.ssehub.sparkyservice.api.user.password.HashAlgorithm;
+import net.ssehub.sparkyservice.api.user.password.PasswordEncodingService;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Provides unit tests for {@link LocalAuthenticationProvider}.
+ *
+ * @author marcel
+ */
+public class LocalAuthenticationProviderTests {
+
+    private static final String USER = "user";
+
+    private static final String PASSWORD = "password";
+
+    private final LocalLoginDetailsMapper mapper = mock(LocalLoginDetailsMapper.class);
+
+    private final UserStorageService storageService = mock(UserStorageService.class);
+
+    private LocalAuthenticationProvider provider;
+
+    @BeforeEach
+    public void setupProvider() {
+        var settings = new PasswordSettings();
+        settings.setBcryptStrength(4);
+        provider = new LocalAuthenticationProvider(mapper, storageService, new PasswordEncodingService(settings));
+    }
+
+    /**
+     * Makes the given user known to the mocked mapper.
+     *
+     * @param password Stored password of the user
+     * @return The user
+     */
+    private LocalUserDetails mockUser(Password password) {
+        var user = new LocalUserFactory().create(USER, password, UserRole.DEFAULT, true);
+        when(mapper.loadUserByUsername(USER)).thenReturn(user);
+        return user;
+    }
+
+    @Test
+    @DisplayName("Legacy plain passwords are hashed with the configured algorithm after the login")
+    public void rehashPlainTest() {
+        var user = mockUser(new Password(PASSWORD));
+        var auth = provider.authenticate(new UsernamePasswordAuthenticationToken(USER, PASSWORD));
+        assertAll(
+            () -> assertTrue(auth.isAuthenticated()),
+            () -> assertEquals(HashAlgorithm.BCRYPT.getId(), user.getPasswordEntity().getHashAlgorithm()),
+            () -> assertTrue(user.getEncoder().matches(PASSWORD, user.getPasswordEntity())),
+            () -> verify(storageService).commit(user)
+        );
+    }
+
+    @Test
+    @DisplayName("Current hashes aren't stored again")
+    public void noRehashTest() {
+        var settings = new PasswordSettings();
+        settings.setBcryptStrength(4);
+        mockUser(new PasswordEncodingService(settings).encodePassword(PASSWORD));
+        provider.authenticate(new UsernamePasswordAuthenticationToken(USER, PASSWORD));
+        verify(storageService, never()).commit(any());
+    }
+
+    @Test
+    @DisplayName("Wrong passwords are rejected without rehashing")
+    public void wrongPasswordTest() {
+        mockUser(new Password(PASSWORD));
+        assertThrows(BadCredentialsException.class,
+            () -> provider.authenticate(new UsernamePasswordAuthenticationToken(USER, PASSWORD + "x")));
+        verify(storageService, never()).commit(any());
+    }
+}
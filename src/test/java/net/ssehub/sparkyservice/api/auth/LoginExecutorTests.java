@@ -0,0 +1,222 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues;
+
+/**
+ * Provides unit tests for {@link LoginExecutor} and the asynchronous login of {@link JwtAuthenticationFilter}.
+ *
+ * @author marcel
+ */
+public class LoginExecutorTests {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private LoginExecutor executor;
+
+    @AfterEach
+    public void stopExecutor() {
+        release.countDown();
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Logins are executed on the pool and measured")
+    public void executeTest() throws Exception {
+        executor = new LoginExecutor(2, 10, 1, true, 0);
+        var registry = new SimpleMeterRegistry();
+        executor.bindTo(registry);
+        String thread = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        assertAll(
+            () -> assertTrue(thread.startsWith("login-hashing-")),
+            () -> assertEquals(1, registry.get("sparky.auth.login.hash").functionTimer().count()),
+            () -> assertEquals(1, registry.get("sparky.auth.login.queue.wait").functionTimer().count())
+        );
+    }
+
+    @Test
+    @DisplayName("Logins which throw an error complete exceptionally instead of never")
+    public void errorCompletesTest() {
+        executor = new LoginExecutor(1, 10, 1, true, 0);
+        var login = executor.submit(() -> {
+            throw new AssertionError("login failed");
+        });
+        var thrown = assertThrows(ExecutionException.class, () -> login.get(5, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof AssertionError);
+    }
+
+    @Test
+    @DisplayName("Logins are rejected when the queue is full")
+    public void rejectWhenFullTest() {
+        executor = blockedExecutor();
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> "rejected"));
+        assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    @DisplayName("Filter answers with 503 and Retry-After when the queue is full")
+    public void serviceUnavailableTest() throws Exception {
+        executor = blockedExecutor();
+        var filter = new JwtAuthenticationFilter(auth -> auth, null, executor);
+        var response = new MockHttpServletResponse();
+        filter.doFilter(loginRequest(), response, new MockFilterChain());
+        assertAll(
+            () -> assertEquals(503, response.getStatus()),
+            () -> assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER))
+        );
+    }
+
+    @Test
+    @DisplayName("Filter releases the request thread and answers after the async dispatch")
+    public void asyncLoginTest() throws Exception {
+        executor = new LoginExecutor(1, 10, 1, true, 0);
+        var filter = new JwtAuthenticationFilter(auth -> {
+            throw new BadCredentialsException("wrong password");
+        }, null, executor);
+        var request = loginRequest();
+        var response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        assertTrue(request.isAsyncStarted());
+
+        var asyncContext = (MockAsyncContext) request.getAsyncContext();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (asyncContext.getDispatchedPath() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(request.getAttribute(JwtAuthenticationFilter.LOGIN_RESULT_ATTRIBUTE));
+        request.setAsyncStarted(false);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(request, response, new MockFilterChain());
+        assertAll(
+            () -> assertEquals(401, response.getStatus()),
+            () -> assertFalse(request.isAsyncStarted())
+        );
+    }
+
+    @Test
+    @DisplayName("Filter answers an async login which isn't done in time with 503 and skips the queued login")
+    public void asyncTimeoutTest() throws Exception {
+        executor = new LoginExecutor(1, 2, 1, true, 250);
+        occupy(executor);
+        var started = new CountDownLatch(1);
+        var filter = new JwtAuthenticationFilter(auth -> {
+            started.countDown();
+            return auth;
+        }, null, executor);
+        var request = loginRequest();
+        var response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        var asyncContext = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext, request, response));
+        }
+        release.countDown();
+        assertAll(
+            () -> assertEquals(250, asyncContext.getTimeout()),
+            () -> assertEquals(503, response.getStatus()),
+            () -> assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER)),
+            () -> assertFalse(started.await(200, TimeUnit.MILLISECONDS), "Timed out login was executed"),
+            () -> assertNull(asyncContext.getDispatchedPath(), "Timed out login was dispatched")
+        );
+    }
+
+    @Test
+    @DisplayName("Filter answers a synchronous login which isn't done in time with 503 and skips the queued login")
+    public void syncTimeoutTest() throws Exception {
+        executor = new LoginExecutor(1, 2, 1, false, 250);
+        occupy(executor);
+        var started = new CountDownLatch(1);
+        var filter = new JwtAuthenticationFilter(auth -> {
+            started.countDown();
+            return auth;
+        }, null, executor);
+        var request = loginRequest();
+        var response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        release.countDown();
+        assertAll(
+            () -> assertFalse(request.isAsyncStarted()),
+            () -> assertEquals(503, response.getStatus()),
+            () -> assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER)),
+            () -> assertFalse(started.await(200, TimeUnit.MILLISECONDS), "Timed out login was executed")
+        );
+    }
+
+    @Test
+    @DisplayName("The default timeout covers a full queue where each login takes up to Retry-After")
+    public void defaultTimeoutTest() {
+        executor = new LoginExecutor(2, 10, 1, true, 0);
+        assertEquals(6000, executor.getTimeoutMs());
+    }
+
+    /**
+     * Creates an executor with one thread and a queue of one login, which are both occupied until the test ends.
+     *
+     * @return Full executor
+     */
+    private LoginExecutor blockedExecutor() {
+        var blocked = new LoginExecutor(1, 1, 1, true, 0);
+        for (int i = 0; i < 2; i++) {
+            occupy(blocked);
+        }
+        return blocked;
+    }
+
+    /**
+     * Queues a login which waits until the test ends.
+     *
+     * @param loginExecutor Executor which gets the login
+     */
+    private void occupy(LoginExecutor loginExecutor) {
+        loginExecutor.submit(() -> {
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Creates a login request with credentials as parameters.
+     *
+     * @return Login request
+     */
+    private static MockHttpServletRequest loginRequest() {
+        var request = new MockHttpServletRequest("POST", ConfigurationValues.AUTH_LOGIN_URL);
+        request.setServletPath(ConfigurationValues.AUTH_LOGIN_URL);
+        request.setAsyncSupported(true);
+        request.setParameter("username", "user");
+        request.setParameter("password", "password");
+        return request;
+    }
+}
@@ -0,0 +1,85 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.PasswordSettings;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.user.MemoryUser;
+import net.ssehub.sparkyservice.api.user.password.PasswordEncodingService;
+
+/**
+ * Provides unit tests for {@link MemoryLoginDetailsService}.
+ *
+ * @author marcel
+ */
+public class MemoryLoginDetailsServiceTests {
+
+    private static final String USER = "recovery";
+
+    private static final String PASSWORD = "abcdefgh";
+
+    private static final PasswordEncodingService ENCODER = new PasswordEncodingService(new PasswordSettings());
+
+    @Test
+    @DisplayName("Every login gets an own recovery user with the password hash")
+    public void recoveryUserTest() {
+        var service = new MemoryLoginDetailsService(ENCODER, true, USER, PASSWORD);
+        var user = (MemoryUser) service.loadUserByUsername(USER);
+        user.setRole(UserRole.DEFAULT);
+        var next = (MemoryUser) service.loadUserByUsername(USER);
+        assertAll(
+            () -> assertNotSame(user, next),
+            () -> assertEquals(UserRole.ADMIN, next.getRole()),
+            () -> assertEquals(USER, next.getUsername()),
+            () -> assertTrue(service.getPasswordEncoder().matches(PASSWORD, next.getPassword())),
+            () -> assertFalse(service.getPasswordEncoder().matches(PASSWORD + "x", next.getPassword())),
+            () -> assertFalse(next.getPassword().contains(PASSWORD))
+        );
+    }
+
+    @Test
+    @DisplayName("The recovery password is hashed once on startup and never on a login")
+    public void hashedOnceTest() {
+        var encoder = spy(new PasswordEncodingService(new PasswordSettings()));
+        var service = new MemoryLoginDetailsService(encoder, true, USER, PASSWORD);
+        for (int i = 0; i < 3; i++) {
+            service.loadUserByUsername(USER);
+        }
+        verify(encoder, times(1)).encodePassword(any());
+        verify(encoder, never()).encode(any());
+    }
+
+    @Test
+    @DisplayName("Nothing is hashed for a disabled recovery user")
+    public void disabledNotHashedTest() {
+        var encoder = spy(new PasswordEncodingService(new PasswordSettings()));
+        new MemoryLoginDetailsService(encoder, false, USER, PASSWORD);
+        verify(encoder, never()).encodePassword(any());
+    }
+
+    @Test
+    @DisplayName("Unknown users and a disabled recovery user aren't found")
+    public void notFoundTest() {
+        var service = new MemoryLoginDetailsService(ENCODER, true, USER, PASSWORD);
+        var disabled = new MemoryLoginDetailsService(ENCODER, false, USER, PASSWORD);
+        assertAll(
+            () -> assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("other")),
+            () -> assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername(null)),
+            () -> assertThrows(UsernameNotFoundException.class, () -> disabled.loadUserByUsername(USER))
+        );
+    }
+}
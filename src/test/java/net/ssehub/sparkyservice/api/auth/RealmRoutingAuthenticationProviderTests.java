@@ -0,0 +1,201 @@
+package net.ssehub.sparkyservice.api.auth;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ProviderNotFoundException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Provides unit tests for {@link RealmRoutingAuthenticationProvider} and the realm hints of
+ * {@link RealmAuthenticationToken}.
+ *
+ * @author marcel
+ */
+public class RealmRoutingAuthenticationProviderTests {
+
+    private static final String USER = "user";
+
+    private static final String PASSWORD = "password";
+
+    private final AuthenticationProvider localProvider = mockProvider();
+
+    private final AuthenticationProvider ldapProvider = mockProvider();
+
+    private final Authentication success = new UsernamePasswordAuthenticationToken(USER, PASSWORD);
+
+    private RealmRoutingAuthenticationProvider router;
+
+    private SimpleMeterRegistry registry;
+
+    /**
+     * Creates a provider which accepts username password logins.
+     *
+     * @return Mocked provider
+     */
+    private static AuthenticationProvider mockProvider() {
+        var provider = mock(AuthenticationProvider.class);
+        when(provider.supports(any())).thenReturn(true);
+        return provider;
+    }
+
+    /**
+     * Creates a router with the local and LDAP provider.
+     *
+     * @param order Fallback order
+     * @return Router for tests
+     */
+    private RealmRoutingAuthenticationProvider createRouter(String... order) {
+        var newRouter = new RealmRoutingAuthenticationProvider(order);
+        newRouter.setProvider(UserRealm.LOCAL, localProvider);
+        newRouter.setProvider(UserRealm.LDAP, ldapProvider);
+        registry = new SimpleMeterRegistry();
+        newRouter.bindTo(registry);
+        return newRouter;
+    }
+
+    /**
+     * Reads an attempt counter.
+     *
+     * @param realm Tagged realm
+     * @param mode Tagged mode
+     * @return Number of attempts
+     */
+    private double attempts(UserRealm realm, String mode) {
+        return registry.get("sparky.auth.provider.attempts").tags("realm", realm.name().toLowerCase(), "mode", mode)
+            .functionCounter().count();
+    }
+
+    @BeforeEach
+    public void setupRouter() {
+        router = createRouter("MEMORY", "LOCAL", "LDAP");
+    }
+
+    @Test
+    @DisplayName("A realm hint only asks the provider of this realm")
+    public void routedTest() {
+        var token = RealmAuthenticationToken.of(USER + "@ldap", PASSWORD, null);
+        when(ldapProvider.authenticate(token)).thenReturn(success);
+        assertAll(
+            () -> assertSame(success, router.authenticate(token)),
+            () -> verify(localProvider, never()).authenticate(any()),
+            () -> assertEquals(1, attempts(UserRealm.LDAP, "routed")),
+            () -> assertEquals(0, attempts(UserRealm.LOCAL, "fallback"))
+        );
+    }
+
+    @Test
+    @DisplayName("A failed login with realm hint doesn't fall back to other providers")
+    public void routedFailureTest() {
+        var token = RealmAuthenticationToken.of(USER, PASSWORD, "local");
+        when(localProvider.authenticate(token)).thenThrow(new BadCredentialsException("wrong"));
+        assertThrows(BadCredentialsException.class, () -> router.authenticate(token));
+        assertAll(
+            () -> verify(ldapProvider, never()).authenticate(any()),
+            () -> assertEquals(1, registry.get("sparky.auth.provider.failures").tag("realm", "local")
+                .functionCounter().count())
+        );
+    }
+
+    @Test
+    @DisplayName("Realms without provider and unknown realms can't be authenticated")
+    public void noProviderTest() {
+        assertAll(
+            () -> assertThrows(ProviderNotFoundException.class,
+                () -> router.authenticate(RealmAuthenticationToken.of(USER, PASSWORD, "memory"))),
+            () -> assertThrows(ProviderNotFoundException.class,
+                () -> router.authenticate(RealmAuthenticationToken.of(USER, PASSWORD, "other")))
+        );
+    }
+
+    @Test
+    @DisplayName("Logins without hint try the providers in the configured order")
+    public void fallbackOrderTest() {
+        router = createRouter("ldap", "local");
+        var token = RealmAuthenticationToken.of(USER, PASSWORD, null);
+        when(ldapProvider.authenticate(token)).thenThrow(new BadCredentialsException("wrong"));
+        when(localProvider.authenticate(token)).thenReturn(success);
+        assertAll(
+            () -> assertSame(success, router.authenticate(token)),
+            () -> assertEquals(1, attempts(UserRealm.LDAP, "fallback")),
+            () -> assertEquals(1, attempts(UserRealm.LOCAL, "fallback"))
+        );
+    }
+
+    @Test
+    @DisplayName("Realms which aren't part of the fallback order are only used with a hint")
+    public void notInOrderTest() {
+        router = createRouter("LOCAL");
+        var token = RealmAuthenticationToken.of(USER, PASSWORD, null);
+        when(localProvider.authenticate(token)).thenThrow(new BadCredentialsException("wrong"));
+        var hinted = RealmAuthenticationToken.of(USER, PASSWORD, "LDAP");
+        when(ldapProvider.authenticate(hinted)).thenReturn(success);
+        assertAll(
+            () -> assertThrows(BadCredentialsException.class, () -> router.authenticate(token)),
+            () -> assertSame(success, router.authenticate(hinted)),
+            () -> assertEquals(0, attempts(UserRealm.LDAP, "fallback"))
+        );
+    }
+
+    @Test
+    @DisplayName("Invalid fallback orders are rejected")
+    public void invalidOrderTest() {
+        assertAll(
+            () -> assertThrows(IllegalArgumentException.class,
+                () -> new RealmRoutingAuthenticationProvider(new String[] {"LOCAL", "AD"})),
+            () -> assertThrows(IllegalArgumentException.class,
+                () -> new RealmRoutingAuthenticationProvider(new String[] {"LOCAL", "local"})),
+            () -> assertThrows(IllegalArgumentException.class,
+                () -> new RealmRoutingAuthenticationProvider(new String[] {"UNKNOWN"}))
+        );
+    }
+
+    @Test
+    @DisplayName("The realm hint is read from the realm value or a realm suffix of the username")
+    public void realmHintTest() {
+        var suffix = RealmAuthenticationToken.of("user@LDAP", PASSWORD, null);
+        var explicit = RealmAuthenticationToken.of("user@ldap", PASSWORD, "local");
+        var mail = RealmAuthenticationToken.of("user@example.com", PASSWORD, null);
+        assertAll(
+            () -> assertEquals(UserRealm.LDAP, suffix.getRealm()),
+            () -> assertEquals(USER, suffix.getName()),
+            () -> assertEquals(UserRealm.LOCAL, explicit.getRealm()),
+            () -> assertEquals("user@ldap", explicit.getName()),
+            () -> assertNull(mail.getRealm()),
+            () -> assertEquals("user@example.com", mail.getName())
+        );
+    }
+
+    @Test
+    @DisplayName("The login filter reads the realm from the request parameters")
+    public void extractRealmTest() {
+        var request = new MockHttpServletRequest();
+        request.setParameter("username", USER);
+        request.setParameter("password", PASSWORD);
+        request.setParameter("realm", "memory");
+        var token = (RealmAuthenticationToken) JwtAuthenticationFilter.extractCredentialsFromHttpRequest(request);
+        assertAll(
+            () -> assertEquals(UserRealm.MEMORY, token.getRealm()),
+            () -> assertEquals(USER, token.getName()),
+            () -> assertEquals(PASSWORD, token.getCredentials())
+        );
+    }
+}
@@ -3,6 +3,7 @@ package net.ssehub.sparkyservice.api.auth.jwt;
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import java.time.LocalDate;
@@ -83,4 +84,13 @@ public class JwtAuthToolsTest {
         );
     }
 
+    /**
+     * Tests if the token generation is decoded.
+     */
+    @Test
+    public void testEncodingGenerationTest() {
+        testToken.setTokenGeneration(3);
+        String jwtString = JwtAuthTools.encode(testToken, confValues);
+        assertEquals(3, JwtAuthTools.decodeAndExtract(jwtString, confValues.getSecret()).getTokenGeneration());
+    }
 }
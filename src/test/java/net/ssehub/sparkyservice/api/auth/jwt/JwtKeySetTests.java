@@ -0,0 +1,202 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureException;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings.SigningKey;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.UnitTestDataConfiguration;
+
+/**
+ * Provides unit tests for {@link JwtKeySet} and RS256 signing of the {@link JwtTokenCodec}.
+ *
+ * @author marcel
+ */
+public class JwtKeySetTests {
+
+    private static KeyPair oldKeyPair;
+
+    private static KeyPair newKeyPair;
+
+    private JwtToken testToken;
+
+    /**
+     * Creates a configured signing key from a key pair.
+     *
+     * @param id Key id
+     * @param keyPair The keys
+     * @param withPrivateKey <code>false</code> for a retired key which is only used for verification
+     * @return Key configuration
+     */
+    public static @Nonnull SigningKey createSigningKey(String id, KeyPair keyPair, boolean withPrivateKey) {
+        var key = new SigningKey();
+        key.setId(id);
+        key.setPublicKey(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        if (withPrivateKey) {
+            key.setPrivateKey(Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+        }
+        return key;
+    }
+
+    /**
+     * Creates a JWT configuration with the given keys.
+     *
+     * @param activeKey Id of the active key
+     * @param keys Configured keys
+     * @return JWT configuration with a random secret
+     */
+    private static @Nonnull JwtSettings createConf(@Nullable String activeKey, SigningKey... keys) {
+        var jwtConf = UnitTestDataConfiguration.sampleJwtConf();
+        jwtConf.setActiveKey(activeKey);
+        jwtConf.setKeys(List.of(keys));
+        return jwtConf;
+    }
+
+    @BeforeEach
+    public void setupToken() throws NoSuchAlgorithmException {
+        if (oldKeyPair == null) {
+            var generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            oldKeyPair = generator.generateKeyPair();
+            newKeyPair = generator.generateKeyPair();
+        }
+        testToken = new JwtToken(notNull(UUID.randomUUID()), new Date(System.currentTimeMillis() + 60_000),
+                new AuthPrincipalImpl(UserRealm.LOCAL, "test"), UserRole.DEFAULT);
+    }
+
+    @Test
+    @DisplayName("New token are signed with RS256 and the id of the active key")
+    public void activeKeySignsTest() {
+        var codec = new JwtTokenCodec(createConf("new", createSigningKey("old", oldKeyPair, true),
+                createSigningKey("new", newKeyPair, true)));
+        String jwt = codec.encode(testToken);
+        var header = Jwts.parser().setSigningKey(newKeyPair.getPublic()).parseClaimsJws(jwt).getHeader();
+        assertAll(
+            () -> assertEquals("RS256", header.getAlgorithm()),
+            () -> assertEquals("new", header.getKeyId()),
+            () -> assertEquals(testToken.getJti(), codec.decode(jwt).getJti())
+        );
+    }
+
+    @Test
+    @DisplayName("Token of a retired key are still accepted after the rotation")
+    public void rotationTest() {
+        var oldConf = createConf(null, createSigningKey("old", oldKeyPair, true));
+        String oldJwt = new JwtTokenCodec(oldConf).encode(testToken);
+        var rotatedConf = createConf("new", createSigningKey("old", oldKeyPair, false),
+                createSigningKey("new", newKeyPair, true));
+        rotatedConf.setSecret(oldConf.getSecret());
+        rotatedConf.setAcceptSecret(true);
+        var rotatedCodec = new JwtTokenCodec(rotatedConf);
+        String hmacJwt = JwtAuthTools.encode(testToken, rotatedConf);
+        assertAll(
+            () -> assertEquals(testToken.getJti(), rotatedCodec.decode(oldJwt).getJti()),
+            () -> assertEquals(testToken.getJti(), rotatedCodec.decode(hmacJwt).getJti()),
+            () -> assertEquals("new", rotatedCodec.getKeySet().getActiveKeyId().get())
+        );
+    }
+
+    @Test
+    @DisplayName("HS512 token are rejected once an RSA key is active unless they are accepted explicitly")
+    public void secretRejectedTest() {
+        var secretConf = createConf(null);
+        String hmacJwt = new JwtTokenCodec(secretConf).encode(testToken);
+        var rsaConf = createConf("new", createSigningKey("new", newKeyPair, true));
+        rsaConf.setSecret(secretConf.getSecret());
+        var rsaCodec = new JwtTokenCodec(rsaConf);
+        var noSecretConf = createConf(null);
+        noSecretConf.setAcceptSecret(false);
+        assertAll(
+            () -> assertEquals(testToken.getJti(), new JwtTokenCodec(secretConf).decode(hmacJwt).getJti()),
+            () -> assertTrue(new JwtKeySet(secretConf).isSecretAccepted()),
+            () -> assertFalse(rsaCodec.getKeySet().isSecretAccepted()),
+            () -> assertThrows(SignatureException.class, () -> rsaCodec.decode(hmacJwt)),
+            () -> assertThrows(IllegalArgumentException.class, () -> new JwtKeySet(noSecretConf))
+        );
+    }
+
+    @Test
+    @DisplayName("Token of removed keys are rejected")
+    public void removedKeyTest() {
+        String oldJwt = new JwtTokenCodec(createConf(null, createSigningKey("old", oldKeyPair, true)))
+            .encode(testToken);
+        var codec = new JwtTokenCodec(createConf(null, createSigningKey("new", newKeyPair, true)));
+        assertThrows(SignatureException.class, () -> codec.decode(oldJwt));
+    }
+
+    @Test
+    @DisplayName("Token signed with another key under a known key id are rejected")
+    public void wrongKeyForIdTest() {
+        String otherJwt = new JwtTokenCodec(createConf(null, createSigningKey("new", oldKeyPair, true)))
+            .encode(testToken);
+        var codec = new JwtTokenCodec(createConf(null, createSigningKey("new", newKeyPair, true)));
+        assertThrows(SignatureException.class, () -> codec.decode(otherJwt));
+    }
+
+    @Test
+    @DisplayName("An active key without private key is a configuration error")
+    public void activeKeyWithoutPrivateKeyTest() {
+        var conf = createConf("old", createSigningKey("old", oldKeyPair, false));
+        assertThrows(IllegalArgumentException.class, () -> new JwtKeySet(conf));
+    }
+
+    @Test
+    @DisplayName("Without keys the secret signs new token")
+    public void secretFallbackTest() {
+        var conf = createConf(null);
+        var codec = new JwtTokenCodec(conf);
+        String jwt = codec.encode(testToken);
+        assertAll(
+            () -> assertEquals("HS512", Jwts.parser().setSigningKey(conf.getSecret().getBytes())
+                .parseClaimsJws(jwt).getHeader().getAlgorithm()),
+            () -> assertEquals(0, ((List<?>) codec.getKeySet().toJwks().get("keys")).size())
+        );
+    }
+
+    @Test
+    @DisplayName("JWKS contains the modulus and exponent of each public key")
+    public void jwksTest() {
+        var keySet = new JwtKeySet(createConf("new", createSigningKey("old", oldKeyPair, false),
+                createSigningKey("new", newKeyPair, true)));
+        var keys = (List<?>) keySet.toJwks().get("keys");
+        var newJwk = (Map<?, ?>) keys.get(1);
+        var newPublicKey = (RSAPublicKey) newKeyPair.getPublic();
+        var decoder = Base64.getUrlDecoder();
+        assertAll(
+            () -> assertEquals(2, keys.size()),
+            () -> assertEquals("old", ((Map<?, ?>) keys.get(0)).get("kid")),
+            () -> assertEquals("new", newJwk.get("kid")),
+            () -> assertEquals("RSA", newJwk.get("kty")),
+            () -> assertEquals("RS256", newJwk.get("alg")),
+            () -> assertEquals(newPublicKey.getModulus(), new BigInteger(1, decoder.decode((String) newJwk.get("n")))),
+            () -> assertEquals(newPublicKey.getPublicExponent(),
+                new BigInteger(1, decoder.decode((String) newJwk.get("e"))))
+        );
+    }
+}
@@ -0,0 +1,108 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.jsonwebtoken.security.SignatureException;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtSettings;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.UnitTestDataConfiguration;
+import net.ssehub.sparkyservice.api.util.DateUtil;
+
+/**
+ * Provides unit tests for {@link JwtTokenCodec}.
+ *
+ * @author marcel
+ */
+public class JwtTokenCodecTests {
+
+    private static final int PARALLEL_DECODES = 500;
+
+    private JwtSettings jwtConf;
+
+    private JwtTokenCodec codec;
+
+    private JwtToken testToken;
+
+    @BeforeEach
+    public void setupCodec() {
+        jwtConf = UnitTestDataConfiguration.sampleJwtConf();
+        codec = new JwtTokenCodec(jwtConf);
+        var expDate = DateUtil.toUtilDate(LocalDate.now().plusDays(10));
+        testToken = new JwtToken(notNull(UUID.randomUUID()), expDate, new AuthPrincipalImpl(UserRealm.LOCAL, "test"),
+                UserRole.ADMIN);
+        testToken.setTokenGeneration(2);
+    }
+
+    @Test
+    @DisplayName("Decoded token has the same values as the encoded one")
+    public void encodeDecodeTest() {
+        JwtToken decoded = codec.decode(codec.encode(testToken));
+        assertAll(
+            () -> assertEquals(testToken.getJti(), decoded.getJti()),
+            () -> assertEquals(testToken.getUserInfo().asString(), decoded.getUserInfo().asString()),
+            () -> assertEquals(testToken.getTokenPermissionRoles(), decoded.getTokenPermissionRoles()),
+            () -> assertEquals(testToken.getTokenGeneration(), decoded.getTokenGeneration()),
+            () -> assertEquals(testToken.getExpirationDate().getTime() / 1000,
+                    decoded.getExpirationDate().getTime() / 1000)
+        );
+    }
+
+    @Test
+    @DisplayName("Codec and static helpers accept the token of each other")
+    public void compatibleWithStaticHelpersTest() {
+        String fromCodec = codec.encode(testToken);
+        String fromHelper = JwtAuthTools.encode(testToken, jwtConf);
+        assertAll(
+            () -> assertEquals(testToken.getJti(),
+                    JwtAuthTools.decodeAndExtract(fromCodec, jwtConf.getSecret()).getJti()),
+            () -> assertEquals(testToken.getJti(), codec.decode(fromHelper).getJti()),
+            () -> assertEquals(testToken.getJti(), codec.decode("Bearer " + fromHelper).getJti())
+        );
+    }
+
+    @Test
+    @DisplayName("Token signed with another secret are rejected")
+    public void otherSecretTest() {
+        String otherToken = new JwtTokenCodec(UnitTestDataConfiguration.sampleJwtConf()).encode(testToken);
+        assertThrows(SignatureException.class, () -> codec.decode(otherToken));
+    }
+
+    @Test
+    @DisplayName("Shared codec decodes correctly in parallel")
+    public void parallelDecodeTest() throws Exception {
+        String jwt = codec.encode(testToken);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            var results = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                results[t] = executor.submit(() -> {
+                    for (int i = 0; i < PARALLEL_DECODES; i++) {
+                        assertEquals(testToken.getJti(), codec.decode(jwt).getJti());
+                    }
+                });
+            }
+            for (var result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -2,12 +2,18 @@ package net.ssehub.sparkyservice.api.auth.jwt;
 
 import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Nonnull;
@@ -15,22 +21,17 @@ import javax.annotation.Nonnull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
-import org.springframework.test.annotation.DirtiesContext;
-import org.springframework.test.annotation.DirtiesContext.ClassMode;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.junit.jupiter.SpringExtension;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 
 import net.ssehub.sparkyservice.api.auth.storage.JwtCache;
+import net.ssehub.sparkyservice.api.auth.storage.JwtRepository;
 import net.ssehub.sparkyservice.api.auth.storage.JwtStorageService;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtStorageSettings;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
 import net.ssehub.sparkyservice.api.jpa.user.UserRole;
-import net.ssehub.sparkyservice.api.testconf.JwtTestBeanConf;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
 import net.ssehub.sparkyservice.api.testconf.UnitTestDataConfiguration;
 import net.ssehub.sparkyservice.api.user.LdapUserFactory;
 import net.ssehub.sparkyservice.api.user.SparkyUser;
@@ -41,11 +42,7 @@ import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
  * 
  * @author marcel
  */
-@DataJpaTest
-@Transactional(propagation = Propagation.NOT_SUPPORTED)
-@ContextConfiguration(classes = {UnitTestDataConfiguration.class, JwtTestBeanConf.class})
-@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
-@ExtendWith(SpringExtension.class)
+@JwtStorageTest
 public class JwtTokenServiceTests {
 
     private JwtTokenService jwtTokenService;
@@ -55,6 +52,9 @@ public class JwtTokenServiceTests {
 
     @Autowired 
     private UserStorageService userStorageService;
+
+    @Autowired
+    private JwtRepository jwtRepository;
     
     @Nonnull
     private final SparkyUser testUser;
@@ -100,6 +100,95 @@ public class JwtTokenServiceTests {
         assertEquals(isLocked, !jwtTokenService.isJitNonLocked(tokenObj.getJti()));
     }
 
+    @Test
+    @DisplayName("Unlocked token which aren't stored can be disabled in revocation only mode")
+    public void disableRevocationOnlyTest() throws JwtTokenReadException {
+        var settings = new JwtStorageSettings();
+        settings.setRevocationOnly(true);
+        JwtCache.initNewCache(new HashSet<JwtToken>(), new JwtStorageService(jwtRepository, userStorageService, 
+            settings));
+        UUID jti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUser)).getJti();
+        assertFalse(jwtRepository.existsById(jti.toString()));
+
+        jwtTokenService.disable(jti);
+        assertAll(
+            () -> assertFalse(jwtTokenService.isJitNonLocked(jti)),
+            () -> assertTrue(jwtRepository.findById(jti.toString()).get().isLocked())
+        );
+    }
+
+    @Test
+    @DisplayName("Token which wait for the write behind flush can be disabled")
+    public void disableBeforeFlushTest() throws JwtTokenReadException {
+        var settings = new JwtStorageSettings();
+        settings.setWriteBehind(true);
+        var storage = new JwtStorageService(jwtRepository, userStorageService, settings);
+        JwtCache.initNewCache(new HashSet<JwtToken>(), storage);
+        UUID jti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUser)).getJti();
+        assertAll(
+            () -> assertFalse(JwtCache.getInstance().viewCachedToken(jti).isPresent()),
+            () -> assertFalse(jwtRepository.existsById(jti.toString()))
+        );
+
+        jwtTokenService.disable(jti);
+        storage.flush();
+        assertAll(
+            () -> assertFalse(jwtTokenService.isJitNonLocked(jti)),
+            () -> assertTrue(jwtRepository.findById(jti.toString()).get().isLocked())
+        );
+    }
+
+    @Test
+    @DisplayName("A user can't disable the token of another user, even when the token isn't indexed test")
+    public void disableOwnedTest() throws JwtTokenReadException {
+        var otherUser = new LdapUserFactory().create("otherUser", null, UserRole.DEFAULT, true);
+        userStorageService.commit(otherUser);
+        var owner = new AuthPrincipalImpl(testUser.getRealm(), testUser.getUsername());
+        UUID ownJti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUser)).getJti();
+        UUID otherJti = jwtTokenService.readJwtToken(jwtTokenService.createFor(otherUser)).getJti();
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+
+        int disabled = jwtTokenService.disableOwned(owner, notNull(List.of(ownJti, otherJti)));
+        assertAll(
+            () -> assertEquals(1, disabled),
+            () -> assertFalse(jwtTokenService.isJitNonLocked(ownJti)),
+            () -> assertTrue(jwtTokenService.isJitNonLocked(otherJti)),
+            () -> assertFalse(jwtRepository.findById(otherJti.toString()).get().isLocked())
+        );
+    }
+
+    @Test
+    @DisplayName("Active token which are only stored (e.g. issued by another node) are found test")
+    public void findActiveStoredTokensTest() throws JwtTokenReadException {
+        var owner = new AuthPrincipalImpl(testUser.getRealm(), testUser.getUsername());
+        UUID storedJti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUser)).getJti();
+        UUID lockedJti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUser)).getJti();
+        jwtTokenService.disable(lockedJti);
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+        assertAll(
+            () -> assertEquals(List.of(storedJti), jwtTokenService.findActiveTokens(owner)),
+            () -> assertEquals(1, jwtTokenService.disableOwned(owner, notNull(List.of(storedJti)))),
+            () -> assertTrue(jwtTokenService.findActiveTokens(owner).isEmpty())
+        );
+    }
+
+    @Test
+    @DisplayName("Token issued after all token of the user were revoked are found after a reload test")
+    public void findActiveStoredTokensAfterRevokeTest() throws JwtTokenReadException {
+        var owner = new AuthPrincipalImpl(testUser.getRealm(), testUser.getUsername());
+        var testUserDb = userStorageService.refresh(testUser);
+        UUID revokedJti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUserDb)).getJti();
+        jwtTokenService.disableAllFrom(testUserDb);
+        UUID newJti = jwtTokenService.readJwtToken(jwtTokenService.createFor(testUserDb)).getJti();
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+        assertAll(
+            () -> assertEquals(List.of(newJti), jwtTokenService.findActiveTokens(owner)),
+            () -> assertEquals(0, jwtTokenService.disableOwned(owner, notNull(List.of(revokedJti)))),
+            () -> assertEquals(1, jwtTokenService.disableOwned(owner, notNull(List.of(newJti)))),
+            () -> assertFalse(jwtTokenService.isJitNonLocked(newJti))
+        );
+    }
+
     @Test
     @DisplayName("Token is not logged when not in database test")
     public void isTokenNonLoggedNonExistingTest() { 
@@ -127,17 +216,165 @@ public class JwtTokenServiceTests {
     @Test
     @DisplayName("Disable all JWT from a user test")
     public void disableJwtTokenFromUserTest() throws JwtTokenReadException {
-        var tokenArray = new JwtToken[5];
+        var jwtStrings = new String[5];
         var testUserDb = userStorageService.refresh(testUser);
         for (int i = 0; i < 5; i++) {
-            String jwtString = jwtTokenService.createFor(testUserDb);
-            tokenArray[i] = jwtTokenService.readJwtToken(jwtString);
+            jwtStrings[i] = jwtTokenService.createFor(testUserDb);
         }
         jwtTokenService.disableAllFrom(testUserDb);
-        for (JwtToken jwt : tokenArray) {
-            JwtToken tokenInCache = JwtCache.getInstance().getCachedToken(jwt.getJti()).get();
-            assertTrue(tokenInCache.isLocked(), "JWT of testUser is not locked in cache");
+        for (String jwt : jwtStrings) {
+            assertThrows(JwtTokenReadException.class, () -> jwtTokenService.readJwtToken(jwt), 
+                "JWT of testUser is not revoked");
         }
+        String newJwt = jwtTokenService.createFor(testUserDb);
+        assertDoesNotThrow(() -> jwtTokenService.readJwtToken(newJwt), "New JWT of testUser must be valid");
     }
 
+    @Test
+    @DisplayName("Disable all JWT from a user does not affect other users test")
+    public void disableJwtTokenFromOtherUserTest() throws JwtTokenReadException {
+        var otherUser = new LdapUserFactory().create("otherUser", null, UserRole.DEFAULT, true);
+        userStorageService.commit(otherUser);
+        String otherJwt = jwtTokenService.createFor(otherUser);
+        jwtTokenService.disableAllFrom(userStorageService.refresh(testUser));
+        assertDoesNotThrow(() -> jwtTokenService.readJwtToken(otherJwt));
+    }
+
+    @Test
+    @DisplayName("Token generation is stored and loaded into a new cache test")
+    public void tokenGenerationStoredTest() throws JwtTokenReadException {
+        var testUserDb = userStorageService.refresh(testUser);
+        String jwt = jwtTokenService.createFor(testUserDb);
+        jwtTokenService.disableAllFrom(testUserDb);
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+        assertThrows(JwtTokenReadException.class, () -> jwtTokenService.readJwtToken(jwt));
+    }
+
+    @Test
+    @DisplayName("Verified token from the cache are rejected after they are disabled test")
+    public void verifiedCacheDisableTest() throws JwtTokenReadException {
+        var cachingService = new JwtTokenService(new JwtTokenCodec(jwtTokenService.getJwtConf()), 100, 60_000);
+        var testUserDb = userStorageService.refresh(testUser);
+        String jwtString = cachingService.createFor(testUserDb);
+        JwtToken firstRead = cachingService.readJwtToken(jwtString);
+        JwtToken secondRead = cachingService.readJwtToken(jwtString);
+        cachingService.disable(firstRead.getJti());
+        assertAll(
+            () -> assertEquals(firstRead.getJti(), secondRead.getJti()),
+            () -> assertThrows(JwtTokenReadException.class, () -> cachingService.readJwtToken(jwtString))
+        );
+    }
+
+    @Test
+    @DisplayName("Verified token from the cache are rejected after all token of the user are revoked test")
+    public void verifiedCacheRevokeTest() throws JwtTokenReadException {
+        var cachingService = new JwtTokenService(new JwtTokenCodec(jwtTokenService.getJwtConf()), 100, 60_000);
+        var testUserDb = userStorageService.refresh(testUser);
+        String jwtString = cachingService.createFor(testUserDb);
+        cachingService.readJwtToken(jwtString);
+        cachingService.disableAllFrom(testUserDb);
+        assertThrows(JwtTokenReadException.class, () -> cachingService.readJwtToken(jwtString));
+    }
+
+    @Test
+    @DisplayName("Verified token from the cache get a new authentication on each read test")
+    public void verifiedCacheAuthenticationTest() throws JwtTokenReadException {
+        var cachingService = new JwtTokenService(new JwtTokenCodec(jwtTokenService.getJwtConf()), 100, 60_000);
+        var testUserDb = userStorageService.refresh(testUser);
+        String jwtString = cachingService.createFor(testUserDb);
+        var first = cachingService.readToAuthentication(jwtString);
+        first.setDetails("modified by the first request");
+        first.eraseCredentials();
+        var second = cachingService.readToAuthentication(jwtString);
+        assertAll(
+            () -> assertNotSame(first, second),
+            () -> assertNull(second.getDetails(), "Modification of a shared authentication"),
+            () -> assertNotNull(second.getCredentials()),
+            () -> assertEquals(first.getPrincipal(), second.getPrincipal()),
+            () -> assertNotSame(cachingService.readJwtToken(jwtString), cachingService.readJwtToken(jwtString),
+                "Shared token is returned as modifiable token")
+        );
+    }
+
+    @Test
+    @DisplayName("Refresh issues a new token with one refresh less and locks the old one test")
+    public void refreshTest() throws JwtTokenReadException {
+        var testUserDb = userStorageService.refresh(testUser);
+        String jwtString = jwtTokenService.createFor(testUserDb);
+        JwtToken oldToken = jwtTokenService.readJwtToken(jwtString);
+        JwtToken newToken = jwtTokenService.readJwtToken(jwtTokenService.refresh(jwtString, userStorageService));
+        assertAll(
+            () -> assertEquals(oldToken.getRemainingRefreshes() - 1, newToken.getRemainingRefreshes()),
+            () -> assertEquals(oldToken.getUserInfo().asString(), newToken.getUserInfo().asString()),
+            () -> assertEquals(oldToken.getAuthTime(), newToken.getAuthTime()),
+            () -> assertFalse(oldToken.getJti().equals(newToken.getJti())),
+            () -> assertFalse(jwtTokenService.isJitNonLocked(oldToken.getJti()), "Old token is not locked"),
+            () -> assertThrows(JwtTokenReadException.class, () -> jwtTokenService.refresh(jwtString, 
+                userStorageService), "Old token was refreshed twice")
+        );
+    }
+
+    @Test
+    @DisplayName("Token without remaining refreshes can't be refreshed test")
+    public void refreshWithoutRemainingTest() throws JwtTokenReadException {
+        var tokenObj = new JwtToken(notNull(UUID.randomUUID()), new Date(System.currentTimeMillis() + 60_000), 
+                new AuthPrincipalImpl(testUser.getRealm(), testUser.getUsername()), UserRole.ADMIN);
+        tokenObj.setRemainingRefreshes(0);
+        String jwtString = JwtAuthTools.encode(tokenObj, jwtTokenService.getJwtConf());
+        assertThrows(JwtTokenReadException.class, () -> jwtTokenService.refresh(jwtString, userStorageService));
+    }
+
+    @Test
+    @DisplayName("Refreshed token hold the current role and disabled or unknown users can't refresh test")
+    public void refreshReloadsUserTest() throws JwtTokenReadException {
+        var testUserDb = userStorageService.refresh(testUser);
+        String jwtString = jwtTokenService.createFor(testUserDb);
+        testUserDb.setRole(UserRole.DEFAULT);
+        userStorageService.commit(testUserDb);
+        String refreshed = jwtTokenService.refresh(jwtString, userStorageService);
+        testUserDb.setEnabled(false);
+        userStorageService.commit(testUserDb);
+        var unknownToken = createRefreshableToken(new AuthPrincipalImpl(UserRealm.LDAP, "unknown"), 
+            System.currentTimeMillis());
+        assertAll(
+            () -> assertEquals(List.of(UserRole.DEFAULT), 
+                jwtTokenService.readJwtToken(refreshed).getTokenPermissionRoles()),
+            () -> assertThrows(JwtTokenReadException.class, () -> jwtTokenService.refresh(refreshed, 
+                userStorageService), "Disabled user refreshed a token"),
+            () -> assertThrows(JwtTokenReadException.class, () -> jwtTokenService.refresh(unknownToken, 
+                userStorageService), "Unknown user refreshed a token")
+        );
+    }
+
+    @Test
+    @DisplayName("Refreshed token never expire later than the maximum lifetime after the login test")
+    public void refreshLifetimeTest() throws JwtTokenReadException {
+        var owner = new AuthPrincipalImpl(testUser.getRealm(), testUser.getUsername());
+        long maxLifetimeMs = jwtTokenService.getJwtConf().getMaxLifetimeSeconds() * 1000;
+        long authTime = (System.currentTimeMillis() - maxLifetimeMs + 60_000) / 1000 * 1000;
+        JwtToken refreshed = jwtTokenService.readJwtToken(
+            jwtTokenService.refresh(createRefreshableToken(owner, authTime), userStorageService));
+        var expiredToken = createRefreshableToken(owner, System.currentTimeMillis() - maxLifetimeMs);
+        assertAll(
+            () -> assertEquals(authTime, refreshed.getAuthTime()),
+            () -> assertEquals(authTime + maxLifetimeMs, refreshed.getExpirationDate().getTime()),
+            () -> assertThrows(JwtTokenReadException.class, () -> jwtTokenService.refresh(expiredToken, 
+                userStorageService))
+        );
+    }
+
+    /**
+     * Creates a token which can be refreshed.
+     * 
+     * @param owner Owner of the token
+     * @param authTime Time of the login in milliseconds since epoch
+     * @return Token with remaining refreshes
+     */
+    private static JwtToken createRefreshableToken(AuthPrincipalImpl owner, long authTime) {
+        var tokenObj = new JwtToken(notNull(UUID.randomUUID()), new Date(System.currentTimeMillis() + 60_000), 
+            owner, UserRole.ADMIN);
+        tokenObj.setRemainingRefreshes(3);
+        tokenObj.setAuthTime(authTime);
+        return tokenObj;
+    }
 }
@@ -0,0 +1,95 @@
+package net.ssehub.sparkyservice.api.auth.jwt;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+
+/**
+ * Provides unit tests for {@link VerifiedTokenCache}.
+ *
+ * @author marcel
+ */
+public class VerifiedTokenCacheTests {
+
+    private static JwtToken createToken(long expiresInMs) {
+        return new JwtToken(notNull(UUID.randomUUID()), new Date(System.currentTimeMillis() + expiresInMs),
+                new AuthPrincipalImpl(UserRealm.LOCAL, "test"), UserRole.DEFAULT);
+    }
+
+    @Test
+    @DisplayName("Cached token are found by their encoded string")
+    public void getTest() {
+        var cache = new VerifiedTokenCache(10, 60_000);
+        var token = createToken(60_000);
+        cache.put("encoded", token);
+        assertAll(
+            () -> assertEquals(token.getJti(), cache.get("encoded").get().getJti()),
+            () -> assertFalse(cache.get("other").isPresent())
+        );
+    }
+
+    @Test
+    @DisplayName("Entries don't outlive the cached token")
+    public void expiryCappedTest() throws InterruptedException {
+        var cache = new VerifiedTokenCache(10, 60_000);
+        cache.put("encoded", createToken(50));
+        Thread.sleep(100);
+        assertFalse(cache.get("encoded").isPresent());
+    }
+
+    @Test
+    @DisplayName("All entries of a JTI are invalidated")
+    public void invalidateTest() {
+        var cache = new VerifiedTokenCache(10, 60_000);
+        var token = createToken(60_000);
+        var other = createToken(60_000);
+        cache.put("encoded", token);
+        cache.put("Bearer encoded", token);
+        cache.put("other", other);
+        cache.invalidate(token.getJti());
+        assertAll(
+            () -> assertFalse(cache.get("encoded").isPresent()),
+            () -> assertFalse(cache.get("Bearer encoded").isPresent()),
+            () -> assertTrue(cache.get("other").isPresent())
+        );
+    }
+
+    @Test
+    @DisplayName("Replaced entries stay in the JTI index and invalidated ones leave it")
+    public void jtiIndexTest() {
+        var cache = new VerifiedTokenCache(10, 60_000);
+        var token = createToken(60_000);
+        cache.put("encoded", token);
+        cache.put("encoded", token);
+        cache.invalidate(token.getJti());
+        cache.put("other", createToken(60_000));
+        cache.invalidate(token.getJti());
+        assertAll(
+            () -> assertFalse(cache.get("encoded").isPresent(), "Replaced entry is not invalidated"),
+            () -> assertTrue(cache.get("other").isPresent()),
+            () -> assertEquals(1, cache.getIndexedJtiCount())
+        );
+    }
+
+    @Test
+    @DisplayName("Disabled cache never holds token")
+    public void disabledTest() {
+        var cache = new VerifiedTokenCache(0, 60_000);
+        cache.put("encoded", createToken(60_000));
+        assertAll(
+            () -> assertFalse(cache.get("encoded").isPresent()),
+            () -> assertEquals(0, cache.size())
+        );
+    }
+}
@@ -0,0 +1,76 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+import net.ssehub.sparkyservice.api.user.LdapUserFactory;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Provides tests for {@link JwtCacheEvictionService}.
+ *
+ * @author marcel
+ */
+@JwtStorageTest
+public class JwtCacheEvictionServiceTests {
+
+    private static final String USERNAME = "testuser";
+
+    @Autowired
+    private JwtStorageService jwtStorageService;
+
+    @Autowired
+    private JwtRepository jwtRepository;
+
+    @Autowired
+    private UserStorageService userStorageService;
+
+    private JwtCacheEvictionService evictionService;
+
+    @BeforeEach
+    public void setupCache() {
+        userStorageService.commit(new LdapUserFactory().create(USERNAME, null, UserRole.DEFAULT, true));
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+        evictionService = new JwtCacheEvictionService(jwtStorageService, 2);
+    }
+
+    @Test
+    @DisplayName("Expired tokens are evicted from cache and purged from storage in batches")
+    public void evictAndPurgeTest() {
+        long now = System.currentTimeMillis();
+        var expired = new JwtToken[5];
+        for (int i = 0; i < expired.length; i++) {
+            expired[i] = JwtTestTokens.createToken(i % 2 == 0, USERNAME, UserRealm.LDAP, now - 1000);
+        }
+        var valid = JwtTestTokens.createToken(false, USERNAME, UserRealm.LDAP, now + 60_000);
+        JwtCache.getInstance().storeAndSave(expired);
+        JwtCache.getInstance().storeAndSave(valid);
+
+        int evicted = evictionService.evict(now);
+        int purged = evictionService.purgePending();
+        assertAll(
+            () -> assertEquals(5, evicted),
+            () -> assertEquals(5, purged),
+            () -> assertEquals(5, evictionService.getEvictedTokenCount()),
+            () -> assertEquals(5, evictionService.getPurgedTokenCount()),
+            () -> assertEquals(0, evictionService.getPendingPurgeCount()),
+            () -> assertEquals(1, jwtRepository.count()),
+            () -> assertTrue(jwtRepository.existsById(valid.getJti().toString())),
+            () -> assertFalse(jwtRepository.existsById(expired[0].getJti().toString()))
+        );
+    }
+}
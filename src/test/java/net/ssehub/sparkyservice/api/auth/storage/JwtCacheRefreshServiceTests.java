@@ -0,0 +1,126 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+import net.ssehub.sparkyservice.api.user.LdapUserFactory;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Provides tests for {@link JwtCacheRefreshService}.
+ *
+ * @author marcel
+ */
+@JwtStorageTest
+public class JwtCacheRefreshServiceTests {
+
+    private static final String USERNAME = "testuser";
+
+    @Autowired
+    private JwtStorageService jwtStorageService;
+
+    @Autowired
+    private UserStorageService userStorageService;
+
+    private JwtCacheRefreshService refreshService;
+
+    @BeforeEach
+    public void setupCache() {
+        userStorageService.commit(new LdapUserFactory().create(USERNAME, null, UserRole.DEFAULT, true));
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+        refreshService = new JwtCacheRefreshService(jwtStorageService, true, 2, 5000);
+    }
+
+    @Test
+    @DisplayName("Tokens which were locked in the storage are merged into the cache")
+    public void mergeChangesTest() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        var locked = new JwtToken[3];
+        for (int i = 0; i < locked.length; i++) {
+            locked[i] = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, expiresAt);
+        }
+        var unlocked = JwtTestTokens.createToken(false, USERNAME, UserRealm.LDAP, expiresAt);
+        jwtStorageService.commit(locked);
+        jwtStorageService.commit(unlocked);
+
+        int merged = refreshService.refresh();
+        var cache = JwtCache.getInstance();
+        assertAll(
+            () -> assertEquals(3, merged),
+            () -> assertTrue(cache.isLocked(locked[0].getJti())),
+            () -> assertTrue(cache.isLocked(locked[2].getJti())),
+            () -> assertFalse(cache.contains(unlocked.getJti())),
+            () -> assertEquals(0, refreshService.refresh(), "Merged tokens are merged again")
+        );
+    }
+
+    @Test
+    @DisplayName("Tokens which are locked with one save share a change version and are split across pages")
+    public void sharedVersionTest() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        var locked = new JwtToken[5];
+        for (int i = 0; i < locked.length; i++) {
+            locked[i] = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, expiresAt);
+        }
+        jwtStorageService.commit(locked);
+
+        Set<Long> versions = new HashSet<>();
+        Set<UUID> loaded = new HashSet<>();
+        long count = jwtStorageService.forEachLockedPageChangedAfter(0, 2, page -> page.forEach((version, tokens) -> {
+            versions.add(version);
+            tokens.forEach(token -> loaded.add(token.getJti()));
+        }));
+        assertAll(
+            () -> assertEquals(locked.length, count),
+            () -> assertEquals(1, versions.size()),
+            () -> assertEquals(locked.length, loaded.size())
+        );
+    }
+
+    @Test
+    @DisplayName("Tokens which were merged by the previous refresh are not loaded again")
+    public void onlyChangesAreLoadedTest() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        var old = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, expiresAt);
+        jwtStorageService.commit(old);
+        refreshService.refresh();
+        long version = refreshService.getVersion();
+        JwtCache.initNewCache(new HashSet<JwtToken>(), jwtStorageService);
+        var next = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, expiresAt);
+        jwtStorageService.commit(next);
+        assertAll(
+            () -> assertEquals(1, refreshService.refresh()),
+            () -> assertTrue(refreshService.getVersion() > version),
+            () -> assertFalse(JwtCache.getInstance().isLocked(old.getJti())),
+            () -> assertTrue(JwtCache.getInstance().isLocked(next.getJti()))
+        );
+    }
+
+    @Test
+    @DisplayName("Locks which were stored before the service started are part of the loaded cache and skipped")
+    public void startAfterStoredVersionTest() {
+        var old = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, System.currentTimeMillis() + 60_000);
+        jwtStorageService.commit(old);
+        var later = new JwtCacheRefreshService(jwtStorageService, true, 2, 5000);
+        assertAll(
+            () -> assertEquals(jwtStorageService.findMaxChangeVersion(), later.getVersion()),
+            () -> assertEquals(0, later.refresh())
+        );
+    }
+}
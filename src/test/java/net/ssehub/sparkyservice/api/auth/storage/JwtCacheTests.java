@@ -0,0 +1,400 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static net.ssehub.sparkyservice.api.testconf.JwtTestTokens.createToken;
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.jwt.ReadOnlyJwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+
+/**
+ * Provides unit tests for {@link JwtCache}.
+ *
+ * @author marcel
+ */
+public class JwtCacheTests {
+
+    private static final int CACHED_TOKENS = 10_000;
+    private static final int READER_THREADS = 4;
+    private static final int LOOKUPS_PER_THREAD = 100_000;
+    private static final int WRITES = 1_000;
+
+    @BeforeEach
+    public void setupCache() {
+        JwtCache.initNewCache(new HashSet<JwtToken>(), null);
+    }
+
+    @Test
+    @DisplayName("Cached tokens are not affected by modifications of the stored object")
+    public void storedTokenIsIsolatedTest() {
+        var token = createToken(false);
+        JwtCache.getInstance().storeAndSave(token);
+        token.setLocked(true);
+        assertAll(
+            () -> assertFalse(JwtCache.getInstance().isLocked(token.getJti())),
+            () -> assertFalse(JwtCache.getInstance().getCachedToken(token.getJti()).get().isLocked())
+        );
+    }
+
+    @Test
+    @DisplayName("Read only view returns the cached instance without a copy")
+    public void viewDoesNotCopyTest() {
+        var token = createToken(true);
+        JwtCache.getInstance().storeAndSave(token);
+        var firstView = JwtCache.getInstance().viewCachedToken(token.getJti()).get();
+        var secondView = JwtCache.getInstance().viewCachedToken(token.getJti()).get();
+        assertAll(
+            () -> assertSame(firstView, secondView),
+            () -> assertTrue(firstView.isLocked()),
+            () -> assertFalse(JwtCache.getInstance().viewCachedToken(UUID.randomUUID()).isPresent())
+        );
+    }
+
+    @Test
+    @DisplayName("Lock state is visible for unknown, unlocked and locked tokens")
+    public void isLockedTest() {
+        var locked = createToken(true);
+        var unlocked = createToken(false);
+        JwtCache.getInstance().storeAndSave(locked, unlocked);
+        assertAll(
+            () -> assertTrue(JwtCache.getInstance().isLocked(locked.getJti())),
+            () -> assertFalse(JwtCache.getInstance().isLocked(unlocked.getJti())),
+            () -> assertFalse(JwtCache.getInstance().isLocked(notNull(UUID.randomUUID())))
+        );
+    }
+
+    @Test
+    @DisplayName("Only the state of unlocked tokens is kept when the storage can load them")
+    public void unlockedStateOnlyTest() {
+        var storage = mock(JwtStorageService.class);
+        var unlocked = createToken(false);
+        var notLoadable = createToken(false);
+        when(storage.canLoad(any())).thenAnswer(call -> call.getArgument(0, ReadOnlyJwtToken.class).getJti()
+            .equals(unlocked.getJti()));
+        JwtCache.initNewCache(new HashSet<JwtToken>(), storage);
+        var cache = JwtCache.getInstance();
+        cache.storeAndSave(unlocked, notLoadable);
+        assertAll(
+            () -> assertEquals(2, cache.size()),
+            () -> assertTrue(cache.viewCachedToken(notLoadable.getJti()).isPresent()),
+            () -> assertTrue(cache.findToken(notLoadable.getJti()).isPresent()),
+            () -> assertFalse(cache.isLocked(unlocked.getJti())),
+            () -> assertFalse(cache.viewCachedToken(unlocked.getJti()).isPresent()),
+            () -> assertTrue(cache.lock(unlocked)),
+            () -> assertTrue(cache.isLocked(unlocked.getJti())),
+            () -> assertTrue(cache.viewCachedToken(unlocked.getJti()).isPresent()),
+            () -> assertEquals(2, cache.size())
+        );
+    }
+
+    @Test
+    @DisplayName("Owner index follows inserts, locks, evictions and revocations of all tokens of a user")
+    public void ownerIndexTest() {
+        JwtCache.initNewCache(new HashSet<JwtToken>(), mock(JwtStorageService.class));
+        var cache = JwtCache.getInstance();
+        long now = System.currentTimeMillis();
+        var active = createToken(false, "testuser", UserRealm.LOCAL, now + 60_000);
+        var locked = createToken(true, "testuser", UserRealm.LOCAL, now + 60_000);
+        var expired = createToken(false, "testuser", UserRealm.LOCAL, now - 1000);
+        var other = createToken(false, "other", UserRealm.LDAP, now + 60_000);
+        cache.storeAndSave(active, locked, expired, other);
+        String owner = active.getUserInfo().asString();
+        assertAll(
+            () -> assertEquals(Set.of(active.getJti(), locked.getJti(), expired.getJti()), cache.getTokenIdsOf(owner)),
+            () -> assertEquals(List.of(active.getJti()), cache.getActiveTokenIdsOf(owner, now)),
+            () -> assertTrue(cache.isOwnedBy(active.getJti(), owner)),
+            () -> assertFalse(cache.isOwnedBy(other.getJti(), owner)),
+            () -> assertEquals(2, cache.getIndexedOwnerCount())
+        );
+
+        cache.evictExpired(now);
+        cache.lock(active);
+        assertAll(
+            () -> assertEquals(Set.of(active.getJti(), locked.getJti()), cache.getTokenIdsOf(owner)),
+            () -> assertTrue(cache.getActiveTokenIdsOf(owner, now).isEmpty())
+        );
+
+        var newToken = createToken(false, "testuser", UserRealm.LOCAL, now + 60_000);
+        cache.applyTokenGeneration(owner, 1);
+        cache.storeAndSave(newToken);
+        assertAll(
+            () -> assertTrue(cache.getTokenIdsOf(owner).isEmpty()),
+            () -> assertEquals(Set.of(other.getJti()), cache.getTokenIdsOf(other.getUserInfo().asString())),
+            () -> assertEquals(1, cache.getIndexedOwnerCount())
+        );
+    }
+
+    @Test
+    @DisplayName("Locked JTI filter is rebuilt without losing locked tokens")
+    public void filterRebuildTest() {
+        var locked = new ArrayList<JwtToken>();
+        for (int i = 0; i < 3 * LockedJtiFilter.MIN_CAPACITY; i++) {
+            var token = createToken(true);
+            locked.add(token);
+            JwtCache.getInstance().storeAndSave(token);
+        }
+        var unlocked = createToken(false);
+        JwtCache.getInstance().storeAndSave(unlocked);
+        assertAll(
+            () -> assertTrue(locked.stream().allMatch(t -> JwtCache.getInstance().isLocked(t.getJti()))),
+            () -> assertFalse(JwtCache.getInstance().isLocked(unlocked.getJti())),
+            () -> assertTrue(JwtCache.getInstance().getFilterExpectedFalsePositiveRate() < 0.02)
+        );
+    }
+
+    @Test
+    @DisplayName("Tokens with serial are checked through the serial set")
+    public void serialLockTest() {
+        long now = System.currentTimeMillis();
+        var locked = createToken(true, "testuser", UserRealm.LOCAL, now + 60_000);
+        locked.setSerial(42);
+        var expired = createToken(true, "testuser", UserRealm.LOCAL, now - 1000);
+        expired.setSerial(43);
+        var unlocked = createToken(false, "testuser", UserRealm.LOCAL, now + 60_000);
+        unlocked.setSerial(44);
+        var cache = JwtCache.getInstance();
+        cache.storeAndSave(locked, expired, unlocked);
+        assertEquals(2, cache.getLockedSerialCount());
+
+        cache.evictExpired(now);
+        var unlockedAgain = locked.copy();
+        unlockedAgain.setLocked(false);
+        var relocked = unlocked.copy();
+        cache.lock(relocked);
+        assertAll(
+            () -> assertTrue(cache.isLocked(locked)),
+            () -> assertFalse(cache.isLocked(expired)),
+            () -> assertTrue(cache.isLocked(unlocked)),
+            () -> assertEquals(3, cache.getLockedSerialCount(), "Evicted serials are kept until the next rebuild")
+        );
+        cache.storeAndSave(unlockedAgain);
+        assertAll(
+            () -> assertFalse(cache.isLocked(locked)),
+            () -> assertTrue(cache.isLocked(relocked))
+        );
+    }
+
+    @Test
+    @DisplayName("Token which share a serial (e.g. issued by different nodes) don't affect each other")
+    public void sharedSerialTest() {
+        long now = System.currentTimeMillis();
+        var locked = createToken(true, "testuser", UserRealm.LOCAL, now + 60_000);
+        locked.setSerial(42);
+        var twin = createToken(false, "otheruser", UserRealm.LOCAL, now + 60_000);
+        twin.setSerial(42);
+        var expiredTwin = createToken(true, "otheruser", UserRealm.LOCAL, now - 1000);
+        expiredTwin.setSerial(42);
+        var cache = JwtCache.getInstance();
+        cache.storeAndSave(locked, twin, expiredTwin);
+        assertFalse(cache.isLocked(twin), "Unlocked token is locked through the serial of another token");
+
+        cache.evictExpired(now);
+        var unlockedTwin = twin.copy();
+        cache.lock(twin);
+        cache.storeAndSave(unlockedTwin);
+        assertAll(
+            () -> assertTrue(cache.isLocked(locked), "Eviction or unlock of a twin removed the serial"),
+            () -> assertFalse(cache.isLocked(unlockedTwin))
+        );
+    }
+
+    @Test
+    @DisplayName("Only expired tokens are evicted")
+    public void evictExpiredTest() {
+        long now = System.currentTimeMillis();
+        var expired = createToken(true, "testuser", UserRealm.LOCAL, now - 1000);
+        var expiresNow = createToken(false, "testuser", UserRealm.LOCAL, now);
+        var valid = createToken(true, "testuser", UserRealm.LOCAL, now + 1000);
+        JwtCache.getInstance().storeAndSave(valid, expiresNow, expired);
+
+        var evicted = JwtCache.getInstance().evictExpired(now);
+        assertAll(
+            () -> assertEquals(List.of(expired.getJti(), expiresNow.getJti()), evicted),
+            () -> assertFalse(JwtCache.getInstance().viewCachedToken(expired.getJti()).isPresent()),
+            () -> assertTrue(JwtCache.getInstance().isLocked(valid.getJti())),
+            () -> assertEquals(1, JwtCache.getInstance().size()),
+            () -> assertTrue(JwtCache.getInstance().evictExpired(now).isEmpty())
+        );
+    }
+
+    @Test
+    @DisplayName("Lock changes and evictions of locked tokens are recorded in the revocation log")
+    public void revocationLogTest() {
+        long now = System.currentTimeMillis();
+        var cache = JwtCache.getInstance();
+        long start = cache.getRevocationLog().getVersion();
+        var expired = createToken(true, "testuser", UserRealm.LOCAL, now - 1000);
+        var unlocked = createToken(false);
+        cache.storeAndSave(expired, unlocked);
+        long afterStore = cache.getRevocationLog().getVersion();
+        cache.lock(unlocked);
+        cache.evictExpired(now);
+
+        var all = cache.getRevocationLog().changesSince(start).get();
+        var later = cache.getRevocationLog().changesSince(afterStore).get();
+        assertAll(
+            () -> assertEquals(Set.of(unlocked.getJti()), all.getLocked()),
+            () -> assertEquals(Set.of(expired.getJti()), all.getRemoved()),
+            () -> assertEquals(Set.of(unlocked.getJti()), later.getLocked()),
+            () -> assertFalse(cache.lock(unlocked)),
+            () -> assertEquals(later.getVersion(), cache.getRevocationLog().getVersion())
+        );
+    }
+
+    @Test
+    @DisplayName("Locks written while the cache is refreshed from the storage are kept")
+    public void refreshKeepsConcurrentWritesTest() {
+        var cache = JwtCache.getInstance();
+        var stored = createToken(true);
+        var lockedDuringRefresh = createToken(false);
+        var revokedDuringRefresh = createToken(false, "revoked", UserRealm.LOCAL, System.currentTimeMillis() + 60_000);
+        cache.storeAndSave(lockedDuringRefresh, revokedDuringRefresh);
+        String revokedOwner = revokedDuringRefresh.getUserInfo().asString();
+
+        cache.refreshFromStorage(() -> {
+            Map<UUID, JwtToken> loaded = new HashMap<>();
+            loaded.put(stored.getJti(), stored);
+            loaded.put(revokedDuringRefresh.getJti(), revokedDuringRefresh);
+            cache.lock(lockedDuringRefresh);
+            cache.applyTokenGeneration(revokedOwner, 1);
+            return loaded;
+        });
+        assertAll(
+            () -> assertTrue(cache.isLocked(stored.getJti())),
+            () -> assertTrue(cache.isLocked(lockedDuringRefresh.getJti())),
+            () -> assertTrue(cache.getTokenIdsOf(revokedOwner).isEmpty()),
+            () -> assertEquals(3, cache.size())
+        );
+    }
+
+    @Test
+    @DisplayName("Storage commits don't block other cache writes and reach the storage in the order of the changes")
+    public void commitOutsideOfWriteLockTest() throws Exception {
+        var storage = mock(JwtStorageService.class);
+        var committed = new CopyOnWriteArrayList<UUID>();
+        var commitStarted = new CountDownLatch(1);
+        var releaseCommit = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            JwtToken token = invocation.getArgument(0);
+            commitStarted.countDown();
+            releaseCommit.await(10, TimeUnit.SECONDS);
+            committed.add(token.getJti());
+            return null;
+        }).when(storage).commit(any(JwtToken.class));
+        JwtCache.initNewCache(new HashSet<JwtToken>(), storage);
+        var cache = JwtCache.getInstance();
+        var first = createToken(false);
+        var second = createToken(false);
+        var merged = createToken(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> firstSave = executor.submit(() -> cache.storeAndSave(first));
+            assertTrue(commitStarted.await(10, TimeUnit.SECONDS), "First commit didn't start");
+            Future<?> secondSave = executor.submit(() -> cache.storeAndSave(second));
+            Future<Integer> merge = executor.submit(() -> cache.merge(notNull(List.of(merged))));
+            int mergedDuringCommit = merge.get(5, TimeUnit.SECONDS);
+            releaseCommit.countDown();
+            firstSave.get(10, TimeUnit.SECONDS);
+            secondSave.get(10, TimeUnit.SECONDS);
+            assertAll(
+                () -> assertEquals(1, mergedDuringCommit),
+                () -> assertTrue(cache.isLocked(merged.getJti())),
+                () -> assertEquals(List.of(first.getJti(), second.getJti()), committed)
+            );
+        } finally {
+            releaseCommit.countDown();
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent lookups during writes and refreshes are correct")
+    public void concurrentLookupTest() throws Exception {
+        List<JwtToken> lockedTokens = new ArrayList<>();
+        for (int i = 0; i < CACHED_TOKENS; i++) {
+            lockedTokens.add(createToken(true));
+        }
+        var cache = JwtCache.getInstance();
+        cache.storeAndSave(notNull(lockedTokens.toArray(JwtToken[]::new)));
+        Map<UUID, JwtToken> storedTokens = new ConcurrentHashMap<>();
+        lockedTokens.forEach(token -> storedTokens.put(token.getJti(), token));
+
+        ExecutorService executor = Executors.newFixedThreadPool(READER_THREADS + 1);
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<Future<?>>();
+        try {
+            for (int t = 0; t < READER_THREADS; t++) {
+                final int offset = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                        var jti = lockedTokens.get((offset + i * 7) % lockedTokens.size()).getJti();
+                        if (!cache.isLocked(jti)) {
+                            throw new IllegalStateException("Locked token " + jti + " was not found");
+                        }
+                    }
+                    return null;
+                }));
+            }
+            var newLocks = new ArrayList<JwtToken>();
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < WRITES; i++) {
+                    var token = createToken(false);
+                    cache.storeAndSave(token);
+                    cache.lock(token);
+                    var storedCopy = token.copy();
+                    storedCopy.setLocked(true);
+                    storedTokens.put(storedCopy.getJti(), storedCopy);
+                    newLocks.add(token);
+                    if (i % 100 == 0) {
+                        cache.refreshFromStorage(() -> storedTokens);
+                    }
+                }
+                return null;
+            }));
+            start.countDown();
+            for (var result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+            assertAll(
+                () -> assertTrue(newLocks.stream().allMatch(token -> cache.isLocked(token.getJti()))),
+                () -> assertTrue(lockedTokens.stream().allMatch(token -> cache.isLocked(token.getJti()))),
+                () -> assertEquals(CACHED_TOKENS + WRITES, cache.size())
+            );
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
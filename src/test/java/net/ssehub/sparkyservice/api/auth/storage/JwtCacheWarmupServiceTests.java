@@ -0,0 +1,136 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+
+import net.ssehub.sparkyservice.api.auth.JwtAuthorizationFilter;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtTokenService;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+import net.ssehub.sparkyservice.api.testconf.UnitTestDataConfiguration;
+import net.ssehub.sparkyservice.api.user.LdapUserFactory;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Provides tests for {@link JwtCacheWarmupService}.
+ *
+ * @author marcel
+ */
+@JwtStorageTest
+public class JwtCacheWarmupServiceTests {
+
+    private static final String USERNAME = "testuser";
+
+    @Autowired
+    private JwtStorageService jwtStorageService;
+
+    @Autowired
+    private UserStorageService userStorageService;
+
+    @BeforeEach
+    public void setupUser() {
+        userStorageService.commit(new LdapUserFactory().create(USERNAME, null, UserRole.DEFAULT, true));
+    }
+
+    @Test
+    @DisplayName("Warm up loads all tokens which aren't expired into the existing cache")
+    public void warmupLoadsActiveTokensTest() {
+        JwtCache.initNewCache();
+        var cache = JwtCache.getInstance();
+        long now = System.currentTimeMillis();
+        var locked = new JwtToken[5];
+        for (int i = 0; i < locked.length; i++) {
+            locked[i] = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, now + 60_000);
+        }
+        var unlocked = JwtTestTokens.createToken(false, USERNAME, UserRealm.LDAP, now + 60_000);
+        var expired = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, now - 1000);
+        jwtStorageService.commit(locked);
+        jwtStorageService.commit(unlocked, expired);
+
+        var warmupService = new JwtCacheWarmupService(jwtStorageService, 2, false);
+        warmupService.start();
+        assertAll(
+            () -> assertSame(cache, JwtCache.getInstance()),
+            () -> assertTrue(warmupService.isReady()),
+            () -> assertEquals(Status.UP, warmupService.health().getStatus()),
+            () -> assertEquals(6, warmupService.getLoadedTokenCount()),
+            () -> assertEquals(6, cache.size()),
+            () -> assertTrue(cache.isLocked(locked[4].getJti())),
+            () -> assertFalse(cache.isLocked(unlocked.getJti())),
+            () -> assertTrue(cache.isOwnedBy(unlocked.getJti(), unlocked.getUserInfo().asString())),
+            () -> assertFalse(cache.viewCachedToken(unlocked.getJti()).isPresent()),
+            () -> assertFalse(cache.viewCachedToken(expired.getJti()).isPresent()),
+            () -> assertTrue(cache.findToken(unlocked.getJti()).isPresent())
+        );
+    }
+
+    @Test
+    @DisplayName("Warm up doesn't overwrite tokens which were cached before")
+    public void warmupKeepsNewerStateTest() {
+        var token = JwtTestTokens.createToken(true, USERNAME, UserRealm.LDAP, System.currentTimeMillis() + 60_000);
+        jwtStorageService.commit(token);
+        var warmupService = new JwtCacheWarmupService(jwtStorageService, 10, false);
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), jwtStorageService);
+        var unlockedState = token.copy();
+        unlockedState.setLocked(false);
+
+        int added = JwtCache.getInstance().loadFromStorage(List.of(unlockedState));
+        warmupService.warmup();
+        assertAll(
+            () -> assertEquals(1, added),
+            () -> assertEquals(Status.UP, warmupService.health().getStatus()),
+            () -> assertFalse(JwtCache.getInstance().isLocked(token.getJti()))
+        );
+    }
+
+    @Test
+    @DisplayName("Requests with a JWT token are rejected with 503 until the warm up is finished")
+    public void authorizationWaitsForWarmupTest() throws Exception {
+        var warmupService = new JwtCacheWarmupService(jwtStorageService, 10, true);
+        var filter = new JwtAuthorizationFilter(mock(AuthenticationManager.class), 
+            new JwtTokenService(UnitTestDataConfiguration.sampleJwtConf()), warmupService);
+        var request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer invalid");
+        var rejected = new MockHttpServletResponse();
+        var rejectedChain = new MockFilterChain();
+        filter.doFilter(request, rejected, rejectedChain);
+
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), jwtStorageService);
+        warmupService.warmup();
+        var accepted = new MockHttpServletResponse();
+        var acceptedChain = new MockFilterChain();
+        filter.doFilter(request, accepted, acceptedChain);
+        assertAll(
+            () -> assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.getStatus()),
+            () -> assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER)),
+            () -> assertNull(rejectedChain.getRequest()),
+            () -> assertEquals(HttpServletResponse.SC_OK, accepted.getStatus()),
+            () -> assertNotNull(acceptedChain.getRequest())
+        );
+    }
+}
@@ -0,0 +1,76 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+import net.ssehub.sparkyservice.api.user.LdapUserFactory;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Provides tests for {@link JwtStoragePurgeService}.
+ *
+ * @author marcel
+ */
+@JwtStorageTest
+public class JwtStoragePurgeServiceTests {
+
+    private static final String USERNAME = "testuser";
+
+    @Autowired
+    private JwtStorageService jwtStorageService;
+
+    @Autowired
+    private JwtRepository jwtRepository;
+
+    @Autowired
+    private UserStorageService userStorageService;
+
+    @BeforeEach
+    public void setupUser() {
+        userStorageService.commit(new LdapUserFactory().create(USERNAME, null, UserRole.DEFAULT, true));
+    }
+
+    @Test
+    @DisplayName("Expired rows are purged in bounded chunks without touching valid ones")
+    public void purgeTest() {
+        long now = System.currentTimeMillis();
+        var expired = new JwtToken[5];
+        for (int i = 0; i < expired.length; i++) {
+            expired[i] = JwtTestTokens.createToken(i % 2 == 0, USERNAME, UserRealm.LDAP, now - 1000 * (i + 1));
+        }
+        var valid = JwtTestTokens.createToken(false, USERNAME, UserRealm.LDAP, now + 60_000);
+        jwtStorageService.commit(expired);
+        jwtStorageService.commit(valid);
+        var purgeService = new JwtStoragePurgeService(jwtStorageService, true, 2, 2);
+
+        int firstRun = purgeService.purge(now);
+        int secondRun = purgeService.purge(now);
+        assertAll(
+            () -> assertEquals(4, firstRun),
+            () -> assertEquals(1, secondRun),
+            () -> assertEquals(0, purgeService.purge(now)),
+            () -> assertEquals(5, purgeService.getPurgedTokenCount()),
+            () -> assertEquals(1, jwtRepository.count()),
+            () -> assertTrue(jwtRepository.existsById(valid.getJti().toString()))
+        );
+    }
+
+    @Test
+    @DisplayName("Invalid chunk sizes are rejected")
+    public void invalidBatchSizeTest() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new JwtStoragePurgeService(jwtStorageService, true, 0, 1));
+    }
+}
@@ -0,0 +1,214 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.JwtStorageSettings;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+import net.ssehub.sparkyservice.api.user.LdapUserFactory;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Provides tests for {@link JwtStorageService}.
+ *
+ * @author marcel
+ */
+@JwtStorageTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class JwtStorageServiceTests {
+
+    private static final String USERNAME = "testuser";
+    private static final String OTHER_USERNAME = "otheruser";
+
+    @Autowired
+    private JwtRepository jwtRepository;
+
+    @Autowired
+    private UserStorageService userStorageService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    public void setupUser() {
+        userStorageService.commit(new LdapUserFactory().create(USERNAME, null, UserRole.DEFAULT, true));
+    }
+
+    private static @Nonnull JwtToken createToken(boolean locked) {
+        return JwtTestTokens.createToken(locked, USERNAME, UserRealm.LDAP, System.currentTimeMillis() + 60_000);
+    }
+
+    /**
+     * Creates a storage service with the given settings.
+     * 
+     * @param revocationOnly
+     * @param writeBehind
+     * @param queueCapacity
+     * @return New storage service
+     */
+    private JwtStorageService createService(boolean revocationOnly, boolean writeBehind, int queueCapacity) {
+        var settings = new JwtStorageSettings();
+        settings.setRevocationOnly(revocationOnly);
+        settings.setWriteBehind(writeBehind);
+        settings.setQueueCapacity(queueCapacity);
+        settings.setBatchSize(2);
+        settings.setOfferTimeoutMs(0);
+        return new JwtStorageService(jwtRepository, userStorageService, settings);
+    }
+
+    @Test
+    @DisplayName("All committed token are persisted by default")
+    public void commitAllTest() {
+        var storageService = new JwtStorageService(jwtRepository, userStorageService);
+        storageService.commit(createToken(false), createToken(true));
+        assertAll(
+            () -> assertFalse(storageService.isRevocationOnly()),
+            () -> assertEquals(2, jwtRepository.count())
+        );
+    }
+
+    @Test
+    @DisplayName("Token of multiple users are saved with one user query, one lookup and one insert batch")
+    public void commitBatchStatementCountTest() {
+        userStorageService.commit(new LdapUserFactory().create(OTHER_USERNAME, null, UserRole.DEFAULT, true));
+        var storageService = new JwtStorageService(jwtRepository, userStorageService);
+        var tokens = new ArrayList<JwtToken>();
+        for (int i = 0; i < 10; i++) {
+            tokens.add(createToken(false));
+            tokens.add(JwtTestTokens.createToken(false, OTHER_USERNAME, UserRealm.LDAP, 
+                System.currentTimeMillis() + 60_000));
+        }
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        storageService.commit(tokens.toArray(new JwtToken[0]));
+        assertAll(
+            () -> assertEquals(3, statistics.getPrepareStatementCount()),
+            () -> assertEquals(20, statistics.getEntityInsertCount()),
+            () -> assertEquals(20, jwtRepository.count())
+        );
+
+        var locked = tokens.get(0);
+        locked.setLocked(true);
+        storageService.commit(locked);
+        assertAll(
+            () -> assertEquals(20, jwtRepository.count()),
+            () -> assertTrue(jwtRepository.findById(locked.getJti().toString()).get().isLocked())
+        );
+    }
+
+    @Test
+    @DisplayName("Only locked token are persisted in revocation only mode")
+    public void commitRevocationOnlyTest() {
+        var storageService = createService(true, false, 1);
+        var unlocked = createToken(false);
+        var locked = createToken(true);
+        storageService.commit(unlocked, locked);
+        assertAll(
+            () -> assertEquals(1, jwtRepository.count()),
+            () -> assertTrue(jwtRepository.existsById(locked.getJti().toString())),
+            () -> assertEquals(1, storageService.findAllLocked().size())
+        );
+    }
+
+    @Test
+    @DisplayName("Token are persisted as soon as they are locked in revocation only mode")
+    public void commitAfterLockTest() {
+        var storageService = createService(true, false, 1);
+        var token = createToken(false);
+        storageService.commit(token);
+        assertEquals(0, jwtRepository.count());
+
+        token.setLocked(true);
+        storageService.commit(token);
+        assertTrue(jwtRepository.findById(token.getJti().toString()).get().isLocked());
+    }
+
+    @Test
+    @DisplayName("Unlocking a stored token deletes its row in revocation only mode")
+    public void commitUnlockRevocationOnlyTest() {
+        var storageService = createService(true, false, 1);
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), storageService);
+        var token = createToken(true);
+        JwtCache.getInstance().storeAndSave(token);
+        assertTrue(jwtRepository.existsById(token.getJti().toString()));
+
+        token.setLocked(false);
+        JwtCache.getInstance().storeAndSave(token);
+        assertAll(
+            () -> assertEquals(0, jwtRepository.count()),
+            () -> assertTrue(storageService.findAllLocked().isEmpty()),
+            () -> assertFalse(JwtCache.getInstance().isLocked(token.getJti()))
+        );
+
+        JwtCache.getInstance().refreshFromStorage();
+        assertFalse(JwtCache.getInstance().isLocked(token.getJti()));
+    }
+
+    @Test
+    @DisplayName("Write behind saves queued token with the next flush")
+    public void writeBehindFlushTest() {
+        var storageService = createService(false, true, 100);
+        var token = createToken(false);
+        storageService.commit(token, createToken(false), createToken(false));
+        token.setLocked(true);
+        storageService.commit(token);
+        assertAll(
+            () -> assertEquals(0, jwtRepository.count()),
+            () -> assertEquals(3, storageService.getQueuedTokenCount())
+        );
+
+        assertEquals(3, storageService.flush());
+        assertAll(
+            () -> assertEquals(3, jwtRepository.count()),
+            () -> assertEquals(0, storageService.getQueuedTokenCount()),
+            () -> assertTrue(jwtRepository.findById(token.getJti().toString()).get().isLocked())
+        );
+    }
+
+    @Test
+    @DisplayName("Token are saved synchronously when the write behind queue is full")
+    public void writeBehindBackpressureTest() {
+        var storageService = createService(false, true, 1);
+        var queued = createToken(false);
+        var overflow = createToken(false);
+        storageService.commit(queued, overflow);
+        assertAll(
+            () -> assertEquals(1, storageService.getQueuedTokenCount()),
+            () -> assertTrue(jwtRepository.existsById(overflow.getJti().toString())),
+            () -> assertFalse(jwtRepository.existsById(queued.getJti().toString()))
+        );
+    }
+
+    @Test
+    @DisplayName("Queued token are saved on shutdown and purged token are not saved anymore")
+    public void writeBehindShutdownTest() {
+        var storageService = createService(false, true, 100);
+        var purged = createToken(false);
+        var kept = createToken(false);
+        storageService.commit(purged, kept);
+        storageService.delete(List.of(purged.getJti()));
+        storageService.shutdown();
+        assertAll(
+            () -> assertEquals(1, jwtRepository.count()),
+            () -> assertTrue(jwtRepository.existsById(kept.getJti().toString()))
+        );
+    }
+}
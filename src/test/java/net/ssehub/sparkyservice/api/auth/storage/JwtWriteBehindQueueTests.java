@@ -0,0 +1,124 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+
+/**
+ * Provides unit tests for {@link JwtWriteBehindQueue}.
+ *
+ * @author marcel
+ */
+public class JwtWriteBehindQueueTests {
+
+    @Test
+    @DisplayName("Updates of a queued token replace the queued state")
+    public void coalesceTest() throws InterruptedException {
+        var queue = new JwtWriteBehindQueue(1);
+        var token = JwtTestTokens.createToken(false);
+        assertTrue(queue.offer(token, 0));
+        token.setLocked(true);
+        assertTrue(queue.offer(token, 0));
+
+        List<JwtToken> batch = queue.drain(10);
+        assertAll(
+            () -> assertEquals(1, batch.size()),
+            () -> assertTrue(batch.get(0).isLocked()),
+            () -> assertEquals(0, queue.size())
+        );
+    }
+
+    @Test
+    @DisplayName("Drain returns the oldest token in batches")
+    public void drainOrderTest() throws InterruptedException {
+        var queue = new JwtWriteBehindQueue(10);
+        var first = JwtTestTokens.createToken(false);
+        var second = JwtTestTokens.createToken(false);
+        var third = JwtTestTokens.createToken(false);
+        queue.offer(first, 0);
+        queue.offer(second, 0);
+        queue.offer(third, 0);
+        assertAll(
+            () -> assertEquals(List.of(first.getJti(), second.getJti()), 
+                    queue.drain(2).stream().map(JwtToken::getJti).collect(Collectors.toList())),
+            () -> assertEquals(third.getJti(), queue.drain(2).get(0).getJti()),
+            () -> assertTrue(queue.drain(2).isEmpty())
+        );
+    }
+
+    @Test
+    @DisplayName("Offer waits for space and times out on a full queue")
+    public void backpressureTest() throws Exception {
+        var queue = new JwtWriteBehindQueue(1);
+        queue.offer(JwtTestTokens.createToken(false), 0);
+        assertFalse(queue.offer(JwtTestTokens.createToken(false), 10));
+
+        var waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return queue.offer(JwtTestTokens.createToken(false), 10_000);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        queue.drain(1);
+        assertTrue(waiting.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Requeued token respect the capacity and locked token are kept first")
+    public void requeueBoundedTest() throws InterruptedException {
+        var queue = new JwtWriteBehindQueue(2);
+        var unlocked = JwtTestTokens.createToken(false);
+        var locked = JwtTestTokens.createToken(true);
+        queue.offer(unlocked, 0);
+        queue.offer(locked, 0);
+        List<JwtToken> batch = queue.drain(2);
+        var newer = JwtTestTokens.createToken(false);
+        queue.offer(newer, 0);
+        assertAll(
+            () -> assertEquals(1, queue.requeue(batch)),
+            () -> assertEquals(2, queue.size()),
+            () -> assertTrue(queue.find(locked.getJti()).isPresent()),
+            () -> assertFalse(queue.find(unlocked.getJti()).isPresent())
+        );
+    }
+
+    @Test
+    @DisplayName("Token in flight are found, accept updates without space and aren't saved after removal")
+    public void inFlightTest() throws InterruptedException {
+        var queue = new JwtWriteBehindQueue(1);
+        var token = JwtTestTokens.createToken(false);
+        var removed = JwtTestTokens.createToken(false);
+        queue.offer(token, 0);
+        List<JwtToken> first = queue.drain(1);
+        queue.offer(removed, 0);
+        List<JwtToken> second = queue.drain(1);
+        queue.remove(List.of(removed.getJti()));
+        queue.offer(JwtTestTokens.createToken(false), 0);
+        token.setLocked(true);
+        assertAll(
+            () -> assertTrue(queue.find(token.getJti()).isPresent()),
+            () -> assertTrue(queue.offer(token, 0)),
+            () -> assertTrue(queue.find(token.getJti()).get().isLocked()),
+            () -> assertEquals(first, queue.retainInFlight(first)),
+            () -> assertTrue(queue.retainInFlight(second).isEmpty())
+        );
+        queue.complete(first);
+        assertAll(
+            () -> assertTrue(queue.retainInFlight(first).isEmpty()),
+            () -> assertEquals(2, queue.size())
+        );
+    }
+}
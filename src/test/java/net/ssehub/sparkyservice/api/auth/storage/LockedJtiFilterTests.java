@@ -0,0 +1,76 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+
+/**
+ * Provides unit tests for {@link LockedJtiFilter}.
+ *
+ * @author marcel
+ */
+public class LockedJtiFilterTests {
+
+    private static final int LOCKED_TOKENS = 5_000;
+    private static final int PROBES = 100_000;
+
+    @Test
+    @DisplayName("All locked JTIs are contained and unlocked token are left out")
+    public void noFalseNegativesTest() {
+        var tokens = new ArrayList<JwtToken>();
+        for (int i = 0; i < LOCKED_TOKENS; i++) {
+            tokens.add(JwtTestTokens.createToken(true));
+        }
+        var unlocked = JwtTestTokens.createToken(false);
+        tokens.add(unlocked);
+        var filter = LockedJtiFilter.of(tokens);
+        assertAll(
+            () -> assertTrue(tokens.stream().filter(JwtToken::isLocked).allMatch(t -> filter.mightContain(t.getJti()))),
+            () -> assertEquals(LOCKED_TOKENS, filter.getInsertions()),
+            () -> assertFalse(filter.isSaturated())
+        );
+    }
+
+    @Test
+    @DisplayName("False positive rate stays near the expected rate")
+    public void falsePositiveRateTest() {
+        var filter = new LockedJtiFilter(LOCKED_TOKENS);
+        for (int i = 0; i < LOCKED_TOKENS; i++) {
+            filter.put(UUID.randomUUID());
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < PROBES; i++) {
+            if (filter.mightContain(UUID.randomUUID())) {
+                filter.recordFalsePositive();
+                falsePositives++;
+            }
+        }
+        double observed = (double) falsePositives / PROBES;
+        assertAll(
+            () -> assertTrue(filter.getExpectedFalsePositiveRate() < 0.02),
+            () -> assertTrue(observed < 0.03, "Observed false positive rate " + observed),
+            () -> assertEquals(observed, filter.getObservedFalsePositiveRate(), 1e-9)
+        );
+    }
+
+    @Test
+    @DisplayName("Filter is saturated when more JTIs are added than it was sized for")
+    public void saturationTest() {
+        var filter = LockedJtiFilter.of(List.of());
+        for (int i = 0; i <= LockedJtiFilter.MIN_CAPACITY; i++) {
+            filter.put(UUID.randomUUID());
+        }
+        assertTrue(filter.isSaturated());
+    }
+}
@@ -0,0 +1,160 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+
+/**
+ * Provides unit tests for {@link RevocationJournal}.
+ *
+ * @author marcel
+ */
+public class RevocationJournalTests {
+
+    private static final long MAX_AGE_MS = 60_000;
+
+    @TempDir
+    public Path directory;
+
+    private static Set<UUID> jtis(List<JwtToken> tokens) {
+        return tokens.stream().map(JwtToken::getJti).collect(Collectors.toSet());
+    }
+
+    @Test
+    @DisplayName("Locked tokens are recovered after reopening the journal")
+    public void recoverJournalTest() throws IOException {
+        long now = System.currentTimeMillis();
+        var locked = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, now + 60_000);
+        var unlocked = JwtTestTokens.createToken(false, "user", UserRealm.LDAP, now + 60_000);
+        var removed = JwtTestTokens.createToken(true, "other", UserRealm.LOCAL, now + 60_000);
+        try (var journal = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            assertFalse(journal.isRecovered());
+            journal.record(List.of(locked, unlocked, removed));
+            journal.remove(List.of(removed.getJti()));
+            journal.markComplete();
+        }
+
+        try (var journal = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            var recovered = journal.getLockedTokens();
+            assertAll(
+                () -> assertTrue(journal.isRecovered()),
+                () -> assertEquals(Set.of(locked.getJti()), jtis(recovered)),
+                () -> assertTrue(recovered.get(0).isLocked()),
+                () -> assertEquals("user", recovered.get(0).getUserInfo().getName()),
+                () -> assertEquals(UserRealm.LDAP, recovered.get(0).getUserInfo().getRealm()),
+                () -> assertEquals(locked.getExpirationDate(), recovered.get(0).getExpirationDate())
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Journal is compacted into a snapshot without expired tokens")
+    public void compactTest() throws IOException {
+        long now = System.currentTimeMillis();
+        var valid = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, now + 60_000);
+        var expired = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, now - 1000);
+        var unlockedAgain = valid.copy();
+        unlockedAgain.setLocked(false);
+        var relocked = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, now + 60_000);
+        try (var journal = new RevocationJournal(directory, 3, MAX_AGE_MS)) {
+            journal.record(List.of(valid, expired));
+            assertFalse(journal.compactIfNeeded());
+            journal.record(List.of(relocked));
+            assertEquals(3, journal.getJournalEvents(), "Journal was compacted while recording");
+            assertTrue(journal.compactIfNeeded());
+            assertEquals(0, journal.getJournalEvents());
+            journal.record(List.of(unlockedAgain));
+            assertEquals(1, journal.getJournalEvents());
+        }
+        try (var journal = new RevocationJournal(directory, 3, MAX_AGE_MS)) {
+            assertEquals(Set.of(relocked.getJti()), jtis(journal.getLockedTokens()));
+        }
+    }
+
+    @Test
+    @DisplayName("A torn event at the end of the journal is dropped")
+    public void tornEventTest() throws IOException {
+        var locked = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, System.currentTimeMillis() + 60_000);
+        Path crashed = Files.createDirectory(directory.resolve("crashed"));
+        try (var journal = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            journal.record(List.of(locked));
+            Files.copy(directory.resolve(RevocationJournal.JOURNAL_FILE), 
+                crashed.resolve(RevocationJournal.JOURNAL_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.write(crashed.resolve(RevocationJournal.JOURNAL_FILE), new byte[] {0, 0, 0, 42, 1, 2},
+            StandardOpenOption.APPEND);
+
+        try (var reopened = new RevocationJournal(crashed, 100, MAX_AGE_MS)) {
+            assertAll(
+                () -> assertEquals(Set.of(locked.getJti()), jtis(reopened.getLockedTokens())),
+                () -> assertEquals(1, reopened.getJournalEvents())
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("A truncated snapshot is dropped and the journal isn't recovered")
+    public void corruptSnapshotTest() throws IOException {
+        var locked = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, System.currentTimeMillis() + 60_000);
+        try (var journal = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            journal.record(List.of(locked));
+            journal.markComplete();
+        }
+        Path snapshot = directory.resolve(RevocationJournal.SNAPSHOT_FILE);
+        byte[] content = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(content, content.length - 10));
+
+        try (var reopened = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            assertAll(
+                () -> assertFalse(reopened.isRecovered()),
+                () -> assertTrue(reopened.getLockedTokens().isEmpty())
+            );
+        }
+    }
+
+    @Test
+    @DisplayName("Only complete journals which aren't too old are recovered")
+    public void staleJournalTest() throws IOException {
+        var locked = JwtTestTokens.createToken(true, "user", UserRealm.LDAP, System.currentTimeMillis() + 60_000);
+        try (var journal = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            journal.record(List.of(locked));
+        }
+        try (var incomplete = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            assertFalse(incomplete.isRecovered(), "Journal without all stored locks is recovered");
+            incomplete.markComplete();
+        }
+        var old = FileTime.fromMillis(System.currentTimeMillis() - 2 * MAX_AGE_MS);
+        Files.setLastModifiedTime(directory.resolve(RevocationJournal.SNAPSHOT_FILE), old);
+        Files.setLastModifiedTime(directory.resolve(RevocationJournal.JOURNAL_FILE), old);
+        try (var stale = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            assertAll(
+                () -> assertFalse(stale.isRecovered(), "Stale journal is recovered"),
+                () -> assertEquals(Set.of(locked.getJti()), jtis(stale.getLockedTokens()))
+            );
+        }
+        try (var notMarked = new RevocationJournal(directory, 100, MAX_AGE_MS)) {
+            assertFalse(notMarked.isRecovered(), "Stale journal is complete after a restart");
+        }
+    }
+}
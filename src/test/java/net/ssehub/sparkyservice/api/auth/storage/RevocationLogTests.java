@@ -0,0 +1,106 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Provides unit tests for {@link RevocationLog}.
+ *
+ * @author marcel
+ */
+public class RevocationLogTests {
+
+    private RevocationLog log;
+
+    @BeforeEach
+    public void setupLog() {
+        log = new RevocationLog(3);
+    }
+
+    @Test
+    @DisplayName("Changes since a version are merged per token")
+    public void changesSinceTest() {
+        UUID first = notNull(UUID.randomUUID());
+        UUID second = notNull(UUID.randomUUID());
+        long start = log.getVersion();
+        log.recordLocked(first);
+        long afterFirst = log.getVersion();
+        log.recordLocked(second);
+        log.recordRemoved(List.of(first));
+        log.recordGeneration("user@LOCAL");
+
+        var all = log.changesSince(start).get();
+        var later = log.changesSince(afterFirst).get();
+        assertAll(
+            () -> assertEquals(log.getVersion(), all.getVersion()),
+            () -> assertEquals(Set.of(second), all.getLocked()),
+            () -> assertEquals(Set.of(first), all.getRemoved()),
+            () -> assertEquals(Set.of("user@LOCAL"), all.getOwners()),
+            () -> assertEquals(Set.of(second), later.getLocked()),
+            () -> assertTrue(log.changesSince(log.getVersion()).get().isEmpty())
+        );
+    }
+
+    @Test
+    @DisplayName("Versions without logged changes need a snapshot")
+    public void snapshotNeededTest() {
+        long start = log.getVersion();
+        for (int i = 0; i < 4; i++) {
+            log.recordLocked(notNull(UUID.randomUUID()));
+        }
+        long beforeReset = log.getVersion();
+        assertTrue(log.changesSince(beforeReset).isPresent());
+        log.reset();
+        assertAll(
+            () -> assertFalse(log.changesSince(start).isPresent(), "Trimmed changes are returned"),
+            () -> assertFalse(log.changesSince(beforeReset).isPresent(), "Changes before the reset are returned"),
+            () -> assertFalse(log.changesSince(log.getVersion() + 1).isPresent(), "Future version is accepted"),
+            () -> assertFalse(new RevocationLog(3).changesSince(start).isPresent(), "Version of other log is used")
+        );
+    }
+
+    @Test
+    @DisplayName("Recorded changes are returned until the next reset")
+    public void recordedChangesTest() {
+        var jti = notNull(UUID.randomUUID());
+        long start = log.getVersion();
+        log.recordLocked(jti);
+        var delta = log.recordedChangesSince(0);
+        log.reset();
+        log.recordLocked(notNull(UUID.randomUUID()));
+        assertAll(
+            () -> assertTrue(delta.isPresent()),
+            () -> assertTrue(delta.get().getLocked().contains(jti)),
+            () -> assertFalse(log.recordedChangesSince(start).isPresent(), "Changes before the reset are returned"),
+            () -> assertFalse(log.recordedChangesSince(0).isPresent(), "Changes before the reset are returned")
+        );
+    }
+
+    @Test
+    @DisplayName("Waiting consumers are notified about the next change")
+    public void awaitChangeTest() throws Exception {
+        long start = log.getVersion();
+        var waiting = log.awaitChangeAfter(start);
+        var timedOut = log.awaitChangeAfter(start).completeOnTimeout(start, 1, TimeUnit.MILLISECONDS);
+        assertEquals(start, timedOut.get(1, TimeUnit.SECONDS));
+        assertFalse(waiting.isDone(), "Timeout of one consumer affected another one");
+
+        log.recordLocked(notNull(UUID.randomUUID()));
+        assertAll(
+            () -> assertEquals(log.getVersion(), waiting.get(1, TimeUnit.SECONDS)),
+            () -> assertTrue(log.awaitChangeAfter(start).isDone(), "Known change is not returned immediately")
+        );
+    }
+}
@@ -0,0 +1,135 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.token.JpaRevocationEvent;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.JwtStorageTest;
+import net.ssehub.sparkyservice.api.testconf.JwtTestTokens;
+
+/**
+ * Provides tests for {@link RevocationSyncService}. {@link JwtCache} is a singleton per JVM, so a second node is
+ * simulated by replacing the cache before the second service polls.
+ *
+ * @author marcel
+ */
+@JwtStorageTest
+public class RevocationSyncServiceTests {
+
+    @Autowired
+    private RevocationEventRepository repo;
+
+    private RevocationSyncService firstNode;
+
+    private RevocationSyncService secondNode;
+
+    @BeforeEach
+    public void setupNodes() {
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), null);
+        firstNode = new RevocationSyncService(repo, true, "first", 2, 10_000, 3_600_000);
+        secondNode = new RevocationSyncService(repo, true, "second", 2, 10_000, 3_600_000);
+        firstNode.start();
+        secondNode.start();
+    }
+
+    @Test
+    @DisplayName("Locks, unlocks and token generations of one node are applied by the other node")
+    public void propagationTest() {
+        var locked = JwtTestTokens.createToken(true);
+        var other = JwtTestTokens.createToken(true);
+        JwtCache.getInstance().storeAndSave(locked, other);
+        JwtCache.getInstance().applyTokenGeneration(SparkysAuthPrincipal.toIdentifier("user", UserRealm.LDAP), 3);
+        assertEquals(3, firstNode.publish());
+
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), null);
+        var secondCache = JwtCache.getInstance();
+        assertAll(
+            () -> assertEquals(3, secondNode.poll()),
+            () -> assertEquals(0, firstNode.poll()),
+            () -> assertTrue(secondCache.isLocked(locked.getJti())),
+            () -> assertTrue(secondCache.isLocked(other.getJti())),
+            () -> assertEquals(Integer.valueOf(3), secondCache.getTokenGenerations().get("user@LDAP")),
+            () -> assertEquals(0, secondNode.publish(), "Applied changes are published again")
+        );
+
+        var unlocked = locked.copy();
+        unlocked.setLocked(false);
+        secondCache.storeAndSave(unlocked);
+        assertEquals(1, secondNode.publish());
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), null);
+        JwtCache.getInstance().storeAndSave(locked);
+        assertAll(
+            () -> assertEquals(1, firstNode.poll()),
+            () -> assertFalse(JwtCache.getInstance().isLocked(locked.getJti()))
+        );
+    }
+
+    @Test
+    @DisplayName("A remote lock locks the cached token instead of replacing it")
+    public void remoteLockKeepsTokenTest() {
+        var token = JwtTestTokens.createToken(false);
+        token.setTokenPermissionRoles(UserRole.ADMIN);
+        var locked = token.copy();
+        locked.setLocked(true);
+        JwtCache.getInstance().storeAndSave(locked);
+        firstNode.publish();
+
+        JwtCache.initNewCache(new ArrayList<JwtToken>(), null);
+        JwtCache.getInstance().storeAndSave(token);
+        assertEquals(1, secondNode.poll());
+        var cached = JwtCache.getInstance().getCachedToken(token.getJti()).get();
+        assertAll(
+            () -> assertTrue(cached.isLocked()),
+            () -> assertTrue(cached.getTokenPermissionRoles().contains(UserRole.ADMIN), "Permissions were lost"),
+            () -> assertEquals(token.getUserInfo().asString(), cached.getUserInfo().asString())
+        );
+    }
+
+    @Test
+    @DisplayName("Skipped versions are tracked even when more versions than a page are skipped")
+    public void largeGapTest() {
+        for (int i = 0; i < 5; i++) {
+            JwtCache.getInstance().storeAndSave(JwtTestTokens.createToken(true));
+        }
+        firstNode.publish();
+        var events = StreamSupport.stream(repo.findAll().spliterator(), false)
+            .sorted(Comparator.comparingLong(JpaRevocationEvent::getVersion))
+            .collect(Collectors.toList());
+        repo.deleteAll(events.subList(1, 4));
+        var registry = new SimpleMeterRegistry();
+        secondNode.bindTo(registry);
+        assertAll(
+            () -> assertEquals(2, secondNode.poll()),
+            () -> assertEquals(3, registry.get("sparky.jwt.sync.gaps").gauge().value())
+        );
+    }
+
+    @Test
+    @DisplayName("Old changes are deleted from the change log")
+    public void cleanupTest() {
+        JwtCache.getInstance().storeAndSave(JwtTestTokens.createToken(true));
+        firstNode.publish();
+        var purging = new RevocationSyncService(repo, true, "third", 2, 10_000, -1000);
+        assertAll(
+            () -> assertEquals(1, purging.cleanup()),
+            () -> assertEquals(0, repo.count())
+        );
+    }
+}
@@ -0,0 +1,83 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Provides unit tests for {@link RevokedSerialSet}.
+ *
+ * @author marcel
+ */
+public class RevokedSerialSetTests {
+
+    private static final long BASE = 1_600_000_000_000L << 20;
+
+    private RevokedSerialSet serials;
+
+    @BeforeEach
+    public void setupSet() {
+        serials = new RevokedSerialSet();
+    }
+
+    @Test
+    @DisplayName("Added serials are contained until they are removed")
+    public void addRemoveTest() {
+        assertAll(
+            () -> assertTrue(serials.add(BASE + 7)),
+            () -> assertFalse(serials.add(BASE + 7)),
+            () -> assertTrue(serials.add(BASE + 70_000)),
+            () -> assertTrue(serials.contains(BASE + 7)),
+            () -> assertFalse(serials.contains(BASE + 8)),
+            () -> assertFalse(serials.contains(BASE + 7 + 65_536)),
+            () -> assertEquals(2, serials.size()),
+            () -> assertTrue(serials.remove(BASE + 7)),
+            () -> assertFalse(serials.remove(BASE + 7)),
+            () -> assertFalse(serials.contains(BASE + 7)),
+            () -> assertEquals(1, serials.size())
+        );
+    }
+
+    @Test
+    @DisplayName("Dense chunks are converted into bitmaps and back")
+    public void chunkConversionTest() {
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            serials.add(BASE + 2 * i);
+        }
+        long bitmapBytes = serials.sizeInBytes();
+        for (int i = 0; i < count - 100; i++) {
+            serials.remove(BASE + 2 * i);
+        }
+        assertAll(
+            () -> assertEquals(100, serials.size()),
+            () -> assertTrue(serials.contains(BASE + 2 * (count - 1))),
+            () -> assertFalse(serials.contains(BASE + 2 * (count - 1) + 1)),
+            () -> assertFalse(serials.contains(BASE)),
+            () -> assertTrue(bitmapBytes < 3 * Character.BYTES * count),
+            () -> assertTrue(serials.sizeInBytes() < 1000)
+        );
+    }
+
+    @Test
+    @DisplayName("A million sequential serials need about one bit each")
+    public void compressionTest() {
+        int count = 1_000_000;
+        long[] sequential = new long[count];
+        for (int i = 0; i < count; i++) {
+            sequential[i] = BASE + count - 1 - i;
+        }
+        serials.addAll(sequential);
+        assertAll(
+            () -> assertEquals(count, serials.size()),
+            () -> assertTrue(serials.contains(BASE + count - 1)),
+            () -> assertFalse(serials.contains(BASE + count)),
+            () -> assertTrue(serials.sizeInBytes() < 150 * 1024)
+        );
+    }
+}
@@ -0,0 +1,103 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Provides unit tests for {@link TokenStateTable}.
+ *
+ * @author marcel
+ */
+public class TokenStateTableTests {
+
+    private static final int CHURN_TOKENS = 100_000;
+
+    @Test
+    @DisplayName("Lock state and expiration are kept until the token is removed")
+    public void putRemoveTest() {
+        var table = new TokenStateTable(0);
+        var locked = UUID.randomUUID();
+        var unlocked = UUID.randomUUID();
+        assertAll(
+            () -> assertFalse(table.put(locked, true, 1_600_000_000_123L)),
+            () -> assertFalse(table.put(unlocked, false, 0)),
+            () -> assertTrue(table.isLocked(locked)),
+            () -> assertFalse(table.isLocked(unlocked)),
+            () -> assertTrue(table.contains(unlocked)),
+            () -> assertEquals(1_600_000_000_000L, table.getExpiresAt(locked)),
+            () -> assertEquals(0, table.getExpiresAt(unlocked)),
+            () -> assertEquals(-1, table.getExpiresAt(UUID.randomUUID())),
+            () -> assertTrue(table.put(locked, false, 0)),
+            () -> assertFalse(table.isLocked(locked)),
+            () -> assertTrue(table.remove(locked)),
+            () -> assertFalse(table.remove(locked)),
+            () -> assertFalse(table.contains(locked)),
+            () -> assertEquals(1, table.size())
+        );
+    }
+
+    @Test
+    @DisplayName("Table grows and drops tombstones without losing entries")
+    public void growTest() {
+        var table = new TokenStateTable(0);
+        List<UUID> jtis = new ArrayList<>();
+        for (int i = 0; i < 10 * TokenStateTable.MIN_CAPACITY; i++) {
+            var jti = UUID.randomUUID();
+            jtis.add(jti);
+            table.put(jti, i % 2 == 0, 0);
+            if (i % 3 == 0) {
+                table.remove(jti);
+            }
+        }
+        for (int i = 0; i < jtis.size(); i++) {
+            boolean expected = i % 2 == 0 && i % 3 != 0;
+            assertEquals(expected, table.isLocked(jtis.get(i)), "Wrong state of entry " + i);
+        }
+        assertEquals(jtis.size() - (jtis.size() + 2) / 3, table.size());
+    }
+
+    /**
+     * Updates and lookups of known token must not create garbage, so the state table doesn't cause GC churn. 
+     * Measures the heap which the test thread allocates for {@value #CHURN_TOKENS} updates and lookups.
+     */
+    @Test
+    @DisplayName("Updates and lookups of known token don't allocate heap")
+    public void noAllocationTest() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        var jtis = new UUID[CHURN_TOKENS];
+        var table = new TokenStateTable(CHURN_TOKENS);
+        for (int i = 0; i < CHURN_TOKENS; i++) {
+            jtis[i] = UUID.randomUUID();
+            table.put(jtis[i], false, 0);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int lockedCount = 0;
+        for (int i = 0; i < CHURN_TOKENS; i++) {
+            table.put(jtis[i], i % 100 == 0, 1_600_000_000_000L);
+            if (table.isLocked(jtis[i])) {
+                lockedCount++;
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        final int locked = lockedCount;
+        assertAll(
+            () -> assertEquals(CHURN_TOKENS / 100, locked),
+            () -> assertTrue(allocated < CHURN_TOKENS, allocated + " bytes allocated for " + CHURN_TOKENS 
+                + " updates and lookups"),
+            () -> assertTrue(table.sizeInBytes() / CHURN_TOKENS <= 64)
+        );
+    }
+}
@@ -0,0 +1,64 @@
+package net.ssehub.sparkyservice.api.auth.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Provides unit tests for {@link VersionWatermark}.
+ *
+ * @author marcel
+ */
+public class VersionWatermarkTests {
+
+    private static final long TIMEOUT = 1000;
+
+    @Test
+    @DisplayName("Skipped versions are kept as gap until they show up")
+    public void gapTest() {
+        var watermark = new VersionWatermark(10, TIMEOUT);
+        watermark.advance(11, 0);
+        watermark.advance(15, 0);
+        assertAll(
+            () -> assertEquals(15, watermark.getVersion()),
+            () -> assertEquals(3, watermark.getGapSize()),
+            () -> assertEquals(12, watermark.getGaps().get(0).getFrom()),
+            () -> assertEquals(14, watermark.getGaps().get(0).getTo())
+        );
+        watermark.advance(13, 0);
+        assertAll(
+            () -> assertEquals(15, watermark.getVersion()),
+            () -> assertEquals(2, watermark.getGapSize()),
+            () -> assertEquals(2, watermark.getGaps().size())
+        );
+        watermark.advance(12, 0);
+        watermark.advance(14, 0);
+        assertEquals(0, watermark.getGapSize());
+    }
+
+    @Test
+    @DisplayName("Large jumps keep all skipped versions without a gap per version")
+    public void largeGapTest() {
+        var watermark = new VersionWatermark(0, TIMEOUT);
+        watermark.advance(1_000_001, 0);
+        assertAll(
+            () -> assertEquals(1_000_000, watermark.getGapSize()),
+            () -> assertEquals(1, watermark.getGaps().size())
+        );
+    }
+
+    @Test
+    @DisplayName("Gaps are given up after their timeout")
+    public void expireTest() {
+        var watermark = new VersionWatermark(0, TIMEOUT);
+        watermark.advance(3, 0);
+        watermark.advance(6, 500);
+        watermark.expireGaps(TIMEOUT + 1);
+        assertAll(
+            () -> assertEquals(2, watermark.getGapSize()),
+            () -> assertEquals(4, watermark.getGaps().get(0).getFrom())
+        );
+    }
+}
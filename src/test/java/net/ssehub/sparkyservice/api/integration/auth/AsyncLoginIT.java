@@ -0,0 +1,143 @@
+package net.ssehub.sparkyservice.api.integration.auth;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.DispatcherType;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import net.ssehub.sparkyservice.api.auth.JwtAuthenticationFilter;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues;
+import net.ssehub.sparkyservice.api.testconf.AbstractContainerTestDatabase;
+import net.ssehub.sparkyservice.api.testconf.IntegrationTest;
+
+/**
+ * Tests the asynchronous login of {@link JwtAuthenticationFilter} with the whole filter chain. The other tests
+ * disable <code>auth.login.async</code>, so this is the only test of the async path.
+ *
+ * @author marcel
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@TestPropertySource(locations = "classpath:test.properties", properties = "auth.login.async=true")
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD) // clears database
+//checkstyle: stop exception type check
+public class AsyncLoginIT extends AbstractContainerTestDatabase {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Value("${recovery.user}")
+    private String inMemoryUser;
+
+    @Value("${recovery.password}")
+    private String inMemoryPassword;
+
+    @Value("${jwt.header}")
+    private String jwtTokenHeader;
+
+    private MockMvc mvc;
+
+    /**
+     * Setup is run before each tests and initialize the web context for mocking.
+     */
+    @BeforeEach
+    public void setup() {
+        mvc = MockMvcBuilders
+          .webAppContextSetup(context)
+          .apply(SecurityMockMvcConfigurers.springSecurity())
+          .build();
+    }
+
+    /**
+     * Starts a login which is expected to release the request thread.
+     *
+     * @param password Password of the recovery user
+     * @return Result of the first dispatch
+     * @throws Exception
+     */
+    private MvcResult startLogin(String password) throws Exception {
+        return mvc
+            .perform(
+                post(ConfigurationValues.AUTH_LOGIN_URL)
+                    .param("password", password)
+                    .param("username", inMemoryUser)
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    }
+
+    /**
+     * Waits until the login dispatches the request again and creates the async dispatch.
+     * {@link org.springframework.test.web.servlet.request.MockMvcRequestBuilders#asyncDispatch(MvcResult)} only
+     * supports async requests which were started by a controller, not by a filter.
+     *
+     * @param started Result of the first dispatch
+     * @return Request builder for the async dispatch
+     * @throws InterruptedException When interrupted while waiting
+     */
+    private static RequestBuilder asyncDispatch(MvcResult started) throws InterruptedException {
+        var dispatched = new CountDownLatch(1);
+        MockHttpServletRequest request = started.getRequest();
+        ((MockAsyncContext) request.getAsyncContext()).addDispatchHandler(dispatched::countDown);
+        assertTrue(dispatched.await(10, TimeUnit.SECONDS), "Login was not dispatched again");
+        return servletContext -> {
+            request.setDispatcherType(DispatcherType.ASYNC);
+            request.setAsyncStarted(false);
+            return request;
+        };
+    }
+
+    @IntegrationTest
+    @DisplayName("An async login answers with a JWT after the async dispatch")
+    public void asyncLoginTest() throws Exception {
+        MvcResult started = startLogin(inMemoryPassword);
+        var result = mvc
+            .perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andReturn();
+        String header = result.getResponse().getHeader(jwtTokenHeader);
+        assertAll(
+            () -> assertNotNull(header, "No JWT was returned after the async dispatch"),
+            () -> assertTrue(result.getResponse().getContentAsString().contains(inMemoryUser))
+        );
+    }
+
+    @IntegrationTest
+    @DisplayName("A failed async login answers with 401 after the async dispatch")
+    public void asyncLoginFailureTest() throws Exception {
+        MvcResult started = startLogin(inMemoryPassword + "x");
+        var result = mvc
+            .perform(asyncDispatch(started))
+            .andReturn();
+        assertEquals(401, result.getResponse().getStatus());
+    }
+}
@@ -0,0 +1,219 @@
+package net.ssehub.sparkyservice.api.integration.auth;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.ssehub.sparkyservice.api.auth.AuthController;
+import net.ssehub.sparkyservice.api.auth.SessionDto;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues;
+import net.ssehub.sparkyservice.api.conf.ControllerPath;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+import net.ssehub.sparkyservice.api.testconf.AbstractContainerTestDatabase;
+import net.ssehub.sparkyservice.api.testconf.IntegrationTest;
+import net.ssehub.sparkyservice.api.user.LocalUserDetails;
+import net.ssehub.sparkyservice.api.user.storage.UserStorageService;
+
+/**
+ * Tests the session endpoints of {@link AuthController}. A user must only see and revoke own sessions.
+ *
+ * @author marcel
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@TestPropertySource("classpath:test.properties")
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD) // clears database
+//checkstyle: stop exception type check
+public class SessionsRestIT extends AbstractContainerTestDatabase {
+
+    private static final String PASSWORD = "password";
+
+    private static final String USER_A = "sessionuser";
+
+    private static final String USER_B = "otheruser";
+
+    @Autowired
+    private UserStorageService userService;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Value("${jwt.header}")
+    private String jwtTokenHeader;
+
+    private MockMvc mvc;
+
+    /**
+     * Setup is run before each tests and stores two local users.
+     */
+    @BeforeEach
+    public void setup() {
+        mvc = MockMvcBuilders
+          .webAppContextSetup(context)
+          .apply(SecurityMockMvcConfigurers.springSecurity())
+          .build();
+        userService.commit(LocalUserDetails.newLocalUser(USER_A, PASSWORD, UserRole.DEFAULT));
+        userService.commit(LocalUserDetails.newLocalUser(USER_B, PASSWORD, UserRole.DEFAULT));
+    }
+
+    /**
+     * Logs a user in.
+     *
+     * @param username Name of a stored local user
+     * @return Authorization header with the new JWT
+     * @throws Exception
+     */
+    private String login(String username) throws Exception {
+        var result = mvc
+            .perform(
+                post(ConfigurationValues.AUTH_LOGIN_URL)
+                    .param("password", PASSWORD)
+                    .param("username", username)
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andReturn();
+        String header = result.getResponse().getHeader(jwtTokenHeader);
+        assertNotNull(header, "No JWT was returned during authentication");
+        return header;
+    }
+
+    /**
+     * Lists the sessions of a user.
+     *
+     * @param tokenHeader Authorization header of the user
+     * @return Active sessions
+     * @throws Exception
+     */
+    private SessionDto[] listSessions(String tokenHeader) throws Exception {
+        var result = mvc
+            .perform(
+                get(ControllerPath.AUTHENTICATION_SESSIONS)
+                    .header(HttpHeaders.AUTHORIZATION, tokenHeader)
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andReturn();
+        return new ObjectMapper().readValue(result.getResponse().getContentAsString(), SessionDto[].class);
+    }
+
+    /**
+     * Finds the JTI of the token which was used for listing the sessions.
+     *
+     * @param tokenHeader Authorization header of the user
+     * @return JTI of the current session
+     * @throws Exception
+     */
+    private String currentJti(String tokenHeader) throws Exception {
+        return Arrays.stream(listSessions(tokenHeader))
+            .filter(session -> session.current)
+            .findAny()
+            .orElseThrow()
+            .jti;
+    }
+
+    /**
+     * Checks the authorization of a token.
+     *
+     * @param tokenHeader Authorization header of the user
+     * @return HTTP status of the authorization check
+     * @throws Exception
+     */
+    private int check(String tokenHeader) throws Exception {
+        return mvc
+            .perform(
+                get(ControllerPath.AUTHENTICATION_CHECK)
+                    .header(HttpHeaders.AUTHORIZATION, tokenHeader)
+                    .accept(MediaType.APPLICATION_JSON))
+            .andReturn().getResponse().getStatus();
+    }
+
+    @IntegrationTest
+    @DisplayName("Sessions only list the token of the authenticated user")
+    public void listOwnSessionsTest() throws Exception {
+        String first = login(USER_A);
+        login(USER_A);
+        String other = currentJti(login(USER_B));
+        SessionDto[] sessions = listSessions(first);
+        assertAll(
+            () -> assertEquals(2, sessions.length),
+            () -> assertEquals(1, Arrays.stream(sessions).filter(session -> session.current).count()),
+            () -> assertTrue(Arrays.stream(sessions).noneMatch(session -> session.jti.equals(other)))
+        );
+    }
+
+    @IntegrationTest
+    @DisplayName("A user can't revoke the session of another user")
+    public void revokeForeignSessionTest() throws Exception {
+        String tokenA = login(USER_A);
+        String tokenB = login(USER_B);
+        String jtiB = currentJti(tokenB);
+        mvc
+            .perform(
+                delete(ControllerPath.AUTHENTICATION_SESSIONS_SINGLE, jtiB)
+                    .header(HttpHeaders.AUTHORIZATION, tokenA))
+            .andExpect(status().isNotFound());
+        assertEquals(200, check(tokenB), "Session of the other user was revoked");
+    }
+
+    @IntegrationTest
+    @DisplayName("A user can revoke an own session")
+    public void revokeOwnSessionTest() throws Exception {
+        String current = login(USER_A);
+        String old = login(USER_A);
+        String oldJti = currentJti(old);
+        mvc
+            .perform(
+                delete(ControllerPath.AUTHENTICATION_SESSIONS_SINGLE, oldJti)
+                    .header(HttpHeaders.AUTHORIZATION, current))
+            .andExpect(status().isNoContent());
+        assertAll(
+            () -> assertEquals(403, check(old)),
+            () -> assertEquals(200, check(current))
+        );
+    }
+
+    @IntegrationTest
+    @DisplayName("Revoking the other sessions keeps the current session and the sessions of other users")
+    public void revokeOtherSessionsTest() throws Exception {
+        String current = login(USER_A);
+        String old = login(USER_A);
+        String tokenB = login(USER_B);
+        mvc
+            .perform(
+                delete(ControllerPath.AUTHENTICATION_SESSIONS)
+                    .header(HttpHeaders.AUTHORIZATION, current))
+            .andExpect(status().isNoContent());
+        assertAll(
+            () -> assertEquals(403, check(old)),
+            () -> assertEquals(200, check(current)),
+            () -> assertEquals(200, check(tokenB)),
+            () -> assertEquals(1, listSessions(current).length)
+        );
+    }
+}
@@ -0,0 +1,38 @@
+package net.ssehub.sparkyservice.api.testconf;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.annotation.AliasFor;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Annotation for test classes of the JWT storage and cache services. Each test method gets a new context with an 
+ * empty in memory database and the beans of {@link JwtTestBeanConf}. Tests don't run in a transaction, so the 
+ * services commit like in production.
+ * 
+ * @author marcel
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {UnitTestDataConfiguration.class, JwtTestBeanConf.class})
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+@ExtendWith(SpringExtension.class)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface JwtStorageTest {
+
+    /**
+     * Additional properties of the test context.
+     * 
+     * @return Properties in the form <code>key=value</code>
+     */
+    @AliasFor(annotation = DataJpaTest.class)
+    String[] properties() default {};
+}
@@ -0,0 +1,70 @@
+package net.ssehub.sparkyservice.api.testconf;
+
+import static net.ssehub.sparkyservice.api.util.NullHelpers.notNull;
+
+import java.util.Date;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+
+import net.ssehub.sparkyservice.api.auth.SparkysAuthPrincipal;
+import net.ssehub.sparkyservice.api.auth.jwt.JwtToken;
+import net.ssehub.sparkyservice.api.jpa.user.UserRealm;
+import net.ssehub.sparkyservice.api.jpa.user.UserRole;
+
+/**
+ * Creates JWT token for tests of the token cache and storage. The token don't depend on a stored user.
+ * 
+ * @author marcel
+ */
+public final class JwtTestTokens {
+
+    /**
+     * Only static fixtures.
+     */
+    private JwtTestTokens() {
+    }
+
+    /**
+     * Creates a token without storage dependencies.
+     *
+     * @param locked Lock state of the new token
+     * @return New token which expires in one hour
+     */
+    public static @Nonnull JwtToken createToken(boolean locked) {
+        return createToken(locked, "testuser", UserRealm.LOCAL, System.currentTimeMillis() + 3_600_000);
+    }
+
+    /**
+     * Creates a token without storage dependencies.
+     *
+     * @param locked Lock state of the new token
+     * @param username Name of the owner
+     * @param realm Realm of the owner
+     * @param expiresAt Expiration date in milliseconds since epoch
+     * @return New token
+     */
+    public static @Nonnull JwtToken createToken(boolean locked, @Nonnull String username, @Nonnull UserRealm realm,
+            long expiresAt) {
+        SparkysAuthPrincipal principal = new SparkysAuthPrincipal() {
+
+            @Override
+            public @Nonnull String getName() {
+                return username;
+            }
+
+            @Override
+            public @Nonnull UserRealm getRealm() {
+                return realm;
+            }
+
+            @Override
+            public @Nonnull String asString() {
+                return username + "@" + realm;
+            }
+        };
+        var token = new JwtToken(notNull(UUID.randomUUID()), new Date(expiresAt), principal, UserRole.DEFAULT);
+        token.setLocked(locked);
+        return token;
+    }
+}
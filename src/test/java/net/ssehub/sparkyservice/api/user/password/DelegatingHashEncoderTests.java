@@ -0,0 +1,175 @@
+package net.ssehub.sparkyservice.api.user.password;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.EnumSource.Mode;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm;
+
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.PasswordSettings;
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+
+/**
+ * Provides unit tests for {@link DelegatingHashEncoder}.
+ *
+ * @author marcel
+ */
+public class DelegatingHashEncoderTests {
+
+    private static final String PASSWORD = "secret password";
+
+    /**
+     * Creates settings with cheap cost parameters.
+     *
+     * @param algorithm Algorithm for new hashes
+     * @return Settings for tests
+     */
+    private static PasswordSettings settings(HashAlgorithm algorithm) {
+        var settings = new PasswordSettings();
+        settings.setAlgorithm(algorithm.name());
+        settings.setBcryptStrength(4);
+        settings.setArgon2Memory(1024);
+        settings.setArgon2Iterations(1);
+        settings.setPbkdf2Iterations(1000);
+        return settings;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = HashAlgorithm.class, mode = Mode.EXCLUDE, names = "PLAIN")
+    @DisplayName("Passwords are hashed and checked with the configured algorithm")
+    public void encodeAndMatchTest(HashAlgorithm algorithm) {
+        var encoder = new DelegatingHashEncoder(settings(algorithm));
+        Password stored = encoder.encodePassword(PASSWORD);
+        assertAll(
+            () -> assertEquals(Optional.of(algorithm), HashAlgorithm.fromId(stored.getHashAlgorithm())),
+            () -> assertTrue(encoder.matches(PASSWORD, stored)),
+            () -> assertFalse(encoder.matches(PASSWORD + "x", stored)),
+            () -> assertFalse(encoder.matches(null, stored)),
+            () -> assertFalse(encoder.upgradeEncoding(stored))
+        );
+    }
+
+    @Test
+    @DisplayName("Passwords of other algorithms are still checked and marked for an upgrade")
+    public void otherAlgorithmTest() {
+        Password argon2 = new DelegatingHashEncoder(settings(HashAlgorithm.ARGON2)).encodePassword(PASSWORD);
+        var encoder = new DelegatingHashEncoder(settings(HashAlgorithm.BCRYPT));
+        assertAll(
+            () -> assertTrue(encoder.matches(PASSWORD, argon2)),
+            () -> assertTrue(encoder.upgradeEncoding(argon2))
+        );
+    }
+
+    @Test
+    @DisplayName("Legacy plain passwords match as plain text or BCrypt hash and are marked for an upgrade")
+    public void legacyPlainTest() {
+        var encoder = new DelegatingHashEncoder(settings(HashAlgorithm.BCRYPT));
+        var plainText = new Password(PASSWORD);
+        var unlabeledHash = new Password(new BCryptPasswordEncoder().encode(PASSWORD));
+        assertAll(
+            () -> assertTrue(encoder.matches(PASSWORD, plainText)),
+            () -> assertFalse(encoder.matches(PASSWORD + "x", plainText)),
+            () -> assertTrue(encoder.matches(PASSWORD, unlabeledHash)),
+            () -> assertTrue(encoder.upgradeEncoding(plainText)),
+            () -> assertTrue(encoder.upgradeEncoding(unlabeledHash))
+        );
+    }
+
+    @Test
+    @DisplayName("Passwords with an unknown algorithm never match, even when they look like plain text")
+    public void unknownAlgorithmTest() {
+        var encoder = new DelegatingHashEncoder(settings(HashAlgorithm.BCRYPT));
+        var unknown = new Password(PASSWORD, "md5");
+        var empty = new Password(PASSWORD, "");
+        assertAll(
+            () -> assertEquals(Optional.empty(), HashAlgorithm.fromId("md5")),
+            () -> assertEquals(Optional.of(HashAlgorithm.PLAIN), HashAlgorithm.fromId("PLAIN")),
+            () -> assertFalse(encoder.matches(PASSWORD, unknown)),
+            () -> assertFalse(encoder.matches(PASSWORD, empty)),
+            () -> assertFalse(encoder.upgradeEncoding(unknown))
+        );
+    }
+
+    @Test
+    @DisplayName("New hashes of the legacy encoder are BCrypt hashes which it matches")
+    public void legacyEncodeTest() {
+        var legacy = new DelegatingHashEncoder(settings(HashAlgorithm.BCRYPT)).encoderOf(HashAlgorithm.PLAIN);
+        String hash = legacy.encode(PASSWORD);
+        assertAll(
+            () -> assertTrue(hash.startsWith("$2")),
+            () -> assertTrue(legacy.matches(PASSWORD, hash)),
+            () -> assertFalse(legacy.matches(hash, hash))
+        );
+    }
+
+    @Test
+    @DisplayName("PBKDF2 hashes keep their iterations, so changed iterations don't break them")
+    public void pbkdf2IterationsTest() {
+        Password cheap = new DelegatingHashEncoder(settings(HashAlgorithm.PBKDF2)).encodePassword(PASSWORD);
+        var raisedSettings = settings(HashAlgorithm.PBKDF2);
+        raisedSettings.setPbkdf2Iterations(2000);
+        var raised = new DelegatingHashEncoder(raisedSettings);
+        Password current = raised.encodePassword(PASSWORD);
+        assertAll(
+            () -> assertTrue(cheap.getPasswordString().startsWith("$pbkdf2-sha256$i=1000$")),
+            () -> assertTrue(raised.matches(PASSWORD, cheap)),
+            () -> assertFalse(raised.matches(PASSWORD + "x", cheap)),
+            () -> assertTrue(raised.upgradeEncoding(cheap)),
+            () -> assertFalse(raised.upgradeEncoding(current)),
+            () -> assertEquals(HashAlgorithm.PBKDF2, raised.detect(current.getPasswordString()))
+        );
+    }
+
+    @Test
+    @DisplayName("PBKDF2 hashes without stored iterations are checked with the configured ones and upgraded")
+    public void pbkdf2UnprefixedTest() {
+        var pbkdf2 = new Pbkdf2PasswordEncoder("", 1000, 256);
+        pbkdf2.setAlgorithm(SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256);
+        var unprefixed = new Password(pbkdf2.encode(PASSWORD), HashAlgorithm.PBKDF2.getId());
+        var encoder = new DelegatingHashEncoder(settings(HashAlgorithm.PBKDF2));
+        assertAll(
+            () -> assertTrue(encoder.matches(PASSWORD, unprefixed)),
+            () -> assertTrue(encoder.upgradeEncoding(unprefixed))
+        );
+    }
+
+    @Test
+    @DisplayName("Hashes with a lower cost than configured are marked for an upgrade")
+    public void lowerCostTest() {
+        var cheapBcrypt = new DelegatingHashEncoder(settings(HashAlgorithm.BCRYPT)).encodePassword(PASSWORD);
+        var cheapArgon2 = new DelegatingHashEncoder(settings(HashAlgorithm.ARGON2)).encodePassword(PASSWORD);
+
+        var bcryptSettings = settings(HashAlgorithm.BCRYPT);
+        bcryptSettings.setBcryptStrength(5);
+        var argon2Settings = settings(HashAlgorithm.ARGON2);
+        argon2Settings.setArgon2Memory(2048);
+        assertAll(
+            () -> assertTrue(new DelegatingHashEncoder(bcryptSettings).upgradeEncoding(cheapBcrypt)),
+            () -> assertTrue(new DelegatingHashEncoder(argon2Settings).upgradeEncoding(cheapArgon2))
+        );
+    }
+
+    @Test
+    @DisplayName("Unknown or plain algorithms can't be configured")
+    public void invalidAlgorithmTest() {
+        var unknown = new PasswordSettings();
+        unknown.setAlgorithm("md5");
+        var plain = new PasswordSettings();
+        plain.setAlgorithm("plain");
+        assertAll(
+            () -> assertThrows(IllegalArgumentException.class, () -> new DelegatingHashEncoder(unknown)),
+            () -> assertThrows(IllegalArgumentException.class, () -> new DelegatingHashEncoder(plain))
+        );
+    }
+}
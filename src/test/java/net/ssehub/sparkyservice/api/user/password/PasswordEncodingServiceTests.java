@@ -0,0 +1,129 @@
+package net.ssehub.sparkyservice.api.user.password;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ssehub.sparkyservice.api.conf.ConfigurationValues.PasswordSettings;
+import net.ssehub.sparkyservice.api.jpa.user.Password;
+
+/**
+ * Provides unit tests for {@link PasswordEncodingService}.
+ *
+ * @author marcel
+ */
+public class PasswordEncodingServiceTests {
+
+    private static final String PASSWORD = "secret password";
+
+    /**
+     * Creates settings with cheap cost parameters.
+     *
+     * @return Settings for tests
+     */
+    private static PasswordSettings cheapSettings() {
+        var settings = new PasswordSettings();
+        settings.setBcryptStrength(4);
+        return settings;
+    }
+
+    @Test
+    @DisplayName("Hashes and checks are counted per algorithm")
+    public void metricsTest() {
+        var registry = new SimpleMeterRegistry();
+        var service = new PasswordEncodingService(cheapSettings());
+        service.bindTo(registry);
+
+        Password stored = service.encodePassword(PASSWORD);
+        service.matches(PASSWORD, stored);
+        service.matches(PASSWORD, new Password(PASSWORD));
+        service.matches(PASSWORD, service.encode(PASSWORD));
+        assertAll(
+            () -> assertEquals(2, count(registry, "sparky.password.encode", HashAlgorithm.BCRYPT)),
+            () -> assertEquals(2, count(registry, "sparky.password.match", HashAlgorithm.BCRYPT)),
+            () -> assertEquals(1, count(registry, "sparky.password.match", HashAlgorithm.PLAIN)),
+            () -> assertEquals(0, count(registry, "sparky.password.encode", HashAlgorithm.ARGON2)),
+            () -> assertEquals(-1, registry.get("sparky.password.calibration.duration").gauge().value())
+        );
+    }
+
+    /**
+     * Reads the count of a timer.
+     *
+     * @param registry Registry where the service is bound
+     * @param name Name of the timer
+     * @param algorithm Tagged algorithm
+     * @return Number of measured operations
+     */
+    private static double count(SimpleMeterRegistry registry, String name, HashAlgorithm algorithm) {
+        FunctionTimer timer = registry.get(name).tag("algorithm", algorithm.name().toLowerCase()).functionTimer();
+        return timer.count();
+    }
+
+    @Test
+    @DisplayName("String based checks detect the algorithm of the hash")
+    public void stringMatchTest() {
+        var service = new PasswordEncodingService(cheapSettings());
+        var argon2Settings = cheapSettings();
+        argon2Settings.setAlgorithm(HashAlgorithm.ARGON2.name());
+        argon2Settings.setArgon2Memory(1024);
+        argon2Settings.setArgon2Iterations(1);
+        String argon2 = new PasswordEncodingService(argon2Settings).encode(PASSWORD);
+        String bcrypt = service.encode(PASSWORD);
+        assertAll(
+            () -> assertTrue(service.matches(PASSWORD, bcrypt)),
+            () -> assertFalse(service.matches(PASSWORD + "x", bcrypt)),
+            () -> assertTrue(service.matches(PASSWORD, argon2)),
+            () -> assertFalse(service.matches(PASSWORD + "x", argon2))
+        );
+    }
+
+    @Test
+    @DisplayName("Calibration raises the cost but never lowers it below the configured one")
+    public void calibrationTest() {
+        var settings = cheapSettings();
+        settings.setCalibrate(true);
+        settings.setTargetMs(50);
+        var service = new PasswordEncodingService(settings);
+        var registry = new SimpleMeterRegistry();
+        service.bindTo(registry);
+        int strength = service.getSettings().getBcryptStrength();
+
+        var fast = cheapSettings();
+        fast.setBcryptStrength(12);
+        fast.setCalibrate(true);
+        fast.setTargetMs(1);
+        assertAll(
+            () -> assertTrue(strength >= 4),
+            () -> assertEquals(4, settings.getBcryptStrength(), "Configured settings must not be changed"),
+            () -> assertTrue(registry.get("sparky.password.calibration.duration").gauge().value() >= 0),
+            () -> assertTrue(service.matches(PASSWORD, service.encodePassword(PASSWORD))),
+            () -> assertEquals(12, new PasswordEncodingService(fast).getSettings().getBcryptStrength())
+        );
+    }
+
+    @Test
+    @DisplayName("Calibration raises short iterations without exceeding the target time")
+    public void iterationCalibrationTest() {
+        var settings = cheapSettings();
+        settings.setAlgorithm(HashAlgorithm.PBKDF2.name());
+        settings.setPbkdf2Iterations(1);
+        settings.setCalibrate(true);
+        settings.setTargetMs(50);
+        var service = new PasswordEncodingService(settings);
+        var registry = new SimpleMeterRegistry();
+        service.bindTo(registry);
+        assertAll(
+            () -> assertTrue(service.getSettings().getPbkdf2Iterations() > 1, "A hash with 1 iteration takes < 1 ms"),
+            () -> assertEquals(1, settings.getPbkdf2Iterations(), "Configured settings must not be changed"),
+            () -> assertTrue(registry.get("sparky.password.calibration.duration").gauge().value() <= 50),
+            () -> assertTrue(service.matches(PASSWORD, service.encodePassword(PASSWORD)))
+        );
+    }
+}